@@ -0,0 +1,166 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import velosurf.sql.Database;
+
+/**
+ * Embedded HSQLDB database used by the benchmarks, initialized with the schema of the functional tests
+ * (<code>test/sql/initial.sql</code>) plus a set of generated books.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class BenchmarkDatabase
+{
+    /**
+     * Number of generated books.
+     */
+    public static final int BOOKS = 10000;
+
+    /**
+     * Id of the first generated book.
+     */
+    public static final int FIRST_BOOK = 1000;
+
+    /**
+     * Create and populate an in-memory database, and open it with Velosurf.
+     *
+     * @param name database name, distinct for each benchmark state
+     * @return Velosurf database
+     * @throws Exception
+     */
+    public static Database open(String name) throws Exception
+    {
+        String url = create(name);
+        String model = read("/benchmark.xml").replace("${url}", url);
+        return Database.getInstance(new ByteArrayInputStream(model.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Create and populate an in-memory database, without opening it with Velosurf.
+     *
+     * @param name database name
+     * @return JDBC url of the database
+     * @throws Exception
+     */
+    public static String create(String name) throws Exception
+    {
+        String url = "jdbc:hsqldb:mem:" + name;
+        Class.forName("org.hsqldb.jdbcDriver");
+        Connection connection = DriverManager.getConnection(url, "sa", "");
+        try
+        {
+            populate(connection);
+        }
+        finally
+        {
+            connection.close();
+        }
+        return url;
+    }
+
+    /**
+     * Execute a raw SQL statement on a database opened by {@link #open(String)}.
+     *
+     * @param name database name
+     * @param sql SQL statement
+     * @throws SQLException
+     */
+    public static void execute(String name, String sql) throws SQLException
+    {
+        Connection connection = DriverManager.getConnection("jdbc:hsqldb:mem:" + name, "sa", "");
+        try
+        {
+            Statement statement = connection.createStatement();
+            statement.execute(sql);
+            statement.close();
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    /**
+     * Load the test schema and generate books.
+     *
+     * @param connection JDBC connection
+     * @throws Exception
+     */
+    private static void populate(Connection connection) throws Exception
+    {
+        Statement statement = connection.createStatement();
+        for (String sql : read("/initial.sql").split(";\\s*\n"))
+        {
+            sql = sql.trim();
+            if (sql.length() > 0)
+            {
+                statement.execute(sql);
+            }
+        }
+        statement.close();
+        PreparedStatement insert = connection.prepareStatement("INSERT INTO book (book_id,title,isbn,publisher_id,author_id) VALUES (?,?,?,?,?)");
+        for (int i = 0; i < BOOKS; i++)
+        {
+            insert.setInt(1, FIRST_BOOK + i);
+            insert.setString(2, "Generated book #" + i);
+            insert.setString(3, String.format("0-000-%05d-0", i));
+            insert.setInt(4, 1);
+            insert.setInt(5, 1 + i % 2);
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        insert.close();
+    }
+
+    /**
+     * Read a classpath resource.
+     *
+     * @param resource resource path
+     * @return resource content
+     * @throws IOException
+     */
+    private static String read(String resource) throws IOException
+    {
+        InputStream is = BenchmarkDatabase.class.getResourceAsStream(resource);
+        if (is == null)
+        {
+            throw new IOException("resource not found: " + resource);
+        }
+        try
+        {
+            return new String(is.readAllBytes(), StandardCharsets.ISO_8859_1);
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import velosurf.util.ConversionHandler;
+import velosurf.util.ConversionHandlerImpl;
+
+/**
+ * Benchmarks of the converters lookup and of the most common conversions.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark
+{
+    /**
+     * Look up a standard converter.
+     * @return converter
+     */
+    @Benchmark
+    public Object lookup()
+    {
+        return handler.getNeededConverter(Integer.class, String.class);
+    }
+
+    /**
+     * Convert a string to an integer.
+     * @return converted value
+     */
+    @Benchmark
+    public Object stringToInteger()
+    {
+        return handler.getNeededConverter(Integer.class, String.class).convert("12345");
+    }
+
+    /**
+     * Convert a string to a boolean.
+     * @return converted value
+     */
+    @Benchmark
+    public Object stringToBoolean()
+    {
+        return handler.getNeededConverter(Boolean.class, String.class).convert("true");
+    }
+
+    /**
+     * Convert a long to an integer.
+     * @return converted value
+     */
+    @Benchmark
+    public Object longToInteger()
+    {
+        return handler.getNeededConverter(Integer.class, Long.class).convert(12345L);
+    }
+
+    /**
+     * Convert a string to a date.
+     * @return converted value
+     */
+    @Benchmark
+    public Object stringToDate()
+    {
+        return handler.getNeededConverter(java.sql.Date.class, String.class).convert("2016-07-26");
+    }
+
+    /**
+     * Convert an integer to a string.
+     * @return converted value
+     */
+    @Benchmark
+    public Object integerToString()
+    {
+        return handler.getNeededConverter(String.class, Integer.class).convert(12345);
+    }
+
+    /**
+     * Conversion handler.
+     */
+    private ConversionHandler handler = new ConversionHandlerImpl();
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.benchmarks;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import velosurf.context.Instance;
+import velosurf.context.RowIterator;
+import velosurf.model.Entity;
+import velosurf.sql.Database;
+
+/**
+ * Benchmarks of the entity read and write paths: fetch (cached and uncached), row set iteration, update and insert.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityBenchmark
+{
+    /**
+     * Open the benchmark database.
+     * @throws Exception
+     */
+    @Setup(Level.Trial)
+    public void open() throws Exception
+    {
+        db = BenchmarkDatabase.open(DATABASE);
+        publisher = db.getEntity("publisher");
+        book = db.getEntity("book");
+        empty = db.getEntity("empty");
+        updated = book.fetch(1);
+    }
+
+    /**
+     * Remove the rows inserted during the last iteration.
+     * @throws SQLException
+     */
+    @TearDown(Level.Iteration)
+    public void cleanup() throws SQLException
+    {
+        BenchmarkDatabase.execute(DATABASE, "DELETE FROM empty");
+    }
+
+    /**
+     * Close the benchmark database.
+     * @throws SQLException
+     */
+    @TearDown(Level.Trial)
+    public void close() throws SQLException
+    {
+        db.close();
+    }
+
+    /**
+     * Fetch an instance of a cached entity.
+     * @return fetched instance
+     * @throws SQLException
+     */
+    @Benchmark
+    public Instance fetchCached() throws SQLException
+    {
+        return publisher.fetch(1);
+    }
+
+    /**
+     * Fetch an instance of an uncached entity.
+     * @return fetched instance
+     * @throws SQLException
+     */
+    @Benchmark
+    public Instance fetchUncached() throws SQLException
+    {
+        return book.fetch(1);
+    }
+
+    /**
+     * Iterate over all books with a row iterator.
+     * @param blackhole blackhole
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void iterate(Blackhole blackhole) throws SQLException
+    {
+        RowIterator rows = book.query();
+        while (rows.hasNext())
+        {
+            blackhole.consume(rows.next());
+        }
+    }
+
+    /**
+     * Get all books as a list.
+     * @return list of books
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Instance> getRows() throws SQLException
+    {
+        return book.query().getRows();
+    }
+
+    /**
+     * Update an instance.
+     * @return update status
+     */
+    @Benchmark
+    public boolean update()
+    {
+        updated.put("title", (++counter & 1) == 0 ? "Effective Java" : "Effective Java, 2nd edition");
+        return updated.update();
+    }
+
+    /**
+     * Insert an instance.
+     * @return insert status
+     */
+    @Benchmark
+    public boolean insert()
+    {
+        Instance instance = empty.newInstance();
+        instance.put("data", "inserted");
+        return instance.insert();
+    }
+
+    /**
+     * Database name.
+     */
+    private static final String DATABASE = "velosurf-entity-benchmark";
+
+    /**
+     * Velosurf database.
+     */
+    private Database db;
+
+    /**
+     * Cached entity.
+     */
+    private Entity publisher;
+
+    /**
+     * Uncached entity.
+     */
+    private Entity book;
+
+    /**
+     * Entity used by inserts.
+     */
+    private Entity empty;
+
+    /**
+     * Instance used by updates.
+     */
+    private Instance updated;
+
+    /**
+     * Updates counter.
+     */
+    private int counter = 0;
+}
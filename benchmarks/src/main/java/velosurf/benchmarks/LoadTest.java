@@ -0,0 +1,456 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+
+
+package velosurf.benchmarks;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.servlet.DispatcherType;
+
+import org.apache.velocity.tools.view.VelocityViewServlet;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.DefaultServlet;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.FilterMapping;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.resource.Resource;
+
+import velosurf.util.Histogram;
+import velosurf.util.Logger;
+import velosurf.util.TemplateNameFilter;
+import velosurf.validation.ValidationFilter;
+import velosurf.web.ContextListener;
+import velosurf.web.auth.AuthenticationFilter;
+
+/**
+ * <p>Load test of the Velosurf web stack.</p>
+ *
+ * <p>The load test boots the pages of the functional tests webapp (<code>test/webapp</code>) in an embedded Jetty
+ * server, on an in-memory HSQLDB database populated like the one of the benchmarks. Concurrent {@link VirtualUser}s
+ * then loop over scenarios exercising <code>$db</code> fetches, row set iterations, the <code>AuthenticationFilter</code>
+ * and the <code>ValidationFilter</code>, and the throughput and latency percentiles of each scenario are reported,
+ * along with the checkout wait and hold times of the Velosurf pools (which show contention in the pools).</p>
+ *
+ * <p>Usage:</p>
+ * <pre>
+ * java -cp target/benchmarks.jar velosurf.benchmarks.LoadTest
+ *     [--users=<i>n</i>] [--duration=<i>seconds</i>] [--warmup=<i>seconds</i>] [--port=<i>port</i>]
+ * </pre>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class LoadTest
+{
+    /**
+     * Scenarios.
+     */
+    public static final String[] OPERATIONS = { "fetch", "rowset", "validation", "login" };
+
+    /**
+     * Entry point.
+     *
+     * @param args command line options
+     * @throws Exception
+     */
+    public static void main(String args[]) throws Exception
+    {
+        int users = 20, duration = 30, warmup = 5, port = 0;
+        for (String arg : args)
+        {
+            int equal = arg.indexOf('=');
+            String option = equal == -1 ? arg : arg.substring(0, equal);
+            int value = equal == -1 ? -1 : Integer.parseInt(arg.substring(equal + 1));
+            if ("--users".equals(option))
+            {
+                users = value;
+            }
+            else if ("--duration".equals(option))
+            {
+                duration = value;
+            }
+            else if ("--warmup".equals(option))
+            {
+                warmup = value;
+            }
+            else if ("--port".equals(option))
+            {
+                port = value;
+            }
+            else
+            {
+                System.err.println("usage: LoadTest [--users=n] [--duration=seconds] [--warmup=seconds] [--port=port]");
+                System.exit(1);
+            }
+        }
+        LoadTest test = new LoadTest();
+        test.start(port);
+        try
+        {
+            test.run(users, warmup, duration);
+            test.report(System.out);
+        }
+        finally
+        {
+            test.stop();
+        }
+    }
+
+    /**
+     * Constructor.
+     */
+    public LoadTest()
+    {
+        for (String operation : OPERATIONS)
+        {
+            operations.put(operation, new Operation());
+        }
+    }
+
+    /**
+     * Create the database and start the server.
+     *
+     * @param port HTTP port, or 0 for any free port
+     * @throws Exception
+     */
+    public void start(int port) throws Exception
+    {
+        Logger.log2Stderr();
+        BenchmarkDatabase.create("loadtest");
+
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/");
+        context.setBaseResource(Resource.newClassPathResource("/loadtest"));
+        context.setWelcomeFiles(new String[] { "index.html", "index.html.vtl" });
+        /* lets the session tools find the servlet context (velocity-tools 3 doesn't call their init method) */
+        context.addEventListener(new ContextListener());
+
+        /* same filters as in the web.xml of the functional tests webapp */
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        params.put("reset-method", "manual");
+        addFilter(context, "templatename", TemplateNameFilter.class, params, "/*");
+        params.clear();
+        params.put("index-page", "/index.html");
+        params.put("max-inactive", "300");
+        params.put("login-page", "/login.html");
+        params.put("authenticated-index-page", "/auth/index.html");
+        addFilter(context, "authentication", AuthenticationFilter.class, params, "/auth/*", "/login.do", "/logout.do");
+        params.clear();
+        addFilter(context, "validation", ValidationFilter.class, params, "/*");
+
+        ServletHolder velocity = new ServletHolder("velocityview", VelocityViewServlet.class);
+        velocity.setInitOrder(1);
+        context.addServlet(velocity, "*.vtl");
+        context.addServlet(new ServletHolder("default", DefaultServlet.class), "/");
+
+        server = new Server(port);
+        server.setHandler(context);
+        server.start();
+        baseURL = "http://localhost:" + ((ServerConnector)server.getConnectors()[0]).getLocalPort();
+
+        /* obfuscated keys used by the scenarios */
+        VirtualUser user = new VirtualUser(this, 0);
+        publisherId = user.obfuscate(1);
+        Random random = new Random(0);
+        bookIds = new String[BOOK_SAMPLE];
+        for (int i = 0; i < BOOK_SAMPLE; i++)
+        {
+            bookIds[i] = user.obfuscate(BenchmarkDatabase.FIRST_BOOK + random.nextInt(BenchmarkDatabase.BOOKS));
+        }
+    }
+
+    /**
+     * Run the virtual users.
+     *
+     * @param users number of virtual users
+     * @param warmup warmup duration, in seconds
+     * @param duration measurement duration, in seconds
+     * @throws InterruptedException
+     */
+    public void run(int users, int warmup, int duration) throws InterruptedException
+    {
+        this.users = users;
+        running = true;
+        Thread threads[] = new Thread[users];
+        for (int i = 0; i < users; i++)
+        {
+            threads[i] = new Thread(new VirtualUser(this, i + 1), "virtual user #" + (i + 1));
+            threads[i].start();
+        }
+        Thread.sleep(warmup * 1000L);
+        for (Operation operation : operations.values())
+        {
+            operation.reset();
+        }
+        resetPoolStats();
+        long start = System.nanoTime();
+        Thread.sleep(duration * 1000L);
+        elapsed = (System.nanoTime() - start) / 1e9;
+        running = false;
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+    }
+
+    /**
+     * Print the results.
+     *
+     * @param out output stream
+     * @throws Exception
+     */
+    public void report(PrintStream out) throws Exception
+    {
+        out.printf("Velosurf load test: %d virtual users during %.1f s%n%n", users, elapsed);
+        out.printf("%-12s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+            "operation", "requests", "errors", "req/s", "mean", "50%", "90%", "99%", "max (ms)");
+        long total = 0;
+        for (Map.Entry<String, Operation> entry : operations.entrySet())
+        {
+            Histogram latency = entry.getValue().latency;
+            total += latency.getCount();
+            out.printf("%-12s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                entry.getKey(), latency.getCount(), entry.getValue().errors.sum(), latency.getCount() / elapsed,
+                latency.getMean(), latency.getPercentile(50), latency.getPercentile(90), latency.getPercentile(99), latency.getMax());
+        }
+        out.printf("%-12s %10d %8s %10.1f%n%n", "total", total, "", total / elapsed);
+
+        out.printf("%-34s %10s %9s %9s %9s %9s %9s%n",
+            "pool", "checkouts", "wait mean", "wait 99%", "wait max", "hold mean", "hold max");
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : getPoolNames())
+        {
+            out.printf("%-34s %10d %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                name.getKeyProperty("name"),
+                mbeanServer.getAttribute(name, "Checkouts"),
+                mbeanServer.getAttribute(name, "CheckoutWaitMean"),
+                mbeanServer.getAttribute(name, "CheckoutWait99thPercentile"),
+                mbeanServer.getAttribute(name, "CheckoutWaitMax"),
+                mbeanServer.getAttribute(name, "HoldTimeMean"),
+                mbeanServer.getAttribute(name, "HoldTimeMax"));
+        }
+    }
+
+    /**
+     * Stop the server.
+     *
+     * @throws Exception
+     */
+    public void stop() throws Exception
+    {
+        running = false;
+        if (server != null)
+        {
+            server.stop();
+        }
+    }
+
+    /**
+     * Whether the virtual users must go on.
+     *
+     * @return running flag
+     */
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    /**
+     * Record a scenario execution.
+     *
+     * @param operation scenario name
+     * @param nanos execution time, in nanoseconds
+     * @param success whether the scenario succeeded
+     */
+    public void record(String operation, long nanos, boolean success)
+    {
+        Operation stats = operations.get(operation);
+        stats.latency.record(nanos);
+        if (!success)
+        {
+            stats.errors.increment();
+        }
+    }
+
+    /**
+     * Base URL of the server.
+     *
+     * @return base URL
+     */
+    public String getBaseURL()
+    {
+        return baseURL;
+    }
+
+    /**
+     * Obfuscated id of the publisher.
+     *
+     * @return obfuscated publisher id
+     */
+    public String getPublisherId()
+    {
+        return publisherId;
+    }
+
+    /**
+     * Obfuscated id of a random book.
+     *
+     * @param random random generator of the caller
+     * @return obfuscated book id
+     */
+    public String getBookId(Random random)
+    {
+        return bookIds[random.nextInt(bookIds.length)];
+    }
+
+    /**
+     * Add a filter to the context, for requests and forwards.
+     *
+     * @param context servlet context handler
+     * @param name filter name
+     * @param filterClass filter class
+     * @param params init parameters
+     * @param patterns url patterns
+     */
+    private static void addFilter(ServletContextHandler context, String name, Class filterClass, Map<String, String> params, String... patterns)
+    {
+        FilterHolder holder = new FilterHolder(filterClass);
+        holder.setName(name);
+        holder.setInitParameters(params);
+        FilterMapping mapping = new FilterMapping();
+        mapping.setFilterName(name);
+        mapping.setPathSpecs(patterns);
+        mapping.setDispatcherTypes(EnumSet.of(DispatcherType.REQUEST, DispatcherType.FORWARD));
+        context.getServletHandler().addFilter(holder, mapping);
+    }
+
+    /**
+     * Names of the registered pool MBeans.
+     *
+     * @return pool MBean names, sorted
+     * @throws Exception
+     */
+    private static Set<ObjectName> getPoolNames() throws Exception
+    {
+        return new TreeSet<ObjectName>(ManagementFactory.getPlatformMBeanServer().queryNames(new ObjectName("velosurf:type=Pool,*"), null));
+    }
+
+    /**
+     * Reset the pool statistics at the end of the warmup.
+     */
+    private static void resetPoolStats()
+    {
+        try
+        {
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            for (ObjectName name : getPoolNames())
+            {
+                mbeanServer.invoke(name, "resetStats", null, null);
+            }
+        }
+        catch (Exception e)
+        {
+            Logger.log(e);
+        }
+    }
+
+    /**
+     * Statistics of a scenario.
+     */
+    private static class Operation
+    {
+        /**
+         * Reset the statistics.
+         */
+        void reset()
+        {
+            latency.reset();
+            errors.reset();
+        }
+
+        /**
+         * Latencies.
+         */
+        Histogram latency = new Histogram();
+
+        /**
+         * Number of failed executions.
+         */
+        LongAdder errors = new LongAdder();
+    }
+
+    /**
+     * Number of sampled books.
+     */
+    private static final int BOOK_SAMPLE = 100;
+
+    /**
+     * Statistics by scenario.
+     */
+    private Map<String, Operation> operations = new LinkedHashMap<String, Operation>();
+
+    /**
+     * Jetty server.
+     */
+    private Server server = null;
+
+    /**
+     * Base URL of the server.
+     */
+    private String baseURL = null;
+
+    /**
+     * Obfuscated publisher id.
+     */
+    private String publisherId = null;
+
+    /**
+     * Sample of obfuscated book ids.
+     */
+    private String[] bookIds = null;
+
+    /**
+     * Number of virtual users.
+     */
+    private int users = 0;
+
+    /**
+     * Measurement duration, in seconds.
+     */
+    private double elapsed = 0;
+
+    /**
+     * Running flag.
+     */
+    private volatile boolean running = false;
+}
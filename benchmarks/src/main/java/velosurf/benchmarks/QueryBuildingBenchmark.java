@@ -0,0 +1,100 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import velosurf.sql.SqlUtil;
+import velosurf.util.DynamicQueryBuilder;
+import velosurf.util.SlotHashMap;
+import velosurf.util.SlotMap;
+
+/**
+ * Benchmarks of the query building helpers: refinement of queries and evaluation of dynamic queries.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBuildingBenchmark
+{
+    /**
+     * Prepare query sources.
+     */
+    @Setup
+    public void setup()
+    {
+        source = new SlotHashMap();
+        source.put("title", "Effective Java");
+        source.put("publisher_id", 1);
+    }
+
+    /**
+     * Refine a query with criteria.
+     * @return refined query
+     */
+    @Benchmark
+    public String refineQuery()
+    {
+        return SqlUtil.refineQuery("select * from book where author_id = 1 order by title", criteria);
+    }
+
+    /**
+     * Evaluate a dynamic query.
+     * @return built query
+     */
+    @Benchmark
+    public String buildQuery()
+    {
+        return DynamicQueryBuilder.buildQuery(dynamicQuery, source);
+    }
+
+    /**
+     * Refinement criteria.
+     */
+    private List<String> criteria = Arrays.asList("publisher_id = 1", "title like 'E%'");
+
+    /**
+     * Dynamic query.
+     */
+    private String dynamicQuery = "select * from book where publisher_id = $publisher_id #if($title) and title = '$title' #end";
+
+    /**
+     * Dynamic query source.
+     */
+    private SlotMap source;
+}
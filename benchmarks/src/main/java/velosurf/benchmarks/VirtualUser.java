@@ -0,0 +1,460 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+
+
+package velosurf.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import velosurf.util.Base64Utils;
+
+/**
+ * <p>Virtual user of the load test. A virtual user is an HTTP client with its own session cookie, which loops
+ * over randomly chosen scenarios until the load test ends:</p>
+ * <ul>
+ * <li><code>fetch</code> : display of a publisher and a book fetched by their obfuscated keys.
+ * <li><code>rowset</code> : iteration over a page of books.
+ * <li><code>login</code> : full authentication cycle (redirection towards the login form, HmacMD5 answer
+ * to the challenge, access to the protected page, logout), each time with a new session.
+ * <li><code>validation</code> : display of the input form and submission of valid or invalid values.
+ * </ul>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class VirtualUser implements Runnable
+{
+    /**
+     * Constructor.
+     *
+     * @param test load test
+     * @param seed random seed
+     */
+    public VirtualUser(LoadTest test, long seed)
+    {
+        this.test = test;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Scenarios loop.
+     */
+    public void run()
+    {
+        while (test.isRunning())
+        {
+            int draw = random.nextInt(100);
+            String operation = draw < 40 ? "fetch" : draw < 70 ? "rowset" : draw < 85 ? "validation" : "login";
+            boolean success = false;
+            long start = System.nanoTime();
+            try
+            {
+                success = perform(operation);
+            }
+            catch (IOException ioe)
+            {
+                /* counted as an error */
+            }
+            test.record(operation, System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Perform a scenario.
+     *
+     * @param operation scenario name
+     * @return whether the expected pages have been received
+     * @throws IOException
+     */
+    private boolean perform(String operation) throws IOException
+    {
+        if ("fetch".equals(operation))
+        {
+            return fetch();
+        }
+        else if ("rowset".equals(operation))
+        {
+            return rowset();
+        }
+        else if ("validation".equals(operation))
+        {
+            return validation();
+        }
+        else
+        {
+            return login();
+        }
+    }
+
+    /**
+     * Get the obfuscated value of a key, as computed by the webapp.
+     *
+     * @param id key value
+     * @return obfuscated value
+     * @throws IOException
+     */
+    public String obfuscate(int id) throws IOException
+    {
+        String page = get("/obfuscate.html?id=" + id, null);
+        Matcher matcher = OBFUSCATED.matcher(page);
+        if (!matcher.find())
+        {
+            throw new IOException("could not obfuscate " + id);
+        }
+        return matcher.group(1);
+    }
+
+    /**
+     * Fetch scenario.
+     *
+     * @return whether the expected page has been received
+     * @throws IOException
+     */
+    private boolean fetch() throws IOException
+    {
+        String page = get("/fetch.html?publisher_id=" + test.getPublisherId() + "&book_id=" + test.getBookId(random), null);
+        return page.contains("<div id=\"publisher\">Addison Wesley Professional</div>")
+            && !page.contains("<div id=\"book\">$book.title</div>");
+    }
+
+    /**
+     * Row set iteration scenario.
+     *
+     * @return whether the expected page has been received
+     * @throws IOException
+     */
+    private boolean rowset() throws IOException
+    {
+        int start = BenchmarkDatabase.FIRST_BOOK + random.nextInt(BenchmarkDatabase.BOOKS - ROWSET_SIZE);
+        String page = get("/rowset.html?start=" + start + "&end=" + (start + ROWSET_SIZE), null);
+        return count(page, "<li>") == ROWSET_SIZE;
+    }
+
+    /**
+     * Login scenario.
+     *
+     * @return whether all the expected pages have been received
+     * @throws IOException
+     */
+    private boolean login() throws IOException
+    {
+        /* new visitor */
+        cookie = null;
+        String page = get("/auth/index.html", null);
+        Matcher matcher = CHALLENGE.matcher(page);
+        if (!matcher.find())
+        {
+            return false;
+        }
+        page = post("/login.do", "login=" + LOGIN + "&password=" + encode(answer(matcher.group(1))));
+        if (!page.contains("loggued"))
+        {
+            return false;
+        }
+        page = get("/logout.do", null);
+        return page.contains("<title>Login</title>");
+    }
+
+    /**
+     * Validation scenario.
+     *
+     * @return whether the expected pages have been received
+     * @throws IOException
+     */
+    private boolean validation() throws IOException
+    {
+        String page = get("/input.html", null);
+        if (!page.contains("<title>Input form</title>"))
+        {
+            return false;
+        }
+        if (random.nextInt(4) == 0)
+        {
+            page = get("/goodvalues.html?" + INVALID_VALUES, test.getBaseURL() + "/input.html");
+            return page.contains("Errors:");
+        }
+        else
+        {
+            int bookId = BenchmarkDatabase.FIRST_BOOK + random.nextInt(BenchmarkDatabase.BOOKS);
+            page = get("/goodvalues.html?" + VALID_VALUES + "&book_id=" + bookId, test.getBaseURL() + "/input.html");
+            return page.contains("good values!");
+        }
+    }
+
+    /**
+     * Compute the answer to the login challenge, like the HmacMD5 javascript code of the login page.
+     *
+     * @param challenge challenge
+     * @return answer
+     * @throws IOException
+     */
+    private String answer(String challenge) throws IOException
+    {
+        try
+        {
+            Mac mac = Mac.getInstance("HmacMD5");
+            mac.init(new SecretKeySpec(PASSWORD.getBytes(StandardCharsets.UTF_8), "HmacMD5"));
+            String answer = Base64Utils.base64Encode(mac.doFinal(challenge.getBytes(StandardCharsets.UTF_8)));
+            int i;
+            while ((i = answer.lastIndexOf('=')) != -1)
+            {
+                answer = answer.substring(0, i);
+            }
+            return answer;
+        }
+        catch (Exception e)
+        {
+            throw new IOException("could not compute login answer", e);
+        }
+    }
+
+    /**
+     * Issue a GET request, following redirections.
+     *
+     * @param path path
+     * @param referer referer, or null
+     * @return content of the final page
+     * @throws IOException if the request failed or if an HTTP error was received
+     */
+    private String get(String path, String referer) throws IOException
+    {
+        return request(new URL(test.getBaseURL() + path), null, referer);
+    }
+
+    /**
+     * Issue a POST request, following redirections.
+     *
+     * @param path path
+     * @param form url-encoded form parameters
+     * @return content of the final page
+     * @throws IOException if the request failed or if an HTTP error was received
+     */
+    private String post(String path, String form) throws IOException
+    {
+        return request(new URL(test.getBaseURL() + path), form, null);
+    }
+
+    /**
+     * Issue a request, following redirections and keeping track of the session cookie.
+     *
+     * @param url url
+     * @param form url-encoded form parameters for a POST request, null for a GET request
+     * @param referer referer, or null
+     * @return content of the final page
+     * @throws IOException if the request failed or if an HTTP error was received
+     */
+    private String request(URL url, String form, String referer) throws IOException
+    {
+        for (int redirections = 0; redirections < MAX_REDIRECTIONS; redirections++)
+        {
+            HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+            connection.setInstanceFollowRedirects(false);
+            connection.setRequestProperty("Accept-Language", "en");
+            if (cookie != null)
+            {
+                connection.setRequestProperty("Cookie", cookie);
+            }
+            if (referer != null)
+            {
+                connection.setRequestProperty("Referer", referer);
+            }
+            if (form != null)
+            {
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+                OutputStream out = connection.getOutputStream();
+                out.write(form.getBytes(StandardCharsets.UTF_8));
+                out.close();
+            }
+            int status = connection.getResponseCode();
+            List<String> cookies = connection.getHeaderFields().get("Set-Cookie");
+            if (cookies != null)
+            {
+                for (String setCookie : cookies)
+                {
+                    if (setCookie.startsWith("JSESSIONID="))
+                    {
+                        int semicolon = setCookie.indexOf(';');
+                        cookie = semicolon == -1 ? setCookie : setCookie.substring(0, semicolon);
+                    }
+                }
+            }
+            if (status >= 300 && status < 400)
+            {
+                String location = connection.getHeaderField("Location");
+                read(connection.getInputStream());
+                if (location == null)
+                {
+                    throw new IOException("redirection without location from " + url);
+                }
+                url = new URL(url, location);
+                form = null;
+                referer = null;
+                continue;
+            }
+            if (status != HttpURLConnection.HTTP_OK)
+            {
+                InputStream error = connection.getErrorStream();
+                if (error != null)
+                {
+                    read(error);
+                }
+                throw new IOException("got HTTP status " + status + " from " + url);
+            }
+            return read(connection.getInputStream());
+        }
+        throw new IOException("too many redirections from " + url);
+    }
+
+    /**
+     * Read a response body (reading it entirely allows the connection to be reused).
+     *
+     * @param in input stream
+     * @return response body
+     * @throws IOException
+     */
+    private static String read(InputStream in) throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1)
+            {
+                bytes.write(buffer, 0, n);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.ISO_8859_1);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Count the occurrences of a string.
+     *
+     * @param page page content
+     * @param searched searched string
+     * @return number of occurrences
+     */
+    private static int count(String page, String searched)
+    {
+        int count = 0;
+        int i = 0;
+        while ((i = page.indexOf(searched, i)) != -1)
+        {
+            count++;
+            i += searched.length();
+        }
+        return count;
+    }
+
+    /**
+     * Url-encode a parameter value.
+     *
+     * @param value value
+     * @return encoded value
+     */
+    private static String encode(String value)
+    {
+        try
+        {
+            return URLEncoder.encode(value, "UTF-8");
+        }
+        catch (IOException ioe)
+        {
+            /* cannot happen */
+            return value;
+        }
+    }
+
+    /**
+     * Number of rows of the iterated row sets.
+     */
+    private static final int ROWSET_SIZE = 50;
+
+    /**
+     * Max number of followed redirections.
+     */
+    private static final int MAX_REDIRECTIONS = 5;
+
+    /**
+     * Login of the test user.
+     */
+    private static final String LOGIN = "foo";
+
+    /**
+     * Password of the test user.
+     */
+    private static final String PASSWORD = "bar";
+
+    /**
+     * Valid values for the validation form.
+     */
+    private static final String VALID_VALUES = "velosurf.entity=validation&string=aaaaaa&string2=123-123&number=1&oneof=test1"
+        + "&mydate=8-3-2006&email=john%40example.com&email2=jane%40example.com";
+
+    /**
+     * Invalid values for the validation form.
+     */
+    private static final String INVALID_VALUES = "velosurf.entity=validation&string=aa&string2=123-1234&number=0&oneof=test0"
+        + "&mydate=2-7-2006&email=toto%40tata%40titi&book_id=0";
+
+    /**
+     * Pattern of the obfuscated value.
+     */
+    private static final Pattern OBFUSCATED = Pattern.compile("<div id=\"obfuscated\">([^<]*)</div>");
+
+    /**
+     * Pattern of the login challenge.
+     */
+    private static final Pattern CHALLENGE = Pattern.compile("b64_hmac_md5\\([^,]*,'([^']*)'\\)");
+
+    /**
+     * Load test.
+     */
+    private LoadTest test;
+
+    /**
+     * Random generator.
+     */
+    private Random random;
+
+    /**
+     * Session cookie.
+     */
+    private String cookie = null;
+}
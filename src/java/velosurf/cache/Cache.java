@@ -18,9 +18,26 @@
 
 package velosurf.cache;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.lang.ref.SoftReference;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import velosurf.util.SlotHashMap;
+import velosurf.util.SlotMap;
 
 /**
  * <p>Cache that keeps fetched instances in memory.</p>
@@ -39,6 +56,9 @@ import java.util.Map;
  * <p>This caching mechanism is meant for straightforward optimizations in read-only or very simple situations, for instance to
  * avoid re-fetching data related to the logged user at each request.</p>
  *
+ * <p>The content of a cache can be saved to a snapshot file and reloaded at startup (see {@link #writeSnapshot} and {@link #readSnapshot}),
+ * so that full and growing caches don't have to be warmed up again against the database after each restart.</p>
+ *
  *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
  *
  */
@@ -88,6 +108,7 @@ public class Cache
         {
             innerCache.put(key, value);
         }
+        stats.put();
     }
 
     /**
@@ -97,7 +118,10 @@ public class Cache
      */
     public int size()
     {
-        return innerCache.size();
+        synchronized(innerCache)
+        {
+            return innerCache.size();
+        }
     }
 
     /**
@@ -125,8 +149,17 @@ public class Cache
                 {
                     innerCache.remove(key);
                 }
+                stats.eviction();
             }
         }
+        if(ret == null)
+        {
+            stats.miss();
+        }
+        else
+        {
+            stats.hit();
+        }
         return ret;
     }
 
@@ -136,7 +169,11 @@ public class Cache
      */
     public void clear()
     {
-        innerCache.clear();
+        /* may be called through JMX, concurrently with requests */
+        synchronized(innerCache)
+        {
+            innerCache.clear();
+        }
     }
 
     /**
@@ -145,12 +182,256 @@ public class Cache
      */
     public void invalidate(String key)
     {
+        Object removed;
         synchronized(innerCache)
         {
-            innerCache.remove(key);
+            removed = innerCache.remove(key);
+        }
+        if(removed != null)
+        {
+            stats.invalidation();
+        }
+    }
+
+    /**
+     * Getter for the usage counters of the cache.
+     *
+     * @return usage counters
+     */
+    public CacheStats getStats()
+    {
+        return stats;
+    }
+
+    /**
+     * Estimate the memory used by cached values, extrapolated from a sample of entries.
+     *
+     * @return estimated memory, in bytes
+     */
+    public long estimateMemory()
+    {
+        List<Object> sample = new ArrayList<Object>();
+        int size;
+        synchronized(innerCache)
+        {
+            size = innerCache.size();
+            for(Object value : innerCache.values())
+            {
+                if(sample.size() == MEMORY_SAMPLE_SIZE)
+                {
+                    break;
+                }
+                sample.add(value);
+            }
+        }
+        if(sample.size() == 0)
+        {
+            return 0;
         }
+        long sampled = 0;
+        for(Object value : sample)
+        {
+            if(value instanceof SoftReference)
+            {
+                value = ((SoftReference<Object>)value).get();
+            }
+            sampled += ENTRY_OVERHEAD + estimateSize(value);
+        }
+        return sampled * size / sample.size();
     }
 
+    /**
+     * Rough estimation of the memory used by a cached value.
+     *
+     * @param value cached value
+     * @return estimated size, in bytes
+     */
+    private static long estimateSize(Object value)
+    {
+        if(value == null)
+        {
+            return 0;
+        }
+        else if(value instanceof String)
+        {
+            return 40 + 2 * ((String)value).length();
+        }
+        else if(value instanceof Number || value instanceof Boolean || value instanceof Character)
+        {
+            return 16;
+        }
+        else if(value instanceof java.util.Date)
+        {
+            return 24;
+        }
+        else if(value instanceof byte[])
+        {
+            return 16 + ((byte[])value).length;
+        }
+        else if(value instanceof Map)
+        {
+            long size = 48;
+            for(Object entry : ((Map)value).values())
+            {
+                size += ENTRY_OVERHEAD + estimateSize(entry);
+            }
+            return size;
+        }
+        else
+        {
+            return 32;
+        }
+    }
+
+    /**
+     * Write a snapshot of the cache entries to a local file. Only entries that are maps (i.e. instances)
+     * are saved, and only for the given columns.
+     *
+     * @param file target file
+     * @param version version token of the underlying table, checked back when the snapshot is read
+     * @param columns columns to save
+     * @throws IOException
+     */
+    public void writeSnapshot(File file, String version, List<String> columns) throws IOException
+    {
+        List<Map.Entry<String, Object>> entries;
+        synchronized(innerCache)
+        {
+            entries = new ArrayList<Map.Entry<String, Object>>(innerCache.entrySet());
+        }
+        /* write to a temporary file and rename it, so that a crash cannot leave a truncated snapshot */
+        File tmp = new File(file.getPath() + ".tmp");
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))));
+        try
+        {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_FORMAT);
+            out.writeUTF(version);
+            out.writeInt(columns.size());
+            for(String column : columns)
+            {
+                out.writeUTF(column);
+            }
+            for(Map.Entry<String, Object> entry : entries)
+            {
+                Object value = entry.getValue();
+                if(value instanceof SoftReference)
+                {
+                    value = ((SoftReference<Object>)value).get();
+                }
+                if(!(value instanceof Map))
+                {
+                    continue;
+                }
+                Map row = (Map)value;
+                out.writeBoolean(true);
+                out.writeUTF(entry.getKey());
+                for(String column : columns)
+                {
+                    out.writeUnshared(row.get(column));
+                }
+            }
+            out.writeBoolean(false);
+        }
+        finally
+        {
+            out.close();
+        }
+        if(!tmp.renameTo(file))
+        {
+            file.delete();
+            if(!tmp.renameTo(file))
+            {
+                throw new IOException("could not rename " + tmp + " to " + file);
+            }
+        }
+    }
+
+    /**
+     * Read the rows of a snapshot file.
+     *
+     * @param file snapshot file
+     * @param version expected version token of the underlying table
+     * @param columns expected columns
+     * @return the list of rows, or null if the snapshot doesn't exist or is outdated
+     * @throws IOException
+     */
+    public static List<SlotMap> readSnapshot(File file, String version, List<String> columns) throws IOException
+    {
+        if(!file.exists())
+        {
+            return null;
+        }
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+        try
+        {
+            if(in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_FORMAT || !in.readUTF().equals(version))
+            {
+                return null;
+            }
+            int nbColumns = in.readInt();
+            if(nbColumns != columns.size())
+            {
+                return null;
+            }
+            for(int c = 0; c < nbColumns; c++)
+            {
+                if(!in.readUTF().equals(columns.get(c)))
+                {
+                    return null;
+                }
+            }
+            List<SlotMap> rows = new ArrayList<SlotMap>();
+            while(in.readBoolean())
+            {
+                in.readUTF(); /* key, rebuilt from row values */
+                SlotMap row = new SlotHashMap();
+                for(String column : columns)
+                {
+                    Serializable value = (Serializable)in.readUnshared();
+                    if(value != null)
+                    {
+                        row.put(column, value);
+                    }
+                }
+                rows.add(row);
+            }
+            return rows;
+        }
+        catch(ClassNotFoundException cnfe)
+        {
+            throw new IOException("invalid snapshot " + file, cnfe);
+        }
+        catch(EOFException eofe)
+        {
+            throw new IOException("truncated snapshot " + file, eofe);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Snapshot files magic number.
+     */
+    private static final int SNAPSHOT_MAGIC = 0x56534e50; /* 'VSNP' */
+
+    /**
+     * Snapshot files format version.
+     */
+    private static final int SNAPSHOT_FORMAT = 1;
+
+    /**
+     * Number of entries sampled to estimate memory usage.
+     */
+    private static final int MEMORY_SAMPLE_SIZE = 100;
+
+    /**
+     * Estimated overhead of a map entry.
+     */
+    private static final int ENTRY_OVERHEAD = 32;
+
     /**
      * The caching method this cache uses.
      */
@@ -161,4 +442,9 @@ public class Cache
      */
     private Map<String, Object> innerCache = null;
 
+    /**
+     * Usage counters.
+     */
+    private CacheStats stats = new CacheStats();
+
 }
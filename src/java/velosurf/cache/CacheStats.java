@@ -0,0 +1,195 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Usage counters of a {@link Cache}. Counters are striped, so that updating them does not add contention
+ * between the threads sharing a cache.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class CacheStats
+{
+    /**
+     * Count a lookup that found a cached value.
+     */
+    public void hit()
+    {
+        hits.increment();
+    }
+
+    /**
+     * Count a lookup that didn't find a cached value.
+     */
+    public void miss()
+    {
+        misses.increment();
+    }
+
+    /**
+     * Count a value put in the cache.
+     */
+    public void put()
+    {
+        puts.increment();
+    }
+
+    /**
+     * Count a value evicted by the garbage collector (soft caching).
+     */
+    public void eviction()
+    {
+        evictions.increment();
+    }
+
+    /**
+     * Count an invalidated value.
+     */
+    public void invalidation()
+    {
+        invalidations.increment();
+    }
+
+    /**
+     * Set the time spent to load the cache (full caching or snapshot loading).
+     *
+     * @param loadTime load time, in milliseconds
+     */
+    public void setLoadTime(long loadTime)
+    {
+        this.loadTime = loadTime;
+    }
+
+    /**
+     * Getter for the number of hits.
+     *
+     * @return number of hits
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Getter for the number of misses.
+     *
+     * @return number of misses
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Getter for the hit ratio.
+     *
+     * @return hits / (hits + misses), or 0 if the cache has never been looked up
+     */
+    public double getHitRatio()
+    {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double)h / total;
+    }
+
+    /**
+     * Getter for the number of puts.
+     *
+     * @return number of puts
+     */
+    public long getPuts()
+    {
+        return puts.sum();
+    }
+
+    /**
+     * Getter for the number of evictions.
+     *
+     * @return number of evictions
+     */
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     * Getter for the number of invalidations.
+     *
+     * @return number of invalidations
+     */
+    public long getInvalidations()
+    {
+        return invalidations.sum();
+    }
+
+    /**
+     * Getter for the load time.
+     *
+     * @return load time, in milliseconds
+     */
+    public long getLoadTime()
+    {
+        return loadTime;
+    }
+
+    /**
+     * Reset the counters (the load time is kept).
+     */
+    public void reset()
+    {
+        hits.reset();
+        misses.reset();
+        puts.reset();
+        evictions.reset();
+        invalidations.reset();
+    }
+
+    /**
+     * Number of hits.
+     */
+    private LongAdder hits = new LongAdder();
+
+    /**
+     * Number of misses.
+     */
+    private LongAdder misses = new LongAdder();
+
+    /**
+     * Number of puts.
+     */
+    private LongAdder puts = new LongAdder();
+
+    /**
+     * Number of evictions.
+     */
+    private LongAdder evictions = new LongAdder();
+
+    /**
+     * Number of invalidations.
+     */
+    private LongAdder invalidations = new LongAdder();
+
+    /**
+     * Load time.
+     */
+    private volatile long loadTime = 0;
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Identity map that keeps the instances fetched by key during a unit of work (typically an HTTP request),
+ * so that the same row is fetched only once and always mapped to the same object. Rows returned by other
+ * queries are not mapped, since they may not contain the same columns.</p>
+ *
+ * <p>Identity maps are enabled with the <code>identity-map</code> attribute of the &lt;<code>database</code>&gt; tag.
+ * In a webapp, the {@link velosurf.web.ContextListener} opens the identity map of each request thread and closes it at
+ * the end of the request. Outside of a webapp, units of work must be delimited by calls to {@link #open()} and {@link #close()}.</p>
+ *
+ * <p>Unlike the global {@link Cache}, an identity map never serves rows fetched during a previous unit of work.</p>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class IdentityMap
+{
+    /**
+     * Declare that at least one database uses identity maps.
+     */
+    public static void enable()
+    {
+        enabled = true;
+    }
+
+    /**
+     * Whether at least one database uses identity maps.
+     *
+     * @return true if identity maps are used
+     */
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Open the identity map of the current thread.
+     */
+    public static void open()
+    {
+        if (current.get() == null)
+        {
+            current.set(new IdentityMap());
+        }
+    }
+
+    /**
+     * Close and clear the identity map of the current thread.
+     */
+    public static void close()
+    {
+        current.remove();
+    }
+
+    /**
+     * Get the identity map of the current thread.
+     *
+     * @return the current identity map, or null if none has been opened
+     */
+    public static IdentityMap getCurrent()
+    {
+        return current.get();
+    }
+
+    /**
+     * Get a mapped instance.
+     *
+     * @param owner owner of the key space (the entity)
+     * @param key key field(s) of the asked instance
+     * @return the mapped instance or null
+     */
+    public Object get(Object owner, String key)
+    {
+        Map<String, Object> map = maps.get(owner);
+        return map == null ? null : map.get(key);
+    }
+
+    /**
+     * Map an instance, replacing any previous one.
+     *
+     * @param owner owner of the key space (the entity)
+     * @param key key field(s) of the instance
+     * @param value instance
+     */
+    public void put(Object owner, String key, Object value)
+    {
+        Map<String, Object> map = maps.get(owner);
+        if (map == null)
+        {
+            map = new HashMap<String, Object>();
+            maps.put(owner, map);
+        }
+        map.put(key, value);
+    }
+
+    /**
+     * Remove a mapped instance.
+     *
+     * @param owner owner of the key space (the entity)
+     * @param key key field(s) of the instance
+     */
+    public void remove(Object owner, String key)
+    {
+        Map<String, Object> map = maps.get(owner);
+        if (map != null)
+        {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * Instances by key, by owner.
+     */
+    private Map<Object, Map<String, Object>> maps = new HashMap<Object, Map<String, Object>>();
+
+    /**
+     * Whether at least one database uses identity maps.
+     */
+    private static volatile boolean enabled = false;
+
+    /**
+     * Identity map of the current thread.
+     */
+    private static ThreadLocal<IdentityMap> current = new ThreadLocal<IdentityMap>();
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import velosurf.util.Logger;
+
+/**
+ * <p>Bus propagating cache invalidations between the nodes of a cluster.</p>
+ *
+ * <p>Invalidations posted by local entities are batched and periodically sent to other nodes through an
+ * {@link InvalidationTransport}. Invalidations received from other nodes are given to the bus listener,
+ * which invalidates the local caches.</p>
+ *
+ * <p>The transport is specified with the <code>cache-invalidation</code> attribute of the &lt;<code>database</code>&gt; tag:</p>
+ * <ul>
+ * <li><code>multicast://<i>group</i>:<i>port</i></code> : UDP multicast (see {@link MulticastInvalidationTransport}).
+ * <li><code>loopback://<i>channel</i></code> : in-JVM delivery, meant for tests (see {@link LoopbackInvalidationTransport}).
+ * <li>the class name of a custom {@link InvalidationTransport} implementation.
+ * </ul>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class InvalidationBus implements Runnable
+{
+    /**
+     * Receiver of invalidations coming from other nodes.
+     */
+    public interface Listener
+    {
+        /**
+         * Invalidate a cache entry.
+         *
+         * @param owner owner of the cache (the entity name)
+         * @param key key field(s) of the instance
+         */
+        public void invalidate(String owner, String key);
+    }
+
+    /**
+     * Default delay between two batches, in milliseconds.
+     */
+    public static final long DEFAULT_BATCH_DELAY = 200;
+
+    /**
+     * Build a transport from its specification.
+     *
+     * @param spec transport specification
+     * @return new transport
+     * @throws Exception if the transport cannot be built
+     */
+    public static InvalidationTransport createTransport(String spec) throws Exception
+    {
+        if (spec.startsWith("multicast://"))
+        {
+            String address = spec.substring("multicast://".length());
+            int colon = address.lastIndexOf(':');
+            if (colon == -1)
+            {
+                throw new IllegalArgumentException("invalid multicast address: " + spec);
+            }
+            return new MulticastInvalidationTransport(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        }
+        else if (spec.startsWith("loopback://"))
+        {
+            return new LoopbackInvalidationTransport(spec.substring("loopback://".length()));
+        }
+        else
+        {
+            return (InvalidationTransport)Class.forName(spec).getDeclaredConstructor().newInstance();
+        }
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param transport transport
+     * @param listener receiver of remote invalidations
+     * @param batchDelay delay between two batches, in milliseconds
+     */
+    public InvalidationBus(InvalidationTransport transport, Listener listener, long batchDelay)
+    {
+        this.transport = transport;
+        this.listener = listener;
+        this.batchDelay = batchDelay;
+    }
+
+    /**
+     * Start the bus.
+     *
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException
+    {
+        transport.start(this);
+        thread = new Thread(this, "velosurf cache invalidation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the bus, after having sent pending invalidations, and wait for its thread to end,
+     * so that nothing keeps running once the webapp is stopped.
+     */
+    public void stop()
+    {
+        Thread sender;
+        synchronized(this)
+        {
+            sender = thread;
+            thread = null;
+            if (sender != null)
+            {
+                sender.interrupt();
+            }
+            flush();
+            transport.stop();
+            stopped = true;
+        }
+        if (sender != null && sender != Thread.currentThread())
+        {
+            try
+            {
+                sender.join(STOP_TIMEOUT);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Post an invalidation for other nodes.
+     *
+     * @param owner owner of the cache (the entity name)
+     * @param key key field(s) of the instance
+     */
+    public void post(String owner, String key)
+    {
+        queue.add(new String[] { owner, key });
+    }
+
+    /**
+     * Batching loop.
+     */
+    public void run()
+    {
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                Thread.sleep(batchDelay);
+            }
+            catch (InterruptedException ie)
+            {
+                break;
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Send pending invalidations. Synchronized with {@link #stop()}, so that the transport is never used once stopped.
+     */
+    private synchronized void flush()
+    {
+        if (stopped)
+        {
+            return;
+        }
+        String[] invalidation;
+        ByteArrayOutputStream bytes = null;
+        DataOutputStream out = null;
+        int count = 0;
+        try
+        {
+            while ((invalidation = queue.poll()) != null)
+            {
+                if (out == null)
+                {
+                    bytes = new ByteArrayOutputStream();
+                    out = new DataOutputStream(bytes);
+                    out.writeUTF(nodeId);
+                }
+                out.writeUTF(invalidation[0]);
+                out.writeUTF(invalidation[1]);
+                count++;
+                /* keep messages small enough to fit in a datagram */
+                if (bytes.size() > MAX_MESSAGE_SIZE)
+                {
+                    transport.send(bytes.toByteArray());
+                    out = null;
+                }
+            }
+            if (out != null)
+            {
+                transport.send(bytes.toByteArray());
+            }
+            if (count > 0)
+            {
+                Logger.trace("cache invalidation: sent {} invalidations", count);
+            }
+        }
+        catch (IOException ioe)
+        {
+            Logger.error("cache invalidation: could not send invalidations");
+            Logger.log(ioe);
+        }
+    }
+
+    /**
+     * Handle a message received from another node.
+     *
+     * @param message encoded batch of invalidations
+     */
+    public void receive(byte[] message)
+    {
+        try
+        {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+            if (nodeId.equals(in.readUTF()))
+            {
+                /* our own message */
+                return;
+            }
+            while (in.available() > 0)
+            {
+                String owner = in.readUTF();
+                String key = in.readUTF();
+                listener.invalidate(owner, key);
+            }
+        }
+        catch (IOException ioe)
+        {
+            Logger.error("cache invalidation: received an invalid message");
+            Logger.log(ioe);
+        }
+    }
+
+    /**
+     * Maximum time to wait for the batching thread when stopping, in milliseconds.
+     */
+    private static final long STOP_TIMEOUT = 1000;
+
+    /**
+     * Max size of a message (before the last invalidation).
+     */
+    private static final int MAX_MESSAGE_SIZE = 1024;
+
+    /**
+     * Node identifier, used to ignore our own messages.
+     */
+    private String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * Transport.
+     */
+    private InvalidationTransport transport = null;
+
+    /**
+     * Receiver of remote invalidations.
+     */
+    private Listener listener = null;
+
+    /**
+     * Delay between two batches.
+     */
+    private long batchDelay;
+
+    /**
+     * Pending invalidations.
+     */
+    private Queue<String[]> queue = new ConcurrentLinkedQueue<String[]>();
+
+    /**
+     * Batching thread.
+     */
+    private Thread thread = null;
+
+    /**
+     * Whether the bus has been stopped.
+     */
+    private boolean stopped = false;
+}
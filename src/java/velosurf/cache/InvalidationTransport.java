@@ -0,0 +1,51 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.cache;
+
+import java.io.IOException;
+
+/**
+ * Transport used by an {@link InvalidationBus} to exchange cache invalidation messages with other nodes.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public interface InvalidationTransport
+{
+    /**
+     * Start the transport. Received messages are to be given to {@link InvalidationBus#receive(byte[])}.
+     *
+     * @param bus invalidation bus
+     * @throws IOException
+     */
+    public void start(InvalidationBus bus) throws IOException;
+
+    /**
+     * Send a message to all other nodes.
+     *
+     * @param message encoded batch of invalidations
+     * @throws IOException
+     */
+    public void send(byte[] message) throws IOException;
+
+    /**
+     * Stop the transport.
+     */
+    public void stop();
+}
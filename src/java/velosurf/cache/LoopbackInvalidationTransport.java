@@ -0,0 +1,108 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.cache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-JVM invalidation transport, delivering messages to all the buses started on the same channel.
+ * It is meant to test clustered configurations with several databases within a single JVM.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class LoopbackInvalidationTransport implements InvalidationTransport
+{
+    /**
+     * Constructor.
+     *
+     * @param channel channel name
+     */
+    public LoopbackInvalidationTransport(String channel)
+    {
+        this.channel = channel;
+    }
+
+    /**
+     * Start the transport.
+     *
+     * @param bus invalidation bus
+     */
+    public void start(InvalidationBus bus)
+    {
+        synchronized(channels)
+        {
+            buses = channels.get(channel);
+            if (buses == null)
+            {
+                buses = new CopyOnWriteArrayList<InvalidationBus>();
+                channels.put(channel, buses);
+            }
+        }
+        this.bus = bus;
+        buses.add(bus);
+    }
+
+    /**
+     * Deliver a message to all the buses of the channel.
+     *
+     * @param message encoded batch of invalidations
+     */
+    public void send(byte[] message)
+    {
+        for (InvalidationBus other : buses)
+        {
+            other.receive(message);
+        }
+    }
+
+    /**
+     * Stop the transport.
+     */
+    public void stop()
+    {
+        if (buses != null)
+        {
+            buses.remove(bus);
+        }
+    }
+
+    /**
+     * Channel name.
+     */
+    private String channel;
+
+    /**
+     * Our bus.
+     */
+    private InvalidationBus bus = null;
+
+    /**
+     * Buses of our channel.
+     */
+    private List<InvalidationBus> buses = null;
+
+    /**
+     * Buses by channel.
+     */
+    private static Map<String, List<InvalidationBus>> channels = new HashMap<String, List<InvalidationBus>>();
+}
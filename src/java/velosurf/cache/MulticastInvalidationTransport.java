@@ -0,0 +1,174 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.cache;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.util.Arrays;
+
+import velosurf.util.Logger;
+
+/**
+ * <p>UDP multicast invalidation transport.</p>
+ *
+ * <p>All the nodes of a cluster must use the same group and port. Since UDP delivery is not guaranteed,
+ * caches of a node may occasionally miss an invalidation: this transport is meant to reduce staleness,
+ * not to give strong consistency guarantees.</p>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class MulticastInvalidationTransport implements InvalidationTransport, Runnable
+{
+    /**
+     * Constructor.
+     *
+     * @param group multicast group address
+     * @param port port
+     */
+    public MulticastInvalidationTransport(String group, int port)
+    {
+        this.groupName = group;
+        this.port = port;
+    }
+
+    /**
+     * Join the multicast group and start listening.
+     *
+     * @param bus invalidation bus
+     * @throws IOException
+     */
+    public void start(InvalidationBus bus) throws IOException
+    {
+        this.bus = bus;
+        group = InetAddress.getByName(groupName);
+        socket = new MulticastSocket(port);
+        /* join on the default interface */
+        socket.joinGroup(new InetSocketAddress(group, port), null);
+        thread = new Thread(this, "velosurf cache invalidation receiver");
+        thread.setDaemon(true);
+        thread.start();
+        Logger.info("cache invalidation: joined multicast group " + groupName + ":" + port);
+    }
+
+    /**
+     * Send a message to the group.
+     *
+     * @param message encoded batch of invalidations
+     * @throws IOException
+     */
+    public void send(byte[] message) throws IOException
+    {
+        socket.send(new DatagramPacket(message, message.length, group, port));
+    }
+
+    /**
+     * Receiving loop.
+     */
+    public void run()
+    {
+        byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+        while (!socket.isClosed())
+        {
+            try
+            {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                socket.receive(packet);
+                bus.receive(Arrays.copyOf(packet.getData(), packet.getLength()));
+            }
+            catch (IOException ioe)
+            {
+                if (!socket.isClosed())
+                {
+                    Logger.error("cache invalidation: could not receive message");
+                    Logger.log(ioe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Leave the multicast group, and wait for the receiving thread to end.
+     */
+    public void stop()
+    {
+        if (socket != null)
+        {
+            try
+            {
+                socket.leaveGroup(new InetSocketAddress(group, port), null);
+            }
+            catch (IOException ioe)
+            {
+                Logger.log(ioe);
+            }
+            socket.close();
+        }
+        if (thread != null && thread != Thread.currentThread())
+        {
+            try
+            {
+                thread.join(1000);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    /**
+     * Max size of received datagrams.
+     */
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    /**
+     * Group name.
+     */
+    private String groupName;
+
+    /**
+     * Group address.
+     */
+    private InetAddress group = null;
+
+    /**
+     * Port.
+     */
+    private int port;
+
+    /**
+     * Socket.
+     */
+    private MulticastSocket socket = null;
+
+    /**
+     * Receiving thread.
+     */
+    private Thread thread = null;
+
+    /**
+     * Invalidation bus.
+     */
+    private InvalidationBus bus = null;
+}
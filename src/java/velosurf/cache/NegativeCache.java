@@ -0,0 +1,129 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Bounded cache that remembers the keys for which a fetch didn't find any row, for a short time.</p>
+ *
+ * <p>It is enabled with the <code>negative-caching</code> attribute of the &lt;<code>entity</code>&gt; tag, which gives the
+ * time to live of entries in seconds. Entries are invalidated by inserts of the same key through Velosurf, but inserts
+ * issued by other means will only become visible to fetches after the entry expired.</p>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class NegativeCache
+{
+    /**
+     * Default maximum number of entries.
+     */
+    public static final int DEFAULT_SIZE = 1000;
+
+    /**
+     * Constructor.
+     *
+     * @param ttl time to live of entries, in milliseconds
+     * @param maxSize maximum number of entries
+     */
+    public NegativeCache(long ttl, final int maxSize)
+    {
+        this.ttl = ttl;
+        expirations = new LinkedHashMap<String, Long>()
+        {
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Remember a missing key.
+     *
+     * @param key key field(s) of the missing instance
+     */
+    public synchronized void put(String key)
+    {
+        /* remove first so that the entry moves at the end of the eviction order */
+        expirations.remove(key);
+        expirations.put(key, System.currentTimeMillis() + ttl);
+    }
+
+    /**
+     * Check whether a key is known to be missing.
+     *
+     * @param key key field(s) of the asked instance
+     * @return true if a fetch for this key recently failed
+     */
+    public synchronized boolean contains(String key)
+    {
+        Long expiration = expirations.get(key);
+        if (expiration == null)
+        {
+            return false;
+        }
+        if (expiration < System.currentTimeMillis())
+        {
+            expirations.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Invalidates an entry (used after an insert).
+     *
+     * @param key key field(s) of the inserted instance
+     */
+    public synchronized void invalidate(String key)
+    {
+        expirations.remove(key);
+    }
+
+    /**
+     * Clear the cache.
+     */
+    public synchronized void clear()
+    {
+        expirations.clear();
+    }
+
+    /**
+     * Getter for the size of the cache.
+     *
+     * @return the size of the cache
+     */
+    public synchronized int size()
+    {
+        return expirations.size();
+    }
+
+    /**
+     * Time to live of entries, in milliseconds.
+     */
+    private long ttl;
+
+    /**
+     * Expiration timestamps by key, in eviction order.
+     */
+    private Map<String, Long> expirations = null;
+}
@@ -42,6 +42,7 @@ public class AttributeReference implements Iterable, Serializable
      */
     public AttributeReference(SlotMap params, Attribute attribute)
     {
+        ContextProfiler.wrapperAllocated();
         this.params = params;
         this.attribute = attribute;
     }
@@ -89,6 +90,11 @@ public class AttributeReference implements Iterable, Serializable
      */
     public Iterator iterator()
     {
+        ContextProfiler profiler = ContextProfiler.current();
+        if (profiler != null)
+        {
+            profiler.enter();
+        }
         try
         {
             RowIterator iterator = attribute.query(params, refineCriteria, order);
@@ -101,6 +107,13 @@ public class AttributeReference implements Iterable, Serializable
             attribute.getDB().setError(sqle.getMessage());
             return null;
         }
+        finally
+        {
+            if (profiler != null)
+            {
+                profiler.exit(ContextProfiler.prefix(attribute.getEntity()), attribute.getName() + ".iterator");
+            }
+        }
     }
 
     /**
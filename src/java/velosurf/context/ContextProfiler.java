@@ -0,0 +1,471 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+
+
+package velosurf.context;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import velosurf.model.Entity;
+
+/**
+ * <p>Profiler of the accesses to the context objects ($db, entities, instances, row iterators) during a unit of work,
+ * typically the rendering of a page.</p>
+ *
+ * <p>For each call site (root attribute or entity name, <code><i>entity</i>.<i>attribute</i></code> or
+ * <code><i>entity</i>.next</code>), the profiler counts calls, allocated context wrappers (instances, read-only row maps,
+ * attribute and entity references, parametrized source maps) and measures the elapsed time and, when the JVM supports it,
+ * the number of allocated bytes. Measures are inclusive: the time and bytes of a site include those of the nested sites.</p>
+ *
+ * <p>Profiling is disabled by default. Once enabled with {@link #setEnabled(boolean)}, a profile is gathered on a thread
+ * between calls to {@link #begin()} and {@link #end()}; this is what the <code>{@link velosurf.web.ContextProfilingFilter}</code>
+ * does for each HTTP request. When disabled, the cost of the instrumentation is a volatile read per call.</p>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class ContextProfiler
+{
+    /**
+     * Statistics of a call site.
+     */
+    public static class Site
+    {
+        /**
+         * Constructor.
+         *
+         * @param name site name
+         */
+        Site(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Getter for the site name.
+         *
+         * @return site name
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Getter for the number of calls.
+         *
+         * @return number of calls
+         */
+        public long getCalls()
+        {
+            return calls;
+        }
+
+        /**
+         * Getter for the number of allocated context wrappers.
+         *
+         * @return number of allocated wrappers
+         */
+        public long getWrappers()
+        {
+            return wrappers;
+        }
+
+        /**
+         * Getter for the number of allocated bytes.
+         *
+         * @return allocated bytes, or 0 if the JVM cannot measure them
+         */
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        /**
+         * Getter for the elapsed time.
+         *
+         * @return elapsed time, in milliseconds
+         */
+        public double getTime()
+        {
+            return nanos / 1000000.0;
+        }
+
+        /**
+         * Display the statistics of this site.
+         *
+         * @return statistics, as a string
+         */
+        public String toString()
+        {
+            return name + ": " + calls + " calls, " + wrappers + " wrappers, " + bytes + " bytes, "
+                + String.format("%.3f", getTime()) + " ms";
+        }
+
+        /**
+         * Site name.
+         */
+        private String name;
+
+        /**
+         * Number of calls.
+         */
+        private long calls = 0;
+
+        /**
+         * Number of allocated wrappers.
+         */
+        private long wrappers = 0;
+
+        /**
+         * Allocated bytes.
+         */
+        private long bytes = 0;
+
+        /**
+         * Elapsed time, in nanoseconds.
+         */
+        private long nanos = 0;
+    }
+
+    /**
+     * Enable or disable profiling.
+     *
+     * @param enabled whether to enable profiling
+     */
+    public static void setEnabled(boolean enabled)
+    {
+        ContextProfiler.enabled = enabled;
+    }
+
+    /**
+     * Whether profiling is enabled.
+     *
+     * @return enabled flag
+     */
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Start a profile on the current thread.
+     *
+     * @return new profile, or null if profiling is disabled
+     */
+    public static ContextProfiler begin()
+    {
+        if (!enabled)
+        {
+            return null;
+        }
+        ContextProfiler profiler = new ContextProfiler();
+        profiles.set(profiler);
+        return profiler;
+    }
+
+    /**
+     * Get the profile of the current thread.
+     *
+     * @return current profile, or null if profiling is disabled or if no profile was started
+     */
+    public static ContextProfiler current()
+    {
+        return enabled ? profiles.get() : null;
+    }
+
+    /**
+     * End the profile of the current thread.
+     *
+     * @return ended profile, or null if no profile was started
+     */
+    public static ContextProfiler end()
+    {
+        ContextProfiler profiler = profiles.get();
+        if (profiler != null)
+        {
+            profiles.remove();
+            profiler.totalNanos = System.nanoTime() - profiler.beginNanos;
+            profiler.totalBytes = allocatedBytes() - profiler.beginBytes;
+        }
+        return profiler;
+    }
+
+    /**
+     * Get the number of bytes allocated so far by the current thread.
+     *
+     * @return allocated bytes, or 0 if the JVM cannot measure them
+     */
+    public static long allocatedBytes()
+    {
+        return allocationCounter == null ? 0 : allocationCounter.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Site name prefix for an entity.
+     *
+     * @param entity entity (may be null)
+     * @return <code>db.</code> for the root entity or a null entity, the entity name followed by a dot otherwise
+     */
+    static String prefix(Entity entity)
+    {
+        return entity == null || entity.isRootEntity() ? "db." : entity.getName() + ".";
+    }
+
+    /**
+     * Constructor.
+     */
+    private ContextProfiler()
+    {
+        beginNanos = System.nanoTime();
+        beginBytes = allocatedBytes();
+    }
+
+    /**
+     * Count the allocation of a context wrapper, if a profile is running on the current thread.
+     * This method is called by the constructors of the context wrappers.
+     */
+    public static void wrapperAllocated()
+    {
+        if (enabled)
+        {
+            ContextProfiler profiler = profiles.get();
+            if (profiler != null)
+            {
+                profiler.allocatedWrappers++;
+            }
+        }
+    }
+
+    /**
+     * Enter a call site. Each call to this method must be followed by a call to {@link #exit(String, String)}.
+     */
+    public void enter()
+    {
+        if (depth == startNanos.length)
+        {
+            startNanos = Arrays.copyOf(startNanos, 2 * depth);
+            startBytes = Arrays.copyOf(startBytes, 2 * depth);
+            startWrappers = Arrays.copyOf(startWrappers, 2 * depth);
+        }
+        startWrappers[depth] = allocatedWrappers;
+        startBytes[depth] = allocatedBytes();
+        startNanos[depth] = System.nanoTime();
+        depth++;
+    }
+
+    /**
+     * Exit a call site and record the call.
+     *
+     * @param prefix site name prefix (entity name and dot, or <code>db.</code>)
+     * @param name site name suffix (attribute, action or entity name)
+     */
+    public void exit(String prefix, String name)
+    {
+        long nanos = System.nanoTime();
+        long bytes = allocatedBytes();
+        depth--;
+        nanos -= startNanos[depth];
+        bytes -= startBytes[depth];
+        long wrappers = allocatedWrappers - startWrappers[depth];
+        String site = prefix + name;
+        Site stats = sites.get(site);
+        if (stats == null)
+        {
+            stats = new Site(site);
+            sites.put(site, stats);
+        }
+        stats.calls++;
+        stats.wrappers += wrappers;
+        stats.bytes += bytes;
+        stats.nanos += nanos;
+    }
+
+    /**
+     * Get the statistics of the call sites, by decreasing elapsed time.
+     *
+     * @return statistics of the call sites
+     */
+    public List<Site> getSites()
+    {
+        List<Site> list = new ArrayList<Site>(sites.values());
+        Collections.sort(list, new Comparator<Site>()
+        {
+            public int compare(Site s1, Site s2)
+            {
+                return Long.compare(s2.nanos, s1.nanos);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Get the total number of calls.
+     *
+     * @return total number of calls
+     */
+    public long getCalls()
+    {
+        long calls = 0;
+        for (Site site : sites.values())
+        {
+            calls += site.calls;
+        }
+        return calls;
+    }
+
+    /**
+     * Get the total number of allocated context wrappers.
+     *
+     * @return total number of allocated wrappers
+     */
+    public long getWrappers()
+    {
+        return allocatedWrappers;
+    }
+
+    /**
+     * Get the number of bytes allocated by the thread during the whole profile (or until now if the profile isn't ended).
+     *
+     * @return allocated bytes, or 0 if the JVM cannot measure them
+     */
+    public long getTotalBytes()
+    {
+        return totalBytes >= 0 ? totalBytes : allocatedBytes() - beginBytes;
+    }
+
+    /**
+     * Get the duration of the whole profile (or until now if the profile isn't ended).
+     *
+     * @return duration, in milliseconds
+     */
+    public double getTotalTime()
+    {
+        return (totalNanos >= 0 ? totalNanos : System.nanoTime() - beginNanos) / 1000000.0;
+    }
+
+    /**
+     * Display the profile.
+     *
+     * @return the profile, as a string
+     */
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(getCalls()).append(" calls, ").append(getWrappers()).append(" wrappers, ")
+            .append(getTotalBytes()).append(" bytes, ").append(String.format("%.3f", getTotalTime())).append(" ms");
+        for (Site site : getSites())
+        {
+            builder.append("\n    ").append(site);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Initial size of the call sites stack.
+     */
+    private static final int INITIAL_DEPTH = 16;
+
+    /**
+     * Statistics by site.
+     */
+    private Map<String, Site> sites = new HashMap<String, Site>();
+
+    /**
+     * Start time of the profile.
+     */
+    private long beginNanos;
+
+    /**
+     * Allocated bytes at the start of the profile.
+     */
+    private long beginBytes;
+
+    /**
+     * Number of allocated wrappers.
+     */
+    private long allocatedWrappers = 0;
+
+    /**
+     * Depth of the current call site.
+     */
+    private int depth = 0;
+
+    /**
+     * Start times of the entered call sites.
+     */
+    private long[] startNanos = new long[INITIAL_DEPTH];
+
+    /**
+     * Allocated bytes at the start of the entered call sites.
+     */
+    private long[] startBytes = new long[INITIAL_DEPTH];
+
+    /**
+     * Allocated wrappers at the start of the entered call sites.
+     */
+    private long[] startWrappers = new long[INITIAL_DEPTH];
+
+    /**
+     * Duration of the ended profile (-1 while running).
+     */
+    private long totalNanos = -1;
+
+    /**
+     * Allocated bytes during the ended profile (-1 while running).
+     */
+    private long totalBytes = -1;
+
+    /**
+     * Enabled flag.
+     */
+    private static volatile boolean enabled = false;
+
+    /**
+     * Profiles of the threads.
+     */
+    private static ThreadLocal<ContextProfiler> profiles = new ThreadLocal<ContextProfiler>();
+
+    /**
+     * Per-thread allocation counter, if supported by the JVM.
+     */
+    private static com.sun.management.ThreadMXBean allocationCounter = null;
+
+    static
+    {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean)threadBean;
+            if (sunThreadBean.isThreadAllocatedMemorySupported() && sunThreadBean.isThreadAllocatedMemoryEnabled())
+            {
+                allocationCounter = sunThreadBean;
+            }
+        }
+    }
+}
@@ -84,6 +84,30 @@ public class DBReference extends SlotTreeMap implements HasParametrizedGetter
      *     if not found. See  See above.
      */
     public Serializable get(Object key)
+    {
+        ContextProfiler profiler = ContextProfiler.current();
+        if(profiler == null)
+        {
+            return getProperty(key);
+        }
+        profiler.enter();
+        try
+        {
+            return getProperty(key);
+        }
+        finally
+        {
+            profiler.exit("db.", (String)key);
+        }
+    }
+
+    /**
+     * Generic getter implementation.
+     *
+     * @param key the name of the desired entity or root attribute.
+     * @return an entity, an attribute reference, an instance, a string or null
+     */
+    private Serializable getProperty(Object key)
     {
         String property = db.adaptCase((String)key);
 
@@ -211,6 +235,31 @@ public class DBReference extends SlotTreeMap implements HasParametrizedGetter
      * @see HasParametrizedGetter
      */
     public Serializable getWithParams(String key, SlotMap params)
+    {
+        ContextProfiler profiler = ContextProfiler.current();
+        if(profiler == null)
+        {
+            return getPropertyWithParams(key, params);
+        }
+        profiler.enter();
+        try
+        {
+            return getPropertyWithParams(key, params);
+        }
+        finally
+        {
+            profiler.exit("db.", key);
+        }
+    }
+
+    /**
+     * Parametrized getter implementation.
+     *
+     * @param key asked key
+     * @param params passed parameters
+     * @return an attribute reference, an instance, a string or null
+     */
+    private Serializable getPropertyWithParams(String key, SlotMap params)
     {
         Serializable result = null;
 
@@ -3,6 +3,7 @@ package velosurf.context;
 // let external packages access proteected 'entity' member
 
 import velosurf.model.Entity;
+import velosurf.sql.Database;
 
 public class EntityAccessor
 {
@@ -10,4 +11,9 @@ public class EntityAccessor
   {
     return instance.entity;
   }
+
+  public static Database getDatabase(DBReference reference)
+  {
+    return reference.db;
+  }
 }
@@ -47,6 +47,7 @@ public class EntityReference implements Iterable, Serializable
      */
     public EntityReference(Entity entity)
     {
+        ContextProfiler.wrapperAllocated();
         this.entity = entity;
     }
 
@@ -433,6 +434,11 @@ public class EntityReference implements Iterable, Serializable
      */
     public Iterator iterator()
     {
+        ContextProfiler profiler = ContextProfiler.current();
+        if (profiler != null)
+        {
+            profiler.enter();
+        }
         try
         {
             RowIterator iterator = entity.query(refineCriteria, order);
@@ -445,6 +451,13 @@ public class EntityReference implements Iterable, Serializable
             entity.getDB().setError(sqle.getMessage());
             return null;
         }
+        finally
+        {
+            if (profiler != null)
+            {
+                profiler.exit(ContextProfiler.prefix(entity), "iterator");
+            }
+        }
     }
 
     /**
@@ -489,7 +502,7 @@ public class EntityReference implements Iterable, Serializable
      */
     public void refine(String criterium)
     {
-        Logger.trace("refine: " + criterium);
+        Logger.trace("refine: {}", criterium);
 
         /* protect from SQL query injection */
 
@@ -601,6 +614,25 @@ public class EntityReference implements Iterable, Serializable
         }
     }
 
+    /**
+     * Validate several rows at once.
+     * @param rows rows to validate
+     * @return for each row, the list of validation error messages, or null if validation could not be done
+     */
+    public List<List<String>> validateAll(List<SlotMap> rows)
+    {
+        try
+        {
+            return entity.validateAll(rows);
+        }
+        catch(SQLException sqle)
+        {
+            Logger.error("could not check data validity!");
+            Logger.log(sqle);
+            return null;
+        }
+    }
+
     /**
      * Getter for the list of column names.
      *
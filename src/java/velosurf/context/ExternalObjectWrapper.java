@@ -1,10 +1,19 @@
 package velosurf.context;
 
 import java.io.Serializable;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.lang.reflect.Modifier;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import velosurf.model.Entity;
 import velosurf.util.Logger;
 import velosurf.util.SlotHashMap;
@@ -13,6 +22,9 @@ import velosurf.util.SlotMap;
 /**
  * <p>This wrapper allows one to specify custom mapping objects that don't inherit from Instance.</p>
  * <p>For now, the introspection is rather basic but may work for standard getters without ambiguity.</p>
+ * <p>Getters and setters are looked up once per class and property, and called through accessors
+ * generated with <code>LambdaMetafactory</code> (or method handles when the class cannot be linked from here),
+ * so that accessing a property of a wrapped object costs about as much as a plain method call.</p>
  *
  *  @author <a href="mailto:claude.brisson@gmail.com">Claude Brisson</a>
  */
@@ -29,14 +41,7 @@ public class ExternalObjectWrapper extends Instance
         super(entity);
         wrapped = object;
 
-        Class clazz = wrapped.getClass();
-
-        classInfo = classInfoMap.get(clazz.getName());
-        if(classInfo == null)
-        {
-            classInfo = new ClassInfo(clazz);
-            classInfoMap.put(clazz.getName(), classInfo);
-        }
+        classInfo = classInfos.get(wrapped.getClass());
     }
 
     /**
@@ -67,13 +72,13 @@ public class ExternalObjectWrapper extends Instance
      */
     public Serializable getExternal(Object key)
     {
-        Method m = classInfo.getGetter((String)key);
+        Function<Object, Object> getter = classInfo.getGetter((String)key);
 
-        if(m != null)
+        if(getter != null)
         {
             try
             {
-                return (Serializable)m.invoke(wrapped, m.getParameterTypes().length > 0 ? new Object[] { key } : new Object[] {});    // return even if result is null
+                return (Serializable)getter.apply(wrapped);    // return even if result is null
             }
             catch(Exception e)
             {
@@ -94,15 +99,13 @@ public class ExternalObjectWrapper extends Instance
      */
     public Serializable put(String key, Serializable value)
     {
-        Method m = classInfo.getSetter((String)key);
+        BiFunction<Object, Object, Object> setter = classInfo.getSetter(key);
 
-        if(m != null)
+        if(setter != null)
         {
             try
             {
-                return (Serializable)m.invoke(wrapped,
-                                m.getParameterTypes().length == 2
-                                ? new Object[] { key, value } : new Object[] { value });
+                return (Serializable)setter.apply(wrapped, value);
             }
             catch(Exception e)
             {
@@ -316,14 +319,17 @@ public class ExternalObjectWrapper extends Instance
     /** Info on the wrapped object class. */
     ClassInfo classInfo = null;
 
-    /** A map of class infos. */
-    static Map<String, ClassInfo> classInfoMap = new HashMap<String, ClassInfo>();
-
-    /** A cache for the wrapped object getter methods. */
-    Map getterCache = null;
+    /** Registry of class infos. */
+    static ClassValue<ClassInfo> classInfos = new ClassValue<ClassInfo>()
+    {
+        protected ClassInfo computeValue(Class<?> clazz)
+        {
+            return new ClassInfo(clazz);
+        }
+    };
 
-    /** A cache for the wrapped object setter methods. */
-    Map setterCache = null;
+    /** Lookup object used to build accessors. */
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
 
     /** This private class gathers informations on the class of wrapped objects. */
     static private class ClassInfo
@@ -338,113 +344,309 @@ public class ExternalObjectWrapper extends Instance
          * @param key property name
          * @return property getter, if found
          */
-        Method getGetter(String key)
+        Function<Object, Object> getGetter(String key)
         {
-            Method result = (Method)getterMap.get(key);
+            Function<Object, Object> result = getterMap.get(key);
 
-            if(result == noSuchMethod)
-            {
-                return null;
-            }
-            if(result != null)
+            if(result == null)
             {
-                return result;
+                result = buildGetter(key);
+                getterMap.put(key, result);
             }
+            return result == noGetter ? null : result;
+        }
 
-            Class[] types = {};
-
-            // getFoo
-            StringBuffer sb = new StringBuffer("get");
+        /**
+         * Setter getter
+         * @param key property name
+         * @return property setter, if found
+         */
+        BiFunction<Object, Object, Object> getSetter(String key)
+        {
+            BiFunction<Object, Object, Object> result = setterMap.get(key);
 
-            sb.append(key);
-            try
+            if(result == null)
             {
-                result = clazz.getMethod(sb.toString(), types);
-                getterMap.put(key, result);
-                return result;
+                result = buildSetter(key);
+                setterMap.put(key, result);
             }
-            catch(NoSuchMethodException nsme) {}
-
-            // getfoo
-            char c = sb.charAt(3);
+            return result == noSetter ? null : result;
+        }
 
-            sb.setCharAt(3, Character.isLowerCase(c) ? Character.toUpperCase(c) : Character.toLowerCase(c));
-            try
+        /**
+         * Find the getter of a property and build its accessor.
+         * @param key property name
+         * @return property getter, or noGetter
+         */
+        private Function<Object, Object> buildGetter(final String key)
+        {
+            // getFoo, then getfoo
+            Method method = findMethod("get", key, 0);
+            if(method != null)
             {
-                result = clazz.getMethod(sb.toString(), types);
-                getterMap.put(key, result);
-                return result;
+                Function<Object, Object> getter = generateGetter(method);
+                if(getter != null)
+                {
+                    return getter;
+                }
             }
-            catch(NoSuchMethodException nsme) {}
 
             // get(foo)
-            result = getGenericGetter();
-            if(result == null)
+            Method generic = getGenericGetter();
+            if(generic != null)
             {
-                getterMap.put(key, noSuchMethod);
+                final MethodHandle handle = unreflect(generic, MethodType.methodType(Object.class, Object.class, Object.class));
+                if(handle != null)
+                {
+                    return new Function<Object, Object>()
+                    {
+                        public Object apply(Object target)
+                        {
+                            return invoke(handle, target, key);
+                        }
+                    };
+                }
             }
-            else
+            return noGetter;
+        }
+
+        /**
+         * Find the setter of a property and build its accessor.
+         * @param key property name
+         * @return property setter, or noSetter
+         */
+        private BiFunction<Object, Object, Object> buildSetter(final String key)
+        {
+            // setFoo, then setfoo
+            Method method = findMethod("set", key, 1);
+            if(method != null)
             {
-                getterMap.put(key, result);
+                BiFunction<Object, Object, Object> setter = generateSetter(method);
+                if(setter != null)
+                {
+                    return setter;
+                }
             }
-            return result;
+
+            // put(foo,bar)
+            Method generic = getGenericSetter();
+            if(generic != null)
+            {
+                final MethodHandle handle = unreflect(generic, MethodType.methodType(Object.class, Object.class, Object.class, Object.class));
+                if(handle != null)
+                {
+                    return new BiFunction<Object, Object, Object>()
+                    {
+                        public Object apply(Object target, Object value)
+                        {
+                            try
+                            {
+                                return handle.invokeExact(target, (Object)key, value);
+                            }
+                            catch(RuntimeException | Error e)
+                            {
+                                throw e;
+                            }
+                            catch(Throwable t)
+                            {
+                                throw new RuntimeException(t);
+                            }
+                        }
+                    };
+                }
+            }
+            return noSetter;
         }
 
         /**
-         * Setter getter
+         * Find a public method named prefix + key, first with the key as is, then with its first letter case toggled.
+         * @param prefix method prefix
          * @param key property name
-         * @return property setter, if found
+         * @param arity number of parameters
+         * @return found method, if any
          */
-        Method getSetter(String key)
+        private Method findMethod(String prefix, String key, int arity)
         {
-            Method result = setterMap.get(key);
-
-            if(result == noSuchMethod)
+            if(key.length() == 0)
             {
                 return null;
             }
-            if(result != null)
+            String name = prefix + key;
+            char c = key.charAt(0);
+            String other = prefix + (Character.isLowerCase(c) ? Character.toUpperCase(c) : Character.toLowerCase(c)) + key.substring(1);
+            Method found = null;
+            for(Method method : clazz.getMethods())
             {
-                return result;
+                if(method.getParameterCount() == arity && !Modifier.isStatic(method.getModifiers()))
+                {
+                    if(method.getName().equals(name))
+                    {
+                        return method;
+                    }
+                    else if(found == null && method.getName().equals(other))
+                    {
+                        found = method;
+                    }
+                }
             }
+            return found;
+        }
 
-            Class[] types = {};
+        /**
+         * Generate a getter accessor.
+         * @param method getter method
+         * @return accessor, or null if the method cannot be accessed
+         */
+        @SuppressWarnings("unchecked")
+        private Function<Object, Object> generateGetter(Method method)
+        {
+            MethodHandle target = unreflect(method, null);
+            if(target == null)
+            {
+                return null;
+            }
+            if(isLinkable(method))
+            {
+                try
+                {
+                    CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                        MethodType.methodType(Function.class),
+                        MethodType.methodType(Object.class, Object.class),
+                        target, target.type().wrap());
+                    return (Function<Object, Object>)site.getTarget().invoke();
+                }
+                catch(Throwable t)
+                {
+                    Logger.debug("external object wrapper: could not generate accessor for {}: {}", method, t);
+                }
+            }
+            final MethodHandle handle = target.asType(MethodType.methodType(Object.class, Object.class));
+            return new Function<Object, Object>()
+            {
+                public Object apply(Object object)
+                {
+                    return invoke(handle, object, null);
+                }
+            };
+        }
 
-            /* setFoo */
-            StringBuffer sb = new StringBuffer("set");
+        /**
+         * Generate a setter accessor.
+         * @param method setter method
+         * @return accessor, or null if the method cannot be accessed
+         */
+        @SuppressWarnings("unchecked")
+        private BiFunction<Object, Object, Object> generateSetter(Method method)
+        {
+            MethodHandle target = unreflect(method, null);
+            if(target == null)
+            {
+                return null;
+            }
+            if(isLinkable(method))
+            {
+                try
+                {
+                    if(method.getReturnType() == void.class)
+                    {
+                        CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+                            MethodType.methodType(BiConsumer.class),
+                            MethodType.methodType(void.class, Object.class, Object.class),
+                            target, target.type().wrap().changeReturnType(void.class));
+                        final BiConsumer<Object, Object> consumer = (BiConsumer<Object, Object>)site.getTarget().invoke();
+                        return new BiFunction<Object, Object, Object>()
+                        {
+                            public Object apply(Object object, Object value)
+                            {
+                                consumer.accept(object, value);
+                                return null;
+                            }
+                        };
+                    }
+                    else
+                    {
+                        CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                            MethodType.methodType(BiFunction.class),
+                            MethodType.methodType(Object.class, Object.class, Object.class),
+                            target, target.type().wrap());
+                        return (BiFunction<Object, Object, Object>)site.getTarget().invoke();
+                    }
+                }
+                catch(Throwable t)
+                {
+                    Logger.debug("external object wrapper: could not generate accessor for {}: {}", method, t);
+                }
+            }
+            final MethodHandle handle = target.asType(MethodType.methodType(Object.class, Object.class, Object.class));
+            return new BiFunction<Object, Object, Object>()
+            {
+                public Object apply(Object object, Object value)
+                {
+                    return invoke(handle, object, value);
+                }
+            };
+        }
 
-            sb.append(key);
+        /**
+         * Whether generated accessors can link to the wrapped class, that is if it is visible from our class loader.
+         * @param method target method
+         * @return true if the wrapped class and the method declaring class are visible
+         */
+        private boolean isLinkable(Method method)
+        {
             try
             {
-                result = clazz.getMethod(sb.toString(), types);
-                setterMap.put(key, result);
-                return result;
+                ClassLoader loader = ExternalObjectWrapper.class.getClassLoader();
+                return Class.forName(clazz.getName(), false, loader) == clazz
+                    && Class.forName(method.getDeclaringClass().getName(), false, loader) == method.getDeclaringClass();
             }
-            catch(NoSuchMethodException nsme) {}
-
-            /* setfoo */
-            char c = sb.charAt(3);
+            catch(ClassNotFoundException | LinkageError e)
+            {
+                return false;
+            }
+        }
 
-            sb.setCharAt(3, Character.isLowerCase(c) ? Character.toUpperCase(c) : Character.toLowerCase(c));
+        /**
+         * Get a method handle on a method.
+         * @param method method
+         * @param type type to adapt the handle to, if any
+         * @return method handle, or null if the method cannot be accessed
+         */
+        private MethodHandle unreflect(Method method, MethodType type)
+        {
             try
             {
-                result = clazz.getMethod(sb.toString(), types);
-                setterMap.put(key, result);
-                return result;
+                MethodHandle handle = lookup.unreflect(method);
+                return type == null ? handle : handle.asType(type);
             }
-            catch(NoSuchMethodException nsme) {}
+            catch(IllegalAccessException iae)
+            {
+                Logger.warn("external object wrapper: cannot access method " + method);
+                return null;
+            }
+        }
 
-            /* put(foo,bar) */
-            result = getGenericSetter();
-            if(result == null)
+        /**
+         * Invoke a method handle of type (Object,Object)Object.
+         * @param handle method handle
+         * @param target target object
+         * @param arg argument, or null for handles of type (Object)Object
+         * @return result
+         */
+        private static Object invoke(MethodHandle handle, Object target, Object arg)
+        {
+            try
             {
-                setterMap.put(key, noSuchMethod);
+                return handle.type().parameterCount() == 1 ? handle.invokeExact(target) : handle.invokeExact(target, arg);
             }
-            else
+            catch(RuntimeException | Error e)
             {
-                setterMap.put(key, result);
+                throw e;
+            }
+            catch(Throwable t)
+            {
+                throw new RuntimeException(t);
             }
-            return result;
         }
 
         /**
@@ -513,7 +715,7 @@ public class ExternalObjectWrapper extends Instance
             }
             try
             {
-                return insert = clazz.getMethod("update", new Class[] { Map.class });
+                return insert = clazz.getMethod("insert", new Class[] {});
             }
             catch(NoSuchMethodException nsme)
             {
@@ -538,7 +740,7 @@ public class ExternalObjectWrapper extends Instance
             }
             try
             {
-                return delete = clazz.getMethod("update", new Class[] { Map.class });
+                return delete = clazz.getMethod("delete", new Class[] {});
             }
             catch(NoSuchMethodException nsme)
             {
@@ -611,12 +813,12 @@ public class ExternalObjectWrapper extends Instance
         /**
          * Getter map.
          */
-        Map<String, Method> getterMap = new HashMap<String, Method>();
+        Map<String, Function<Object, Object>> getterMap = new ConcurrentHashMap<String, Function<Object, Object>>();
 
         /**
          * Setter map.
          */
-        Map<String, Method> setterMap = new HashMap<String, Method>();
+        Map<String, BiFunction<Object, Object, Object>> setterMap = new ConcurrentHashMap<String, BiFunction<Object, Object, Object>>();
 
         /**
          * Generic getter.
@@ -648,6 +850,23 @@ public class ExternalObjectWrapper extends Instance
          */
         Method delete = null;
 
+        /* dummy accessors used to remember we already tried to find an unexistant getter or setter. */
+        static final Function<Object, Object> noGetter = new Function<Object, Object>()
+        {
+            public Object apply(Object object)
+            {
+                return null;
+            }
+        };
+
+        static final BiFunction<Object, Object, Object> noSetter = new BiFunction<Object, Object, Object>()
+        {
+            public Object apply(Object object, Object value)
+            {
+                return null;
+            }
+        };
+
         /* dummy method object used to remember we already tried to find an unexistant method. */
         static Method noSuchMethod;
 
@@ -48,6 +48,7 @@ public class Instance extends /*Concurrent*/SlotTreeMap implements HasParametriz
      */
     public Instance()
     {
+        ContextProfiler.wrapperAllocated();
     }
 
     /**
@@ -60,6 +61,7 @@ public class Instance extends /*Concurrent*/SlotTreeMap implements HasParametriz
     public Instance(Entity entity)
     {
         super(entity.getColumnOrderComparator());
+        ContextProfiler.wrapperAllocated();
         initialize(entity);
     }
 
@@ -79,6 +81,7 @@ public class Instance extends /*Concurrent*/SlotTreeMap implements HasParametriz
      */
       public Instance(SlotMap values, Database db)
     {
+        ContextProfiler.wrapperAllocated();
         this.db = db;
         for(Serializable key:values.keySet())
         {
@@ -162,6 +165,31 @@ public class Instance extends /*Concurrent*/SlotTreeMap implements HasParametriz
      * @see HasParametrizedGetter
      */
     public Serializable getWithParams(String key, SlotMap params)
+    {
+        ContextProfiler profiler = ContextProfiler.current();
+        if (profiler == null)
+        {
+            return getPropertyWithParams(key, params);
+        }
+        profiler.enter();
+        try
+        {
+            return getPropertyWithParams(key, params);
+        }
+        finally
+        {
+            profiler.exit(ContextProfiler.prefix(entity), key);
+        }
+    }
+
+    /**
+     * Parametrized getter implementation.
+     *
+     * @param key key of the property to be returned
+     * @param params passed parameters
+     * @return a String, an Instance, an AttributeReference or null if an error occurs
+     */
+    private Serializable getPropertyWithParams(String key, SlotMap params)
     {
         key = resolveName(key);
         Serializable result = null;
@@ -525,6 +553,8 @@ public class Instance extends /*Concurrent*/SlotTreeMap implements HasParametriz
                 }
             }
             else entity.updated(this, updated);
+            entity.invalidateIdentity(this);
+            entity.broadcastInvalidation(this);
             setClean();
             return true;
         }
@@ -116,6 +116,29 @@ public class RowIterator implements Iterator<Instance>, RowHandler, Serializable
      * @return an Instance.
      */
     public Instance next()
+    {
+        ContextProfiler profiler = ContextProfiler.current();
+        if(profiler == null)
+        {
+            return nextRow();
+        }
+        profiler.enter();
+        try
+        {
+            return nextRow();
+        }
+        finally
+        {
+            profiler.exit(ContextProfiler.prefix(resultEntity), "next");
+        }
+    }
+
+    /**
+     * Implementation of next().
+     *
+     * @return an Instance.
+     */
+    private Instance nextRow()
     {
         try
         {
@@ -129,6 +152,7 @@ public class RowIterator implements Iterator<Instance>, RowHandler, Serializable
                 return null;
             }
             prefetch = false;
+            pooledStatement.rowFetched();
             if(resultEntity != null && !resultEntity.isRootEntity())
             {
                 Instance row = null;
@@ -192,19 +216,34 @@ public class RowIterator implements Iterator<Instance>, RowHandler, Serializable
 
                         if (attribute != null)
                         {
-                            switch (attribute.getType())
+                            ContextProfiler profiler = ContextProfiler.current();
+                            if (profiler != null)
+                            {
+                                profiler.enter();
+                            }
+                            try
                             {
-                                case Attribute.ROWSET:
-                                    result = attribute.query(new ReadOnlyMap(this));
-                                    break;
-                                case Attribute.ROW:
-                                    result = attribute.fetch(new ReadOnlyMap(this));
-                                    break;
-                                case Attribute.SCALAR:
-                                    result = attribute.evaluate(new ReadOnlyMap(this));
-                                    break;
-                                default:
-                                    Logger.error("Unknown attribute type for " + resultEntity.getName() + "." + property + "!");
+                                switch (attribute.getType())
+                                {
+                                    case Attribute.ROWSET:
+                                        result = attribute.query(new ReadOnlyMap(this));
+                                        break;
+                                    case Attribute.ROW:
+                                        result = attribute.fetch(new ReadOnlyMap(this));
+                                        break;
+                                    case Attribute.SCALAR:
+                                        result = attribute.evaluate(new ReadOnlyMap(this));
+                                        break;
+                                    default:
+                                        Logger.error("Unknown attribute type for " + resultEntity.getName() + "." + property + "!");
+                                }
+                            }
+                            finally
+                            {
+                                if (profiler != null)
+                                {
+                                    profiler.exit(ContextProfiler.prefix(resultEntity), property);
+                                }
                             }
                         }
                     }
@@ -228,6 +267,29 @@ public class RowIterator implements Iterator<Instance>, RowHandler, Serializable
      * @return a list of all the rows
      */
     public List<Instance> getRows()
+    {
+        ContextProfiler profiler = ContextProfiler.current();
+        if(profiler == null)
+        {
+            return getAllRows();
+        }
+        profiler.enter();
+        try
+        {
+            return getAllRows();
+        }
+        finally
+        {
+            profiler.exit(ContextProfiler.prefix(resultEntity), "rows");
+        }
+    }
+
+    /**
+     * Implementation of getRows().
+     *
+     * @return a list of all the rows
+     */
+    private List<Instance> getAllRows()
     {
         try
         {
@@ -241,6 +303,7 @@ public class RowIterator implements Iterator<Instance>, RowHandler, Serializable
                     Instance i = resultEntity.newInstance(new ReadOnlyMap(this), true);
                     i.setClean();
                     ret.add(i);
+                    pooledStatement.rowFetched();
                 }
             }
             else
@@ -249,6 +312,7 @@ public class RowIterator implements Iterator<Instance>, RowHandler, Serializable
                 {
                     Instance i = new Instance(new ReadOnlyMap(this), resultEntity == null ? null : resultEntity.getDB());
                     ret.add(i);
+                    pooledStatement.rowFetched();
                 }
             }
             return ret;
@@ -276,6 +340,7 @@ public class RowIterator implements Iterator<Instance>, RowHandler, Serializable
             while(!resultSet.isAfterLast() && resultSet.next())
             {
                 ret.add(resultSet.getObject(1));
+                pooledStatement.rowFetched();
             }
             return ret;
         }
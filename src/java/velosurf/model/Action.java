@@ -25,6 +25,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import velosurf.sql.Database;
+import velosurf.sql.QueryStats;
 import velosurf.util.DynamicQueryBuilder;
 import velosurf.util.Logger;
 import velosurf.util.SlotMap;
@@ -49,6 +50,7 @@ public class Action implements Serializable
         this.entity = entity;
         db = this.entity.getDB();
         this.name = name;
+        caller = entity.getName() + "." + name;
     }
 
     /**
@@ -104,7 +106,19 @@ public class Action implements Serializable
     {
         List params = buildArrayList(source);
 
-        return db.prepare(getQuery(source), true).update(params);
+        boolean stats = db.getQueryStats() != null;
+        String previousCaller = stats ? QueryStats.setCaller(caller) : null;
+        try
+        {
+            return db.prepare(getQuery(source), true).update(params);
+        }
+        finally
+        {
+            if(stats)
+            {
+                QueryStats.setCaller(previousCaller);
+            }
+        }
     }
 
     /**
@@ -142,7 +156,7 @@ public class Action implements Serializable
                 {
                     // TODO - check if "<param/> is [not] null" is present in the query
                     // to choose the apropriate log level
-                    Logger.trace("Action " + getEntity().getName() + "." + name + ": param " + paramName + " is null!");
+                    Logger.trace("Action {}.{}: param {} is null!", getEntity().getName(), name, paramName);
                 }
                 result.add(value);
             }
@@ -216,4 +230,9 @@ public class Action implements Serializable
      * whether query is dynamic
      */
     private boolean dynamicQuery = false;
+
+    /**
+     * Caller name in query statistics.
+     */
+    private String caller = null;
 }
@@ -25,6 +25,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import velosurf.context.RowIterator;
 import velosurf.sql.Database;
+import velosurf.sql.QueryStats;
 import velosurf.sql.SqlUtil;
 import velosurf.util.DynamicQueryBuilder;
 import velosurf.util.Logger;
@@ -69,6 +70,7 @@ public class Attribute implements Serializable
         this.entity = entity;
         db = entity.getDB();
         this.name = name;
+        caller = entity.getName() + "." + name;
     }
 
     public List<String> getParamNames()
@@ -166,7 +168,19 @@ public class Attribute implements Serializable
         {
             throw new SQLException("cannot call fetch: result of attribute '" + name + "' is not a row");
         }
-        return db.prepare(getQuery(source), false).fetch(buildArrayList(source), db.getEntity(resultEntity));
+        boolean stats = db.getQueryStats() != null;
+        String previousCaller = stats ? QueryStats.setCaller(caller) : null;
+        try
+        {
+            return db.prepare(getQuery(source), false).fetch(buildArrayList(source), db.getEntity(resultEntity));
+        }
+        finally
+        {
+            if(stats)
+            {
+                QueryStats.setCaller(previousCaller);
+            }
+        }
     }
 
     /**
@@ -207,7 +221,19 @@ public class Attribute implements Serializable
         {
             query = SqlUtil.orderQuery(query, order);
         }
-        return db.prepare(query, false).query(buildArrayList(source), resultEntity == null ? db.getRootEntity() : db.getEntity(resultEntity));
+        boolean stats = db.getQueryStats() != null;
+        String previousCaller = stats ? QueryStats.setCaller(caller) : null;
+        try
+        {
+            return db.prepare(query, false).query(buildArrayList(source), resultEntity == null ? db.getRootEntity() : db.getEntity(resultEntity));
+        }
+        finally
+        {
+            if(stats)
+            {
+                QueryStats.setCaller(previousCaller);
+            }
+        }
     }
 
     // TODO
@@ -253,7 +279,19 @@ public class Attribute implements Serializable
         {
             throw new SQLException("cannot call evaluate: result of attribute '" + name + "' is not a scalar");
         }
-        return db.prepare(getQuery(source), false).evaluate(buildArrayList(source));
+        boolean stats = db.getQueryStats() != null;
+        String previousCaller = stats ? QueryStats.setCaller(caller) : null;
+        try
+        {
+            return db.prepare(getQuery(source), false).evaluate(buildArrayList(source));
+        }
+        finally
+        {
+            if(stats)
+            {
+                QueryStats.setCaller(previousCaller);
+            }
+        }
     }
 
     /**
@@ -313,17 +351,13 @@ public class Attribute implements Serializable
                 {
                     // TODO - check if "<param/> is [not] null" is present in the query
                     // to choose the apropriate log level
-                    Logger.trace("Attribute " + getEntity().getName() + "." + name + ": param " + paramName
-                                + " is null!");
+                    Logger.trace("Attribute {}.{}: param {} is null!", getEntity().getName(), name, paramName);
                 }
                 value = db.filterParam(value);
                 result.add(value);
             }
         }
-        if(Logger.getLogLevel() >= Logger.TRACE_ID)
-        {
-            Logger.trace("    with parameters " + result);
-        }
+        Logger.trace("    with parameters {}", result);
         return result;
     }
 
@@ -464,4 +498,9 @@ public class Attribute implements Serializable
      * Caching
      */
     private boolean caching = false;
+
+    /**
+     * Caller name in query statistics.
+     */
+    private String caller = null;
 }
@@ -19,13 +19,30 @@
 package velosurf.model;
 
 import java.lang.reflect.Constructor;
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigInteger;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import velosurf.cache.Cache;
+import velosurf.cache.IdentityMap;
+import velosurf.cache.InvalidationBus;
+import velosurf.cache.NegativeCache;
 import velosurf.context.EntityListener;
 import velosurf.context.Instance;
 import velosurf.context.RowIterator;
@@ -38,6 +55,7 @@ import velosurf.util.SlotMap;
 import velosurf.util.StringLists;
 import velosurf.util.UserContext;
 import velosurf.validation.FieldConstraint;
+import velosurf.validation.Reference;
 import org.apache.commons.lang.StringEscapeUtils;
 
 /** The Entity class represents an entity in the data model.
@@ -96,6 +114,7 @@ public class Entity implements Serializable, EntityListener
         types.put(colName,sqlType);
         if (size != null) sizes.put(colName, size);
         /* if (colnames as aliases) */ aliases.put(colName,colName);
+        validationPlan = null;
 
         /* column marker for PostgreSQL enums needs to contain type name */
         if (getDB().getDriverInfo().getJdbcTag().equals("postgresql") &&  sqlType == Types.VARCHAR && !typeName.equalsIgnoreCase("varchar"))
@@ -119,6 +138,7 @@ public class Entity implements Serializable, EntityListener
         column = db.adaptCase(column);
         Logger.trace("added alias "+name+"."+alias+" -> "+name+"."+column);
         aliases.put(alias,column);
+        validationPlan = null;
     }
 
     /**
@@ -234,6 +254,47 @@ public class Entity implements Serializable, EntityListener
         }
     }
 
+    /**
+     * Get the caching method. See {@link Cache} for returned constants.
+     *
+     * @return caching method
+     */
+    public int getCachingMethod()
+    {
+        return cachingMethod;
+    }
+
+    /**
+     * Get the cache of this entity.
+     *
+     * @return cache, or null if this entity isn't cached
+     */
+    Cache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Get the negative cache of this entity.
+     *
+     * @return negative cache, or null if missing keys aren't cached
+     */
+    NegativeCache getNegativeCache()
+    {
+        return negativeCache;
+    }
+
+    /**
+     * Enable the caching of missing keys.
+     *
+     * @param ttl time to live of missing keys, in milliseconds
+     * @param size maximum number of remembered missing keys
+     */
+    public void setNegativeCaching(long ttl, int size)
+    {
+        negativeCache = ttl > 0 ? new NegativeCache(ttl, size) : null;
+    }
+
     /**
      * Add a constraint.
      * @param column column name
@@ -250,6 +311,7 @@ public class Entity implements Serializable, EntityListener
             constraints.put(column,list);
         }
         list.add(constraint);
+        validationPlan = null;
     }
 
     /**
@@ -257,6 +319,8 @@ public class Entity implements Serializable, EntityListener
      */
     public void reverseEnginered()
     {
+        /* compile the validation plan now that columns are known */
+        getValidationPlan();
         if (obfuscate && keyCols.size()>0)
         {
             keyColObfuscated = new boolean[keyCols.size()];
@@ -267,8 +331,11 @@ public class Entity implements Serializable, EntityListener
                 keyColObfuscated[i] = obfuscatedColumns.contains(key.next());
             }
         }
+        long start = System.currentTimeMillis();
+        /* warm up full and growing caches from the last snapshot, if any */
+        boolean warm = loadSnapshot();
         /* fills the cache for the full caching method */
-        if(cachingMethod == Cache.FULL_CACHE && cache != null)
+        if(cachingMethod == Cache.FULL_CACHE && cache != null && !warm)
         {
             try
             {
@@ -280,14 +347,131 @@ public class Entity implements Serializable, EntityListener
                 Logger.log(sqle);
             }
         }
+        if (cache != null)
+        {
+            cache.getStats().setLoadTime(System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Set the scalar query whose result is used as a version token for cache snapshots.
+     * Snapshots are disabled for entities without such a query.
+     *
+     * @param query scalar query, for instance "select max(last_modified) from book"
+     */
+    public void setSnapshotCheck(String query)
+    {
+        snapshotCheck = query;
+    }
+
+    /**
+     * Whether the cache of this entity can be saved to a snapshot file.
+     * @return true for full and growing caches when a snapshot directory has been configured
+     */
+    private boolean hasSnapshot()
+    {
+        return snapshotCheck != null && canSnapshot();
+    }
+
+    /**
+     * Whether the cache of this entity would be saved to a snapshot file, given a snapshot check query.
+     * @return true for full and growing caches when a snapshot directory has been configured
+     */
+    private boolean canSnapshot()
+    {
+        return cache != null && db.getSnapshotDirectory() != null && keyCols.size() > 0
+            && (cachingMethod == Cache.FULL_CACHE || cachingMethod == Cache.GROWING_CACHE);
+    }
+
+    /**
+     * Get the cache snapshot file of this entity.
+     * @return snapshot file
+     */
+    private File getSnapshotFile()
+    {
+        return new File(db.getSnapshotDirectory(), name + ".snapshot");
+    }
+
+    /**
+     * Get the current version token of the mapped table.
+     * @return version token
+     */
+    private String getSnapshotVersion()
+    {
+        return String.valueOf(db.evaluate(snapshotCheck));
+    }
+
+    /**
+     * Write a snapshot of the cache to the snapshot directory.
+     */
+    public void writeSnapshot()
+    {
+        if (!hasSnapshot())
+        {
+            return;
+        }
+        File file = getSnapshotFile();
+        try
+        {
+            cache.writeSnapshot(file, getSnapshotVersion(), columns);
+            Logger.debug("entity {}: wrote {} cached instances to {}", name, cache.size(), file);
+        }
+        catch(IOException ioe)
+        {
+            Logger.error("entity {}: could not write cache snapshot {}", name, file);
+            Logger.log(ioe);
+        }
+    }
+
+    /**
+     * Load the cache from the last snapshot, if it is still up to date.
+     * @return whether the cache was loaded
+     */
+    private boolean loadSnapshot()
+    {
+        if (!hasSnapshot())
+        {
+            if (canSnapshot())
+            {
+                /* a row count or the like cannot see updates, an explicit version query is required */
+                Logger.error("entity {}: cache snapshots need a 'snapshot-check' query, snapshots disabled", name);
+            }
+            return false;
+        }
+        File file = getSnapshotFile();
+        try
+        {
+            List<SlotMap> rows = Cache.readSnapshot(file, getSnapshotVersion(), columns);
+            if (rows == null)
+            {
+                Logger.debug("entity {}: no valid cache snapshot found", name);
+                return false;
+            }
+            for(SlotMap row : rows)
+            {
+                Instance instance = newInstance(row, true);
+                if (instance != null)
+                {
+                    instance.setClean();
+                }
+            }
+            Logger.info("entity {}: loaded {} instances from cache snapshot", name, rows.size());
+            return true;
+        }
+        catch(IOException ioe)
+        {
+            Logger.warn("entity {}: could not read cache snapshot {}: {}", name, file, ioe.getMessage());
+            return false;
+        }
     }
 
     /**
-     * Clear the cache (not used for now).
+     * Clear the cache.
      */
     protected void clearCache()
     {
         if (cache != null) cache.clear();
+        if (negativeCache != null) negativeCache.clear();
     }
 
     /**
@@ -371,6 +555,60 @@ public class Entity implements Serializable, EntityListener
         }
     }
 
+    /**
+     * Get the identity map of the current request, if enabled.
+     * @return the identity map, or null
+     */
+    private IdentityMap getIdentityMap()
+    {
+        return db.usesIdentityMap() ? IdentityMap.getCurrent() : null;
+    }
+
+    /**
+     * Get an instance from the identity map of the current request.
+     * @param key cache key
+     * @return the mapped instance, or null
+     */
+    private Instance getMappedInstance(String key)
+    {
+        IdentityMap identityMap = getIdentityMap();
+        return identityMap == null || key == null ? null : (Instance)identityMap.get(this, key);
+    }
+
+    /**
+     * Put an instance fetched by key in the identity map of the current request.
+     * Only such instances are mapped, since rows returned by other queries may not have the same columns.
+     * @param key cache key
+     * @param instance fetched instance
+     */
+    private void mapInstance(String key, Instance instance)
+    {
+        IdentityMap identityMap = getIdentityMap();
+        if (identityMap != null && key != null)
+        {
+            identityMap.put(this, key, instance);
+        }
+    }
+
+    /**
+     * Remove an instance from the identity map of the current request
+     * (used after an update, since the mapped instance may be stale).
+     * @param instance instance
+     * @throws SQLException
+     */
+    public void invalidateIdentity(SlotMap instance) throws SQLException
+    {
+        IdentityMap identityMap = getIdentityMap();
+        if (identityMap != null)
+        {
+            String key = buildKey(instance);
+            if (key != null)
+            {
+                identityMap.remove(this, key);
+            }
+        }
+    }
+
     /**
      * Cache an instance.
      * @param instance instance
@@ -378,14 +616,24 @@ public class Entity implements Serializable, EntityListener
      */
     public void cacheInstance(SlotMap instance) throws SQLException
     {
-        if (cachingMethod != Cache.NO_CACHE && cache != null)
+        if (cachingMethod != Cache.NO_CACHE && cache != null || negativeCache != null)
         {
             String key = buildKey(instance);
             if(key != null)
             {
-                cache.put(key, instance);
+                if (cache != null)
+                {
+                    cache.put(key, instance);
+                }
+                if (negativeCache != null)
+                {
+                    negativeCache.invalidate(key);
+                }
+                broadcastInvalidation(key);
             }
         }
+        /* the instance may lack some columns, let it be fetched again */
+        invalidateIdentity(instance);
     }
 
     /**
@@ -401,10 +649,58 @@ public class Entity implements Serializable, EntityListener
             if(key != null)
             {
                 cache.invalidate(key);
+                broadcastInvalidation(key);
+            }
+        }
+        invalidateIdentity(instance);
+    }
+
+    /**
+     * Invalidate an instance in the caches of the other nodes (used after an update).
+     * @param instance instance
+     * @throws SQLException
+     */
+    public void broadcastInvalidation(SlotMap instance) throws SQLException
+    {
+        if (cachingMethod != Cache.NO_CACHE && cache != null || negativeCache != null)
+        {
+            String key = buildKey(instance);
+            if (key != null)
+            {
+                broadcastInvalidation(key);
             }
         }
     }
 
+    /**
+     * Post an invalidation on the cache invalidation bus, if any.
+     * @param key key field(s) of the instance
+     */
+    private void broadcastInvalidation(String key)
+    {
+        InvalidationBus bus = db.getInvalidationBus();
+        if (bus != null)
+        {
+            bus.post(name, key);
+        }
+    }
+
+    /**
+     * Invalidate a key in the local caches (used upon invalidations received from other nodes).
+     * @param key key field(s) of the instance
+     */
+    public void invalidateKey(String key)
+    {
+        if (cache != null)
+        {
+            cache.invalidate(key);
+        }
+        if (negativeCache != null)
+        {
+            negativeCache.invalidate(key);
+        }
+    }
+
     /**
      * Extract column values from an input Map source and store result in target.
      *
@@ -777,10 +1073,24 @@ public class Entity implements Serializable, EntityListener
             throw new SQLException("Entity.fetch: Error: Wrong number of values for '"+name+"' primary key! Got "+values.size()+", was expecting "+keyCols.size()+" for key list: "+StringLists.join(keyCols,","));
         }
         Instance instance = null;
+        String cacheKey = buildKey(values);
         // try in cache
         if (cachingMethod != Cache.NO_CACHE && cache != null)
         {
-            instance = (Instance)cache.get(buildKey(values));
+            instance = (Instance)cache.get(cacheKey);
+        }
+        if (instance == null)
+        {
+            instance = getMappedInstance(cacheKey);
+            if (instance != null)
+            {
+                /* don't reset the modifications done to this instance during the request */
+                return instance;
+            }
+        }
+        if (instance == null && isKnownMissing(cacheKey))
+        {
+            return null;
         }
         if (instance == null)
         {
@@ -797,6 +1107,14 @@ public class Entity implements Serializable, EntityListener
                 }
             }
             instance = (Instance)statement.fetch(values,this);
+            if (instance == null)
+            {
+                setMissing(cacheKey);
+            }
+            else
+            {
+                mapInstance(cacheKey, instance);
+            }
         }
         if(instance != null)
         {
@@ -844,10 +1162,24 @@ public class Entity implements Serializable, EntityListener
             throw new SQLException("entity "+name+".fetch(): missing key values! Missing values: "+missing);
         }
         List keyValues = Arrays.asList(key);
+        String cacheKey = buildKey(keyValues);
         if (cachingMethod != Cache.NO_CACHE && cache != null)
         {
             // try in cache
-            instance = (Instance)cache.get(buildKey(keyValues));
+            instance = (Instance)cache.get(cacheKey);
+        }
+        if (instance == null)
+        {
+            instance = getMappedInstance(cacheKey);
+            if (instance != null)
+            {
+                /* don't reset the modifications done to this instance during the request */
+                return instance;
+            }
+        }
+        if (instance == null && isKnownMissing(cacheKey))
+        {
+            return null;
         }
         if (instance == null)
         {
@@ -863,6 +1195,14 @@ public class Entity implements Serializable, EntityListener
                 }
             }
             instance = (Instance)statement.fetch(keyValues,this);
+            if (instance == null)
+            {
+                setMissing(cacheKey);
+            }
+            else
+            {
+                mapInstance(cacheKey, instance);
+            }
         }
         if(instance != null)
         {
@@ -898,9 +1238,25 @@ public class Entity implements Serializable, EntityListener
             instance = (Instance)cache.get(keyValue);
         }
 
+        if (instance == null)
+        {
+            instance = getMappedInstance(keyValue);
+            if (instance != null)
+            {
+                /* don't reset the modifications done to this instance during the request */
+                return instance;
+            }
+        }
+
+        if (instance == null && isKnownMissing(keyValue))
+        {
+            return null;
+        }
+
         if (instance == null)
         {
             PooledPreparedStatement statement = db.prepare(getFetchQuery(), false);
+            String cacheKey = keyValue;
             if (obfuscate && keyColObfuscated[0])
             {
                 keyValue = deobfuscate(keyValue);
@@ -908,6 +1264,14 @@ public class Entity implements Serializable, EntityListener
             List<String> params = new ArrayList<String>();
             params.add(keyValue);
             instance = (Instance)statement.fetch(params,this);
+            if (instance == null)
+            {
+                setMissing(cacheKey);
+            }
+            else
+            {
+                mapInstance(cacheKey, instance);
+            }
         }
         if(instance != null)
         {
@@ -943,6 +1307,21 @@ public class Entity implements Serializable, EntityListener
             instance = (Instance)cache.get(buildKey(keyValue));
         }
 
+        if (instance == null)
+        {
+            instance = getMappedInstance(buildKey(keyValue));
+            if (instance != null)
+            {
+                /* don't reset the modifications done to this instance during the request */
+                return instance;
+            }
+        }
+
+        if (instance == null && isKnownMissing(buildKey(keyValue)))
+        {
+            return null;
+        }
+
         if (instance == null)
         {
             PooledPreparedStatement statement = db.prepare(getFetchQuery(), false);
@@ -954,6 +1333,14 @@ public class Entity implements Serializable, EntityListener
                 return null;
             }
             instance = (Instance)statement.fetch(params,this);
+            if (instance == null)
+            {
+                setMissing(buildKey(keyValue));
+            }
+            else
+            {
+                mapInstance(buildKey(keyValue), instance);
+            }
         }
         if(instance != null)
         {
@@ -962,6 +1349,30 @@ public class Entity implements Serializable, EntityListener
         return instance;
     }
 
+    /**
+     * Check whether a fetch for this key recently failed.
+     *
+     * @param key cache key
+     * @return true if the key is known to be missing
+     */
+    private boolean isKnownMissing(String key)
+    {
+        return negativeCache != null && key != null && negativeCache.contains(key);
+    }
+
+    /**
+     * Remember that a fetch for this key failed.
+     *
+     * @param key cache key
+     */
+    private void setMissing(String key)
+    {
+        if (negativeCache != null && key != null)
+        {
+            negativeCache.put(key);
+        }
+    }
+
     /**
      * Get the SQL query string used to fetch one instance of this query.
      *
@@ -1036,6 +1447,16 @@ public class Entity implements Serializable, EntityListener
         return (Long)db.evaluate(query);
     }
 
+    /**
+     * Get the cache statistics of this entity.
+     *
+     * @return cache statistics
+     */
+    public EntityStats getStats()
+    {
+        return stats;
+    }
+
     /**
      * Get the database connection.
      *
@@ -1183,52 +1604,377 @@ public class Entity implements Serializable, EntityListener
     {
         boolean ret = true;
 
-        UserContext userContext = db.getUserContext();
+        final UserContext userContext = db.getUserContext();
         /* FIXME Is it a good choice to clear the user context now?
            We may want to validate several entities
            before displaying errors to the user.
            */
         userContext.clearValidationErrors();
-        List<ValidationError> errors = new ArrayList<ValidationError>();
+        Map<String,ColumnConstraints> plan = getValidationPlan();
+        if(plan.isEmpty())
+        {
+            return true;
+        }
+        Locale locale = userContext.getLocale();
+        List<ValidationError> errors = null;
         for(Map.Entry<String,Serializable> entry:row.entrySet())
         {
-            String col = resolveName(entry.getKey());
-            Serializable data = entry.getValue();
-            List<FieldConstraint> list = constraints.get(col);
-            if(list != null)
+            ColumnConstraints columnConstraints = getColumnConstraints(plan,entry.getKey());
+            if(columnConstraints != null)
             {
-                for(FieldConstraint constraint:list)
+                Serializable data = entry.getValue();
+                for(FieldConstraint constraint:columnConstraints.constraints)
                 {
-                    if (!constraint.validate(data, userContext.getLocale()))
+                    if (!constraint.validate(data, locale))
                     {
-                        String stringData = data.toString();
-                        String formatted = (data==null || stringData.length() == 0 ? "empty value" : stringData);
-                        if (formatted.length() > MAX_DATA_DISPLAY_LENGTH)
+                        if(errors == null)
                         {
-                            formatted = formatted.substring(0,MAX_DATA_DISPLAY_LENGTH)+"...";
+                            errors = new ArrayList<ValidationError>();
                         }
-                        formatted = StringEscapeUtils.escapeHtml(formatted);
-                        errors.add(new ValidationError(col,userContext.localize(constraint.getMessage(),Database.adaptContextCase(col),formatted)));
+                        errors.add(new ValidationError(columnConstraints,data,constraint));
                         ret = false;
                     }
                 }
             }
         }
-        if(errors.size()>0)
+        if(errors != null)
         {
             /* sort in columns natural order... better than nothing.
                The ideal ordering would be the order of the form fields,
                but it is unreachable. */
             Collections.sort(errors);
-            for(ValidationError error:errors)
+            for(final ValidationError error:errors)
             {
-                Logger.trace("validation: new message: "+error.message);
-                userContext.addValidationError(error.message);
+                Logger.trace("validation: {} failed on column {}", error.constraint, error.column);
+                /* messages are only formatted if they are read */
+                userContext.addValidationError(new Supplier<String>()
+                {
+                    public String get()
+                    {
+                        return error.getMessage(userContext);
+                    }
+                });
             }
         }
         return ret;
     }
 
+    /**
+     * Get the compiled validation plan: the constraints of each column, by column name and alias,
+     * in all the letter cases which resolve to this column.
+     * @return validation plan
+     */
+    private Map<String,ColumnConstraints> getValidationPlan()
+    {
+        Map<String,ColumnConstraints> plan = validationPlan;
+        if(plan == null)
+        {
+            plan = new HashMap<String,ColumnConstraints>();
+            Map<String,ColumnConstraints> byColumn = new HashMap<String,ColumnConstraints>();
+            for(Map.Entry<String,List<FieldConstraint>> entry:constraints.entrySet())
+            {
+                String column = entry.getKey();
+                List<FieldConstraint> list = entry.getValue();
+                byColumn.put(column,new ColumnConstraints(column,columns.indexOf(column),list.toArray(new FieldConstraint[list.size()])));
+            }
+            Set<String> names = new HashSet<String>(byColumn.keySet());
+            names.addAll(aliases.keySet());
+            for(String name:names)
+            {
+                ColumnConstraints columnConstraints = byColumn.get(resolveName(name));
+                if(columnConstraints == null)
+                {
+                    continue;
+                }
+                for(String key:new String[] { name, name.toLowerCase(), name.toUpperCase(), Database.adaptContextCase(name) })
+                {
+                    if(resolveName(key).equals(columnConstraints.column))
+                    {
+                        plan.put(key,columnConstraints);
+                    }
+                }
+            }
+            validationPlan = plan;
+        }
+        return plan;
+    }
+
+    /**
+     * Get the constraints of a column.
+     * @param plan validation plan
+     * @param key column name or alias
+     * @return constraints or null
+     */
+    private ColumnConstraints getColumnConstraints(Map<String,ColumnConstraints> plan,String key)
+    {
+        ColumnConstraints columnConstraints = plan.get(key);
+        if(columnConstraints == null && !plan.isEmpty())
+        {
+            /* unusual letter case */
+            String column = resolveName(key);
+            if(!column.equals(key))
+            {
+                columnConstraints = plan.get(column);
+            }
+        }
+        return columnConstraints;
+    }
+
+    /**
+     * Constraints of a column.
+     */
+    private static class ColumnConstraints
+    {
+        ColumnConstraints(String column,int index,FieldConstraint[] constraints)
+        {
+            this.column = column;
+            this.index = index;
+            this.constraints = constraints;
+        }
+
+        String column;
+        int index;
+        FieldConstraint[] constraints;
+    }
+
+    /**
+     * Minimum number of rows for constraints to be checked in parallel.
+     */
+    private static final int PARALLEL_VALIDATION_THRESHOLD = 32;
+
+    /**
+     * <p>Validate several rows at once.</p>
+     * <p>Reference constraints are checked with one query per referenced column (see {@link Reference#findMissing(Collection)}),
+     * while other constraints are checked in parallel, by a dedicated bounded pool, for large lists of rows. Contrary to {@link #validate(SlotMap)},
+     * errors are not added to the user context but returned.</p>
+     * @param rows rows to validate
+     * @return for each row, the list of validation error messages (empty if the row is valid)
+     */
+    public List<List<String>> validateAll(final List<SlotMap> rows) throws SQLException
+    {
+        final UserContext userContext = db.getUserContext();
+        final Locale locale = userContext.getLocale();
+        final Map<String,ColumnConstraints> plan = getValidationPlan();
+        final int size = rows.size();
+        final List<List<ValidationError>> errors = new ArrayList<List<ValidationError>>(size);
+        final List<List<ReferenceCheck>> checks = new ArrayList<List<ReferenceCheck>>(size);
+        for(int i = 0; i < size; i++)
+        {
+            errors.add(new ArrayList<ValidationError>());
+            checks.add(new ArrayList<ReferenceCheck>());
+        }
+
+        /* field constraints, except references */
+        if(size < PARALLEL_VALIDATION_THRESHOLD)
+        {
+            for(int i = 0; i < size; i++)
+            {
+                validateRow(rows.get(i),i,plan,locale,errors.get(i),checks.get(i));
+            }
+        }
+        else
+        {
+            /* constraints may block (DNS or SMTP checks), so they are run by a dedicated pool, by chunks of rows */
+            int chunks = Math.min(VALIDATION_THREADS,size);
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunks);
+            for(int c = 0; c < chunks; c++)
+            {
+                final int from = c * size / chunks, to = (c + 1) * size / chunks;
+                tasks.add(new Callable<Void>()
+                {
+                    public Void call() throws SQLException
+                    {
+                        for(int i = from; i < to; i++)
+                        {
+                            validateRow(rows.get(i),i,plan,locale,errors.get(i),checks.get(i));
+                        }
+                        return null;
+                    }
+                });
+            }
+            try
+            {
+                for(Future<Void> future:getValidationExecutor().invokeAll(tasks))
+                {
+                    future.get();
+                }
+            }
+            catch(InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                throw new SQLException("validation interrupted",ie);
+            }
+            catch(ExecutionException ee)
+            {
+                Throwable cause = ee.getCause();
+                if(cause instanceof SQLException)
+                {
+                    throw (SQLException)cause;
+                }
+                if(cause instanceof Error)
+                {
+                    throw (Error)cause;
+                }
+                throw (RuntimeException)cause;
+            }
+        }
+
+        /* references, grouped by referenced column */
+        Map<String,List<ReferenceCheck>> references = new HashMap<String,List<ReferenceCheck>>();
+        for(List<ReferenceCheck> rowChecks:checks)
+        {
+            for(ReferenceCheck check:rowChecks)
+            {
+                String target = check.reference.toString();
+                List<ReferenceCheck> group = references.get(target);
+                if(group == null)
+                {
+                    group = new ArrayList<ReferenceCheck>();
+                    references.put(target,group);
+                }
+                group.add(check);
+            }
+        }
+        for(List<ReferenceCheck> group:references.values())
+        {
+            List<Object> values = new ArrayList<Object>(group.size());
+            for(ReferenceCheck check:group)
+            {
+                values.add(check.data);
+            }
+            Set<Object> missing = group.get(0).reference.findMissing(values);
+            if(missing.size() > 0)
+            {
+                for(ReferenceCheck check:group)
+                {
+                    if(missing.contains(check.data))
+                    {
+                        errors.get(check.row).add(new ValidationError(check.column,check.data,check.reference));
+                    }
+                }
+            }
+        }
+
+        /* messages */
+        List<List<String>> ret = new ArrayList<List<String>>(size);
+        for(List<ValidationError> rowErrors:errors)
+        {
+            List<String> messages = new ArrayList<String>(rowErrors.size());
+            Collections.sort(rowErrors);
+            for(ValidationError error:rowErrors)
+            {
+                messages.add(error.getMessage(userContext));
+            }
+            ret.add(messages);
+        }
+        return ret;
+    }
+
+    /**
+     * Check the field constraints of a row, except references which are only collected.
+     * @param row row to validate
+     * @param index row index
+     * @param plan validation plan
+     * @param locale user locale
+     * @param rowErrors list receiving the validation errors of the row
+     * @param rowChecks list receiving the reference checks of the row
+     */
+    private void validateRow(SlotMap row,int index,Map<String,ColumnConstraints> plan,Locale locale,List<ValidationError> rowErrors,List<ReferenceCheck> rowChecks) throws SQLException
+    {
+        for(Map.Entry<String,Serializable> entry:row.entrySet())
+        {
+            ColumnConstraints columnConstraints = getColumnConstraints(plan,entry.getKey());
+            if(columnConstraints == null)
+            {
+                continue;
+            }
+            Serializable data = entry.getValue();
+            for(FieldConstraint constraint:columnConstraints.constraints)
+            {
+                if(constraint instanceof Reference)
+                {
+                    if(data != null && data.toString().length() > 0)
+                    {
+                        rowChecks.add(new ReferenceCheck(index,columnConstraints,data,(Reference)constraint));
+                    }
+                }
+                else if(!constraint.validate(data,locale))
+                {
+                    rowErrors.add(new ValidationError(columnConstraints,data,constraint));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the pool running batch validations.
+     * @return validation executor
+     */
+    private static ExecutorService getValidationExecutor()
+    {
+        synchronized(Entity.class)
+        {
+            if(validationExecutor == null)
+            {
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(VALIDATION_THREADS, VALIDATION_THREADS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(VALIDATION_THREADS * 16), new ThreadFactory()
+                    {
+                        public Thread newThread(Runnable r)
+                        {
+                            Thread thread = new Thread(r, "velosurf validation " + validationThreadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    },
+                    new RejectedExecutionHandler()
+                    {
+                        /* when too many chunks are pending, the validating thread checks its chunk itself */
+                        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+                        {
+                            r.run();
+                        }
+                    });
+                pool.allowCoreThreadTimeOut(true);
+                validationExecutor = pool;
+            }
+            return validationExecutor;
+        }
+    }
+
+    /**
+     * Number of batch validation threads.
+     */
+    private static final int VALIDATION_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Batch validation pool, created on first use.
+     */
+    private static ExecutorService validationExecutor = null;
+
+    /**
+     * Batch validation threads counter.
+     */
+    private static AtomicInteger validationThreadCount = new AtomicInteger();
+
+    /**
+     * Pending reference check of a batch validation.
+     */
+    private static class ReferenceCheck
+    {
+        ReferenceCheck(int row,ColumnConstraints column,Serializable data,Reference reference)
+        {
+            this.row = row;
+            this.column = column;
+            this.data = data;
+            this.reference = reference;
+        }
+
+        int row;
+        ColumnConstraints column;
+        Serializable data;
+        Reference reference;
+    }
+
     public class ColumnOrderComparator implements Comparator<String>, Serializable
     {
         public int compare(String o1, String o2)
@@ -1261,12 +2007,14 @@ public class Entity implements Serializable, EntityListener
         return new ColumnOrderComparator();
     }
 
-    class ValidationError implements Comparable<ValidationError>
+    static class ValidationError implements Comparable<ValidationError>
     {
-        ValidationError(String column,String message)
+        ValidationError(ColumnConstraints column,Serializable data,FieldConstraint constraint)
         {
-            index = columns.indexOf(column);
-            this.message = message;
+            index = column.index;
+            this.column = column.column;
+            this.data = data;
+            this.constraint = constraint;
         }
 
         public int compareTo(ValidationError cmp)
@@ -1274,10 +2022,28 @@ public class Entity implements Serializable, EntityListener
             return index - cmp.index;
         }
 
-        String message;
+        /**
+         * Localized error message.
+         * @param userContext user context
+         * @return error message
+         */
+        String getMessage(UserContext userContext)
+        {
+            String stringData = data == null ? "" : data.toString();
+            String formatted = (stringData.length() == 0 ? "empty value" : stringData);
+            if (formatted.length() > MAX_DATA_DISPLAY_LENGTH)
+            {
+                formatted = formatted.substring(0,MAX_DATA_DISPLAY_LENGTH)+"...";
+            }
+            formatted = StringEscapeUtils.escapeHtml(formatted);
+            return userContext.localize(constraint.getMessage(),Database.adaptContextCase(column),formatted);
+        }
+
+        String column;
+        Serializable data;
+        FieldConstraint constraint;
         int index;
     }
-    
 
     /**
      * Check for the existence of an imported key with the same columns.
@@ -1534,11 +2300,31 @@ public class Entity implements Serializable, EntityListener
      */
     private transient Cache cache = null;
     
+    /**
+     * The cache of missing keys, if any.
+     */
+    private transient NegativeCache negativeCache = null;
+
+    /**
+     * Cache statistics.
+     */
+    private transient EntityStats stats = new EntityStats(this);
+
+    /**
+     * Scalar query giving the version token of cache snapshots.
+     */
+    private String snapshotCheck = null;
+
     /**
      * Constraint by column name map.
      */
     private Map<String,List<FieldConstraint>> constraints = new HashMap<String,List<FieldConstraint>>();
 
+    /**
+     * Compiled validation plan.
+     */
+    private transient volatile Map<String,ColumnConstraints> validationPlan = null;
+
     /**
      * Inherited entity, if any
      */
@@ -1575,20 +2361,23 @@ public class Entity implements Serializable, EntityListener
         sqlTypeToClass.put(Types.VARCHAR, String.class);
     }
 
-    private transient Set<EntityListener> listeners = null;
+    /* listeners can be added while events are dispatched */
+    private transient volatile Set<EntityListener> listeners = null;
     private transient EventsQueue eventQueue = null;
 
     public synchronized void addListener(EntityListener listener)
     {
-        if (listeners == null) listeners = new HashSet<>();
+        if (listeners == null) listeners = new CopyOnWriteArraySet<>();
         eventQueue = db.getEventsQueue();
         listeners.add(listener);
     }
 
-    public boolean hasListeners() { return listeners != null && listeners.size() > 0; }
+    public boolean hasListeners() { Set<EntityListener> listeners = this.listeners; return listeners != null && listeners.size() > 0; }
 
     public void dispatchEvent(EventsQueue.Event event)
     {
+        Set<EntityListener> listeners = this.listeners;
+        if (listeners == null) return;
         switch (event.type)
         {
             case INSERT: for (EntityListener listener : listeners) listener.inserted(event.instance); break;
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.model;
+
+import velosurf.cache.Cache;
+import velosurf.cache.CacheStats;
+import velosurf.cache.NegativeCache;
+import velosurf.sql.Database;
+
+/**
+ * Cache statistics of an entity, registered as a JMX MBean when the <code>jmx</code> attribute
+ * of the &lt;<code>database</code>&gt; tag is set.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class EntityStats implements EntityStatsMBean
+{
+    /**
+     * Constructor.
+     * @param entity entity
+     */
+    public EntityStats(Entity entity)
+    {
+        this.entity = entity;
+    }
+
+    public String getName()
+    {
+        return Database.adaptContextCase(entity.getName());
+    }
+
+    public String getCachingMethod()
+    {
+        switch (entity.getCachingMethod())
+        {
+            case Cache.SOFT_CACHE: return "soft";
+            case Cache.FULL_CACHE: return "full";
+            case Cache.GROWING_CACHE: return "growing";
+            default: return "none";
+        }
+    }
+
+    public int getCacheSize()
+    {
+        Cache cache = entity.getCache();
+        return cache == null ? 0 : cache.size();
+    }
+
+    public long getHits()
+    {
+        CacheStats stats = getStats();
+        return stats == null ? 0 : stats.getHits();
+    }
+
+    public long getMisses()
+    {
+        CacheStats stats = getStats();
+        return stats == null ? 0 : stats.getMisses();
+    }
+
+    public double getHitRatio()
+    {
+        CacheStats stats = getStats();
+        return stats == null ? 0.0 : stats.getHitRatio();
+    }
+
+    public long getPuts()
+    {
+        CacheStats stats = getStats();
+        return stats == null ? 0 : stats.getPuts();
+    }
+
+    public long getEvictions()
+    {
+        CacheStats stats = getStats();
+        return stats == null ? 0 : stats.getEvictions();
+    }
+
+    public long getInvalidations()
+    {
+        CacheStats stats = getStats();
+        return stats == null ? 0 : stats.getInvalidations();
+    }
+
+    public long getLoadTime()
+    {
+        CacheStats stats = getStats();
+        return stats == null ? 0 : stats.getLoadTime();
+    }
+
+    public long getEstimatedMemory()
+    {
+        Cache cache = entity.getCache();
+        return cache == null ? 0 : cache.estimateMemory();
+    }
+
+    public int getNegativeCacheSize()
+    {
+        NegativeCache negativeCache = entity.getNegativeCache();
+        return negativeCache == null ? 0 : negativeCache.size();
+    }
+
+    public void clearCache()
+    {
+        entity.clearCache();
+    }
+
+    public void resetStats()
+    {
+        CacheStats stats = getStats();
+        if (stats != null)
+        {
+            stats.reset();
+        }
+    }
+
+    /**
+     * Get the counters of the entity cache.
+     * @return counters, or null if the entity isn't cached
+     */
+    private CacheStats getStats()
+    {
+        Cache cache = entity.getCache();
+        return cache == null ? null : cache.getStats();
+    }
+
+    /**
+     * Entity.
+     */
+    private Entity entity;
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.model;
+
+/**
+ * JMX management interface exposing the cache statistics of an entity.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public interface EntityStatsMBean
+{
+    /**
+     * Getter for the entity name.
+     * @return entity name
+     */
+    public String getName();
+
+    /**
+     * Getter for the caching method.
+     * @return one of "none", "soft", "full" or "growing"
+     */
+    public String getCachingMethod();
+
+    /**
+     * Getter for the number of cached instances.
+     * @return cache size
+     */
+    public int getCacheSize();
+
+    /**
+     * Getter for the number of cache hits.
+     * @return number of hits
+     */
+    public long getHits();
+
+    /**
+     * Getter for the number of cache misses.
+     * @return number of misses
+     */
+    public long getMisses();
+
+    /**
+     * Getter for the cache hit ratio.
+     * @return hit ratio
+     */
+    public double getHitRatio();
+
+    /**
+     * Getter for the number of instances put in the cache.
+     * @return number of puts
+     */
+    public long getPuts();
+
+    /**
+     * Getter for the number of instances evicted by the garbage collector.
+     * @return number of evictions
+     */
+    public long getEvictions();
+
+    /**
+     * Getter for the number of invalidated instances.
+     * @return number of invalidations
+     */
+    public long getInvalidations();
+
+    /**
+     * Getter for the time spent to fill the cache at startup.
+     * @return load time, in milliseconds
+     */
+    public long getLoadTime();
+
+    /**
+     * Getter for the estimated memory used by the cache.
+     * @return estimated memory, in bytes
+     */
+    public long getEstimatedMemory();
+
+    /**
+     * Getter for the number of keys in the negative cache.
+     * @return negative cache size
+     */
+    public int getNegativeCacheSize();
+
+    /**
+     * Clear the caches of the entity.
+     */
+    public void clearCache();
+
+    /**
+     * Reset the counters.
+     */
+    public void resetStats();
+}
@@ -13,6 +13,8 @@ public class EventsQueue implements Runnable
 
   private Queue<Event> queue = null;
 
+  private volatile boolean running = false;
+
   private static final int SLEEP_DELAY = 1000;
 
   public EventsQueue()
@@ -22,6 +24,20 @@ public class EventsQueue implements Runnable
 
   @Override
   public void run()
+  {
+    running = true;
+    try
+    {
+      dispatch();
+    }
+    finally
+    {
+      running = false;
+      queue.clear();
+    }
+  }
+
+  private void dispatch()
   {
     while (true)
     {
@@ -55,7 +71,10 @@ public class EventsQueue implements Runnable
     }
   }
 
-  public void post(Event event) { queue.add(event); }
+  public boolean isRunning() { return running; }
+
+  /* events are only queued while a thread runs this queue, otherwise nothing would ever consume them */
+  public void post(Event event) { if (running) queue.add(event); }
 
   public enum EventType { INSERT, UPDATE, DELETE }
 
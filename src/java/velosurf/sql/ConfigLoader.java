@@ -35,11 +35,13 @@ import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.Text;
 import org.jdom2.input.SAXBuilder;
+import velosurf.util.AsyncLogWriter;
 import velosurf.util.Logger;
 import velosurf.util.StringLists;
 import velosurf.util.Strings;
 import velosurf.util.XIncludeResolver;
 import velosurf.cache.Cache;
+import velosurf.cache.NegativeCache;
 import velosurf.model.Entity;
 import velosurf.model.Action;
 import velosurf.model.Attribute;
@@ -52,6 +54,7 @@ import velosurf.validation.Range;
 import velosurf.validation.NotNull;
 import velosurf.validation.OneOf;
 import velosurf.validation.Reference;
+import velosurf.validation.ReferenceCache;
 import velosurf.validation.Regex;
 import velosurf.validation.FieldConstraint;
 import velosurf.validation.DateRange;
@@ -182,6 +185,41 @@ public class ConfigLoader
             }
         }
 
+        /* asynchronous logging */
+        String asyncLogging = database.getAttributeValue("async-logging");
+        if (checkSyntax("async-logging",asyncLogging,new String[]{"no","false","drop","block"}))
+        {
+            if (asyncLogging.equalsIgnoreCase("drop") || asyncLogging.equalsIgnoreCase("block"))
+            {
+                int capacity = AsyncLogWriter.DEFAULT_CAPACITY;
+                String value = database.getAttributeValue("async-logging-capacity");
+                if (value != null)
+                {
+                    try
+                    {
+                        int parsed = Integer.parseInt(value);
+                        if (parsed > 0)
+                        {
+                            capacity = Math.min(parsed, AsyncLogWriter.MAX_CAPACITY);
+                        }
+                        else
+                        {
+                            Logger.error("the parameter 'async-logging-capacity' wants a positive integer!");
+                        }
+                    }
+                    catch(NumberFormatException nfe)
+                    {
+                        Logger.error("the parameter 'async-logging-capacity' wants an integer!");
+                    }
+                }
+                Logger.setAsynchronous(capacity,asyncLogging.equalsIgnoreCase("block") ? AsyncLogWriter.OverflowPolicy.BLOCK : AsyncLogWriter.OverflowPolicy.DROP);
+            }
+            else
+            {
+                Logger.setSynchronous();
+            }
+        }
+
         /* default-access - deprecated - for compatibility only, replaced with read-only=true|false */
         String access = database.getAttributeValue("default-access");
         if (access != null)
@@ -243,6 +281,86 @@ public class ConfigLoader
             }
         }
 
+        String identityMap = database.getAttributeValue("identity-map");
+        if (checkSyntax("identity-map",identityMap,new String[] {"true","false","yes","no"}))
+        {
+            this.database.setIdentityMap(identityMap.equalsIgnoreCase("true") || identityMap.equalsIgnoreCase("yes"));
+        }
+
+        String jmx = database.getAttributeValue("jmx");
+        if (checkSyntax("jmx",jmx,new String[] {"true","false","yes","no"}))
+        {
+            this.database.setJMX(jmx.equalsIgnoreCase("true") || jmx.equalsIgnoreCase("yes"));
+        }
+
+        String queryStats = database.getAttributeValue("query-stats");
+        String slowQueryThreshold = database.getAttributeValue("slow-query-threshold");
+        if (checkSyntax("query-stats",queryStats,new String[] {"true","false","yes","no"}) && (queryStats.equalsIgnoreCase("true") || queryStats.equalsIgnoreCase("yes"))
+            || slowQueryThreshold != null)
+        {
+            int size = QueryStats.DEFAULT_SIZE;
+            long threshold = 0;
+            try
+            {
+                String value = database.getAttributeValue("query-stats-size");
+                if (value != null)
+                {
+                    size = Integer.parseInt(value);
+                }
+                if (slowQueryThreshold != null)
+                {
+                    threshold = Long.parseLong(slowQueryThreshold);
+                }
+            }
+            catch(NumberFormatException nfe)
+            {
+                Logger.error("the parameters 'query-stats-size' and 'slow-query-threshold' want an integer!");
+            }
+            this.database.setQueryStats(size,threshold);
+        }
+
+        String poolMetrics = database.getAttributeValue("pool-metrics");
+        if (poolMetrics != null)
+        {
+            this.database.setPoolMetrics(poolMetrics);
+        }
+
+        String snapshots = database.getAttributeValue("cache-snapshots");
+        if (snapshots != null)
+        {
+            this.database.setSnapshotDirectory(snapshots);
+            String interval = database.getAttributeValue("cache-snapshot-interval");
+            if (interval != null)
+            {
+                try
+                {
+                    this.database.setSnapshotInterval(Long.parseLong(interval) * 1000);
+                }
+                catch(NumberFormatException nfe)
+                {
+                    Logger.error("the parameter 'cache-snapshot-interval' wants an integer!");
+                }
+            }
+        }
+
+        String invalidation = database.getAttributeValue("cache-invalidation");
+        if (invalidation != null)
+        {
+            this.database.setInvalidationTransport(invalidation);
+            String delay = database.getAttributeValue("cache-invalidation-delay");
+            if (delay != null)
+            {
+                try
+                {
+                    this.database.setInvalidationDelay(Long.parseLong(delay));
+                }
+                catch(NumberFormatException nfe)
+                {
+                    Logger.error("the parameter 'cache-invalidation-delay' wants an integer!");
+                }
+            }
+        }
+
         String reverseMode = database.getAttributeValue("reverse");
         if (checkSyntax("reverse",reverseMode,new String[]{"none","partial","tables","full"}))
         {
@@ -373,6 +491,25 @@ public class ConfigLoader
 
         this.database.setSeed(database.getAttributeValue("seed"));
 
+        String cryptograph = database.getAttributeValue("cryptograph");
+        if (cryptograph != null)
+        {
+            this.database.setCryptographClass(cryptograph);
+        }
+
+        String obfuscationCache = database.getAttributeValue("obfuscation-cache-size");
+        if (obfuscationCache != null)
+        {
+            try
+            {
+                this.database.setObfuscationCacheSize(Integer.parseInt(obfuscationCache));
+            }
+            catch(NumberFormatException nfe)
+            {
+                Logger.error("the parameter 'obfuscation-cache-size' wants an integer!");
+            }
+        }
+
         String caseSensivity = database.getAttributeValue("case");
         /* if case-sensivity has not been set explicitely, deduce it from the driver */
         if (caseSensivity == null)
@@ -804,6 +941,32 @@ public class ConfigLoader
                 entity.setCachingMethod(parseCaching(caching));
             }
 
+            /* caching of missing keys */
+            String negativeCaching = element.getAttributeValue("negative-caching");
+            element.removeAttribute("negative-caching");
+            String negativeCacheSize = element.getAttributeValue("negative-cache-size");
+            element.removeAttribute("negative-cache-size");
+            if (negativeCaching != null)
+            {
+                try
+                {
+                    int size = negativeCacheSize == null ? NegativeCache.DEFAULT_SIZE : Integer.parseInt(negativeCacheSize);
+                    entity.setNegativeCaching(Long.parseLong(negativeCaching) * 1000, size);
+                }
+                catch(NumberFormatException nfe)
+                {
+                    Logger.error("the parameters 'negative-caching' and 'negative-cache-size' want integers!");
+                }
+            }
+
+            /* cache snapshots version check */
+            String snapshotCheck = element.getAttributeValue("snapshot-check");
+            element.removeAttribute("snapshot-check");
+            if (snapshotCheck != null)
+            {
+                entity.setSnapshotCheck(snapshotCheck);
+            }
+
             /* obfuscation */
             String obfuscate = element.getAttributeValue("obfuscate");
             element.removeAttribute("obfuscate");
@@ -1097,7 +1260,7 @@ public class ConfigLoader
                     String dateformat = constraintElement.getAttributeValue("format");
                     if (dateformat != null)
                     {
-                        daterange.setDateFormat(new SimpleDateFormat(dateformat));
+                        daterange.setDateFormat(dateformat);
                     }
                     constraint = daterange;
                 }
@@ -1134,7 +1297,26 @@ public class ConfigLoader
                     {
                         String table = fk.substring(0,dot);
                         String col = fk.substring(dot+1);
-                        constraint = new Reference(database,table,col);
+                        Reference reference = new Reference(database,table,col);
+                        str = constraintElement.getAttributeValue("cache");
+                        if (checkSyntax("cache",str,new String[]{"yes","no","true","false"}) && (str.equalsIgnoreCase("yes") || str.equalsIgnoreCase("true")))
+                        {
+                            long ttl = ReferenceCache.DEFAULT_TTL;
+                            str = constraintElement.getAttributeValue("cache-ttl");
+                            if (str != null)
+                            {
+                                try
+                                {
+                                    ttl = Long.parseLong(str) * 1000;
+                                }
+                                catch (NumberFormatException nfe)
+                                {
+                                    Logger.error("bad value for reference constraint 'cache-ttl' attribute (entity "+entity.getName()+", column "+column+"): "+str);
+                                }
+                            }
+                            reference.setCache(ttl);
+                        }
+                        constraint = reference;
                     }
                 }
                 else if (name.equals("regex"))
@@ -18,11 +18,11 @@
 
 package velosurf.sql;
 
-import java.io.Serializable;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import velosurf.util.Logger;
 import velosurf.util.Strings;
 
@@ -31,7 +31,7 @@ import velosurf.util.Strings;
  *
  *  @author <a href="mailto:claude.brisson@gmail.com">Claude Brisson</a>
  */
-public class ConnectionPool implements Serializable
+public class ConnectionPool implements Pool
 {
     /**
      * Constructor.
@@ -69,7 +69,28 @@ public class ConnectionPool implements Serializable
      * @return a connection
      * @throws SQLException
      */
-    public synchronized ConnectionWrapper getConnection() throws SQLException
+    public ConnectionWrapper getConnection() throws SQLException
+    {
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        try
+        {
+            ConnectionWrapper connection = checkoutConnection();
+            stats.checkout(System.nanoTime() - start);
+            return connection;
+        }
+        finally
+        {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Find a free connection, or create a new one.
+     * @return a connection
+     * @throws SQLException
+     */
+    private synchronized ConnectionWrapper checkoutConnection() throws SQLException
     {
         for(Iterator it = connections.iterator(); it.hasNext(); )
         {
@@ -130,7 +151,54 @@ public class ConnectionPool implements Serializable
 
         // autocommit
         connection.setAutoCommit(autocommit);
-        return new ConnectionWrapper(driver, connection);
+        ConnectionWrapper wrapper = new ConnectionWrapper(driver, connection);
+        wrapper.setPoolStats(stats);
+        stats.creation();
+        return wrapper;
+    }
+
+    /**
+     * Get the number of busy connections.
+     * @return number of busy connections
+     */
+    public synchronized int getActiveCount()
+    {
+        int active = 0;
+        for(ConnectionWrapper c : connections)
+        {
+            if(c.isBusy())
+            {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Get the total number of connections.
+     * @return number of connections
+     */
+    public synchronized int getTotalCount()
+    {
+        return connections.size();
+    }
+
+    /**
+     * Get the number of threads waiting for (or performing) a checkout.
+     * @return number of waiting threads
+     */
+    public int getWaitingCount()
+    {
+        return waiting.get();
+    }
+
+    /**
+     * Get the usage statistics of this pool.
+     * @return pool statistics
+     */
+    public PoolStats getStats()
+    {
+        return stats;
     }
 
 /*
@@ -185,4 +253,10 @@ public class ConnectionPool implements Serializable
 
     /** Maximum number of connections. */
     private int max;
+
+    /** Number of threads waiting for a connection. */
+    private transient AtomicInteger waiting = new AtomicInteger();
+
+    /** Usage statistics. */
+    private transient PoolStats stats = new PoolStats(this);
 }
@@ -618,7 +618,10 @@ public class ConnectionWrapper
     public synchronized void enterBusyState()
     {
         //Logger.trace("connection #"+toString()+": entering busy state.");
-        busy++;
+        if (busy++ == 0)
+        {
+            busySince = System.nanoTime();
+        }
     }
 
     /**
@@ -627,10 +630,22 @@ public class ConnectionWrapper
     public synchronized void leaveBusyState()
     {
         lastUse = System.currentTimeMillis();
-        busy--;
+        if (--busy == 0 && poolStats != null)
+        {
+            poolStats.release(System.nanoTime() - busySince);
+        }
         //Logger.trace("connection #"+toString()+": leaving busy state.");
     }
 
+    /**
+     * Set the statistics of the pool this connection belongs to.
+     * @param poolStats pool statistics
+     */
+    public void setPoolStats(PoolStats poolStats)
+    {
+        this.poolStats = poolStats;
+    }
+
     /**
      * Check busy state.
      * @return busy state
@@ -710,6 +725,12 @@ public class ConnectionWrapper
     /** Last use */
     private long lastUse = System.currentTimeMillis();
 
+    /** Start of the current busy period. */
+    private long busySince = 0;
+
+    /** Statistics of the pool this connection belongs to. */
+    private transient PoolStats poolStats = null;
+
     /** Closed state. */
     private boolean closed = false;
 
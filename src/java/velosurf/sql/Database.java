@@ -19,13 +19,21 @@
 package velosurf.sql;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.*;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import velosurf.cache.Cache;
+import velosurf.cache.IdentityMap;
+import velosurf.cache.InvalidationBus;
+import velosurf.context.EntityListener;
 import velosurf.context.RowIterator;
 import velosurf.model.Attribute;
 import velosurf.model.Entity;
+import velosurf.model.EntityStats;
 import velosurf.model.Action;
 import velosurf.model.EventsQueue;
 import velosurf.util.ConversionHandler;
@@ -33,6 +41,7 @@ import velosurf.util.ConversionHandlerImpl;
 import velosurf.util.Converter;
 import velosurf.util.Logger;
 import velosurf.util.Cryptograph;
+import velosurf.util.ObfuscationCache;
 import velosurf.util.XIncludeResolver;
 import velosurf.util.UserContext;
 
@@ -175,6 +184,10 @@ public class Database implements Serializable
         instance.initConverter();
         instance.connect();
         instance.getReverseEngineer().readMetaData();
+        instance.registerListeners();
+        instance.scheduleSnapshots();
+        instance.startInvalidationBus();
+        instance.registerMBeans();
 
         // startup action
         Action startup = instance.getRootEntity().getAction("startup");
@@ -208,6 +221,7 @@ public class Database implements Serializable
         initConverter();
         connect();
         getReverseEngineer().readMetaData();        
+        registerListeners();
     }
 
     /**
@@ -230,6 +244,22 @@ public class Database implements Serializable
         transactionStatementPool = new StatementPool(transactionConnectionPool,checkConnections,checkInterval);
         transactionPreparedStatementPool = new PreparedStatementPool(transactionConnectionPool,checkConnections,checkInterval);
 
+        if (queryStats != null)
+        {
+            statementPool.setQueryStats(queryStats);
+            preparedStatementPool.setQueryStats(queryStats);
+            transactionStatementPool.setQueryStats(queryStats);
+            transactionPreparedStatementPool.setQueryStats(queryStats);
+        }
+
+        if (poolMetrics != null)
+        {
+            for (Map.Entry<String,Pool> entry : getPools().entrySet())
+            {
+                entry.getValue().getStats().setMetrics(entry.getKey(),poolMetrics);
+            }
+        }
+
         if(rootEntity == null)
         {
             Entity root = new Entity(this,"velosurf.root",false,Cache.NO_CACHE);
@@ -332,6 +362,35 @@ public class Database implements Serializable
         this.seed = seed;
     }
 
+    /**
+     * Set the cryptograph used to obfuscate values.
+     * @param cryptograph 'des', 'aes' or the class name of a <code>velosurf.util.Cryptograph</code> implementation
+     */
+    public void setCryptographClass(String cryptograph)
+    {
+        if ("des".equalsIgnoreCase(cryptograph))
+        {
+            cryptographClass = "velosurf.util.DESCryptograph";
+        }
+        else if ("aes".equalsIgnoreCase(cryptograph))
+        {
+            cryptographClass = "velosurf.util.AESCryptograph";
+        }
+        else
+        {
+            cryptographClass = cryptograph;
+        }
+    }
+
+    /**
+     * Set the maximum number of obfuscated values kept in cache.
+     * @param size cache size (0 to disable caching)
+     */
+    public void setObfuscationCacheSize(int size)
+    {
+        obfuscationCacheSize = size;
+    }
+
     /**
      * Set the case policy.
      * Possible values are CASE_SENSITIVE, CASE_LOWERCASE and CASE_UPPERCASE.
@@ -362,6 +421,336 @@ public class Database implements Serializable
         this.checkInterval = checkInterval;
     }
 
+    /**
+     * Set the directory where full and growing caches are saved to and loaded from.
+     * @param directory snapshots directory
+     */
+    public void setSnapshotDirectory(String directory)
+    {
+        snapshotDirectory = new File(directory);
+        if (!snapshotDirectory.isDirectory() && !snapshotDirectory.mkdirs())
+        {
+            Logger.error("cannot create cache snapshots directory "+directory);
+            snapshotDirectory = null;
+        }
+    }
+
+    /**
+     * Get the cache snapshots directory.
+     * @return snapshots directory, or null if caches are not to be saved
+     */
+    public File getSnapshotDirectory()
+    {
+        return snapshotDirectory;
+    }
+
+    /**
+     * Set the interval between two periodic writings of cache snapshots (in milliseconds).
+     * Snapshots are always written when the database is closed.
+     * @param snapshotInterval snapshot interval, or 0 to disable periodic snapshots
+     */
+    public void setSnapshotInterval(long snapshotInterval)
+    {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    /**
+     * Set whether instances fetched during a request are kept in a request identity map.
+     * @param identityMap whether to use identity maps
+     * @see velosurf.cache.IdentityMap
+     */
+    public void setIdentityMap(boolean identityMap)
+    {
+        this.identityMap = identityMap;
+        if (identityMap)
+        {
+            IdentityMap.enable();
+        }
+    }
+
+    /**
+     * Whether instances fetched during a request are kept in a request identity map.
+     * @return whether identity maps are used
+     */
+    public boolean usesIdentityMap()
+    {
+        return identityMap;
+    }
+
+    /**
+     * Set the cache invalidation transport, used to propagate cache invalidations to the other nodes of a cluster.
+     * @param transport transport specification
+     * @see velosurf.cache.InvalidationBus
+     */
+    public void setInvalidationTransport(String transport)
+    {
+        invalidationTransport = transport;
+    }
+
+    /**
+     * Set the delay between two batches of cache invalidations (in milliseconds).
+     * @param delay batch delay
+     */
+    public void setInvalidationDelay(long delay)
+    {
+        invalidationDelay = delay;
+    }
+
+    /**
+     * Get the cache invalidation bus.
+     * @return invalidation bus, or null if invalidations are not propagated
+     */
+    public InvalidationBus getInvalidationBus()
+    {
+        return invalidationBus;
+    }
+
+    /**
+     * Start the cache invalidation bus, if configured.
+     */
+    private void startInvalidationBus()
+    {
+        if (invalidationTransport == null)
+        {
+            return;
+        }
+        try
+        {
+            InvalidationBus bus = new InvalidationBus(InvalidationBus.createTransport(invalidationTransport), new InvalidationBus.Listener()
+                {
+                    public void invalidate(String owner, String key)
+                    {
+                        Entity entity = getEntity(owner);
+                        if (entity != null)
+                        {
+                            entity.invalidateKey(key);
+                        }
+                    }
+                }, invalidationDelay);
+            bus.start();
+            invalidationBus = bus;
+        }
+        catch (Exception e)
+        {
+            Logger.error("could not start cache invalidation bus "+invalidationTransport);
+            Logger.log(e);
+        }
+    }
+
+    /**
+     * Set whether database and entities statistics are registered as JMX MBeans.
+     * @param jmx whether to register MBeans
+     */
+    public void setJMX(boolean jmx)
+    {
+        this.jmx = jmx;
+    }
+
+    /**
+     * Set the pool metrics receiver.
+     * @param className class name of a {@link PoolMetrics} implementation
+     */
+    public void setPoolMetrics(String className)
+    {
+        try
+        {
+            poolMetrics = (PoolMetrics)Class.forName(className).getDeclaredConstructor().newInstance();
+        }
+        catch (Exception e)
+        {
+            Logger.error("could not instantiate pool metrics class "+className);
+            Logger.log(e);
+        }
+    }
+
+    /**
+     * Enable per-query execution statistics and the slow query log.
+     * @param size maximum number of tracked queries
+     * @param slowQueryThreshold slow query threshold in milliseconds, or 0 to disable the slow query log
+     */
+    public void setQueryStats(int size, long slowQueryThreshold)
+    {
+        queryStats = new QueryStats(size,slowQueryThreshold);
+    }
+
+    /**
+     * Get the per-query execution statistics.
+     * @return query statistics, or null if not enabled
+     */
+    public QueryStats getQueryStats()
+    {
+        return queryStats;
+    }
+
+    /**
+     * Get the pools of this database, by name.
+     * @return pools map
+     */
+    public Map<String,Pool> getPools()
+    {
+        Map<String,Pool> pools = new LinkedHashMap<String,Pool>();
+        pools.put("connections",connectionPool);
+        pools.put("transaction-connections",transactionConnectionPool);
+        pools.put("statements",statementPool);
+        pools.put("transaction-statements",transactionStatementPool);
+        pools.put("prepared-statements",preparedStatementPool);
+        pools.put("transaction-prepared-statements",transactionPreparedStatementPool);
+        return pools;
+    }
+
+    /**
+     * Get the statistics of this database.
+     * @return database statistics
+     */
+    public DatabaseStats getStats()
+    {
+        return stats;
+    }
+
+    /**
+     * Register the database and entities MBeans in the <code>velosurf</code> JMX domain, if configured.
+     */
+    private void registerMBeans()
+    {
+        if (!jmx)
+        {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        /* the url may contain credentials */
+        String name = ObjectName.quote(getSanitizedURL());
+        try
+        {
+            /* several instances may share the same url */
+            ObjectName objectName = new ObjectName("velosurf:type=Database,name="+name);
+            for (int n = 2; server.isRegistered(objectName); ++n)
+            {
+                name = ObjectName.quote(getSanitizedURL()+"#"+n);
+                objectName = new ObjectName("velosurf:type=Database,name="+name);
+            }
+            server.registerMBean(stats,objectName);
+            mbeans.add(objectName);
+            if (queryStats != null)
+            {
+                objectName = new ObjectName("velosurf:type=QueryStats,database="+name);
+                server.registerMBean(queryStats,objectName);
+                mbeans.add(objectName);
+            }
+            for (Map.Entry<String,Pool> entry : getPools().entrySet())
+            {
+                objectName = new ObjectName("velosurf:type=Pool,database="+name+",name="+entry.getKey());
+                server.registerMBean(entry.getValue().getStats(),objectName);
+                mbeans.add(objectName);
+            }
+            for (Entity entity : entities.values())
+            {
+                objectName = new ObjectName("velosurf:type=Entity,database="+name+",name="+ObjectName.quote(adaptContextCase(entity.getName())));
+                server.registerMBean(entity.getStats(),objectName);
+                mbeans.add(objectName);
+            }
+        }
+        catch (JMException jme)
+        {
+            Logger.error("could not register JMX MBeans for database "+url);
+            Logger.log(jme);
+        }
+    }
+
+    /**
+     * Unregister the MBeans of this database.
+     */
+    private void unregisterMBeans()
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : mbeans)
+        {
+            try
+            {
+                server.unregisterMBean(objectName);
+            }
+            catch (JMException jme)
+            {
+                Logger.log(jme);
+            }
+        }
+        mbeans.clear();
+    }
+
+    /**
+     * Write cache snapshots of all entities.
+     */
+    public void writeSnapshots()
+    {
+        if (snapshotDirectory == null)
+        {
+            return;
+        }
+        for (Entity entity : entities.values())
+        {
+            entity.writeSnapshot();
+        }
+    }
+
+    /**
+     * Register a listener on the events of an entity. During configuration, the registration is
+     * deferred until all entities are known.
+     *
+     * @param name entity name
+     * @param listener listener
+     */
+    public synchronized void addEntityListener(String name, EntityListener listener)
+    {
+        if (pendingListeners != null)
+        {
+            pendingListeners.add(new AbstractMap.SimpleEntry<String, EntityListener>(name, listener));
+            return;
+        }
+        Entity entity = getEntity(name);
+        if (entity == null)
+        {
+            Logger.error("cannot listen to the events of unknown entity {}", name);
+        }
+        else
+        {
+            entity.addListener(listener);
+        }
+    }
+
+    /**
+     * Register the listeners added during configuration.
+     */
+    private synchronized void registerListeners()
+    {
+        List<Map.Entry<String, EntityListener>> pending = pendingListeners;
+        pendingListeners = null;
+        if (pending != null)
+        {
+            for (Map.Entry<String, EntityListener> entry : pending)
+            {
+                addEntityListener(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Start periodic cache snapshots, if configured.
+     */
+    private void scheduleSnapshots()
+    {
+        if (snapshotDirectory == null || snapshotInterval <= 0)
+        {
+            return;
+        }
+        snapshotTimer = new Timer("velosurf cache snapshots", true);
+        snapshotTimer.schedule(new TimerTask()
+            {
+                public void run()
+                {
+                    writeSnapshots();
+                }
+            }, snapshotInterval, snapshotInterval);
+    }
+
     /**
      * oad the appropriate driver.
      */
@@ -434,8 +823,12 @@ Logger.debug("setting driver manager log");
         }
         try
         {
-            cryptograph = (Cryptograph)Class.forName("velosurf.util.DESCryptograph").getDeclaredConstructor(new Class[] {}).newInstance(new Object[] {});
+            cryptograph = (Cryptograph)Class.forName(cryptographClass).getDeclaredConstructor(new Class[] {}).newInstance(new Object[] {});
             cryptograph.init(seed);
+            if (obfuscationCacheSize > 0)
+            {
+                obfuscationCache = new ObfuscationCache(obfuscationCacheSize);
+            }
         }
         catch(Exception e)
         {
@@ -613,8 +1006,34 @@ Logger.debug("setting driver manager log");
      *
      * @exception SQLException thrown by the database engine
      */
-    public void close() throws SQLException
+    public synchronized void close() throws SQLException
     {
+        if (connectionPool == null)
+        {
+            /* already closed */
+            return;
+        }
+        if (snapshotTimer != null)
+        {
+            snapshotTimer.cancel();
+            snapshotTimer = null;
+        }
+        if (invalidationBus != null)
+        {
+            invalidationBus.stop();
+            invalidationBus = null;
+        }
+        /* unregistered first, so that a redeployed webapp doesn't find them, whatever happens next */
+        unregisterMBeans();
+        try
+        {
+            writeSnapshots();
+        }
+        catch (RuntimeException re)
+        {
+            Logger.error("could not write cache snapshots");
+            Logger.log(re);
+        }
         connectionPool.clear();
         connectionPool = null;
         transactionConnectionPool.clear();
@@ -639,6 +1058,18 @@ Logger.debug("setting driver manager log");
         int [] preparedStats = preparedStatementPool.getUsageStats();
         System.out.println("\tsimple statements   - " + normalStats[0] + " free statements out of " + normalStats[1]);
         System.out.println("\tprepared statements - "+preparedStats[0]+" free statements out of "+preparedStats[1]);
+        System.out.println("\tcaches              - "+stats.getCachedInstances()+" cached instances, hit ratio "+stats.getCacheHitRatio());
+        for (Entity entity : entities.values())
+        {
+            EntityStats entityStats = entity.getStats();
+            if (!"none".equals(entityStats.getCachingMethod()))
+            {
+                System.out.println("\t\t"+adaptContextCase(entity.getName())+" ("+entityStats.getCachingMethod()+") - "+entityStats.getCacheSize()+" instances, "
+                    +entityStats.getHits()+" hits, "+entityStats.getMisses()+" misses, "+entityStats.getPuts()+" puts, "
+                    +entityStats.getEvictions()+" evictions, "+entityStats.getInvalidations()+" invalidations, loaded in "
+                    +entityStats.getLoadTime()+" ms, ~"+entityStats.getEstimatedMemory()+" bytes");
+            }
+        }
     }
 
     /**
@@ -840,13 +1271,24 @@ Logger.debug("setting driver manager log");
         {
             return null;
         }
-        String encoded = cryptograph.encrypt(value.toString());
+        String clear = value.toString();
+        String encoded = obfuscationCache == null ? null : obfuscationCache.getObfuscated(clear);
+        if (encoded != null)
+        {
+            return encoded;
+        }
+
+        encoded = cryptograph.encrypt(clear);
 
         // we want to avoid some characters fot HTTP GET
         encoded = encoded.replace('=','$');
         encoded = encoded.replace('/','_');
         encoded = encoded.replace('+','-');
 
+        if (obfuscationCache != null)
+        {
+            obfuscationCache.put(clear, encoded);
+        }
         return encoded;
     }
 
@@ -863,10 +1305,15 @@ Logger.debug("setting driver manager log");
             return null;
         }
 
-        String ret = value.toString();
+        String encoded = value.toString();
+        String ret = obfuscationCache == null ? null : obfuscationCache.getClear(encoded);
+        if (ret != null)
+        {
+            return ret;
+        }
 
         // recover exact encoded string
-        ret = ret.replace('$','=');
+        ret = encoded.replace('$','=');
         ret = ret.replace('_','/');
         ret = ret.replace('-','+');
 
@@ -878,6 +1325,10 @@ Logger.debug("setting driver manager log");
             return null;
         }
 
+        if (obfuscationCache != null)
+        {
+            obfuscationCache.put(ret, encoded);
+        }
         return ret;
     }
 
@@ -909,6 +1360,34 @@ Logger.debug("setting driver manager log");
         return Integer.valueOf((user/*+url*/+schema).hashCode());
     }
 
+    /**
+     * Get the database URL.
+     * @return the database URL
+     */
+    public String getURL()
+    {
+        return url;
+    }
+
+    /**
+     * Get the database URL without the credentials it may contain, for display purposes.
+     * @return the sanitized database URL
+     */
+    public String getSanitizedURL()
+    {
+        if (url == null)
+        {
+            return null;
+        }
+        return url
+            /* user=...&password=... or ;password=... parameters */
+            .replaceAll("(?i)((?:user|username|password|passwd|pwd)=)[^;&]*", "$1***")
+            /* //user:password@host */
+            .replaceAll("//[^/@]*@", "//***@")
+            /* Oracle jdbc:oracle:thin:user/password@host */
+            .replaceAll("(?i)(:thin:)[^@/:]+/[^@]*@", "$1***@");
+    }
+
     /**
      * Get the schema.
      * @return the schema
@@ -1008,6 +1487,66 @@ Logger.debug("setting driver manager log");
      */
     private int caching = Cache.NO_CACHE;
 
+    /**
+     * Whether to use request identity maps.
+     */
+    private boolean identityMap = false;
+
+    /**
+     * Cache snapshots directory.
+     */
+    private File snapshotDirectory = null;
+
+    /**
+     * Cache snapshots interval.
+     */
+    private long snapshotInterval = 0;
+
+    /**
+     * Cache snapshots timer.
+     */
+    private transient Timer snapshotTimer = null;
+
+    /**
+     * Cache invalidation transport specification.
+     */
+    private String invalidationTransport = null;
+
+    /**
+     * Delay between two batches of cache invalidations.
+     */
+    private long invalidationDelay = InvalidationBus.DEFAULT_BATCH_DELAY;
+
+    /**
+     * Cache invalidation bus.
+     */
+    private transient InvalidationBus invalidationBus = null;
+
+    /**
+     * Whether to register JMX MBeans.
+     */
+    private boolean jmx = false;
+
+    /**
+     * Database statistics.
+     */
+    private transient DatabaseStats stats = new DatabaseStats(this);
+
+    /**
+     * Query statistics.
+     */
+    private transient QueryStats queryStats = null;
+
+    /**
+     * Pool metrics receiver.
+     */
+    private transient PoolMetrics poolMetrics = null;
+
+    /**
+     * Registered MBeans.
+     */
+    private transient List<ObjectName> mbeans = new ArrayList<ObjectName>();
+
     /**
      * Map name->entity.
      */
@@ -1033,6 +1572,21 @@ Logger.debug("setting driver manager log");
      */
     private Cryptograph cryptograph = null;
 
+    /**
+     * Cryptograph class.
+     */
+    private String cryptographClass = "velosurf.util.DESCryptograph";
+
+    /**
+     * Maximum number of obfuscated values kept in cache.
+     */
+    private int obfuscationCacheSize = ObfuscationCache.DEFAULT_SIZE;
+
+    /**
+     * Cache of recently obfuscated values.
+     */
+    private ObfuscationCache obfuscationCache = null;
+
     /**
      * Conversion handler
      */
@@ -1195,6 +1749,11 @@ Logger.debug("setting driver manager log");
 
     protected transient EventsQueue eventsQueue = null;
 
+    /**
+     * Entity listeners added during configuration, registered once all entities are known.
+     */
+    private transient List<Map.Entry<String, EntityListener>> pendingListeners = new ArrayList<Map.Entry<String, EntityListener>>();
+
     public synchronized EventsQueue getEventsQueue()
     {
         if (eventsQueue == null) eventsQueue = new EventsQueue();
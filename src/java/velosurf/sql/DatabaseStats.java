@@ -0,0 +1,123 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.sql;
+
+import velosurf.model.Entity;
+
+/**
+ * Statistics of a database, registered as a JMX MBean when the <code>jmx</code> attribute
+ * of the &lt;<code>database</code>&gt; tag is set.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class DatabaseStats implements DatabaseStatsMBean
+{
+    /**
+     * Constructor.
+     * @param db database
+     */
+    public DatabaseStats(Database db)
+    {
+        this.db = db;
+    }
+
+    public String getURL()
+    {
+        return db.getSanitizedURL();
+    }
+
+    public int getEntityCount()
+    {
+        return db.getEntities().size();
+    }
+
+    public int getCachedInstances()
+    {
+        int total = 0;
+        for (Entity entity : db.getEntities().values())
+        {
+            total += entity.getStats().getCacheSize();
+        }
+        return total;
+    }
+
+    public long getCacheHits()
+    {
+        long total = 0;
+        for (Entity entity : db.getEntities().values())
+        {
+            total += entity.getStats().getHits();
+        }
+        return total;
+    }
+
+    public long getCacheMisses()
+    {
+        long total = 0;
+        for (Entity entity : db.getEntities().values())
+        {
+            total += entity.getStats().getMisses();
+        }
+        return total;
+    }
+
+    public double getCacheHitRatio()
+    {
+        long hits = getCacheHits();
+        long total = hits + getCacheMisses();
+        return total == 0 ? 0.0 : (double)hits / total;
+    }
+
+    public long getCacheEstimatedMemory()
+    {
+        long total = 0;
+        for (Entity entity : db.getEntities().values())
+        {
+            total += entity.getStats().getEstimatedMemory();
+        }
+        return total;
+    }
+
+    public void clearCaches()
+    {
+        for (Entity entity : db.getEntities().values())
+        {
+            entity.getStats().clearCache();
+        }
+    }
+
+    public void resetStats()
+    {
+        for (Entity entity : db.getEntities().values())
+        {
+            entity.getStats().resetStats();
+        }
+    }
+
+    public void writeSnapshots()
+    {
+        db.writeSnapshots();
+    }
+
+    /**
+     * Database.
+     */
+    private Database db;
+}
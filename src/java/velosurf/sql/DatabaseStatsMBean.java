@@ -0,0 +1,85 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.sql;
+
+/**
+ * JMX management interface exposing the statistics of a database.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public interface DatabaseStatsMBean
+{
+    /**
+     * Getter for the database url, without credentials.
+     * @return database url
+     */
+    public String getURL();
+
+    /**
+     * Getter for the number of entities.
+     * @return number of entities
+     */
+    public int getEntityCount();
+
+    /**
+     * Getter for the total number of cached instances.
+     * @return number of cached instances
+     */
+    public int getCachedInstances();
+
+    /**
+     * Getter for the total number of cache hits.
+     * @return number of hits
+     */
+    public long getCacheHits();
+
+    /**
+     * Getter for the total number of cache misses.
+     * @return number of misses
+     */
+    public long getCacheMisses();
+
+    /**
+     * Getter for the global cache hit ratio.
+     * @return hit ratio
+     */
+    public double getCacheHitRatio();
+
+    /**
+     * Getter for the estimated memory used by all caches.
+     * @return estimated memory, in bytes
+     */
+    public long getCacheEstimatedMemory();
+
+    /**
+     * Clear the caches of all entities.
+     */
+    public void clearCaches();
+
+    /**
+     * Reset the cache counters of all entities.
+     */
+    public void resetStats();
+
+    /**
+     * Write cache snapshots of all entities.
+     */
+    public void writeSnapshots();
+}
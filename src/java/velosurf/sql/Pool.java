@@ -19,11 +19,34 @@ package velosurf.sql;
 import java.io.Serializable;
 
 /**
- * This interface represents a generic pool of objects - no real need for now.
+ * This interface represents a generic pool of objects.
  *
  *  @author <a href='mailto:claude.brisson@gmail.com'>Claude Brisson</a>
  *
  */
 public interface Pool extends Serializable
 {
+    /**
+     * Get the number of pooled objects currently in use.
+     * @return number of active objects
+     */
+    public int getActiveCount();
+
+    /**
+     * Get the total number of pooled objects.
+     * @return number of objects
+     */
+    public int getTotalCount();
+
+    /**
+     * Get the number of threads currently waiting for (or performing) a checkout.
+     * @return number of waiting threads
+     */
+    public int getWaitingCount();
+
+    /**
+     * Get the usage statistics of this pool.
+     * @return pool statistics
+     */
+    public PoolStats getStats();
 }
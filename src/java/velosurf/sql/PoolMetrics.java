@@ -0,0 +1,59 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.sql;
+
+/**
+ * <p>Receiver of pool events, to plug Velosurf pools into an external metrics library.</p>
+ *
+ * <p>An implementation can be given by class name with the <code>pool-metrics</code> attribute of the
+ * &lt;<code>database</code>&gt; tag; it must have a public no-argument constructor. Methods are called
+ * from the threads using the pools, so implementations must be thread-safe and fast.</p>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public interface PoolMetrics
+{
+    /**
+     * Register the gauges of a pool.
+     * @param name pool name
+     * @param pool pool, whose gauges can be polled
+     */
+    public void register(String name, Pool pool);
+
+    /**
+     * A pooled object has been checked out.
+     * @param name pool name
+     * @param waitNanos time spent waiting for the checkout, in nanoseconds
+     */
+    public void checkout(String name, long waitNanos);
+
+    /**
+     * A pooled object has been released.
+     * @param name pool name
+     * @param holdNanos time during which the object has been in use, in nanoseconds
+     */
+    public void release(String name, long holdNanos);
+
+    /**
+     * A pooled object has been created.
+     * @param name pool name
+     */
+    public void creation(String name);
+}
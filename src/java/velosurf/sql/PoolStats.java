@@ -0,0 +1,190 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.sql;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import velosurf.util.Histogram;
+
+/**
+ * Usage statistics of a pool, registered as a JMX MBean when the <code>jmx</code> attribute
+ * of the &lt;<code>database</code>&gt; tag is set. Events are forwarded to the {@link PoolMetrics}
+ * implementation given with the <code>pool-metrics</code> attribute, if any.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class PoolStats implements PoolStatsMBean
+{
+    /**
+     * Constructor.
+     * @param pool pool
+     */
+    public PoolStats(Pool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Set the external metrics receiver.
+     * @param name pool name
+     * @param metrics metrics receiver
+     */
+    public void setMetrics(String name, PoolMetrics metrics)
+    {
+        this.name = name;
+        this.metrics = metrics;
+        metrics.register(name, pool);
+    }
+
+    /**
+     * Record a checkout.
+     * @param waitNanos wait time, in nanoseconds
+     */
+    public void checkout(long waitNanos)
+    {
+        checkoutWait.record(waitNanos);
+        if (metrics != null)
+        {
+            metrics.checkout(name, waitNanos);
+        }
+    }
+
+    /**
+     * Record a release.
+     * @param holdNanos hold time, in nanoseconds
+     */
+    public void release(long holdNanos)
+    {
+        holdTime.record(holdNanos);
+        if (metrics != null)
+        {
+            metrics.release(name, holdNanos);
+        }
+    }
+
+    /**
+     * Record a creation.
+     */
+    public void creation()
+    {
+        creations.increment();
+        if (metrics != null)
+        {
+            metrics.creation(name);
+        }
+    }
+
+    public int getActive()
+    {
+        return pool.getActiveCount();
+    }
+
+    public int getIdle()
+    {
+        return Math.max(0, pool.getTotalCount() - pool.getActiveCount());
+    }
+
+    public int getTotal()
+    {
+        return pool.getTotalCount();
+    }
+
+    public int getWaiting()
+    {
+        return pool.getWaitingCount();
+    }
+
+    public long getCheckouts()
+    {
+        return checkoutWait.getCount();
+    }
+
+    public long getCreations()
+    {
+        return creations.sum();
+    }
+
+    public double getCheckoutWaitMean()
+    {
+        return checkoutWait.getMean();
+    }
+
+    public double getCheckoutWait99thPercentile()
+    {
+        return checkoutWait.getPercentile(99);
+    }
+
+    public double getCheckoutWaitMax()
+    {
+        return checkoutWait.getMax();
+    }
+
+    public double getHoldTimeMean()
+    {
+        return holdTime.getMean();
+    }
+
+    public double getHoldTime99thPercentile()
+    {
+        return holdTime.getPercentile(99);
+    }
+
+    public double getHoldTimeMax()
+    {
+        return holdTime.getMax();
+    }
+
+    public void resetStats()
+    {
+        checkoutWait.reset();
+        holdTime.reset();
+        creations.reset();
+    }
+
+    /**
+     * Pool.
+     */
+    private Pool pool;
+
+    /**
+     * Pool name, for the external metrics receiver.
+     */
+    private String name = null;
+
+    /**
+     * External metrics receiver.
+     */
+    private PoolMetrics metrics = null;
+
+    /**
+     * Checkout wait times.
+     */
+    private Histogram checkoutWait = new Histogram();
+
+    /**
+     * Hold times.
+     */
+    private Histogram holdTime = new Histogram();
+
+    /**
+     * Number of created objects.
+     */
+    private LongAdder creations = new LongAdder();
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.sql;
+
+/**
+ * JMX management interface exposing the statistics of a pool.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public interface PoolStatsMBean
+{
+    /**
+     * Getter for the number of pooled objects in use.
+     * @return number of active objects
+     */
+    public int getActive();
+
+    /**
+     * Getter for the number of idle pooled objects.
+     * @return number of idle objects
+     */
+    public int getIdle();
+
+    /**
+     * Getter for the total number of pooled objects.
+     * @return number of objects
+     */
+    public int getTotal();
+
+    /**
+     * Getter for the number of threads waiting for (or performing) a checkout.
+     * @return number of waiting threads
+     */
+    public int getWaiting();
+
+    /**
+     * Getter for the number of checkouts.
+     * @return number of checkouts
+     */
+    public long getCheckouts();
+
+    /**
+     * Getter for the number of created objects.
+     * @return number of creations
+     */
+    public long getCreations();
+
+    /**
+     * Getter for the mean checkout wait time.
+     * @return mean wait time, in milliseconds
+     */
+    public double getCheckoutWaitMean();
+
+    /**
+     * Getter for the 99th percentile of checkout wait times.
+     * @return wait time percentile, in milliseconds
+     */
+    public double getCheckoutWait99thPercentile();
+
+    /**
+     * Getter for the max checkout wait time.
+     * @return max wait time, in milliseconds
+     */
+    public double getCheckoutWaitMax();
+
+    /**
+     * Getter for the mean hold time.
+     * @return mean hold time, in milliseconds
+     */
+    public double getHoldTimeMean();
+
+    /**
+     * Getter for the 99th percentile of hold times.
+     * @return hold time percentile, in milliseconds
+     */
+    public double getHoldTime99thPercentile();
+
+    /**
+     * Getter for the max hold time.
+     * @return max hold time, in milliseconds
+     */
+    public double getHoldTimeMax();
+
+    /**
+     * Reset the counters.
+     */
+    public void resetStats();
+}
@@ -34,7 +34,6 @@ import velosurf.model.Entity;
 import velosurf.util.Logger;
 import velosurf.util.SlotMap;
 import velosurf.util.SlotTreeMap;
-import velosurf.util.StringLists;
 
 /**
  * this class encapsulates a jdbc PreparedStatement.
@@ -63,9 +62,22 @@ public class PooledPreparedStatement extends PooledStatement implements RowHandl
      * @param preparedStatement wrapped prepared statement
      */
     public PooledPreparedStatement(ConnectionWrapper connection, PreparedStatement preparedStatement)
+    {
+        this(connection, preparedStatement, null);
+    }
+
+    /**
+     * build a new PooledPreparedStatement.
+     *
+     * @param connection database connection
+     * @param preparedStatement wrapped prepared statement
+     * @param query SQL query of the prepared statement
+     */
+    public PooledPreparedStatement(ConnectionWrapper connection, PreparedStatement preparedStatement, String query)
     {
         this.connection = connection;
         this.preparedStatement = preparedStatement;
+        this.query = query;
     }
 
     /**
@@ -105,19 +117,23 @@ public class PooledPreparedStatement extends PooledStatement implements RowHandl
 
         try
         {
-            Logger.trace("fetch-params=" + StringLists.join(params, ","));
+            Logger.trace("fetch-params={}", params);
             setParams(params);
 
             boolean hasNext = false;
+            int rows = -1;
+            long start = System.nanoTime();
 
             try
             {
                 connection.enterBusyState();
                 resultSet = preparedStatement.executeQuery();
                 hasNext = resultSet.next();
+                rows = hasNext ? 1 : 0;
             }
             finally
             {
+                recordExecution(query, start, rows, params, resultEntity);
                 connection.leaveBusyState();
             }
             entity = resultEntity;
@@ -203,20 +219,23 @@ public class PooledPreparedStatement extends PooledStatement implements RowHandl
     public synchronized RowIterator query(List params, Entity resultEntity) throws SQLException
     {
         RowIterator result = null;
+        long start = System.nanoTime();
 
         try
         {
-            Logger.trace("query-params=" + StringLists.join(params, ","));
+            Logger.trace("query-params={}", params);
             if(params != null)
             {
                 setParams(params);
             }
             connection.enterBusyState();
             result = new RowIterator(this, preparedStatement.executeQuery(), resultEntity);
+            countRows(query);
             return result;
         }
         finally
         {
+            recordExecution(query, start, result == null ? -1 : 0, params, resultEntity);
             connection.leaveBusyState();
             if(result == null)
             {
@@ -235,10 +254,12 @@ public class PooledPreparedStatement extends PooledStatement implements RowHandl
     public synchronized Serializable evaluate(List params) throws SQLException
     {
         Serializable value = null;
+        int rows = -1;
+        long start = System.nanoTime();
 
         try
         {
-            Logger.trace("evaluate-params=" + StringLists.join(params, ","));
+            Logger.trace("evaluate-params={}", params);
             if(params != null)
             {
                 setParams(params);
@@ -248,6 +269,8 @@ public class PooledPreparedStatement extends PooledStatement implements RowHandl
 
             boolean hasNext = resultSet.next();
 
+            rows = hasNext ? 1 : 0;
+
             if(hasNext)
             {
               value = (Serializable)resultSet.getObject(1);
@@ -259,6 +282,7 @@ public class PooledPreparedStatement extends PooledStatement implements RowHandl
         }
         finally
         {
+            recordExecution(query, start, rows, params, null);
             connection.leaveBusyState();
             notifyOver();
         }
@@ -274,18 +298,20 @@ public class PooledPreparedStatement extends PooledStatement implements RowHandl
      */
     public synchronized int update(List params) throws SQLException
     {
+        int rows = -1;
+        long start = System.nanoTime();
+
         try
         {
-            Logger.trace("update-params=" + StringLists.join(params, ","));
+            Logger.trace("update-params={}", params);
             setParams(params);
             connection.enterBusyState();
-
-            int rows = preparedStatement.executeUpdate();
-
+            rows = preparedStatement.executeUpdate();
             return rows;
         }
         finally
         {
+            recordExecution(query, start, rows, params, null);
             connection.leaveBusyState();
             notifyOver();
         }
@@ -381,6 +407,11 @@ public class PooledPreparedStatement extends PooledStatement implements RowHandl
      */
     private transient PreparedStatement preparedStatement = null;
 
+    /**
+     * SQL query of the prepared statement.
+     */
+    private String query = null;
+
     /**
      * the resulting entity.
      */
@@ -87,16 +87,19 @@ public class PooledSimpleStatement extends PooledStatement
     public synchronized RowIterator query(String query, Entity resultEntity) throws SQLException
     {
         RowIterator result = null;
+        long start = System.nanoTime();
 
         try
         {
-            Logger.trace("query-" + query);
+            Logger.trace("query-{}", query);
             connection.enterBusyState();
             result = new RowIterator(this, statement.executeQuery(query), resultEntity);
+            countRows(query);
             return result;
         }
         finally
         {
+            recordExecution(query, start, result == null ? -1 : 0, null, resultEntity);
             connection.leaveBusyState();
             if(result == null)
             {
@@ -129,18 +132,22 @@ public class PooledSimpleStatement extends PooledStatement
     {
         try
         {
-            Logger.trace("fetch-" + query);
+            Logger.trace("fetch-{}", query);
             connection.enterBusyState();
 
             boolean hasNext = false;
+            int rows = -1;
+            long start = System.nanoTime();
 
             try
             {
                 resultSet = statement.executeQuery(query);
                 hasNext = resultSet.next();
+                rows = hasNext ? 1 : 0;
             }
             finally
             {
+                recordExecution(query, start, rows, null, resultEntity);
                 connection.leaveBusyState();
             }
 
@@ -206,9 +213,11 @@ public class PooledSimpleStatement extends PooledStatement
      */
     public synchronized Serializable evaluate(String query) throws SQLException
     {
-        Logger.trace("evaluate-" + query);
+        Logger.trace("evaluate-{}", query);
 
         Object result = null;
+        int rows = -1;
+        long start = System.nanoTime();
 
         try
         {
@@ -217,6 +226,7 @@ public class PooledSimpleStatement extends PooledStatement
 
             boolean hasNext = resultSet.next();
 
+            rows = hasNext ? 1 : 0;
             if(hasNext)
             {
                 result = resultSet.getObject(1);
@@ -224,6 +234,7 @@ public class PooledSimpleStatement extends PooledStatement
         }
         finally
         {
+            recordExecution(query, start, rows, null, null);
             connection.leaveBusyState();
             notifyOver();
         }
@@ -239,17 +250,20 @@ public class PooledSimpleStatement extends PooledStatement
      */
     public synchronized int update(String query) throws SQLException
     {
+        int result = -1;
+        long start = System.nanoTime();
+
         try
         {
-            Logger.trace("update-" + query);
+            Logger.trace("update-{}", query);
             connection.enterBusyState();
 
-            int result = statement.executeUpdate(query);
-
+            result = statement.executeUpdate(query);
             return result;
         }
         finally
         {
+            recordExecution(query, start, result, null, null);
             connection.leaveBusyState();
             notifyOver();
         }
@@ -264,17 +278,22 @@ public class PooledSimpleStatement extends PooledStatement
      */
     public synchronized int execute(String query) throws SQLException
     {
+        int rows = -1;
+        long start = System.nanoTime();
+
         try
         {
-            Logger.trace("update-" + query);
+            Logger.trace("update-{}", query);
             connection.enterBusyState();
 
 						if(statement.execute(query)) throw new SQLException("execute() method only expect methods that returns a number of rows");
             int ret = statement.getUpdateCount();
+            rows = Math.max(ret, 0);
 						return ret == -1 ? 0 : ret;
         }
         finally
         {
+            recordExecution(query, start, rows, null, null);
             connection.leaveBusyState();
             notifyOver();
         }
@@ -22,6 +22,7 @@ import java.io.Serializable;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
+import velosurf.model.Entity;
 
 //CB TODO useOver is deprecated - update doc
 
@@ -68,6 +69,7 @@ public abstract class PooledStatement implements RowHandler, Serializable
     public void notifyInUse()
     {
         inUse = true;
+        inUseSince = System.nanoTime();
         resetTagTime();
     }
 
@@ -86,9 +88,80 @@ public abstract class PooledStatement implements RowHandler, Serializable
         }
         catch(SQLException sqle) {}    // ignore
         resultSet = null;
+        if(iteratedQuery != null)
+        {
+            if(queryStats != null)
+            {
+                queryStats.addRows(iteratedQuery, iteratedRows);
+            }
+            iteratedQuery = null;
+        }
+        if(inUse && poolStats != null)
+        {
+            poolStats.release(System.nanoTime() - inUseSince);
+        }
         inUse = false;
     }
 
+    /**
+     * set the statistics of the pool this statement belongs to.
+     *
+     * @param poolStats pool statistics
+     */
+    public void setPoolStats(PoolStats poolStats)
+    {
+        this.poolStats = poolStats;
+    }
+
+    /**
+     * set the query statistics to update.
+     *
+     * @param queryStats query statistics
+     */
+    public void setQueryStats(QueryStats queryStats)
+    {
+        this.queryStats = queryStats;
+    }
+
+    /**
+     * record a query execution in the query statistics, if any.
+     *
+     * @param query SQL query
+     * @param start execution start, as given by System.nanoTime()
+     * @param rows returned or affected rows, or -1 if the execution failed
+     * @param params bound parameters, if any
+     * @param entity resulting entity, if any
+     */
+    protected void recordExecution(String query, long start, int rows, List params, Entity entity)
+    {
+        if(queryStats != null)
+        {
+            queryStats.record(query, System.nanoTime() - start, Math.max(rows, 0), params, entity, rows < 0);
+        }
+    }
+
+    /**
+     * start counting the rows read from the result set of a query, until this statement is released.
+     *
+     * @param query SQL query
+     */
+    protected void countRows(String query)
+    {
+        if(queryStats != null)
+        {
+            iteratedQuery = query;
+            iteratedRows = 0;
+        }
+    }
+
+    /**
+     * notify this statement that a row has been read from its result set.
+     */
+    public void rowFetched()
+    {
+        iteratedRows++;
+    }
+
     /**
      * check whether this pooled object is in use.
      *
@@ -149,6 +222,31 @@ public abstract class PooledStatement implements RowHandler, Serializable
      */
     private boolean inUse = false;
 
+    /**
+     * start of the current use.
+     */
+    private long inUseSince = 0;
+
+    /**
+     * statistics of the pool this statement belongs to.
+     */
+    private transient PoolStats poolStats = null;
+
+    /**
+     * query statistics.
+     */
+    private transient QueryStats queryStats = null;
+
+    /**
+     * query whose result set is being iterated.
+     */
+    private String iteratedQuery = null;
+
+    /**
+     * number of rows read from the iterated result set.
+     */
+    private int iteratedRows = 0;
+
     /**
      * database connection.
      */
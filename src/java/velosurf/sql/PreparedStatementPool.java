@@ -24,6 +24,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import velosurf.util.HashMultiMap;
 import velosurf.util.Logger;
 
@@ -57,9 +58,32 @@ public class PreparedStatementPool implements /* Runnable, */ Pool
      * @exception SQLException thrown by the database engine
      * @return a valid statement
      */
-    public synchronized PooledPreparedStatement getPreparedStatement(String query, boolean update) throws SQLException
+    public PooledPreparedStatement getPreparedStatement(String query, boolean update) throws SQLException
     {
-        Logger.trace("prepare-" + query);
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        try
+        {
+            PooledPreparedStatement statement = checkoutPreparedStatement(query, update);
+            stats.checkout(System.nanoTime() - start);
+            return statement;
+        }
+        finally
+        {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * find a free PooledPreparedStatement associated with this query, or create a new one.
+     *
+     * @param query an SQL query
+     * @exception SQLException thrown by the database engine
+     * @return a valid statement
+     */
+    private synchronized PooledPreparedStatement checkoutPreparedStatement(String query, boolean update) throws SQLException
+    {
+        Logger.trace("prepare-{}", query);
 
         PooledPreparedStatement statement = null;
         ConnectionWrapper connection = null;
@@ -101,7 +125,11 @@ public class PreparedStatementPool implements /* Runnable, */ Pool
                             query, connection.getDriver().getUsesGeneratedKeys() ?
                                     Statement.RETURN_GENERATED_KEYS :
                                     Statement.NO_GENERATED_KEYS) :
-                    connection.prepareStatement(query, connection.getDriver().getResultSetType(), ResultSet.CONCUR_READ_ONLY));
+                    connection.prepareStatement(query, connection.getDriver().getResultSetType(), ResultSet.CONCUR_READ_ONLY),
+                query);
+        statement.setPoolStats(stats);
+        statement.setQueryStats(queryStats);
+        stats.creation();
         statementsMap.put(query, statement);
         statement.notifyInUse();
         return statement;
@@ -191,11 +219,11 @@ public class PreparedStatementPool implements /* Runnable, */ Pool
     /**
      * debug - get usage statistics.
      *
-     * @return an int array : [nb of statements in use , total nb of statements]
+     * @return an int array : [nb of free statements , total nb of statements]
      */
-    public int[] getUsageStats()
+    public synchronized int[] getUsageStats()
     {
-        int[] stats = new int[] { 0, 0 };
+        int[] usage = new int[] { 0, 0 };
 
         for(Iterator it = statementsMap.keySet().iterator(); it.hasNext(); )
         {
@@ -203,11 +231,77 @@ public class PreparedStatementPool implements /* Runnable, */ Pool
             {
                 if(!((PooledPreparedStatement)jt.next()).isInUse())
                 {
-                    stats[0]++;
+                    usage[0]++;
+                }
+            }
+        }
+        usage[1] = getTotalCount();
+        return usage;
+    }
+
+    /**
+     * get the number of statements in use.
+     *
+     * @return number of statements in use
+     */
+    public synchronized int getActiveCount()
+    {
+        int active = 0;
+        for(Iterator it = statementsMap.keySet().iterator(); it.hasNext(); )
+        {
+            for(Iterator jt = statementsMap.get(it.next()).iterator(); jt.hasNext(); )
+            {
+                if(((PooledPreparedStatement)jt.next()).isInUse())
+                {
+                    active++;
                 }
             }
         }
-        stats[1] = statementsMap.size();
+        return active;
+    }
+
+    /**
+     * get the total number of statements.
+     *
+     * @return number of statements
+     */
+    public synchronized int getTotalCount()
+    {
+        int total = 0;
+        for(Iterator it = statementsMap.keySet().iterator(); it.hasNext(); )
+        {
+            total += statementsMap.get(it.next()).size();
+        }
+        return total;
+    }
+
+    /**
+     * get the number of threads waiting for (or performing) a checkout.
+     *
+     * @return number of waiting threads
+     */
+    public int getWaitingCount()
+    {
+        return waiting.get();
+    }
+
+    /**
+     * set the query statistics to update.
+     *
+     * @param queryStats query statistics
+     */
+    public void setQueryStats(QueryStats queryStats)
+    {
+        this.queryStats = queryStats;
+    }
+
+    /**
+     * get the usage statistics of this pool.
+     *
+     * @return pool statistics
+     */
+    public PoolStats getStats()
+    {
         return stats;
     }
 
@@ -221,6 +315,21 @@ public class PreparedStatementPool implements /* Runnable, */ Pool
      */
     private int count = 0;
 
+    /**
+     * number of threads waiting for a statement.
+     */
+    private transient AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * usage statistics.
+     */
+    private transient PoolStats stats = new PoolStats(this);
+
+    /**
+     * query statistics.
+     */
+    private transient QueryStats queryStats = null;
+
     /**
      * map queries -> statements.
      */
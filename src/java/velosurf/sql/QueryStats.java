@@ -0,0 +1,453 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.sql;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import velosurf.model.Entity;
+import velosurf.util.Logger;
+import velosurf.util.StringLists;
+
+/**
+ * <p>Per-query execution statistics and slow query log.</p>
+ *
+ * <p>Executions, failed ones included, are aggregated by SQL text in a bounded table: once <code>maxQueries</code>
+ * distinct queries are tracked, the least executed of a few randomly sampled queries is evicted to make room for a new one,
+ * and its executions are then only counted as untracked. Executions lasting more than the slow query threshold are logged with their parameters
+ * and the calling attribute or action, if any.</p>
+ *
+ * <p>Statistics are enabled with the <code>query-stats</code> and <code>slow-query-threshold</code> attributes of the
+ * &lt;<code>database</code>&gt; tag.</p>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class QueryStats implements QueryStatsMBean
+{
+    /**
+     * Default maximum number of tracked queries.
+     */
+    public static final int DEFAULT_SIZE = 500;
+
+    /**
+     * Number of entries sampled to choose the one to evict.
+     */
+    private static final int EVICTION_SAMPLES = 8;
+
+    /**
+     * Number of queries returned by {@link #getTopQueries()}.
+     */
+    private static final int TOP_QUERIES = 20;
+
+    /**
+     * Statistics of a single query.
+     */
+    public static class Entry
+    {
+        /**
+         * Constructor.
+         * @param query SQL query
+         */
+        Entry(String query)
+        {
+            this.query = query;
+        }
+
+        /**
+         * Getter for the SQL query.
+         * @return SQL query
+         */
+        public String getQuery()
+        {
+            return query;
+        }
+
+        /**
+         * Getter for the number of executions.
+         * @return number of executions
+         */
+        public long getCount()
+        {
+            return count.sum();
+        }
+
+        /**
+         * Getter for the total latency.
+         * @return total latency, in milliseconds
+         */
+        public double getTotal()
+        {
+            return total.sum() / 1000000.0;
+        }
+
+        /**
+         * Getter for the max latency.
+         * @return max latency, in milliseconds
+         */
+        public double getMax()
+        {
+            return max.get() / 1000000.0;
+        }
+
+        /**
+         * Getter for the number of returned or affected rows.
+         * @return number of rows
+         */
+        public long getRows()
+        {
+            return rows.sum();
+        }
+
+        /**
+         * Getter for the number of failed executions.
+         * @return number of failed executions
+         */
+        public long getErrors()
+        {
+            return errors.sum();
+        }
+
+        /**
+         * Format these statistics.
+         * @return tab separated count, total, mean and max latency, rows, errors and query
+         */
+        public String toString()
+        {
+            long n = getCount();
+            return n + "\t" + format(getTotal()) + "\t" + format(n == 0 ? 0.0 : getTotal() / n) + "\t" + format(getMax()) + "\t" + getRows() + "\t" + getErrors() + "\t" + query;
+        }
+
+        /** SQL query. */
+        private String query;
+
+        /** Index of this entry in the eviction slots. */
+        private int slot;
+
+        /** Number of executions. */
+        private LongAdder count = new LongAdder();
+
+        /** Total latency, in nanoseconds. */
+        private LongAdder total = new LongAdder();
+
+        /** Max latency, in nanoseconds. */
+        private AtomicLong max = new AtomicLong();
+
+        /** Returned or affected rows. */
+        private LongAdder rows = new LongAdder();
+
+        /** Failed executions. */
+        private LongAdder errors = new LongAdder();
+    }
+
+    /**
+     * Constructor.
+     * @param maxQueries maximum number of tracked queries
+     * @param slowQueryThreshold slow query threshold in milliseconds, or 0
+     */
+    public QueryStats(int maxQueries, long slowQueryThreshold)
+    {
+        this.maxQueries = maxQueries;
+        this.slowQueryThreshold = slowQueryThreshold;
+        slots = new Entry[Math.max(maxQueries, 0)];
+    }
+
+    /**
+     * Set the caller (attribute or action) of queries issued by the current thread.
+     * @param caller caller name, or null
+     * @return previous caller
+     */
+    public static String setCaller(String caller)
+    {
+        String previous = currentCaller.get();
+        currentCaller.set(caller);
+        return previous;
+    }
+
+    /**
+     * Record a query execution.
+     * @param query SQL query
+     * @param nanos latency, in nanoseconds
+     * @param rows returned or affected rows
+     * @param params bound parameters, if any
+     * @param entity resulting entity, if any
+     * @param failed whether the execution failed
+     */
+    public void record(String query, long nanos, int rows, List params, Entity entity, boolean failed)
+    {
+        if (failed)
+        {
+            errors.increment();
+        }
+        Entry entry = getEntry(query);
+        if (entry == null)
+        {
+            untracked.increment();
+        }
+        else
+        {
+            entry.count.increment();
+            entry.total.add(nanos);
+            entry.rows.add(rows);
+            if (failed)
+            {
+                entry.errors.increment();
+            }
+            long previous;
+            while (nanos > (previous = entry.max.get()) && !entry.max.compareAndSet(previous, nanos));
+        }
+        long threshold = slowQueryThreshold;
+        if (threshold > 0 && nanos >= threshold * 1000000)
+        {
+            slow.increment();
+            String caller = currentCaller.get();
+            if (caller == null && entity != null && !entity.isRootEntity())
+            {
+                caller = entity.getName();
+            }
+            Logger.warn((failed ? "slow failed query (" : "slow query (") + format(nanos / 1000000.0) + " ms)" + (caller == null ? "" : " [" + caller + "]") + ": " + query
+                        + (params == null || params.size() == 0 ? "" : " with params [" + StringLists.join(params, ",") + "]"));
+        }
+    }
+
+    /**
+     * Add rows to a query (used for lazily iterated row sets).
+     * @param query SQL query
+     * @param rows number of rows
+     */
+    public void addRows(String query, int rows)
+    {
+        Entry entry = entries.get(query);
+        if (entry != null)
+        {
+            entry.rows.add(rows);
+        }
+    }
+
+    /**
+     * Get or create the entry of a query, evicting a rarely executed query if the table is full.
+     * @param query SQL query
+     * @return query entry, or null if no query is tracked
+     */
+    private Entry getEntry(String query)
+    {
+        Entry entry = entries.get(query);
+        if (entry == null && maxQueries > 0)
+        {
+            synchronized (entries)
+            {
+                entry = entries.get(query);
+                if (entry == null)
+                {
+                    entry = new Entry(query);
+                    if (used < slots.length)
+                    {
+                        entry.slot = used++;
+                    }
+                    else
+                    {
+                        Entry victim = sampleVictim();
+                        entries.remove(victim.query);
+                        untracked.add(victim.getCount());
+                        entry.slot = victim.slot;
+                    }
+                    slots[entry.slot] = entry;
+                    entries.put(query, entry);
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Choose the entry to evict: the least executed of a few randomly sampled entries, so that
+     * the cost of an eviction doesn't depend on the table size.
+     * @return entry to evict
+     */
+    private Entry sampleVictim()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Entry victim = null;
+        for (int i = 0; i < EVICTION_SAMPLES; i++)
+        {
+            Entry entry = slots[random.nextInt(used)];
+            if (victim == null || entry.getCount() < victim.getCount())
+            {
+                victim = entry;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * Get all entries, sorted by decreasing total latency.
+     * @return entries
+     */
+    public List<Entry> getEntries()
+    {
+        List<Entry> list = new ArrayList<Entry>(entries.values());
+        Collections.sort(list, new Comparator<Entry>()
+            {
+                public int compare(Entry e1, Entry e2)
+                {
+                    return Double.compare(e2.getTotal(), e1.getTotal());
+                }
+            });
+        return list;
+    }
+
+    public int getTrackedQueries()
+    {
+        return entries.size();
+    }
+
+    public long getUntrackedExecutions()
+    {
+        return untracked.sum();
+    }
+
+    public long getFailedExecutions()
+    {
+        return errors.sum();
+    }
+
+    public long getSlowExecutions()
+    {
+        return slow.sum();
+    }
+
+    public long getSlowQueryThreshold()
+    {
+        return slowQueryThreshold;
+    }
+
+    public void setSlowQueryThreshold(long threshold)
+    {
+        slowQueryThreshold = threshold;
+    }
+
+    public String[] getTopQueries()
+    {
+        List<Entry> list = getEntries();
+        int n = Math.min(TOP_QUERIES, list.size());
+        String[] top = new String[n];
+        for (int i = 0; i < n; i++)
+        {
+            top[i] = list.get(i).toString();
+        }
+        return top;
+    }
+
+    /**
+     * Dump statistics of all tracked queries.
+     * @param writer target writer
+     */
+    public void dump(Writer writer)
+    {
+        PrintWriter out = new PrintWriter(writer);
+        out.println("count\ttotal (ms)\tmean (ms)\tmax (ms)\trows\terrors\tquery");
+        for (Entry entry : getEntries())
+        {
+            out.println(entry);
+        }
+        if (untracked.sum() > 0)
+        {
+            out.println("# " + untracked.sum() + " untracked executions");
+        }
+        out.flush();
+    }
+
+    public void resetStats()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+            Arrays.fill(slots, null);
+            used = 0;
+        }
+        untracked.reset();
+        errors.reset();
+        slow.reset();
+    }
+
+    /**
+     * Format a duration.
+     * @param millis duration in milliseconds
+     * @return formatted duration
+     */
+    private static String format(double millis)
+    {
+        return String.valueOf(Math.round(millis * 1000) / 1000.0);
+    }
+
+    /**
+     * Maximum number of tracked queries.
+     */
+    private int maxQueries;
+
+    /**
+     * Slow query threshold, in milliseconds.
+     */
+    private volatile long slowQueryThreshold;
+
+    /**
+     * Entries by query.
+     */
+    private Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Entries by eviction slot, to sample them (guarded by <code>entries</code>).
+     */
+    private Entry[] slots;
+
+    /**
+     * Number of used eviction slots (guarded by <code>entries</code>).
+     */
+    private int used = 0;
+
+    /**
+     * Executions of untracked queries.
+     */
+    private LongAdder untracked = new LongAdder();
+
+    /**
+     * Failed executions.
+     */
+    private LongAdder errors = new LongAdder();
+
+    /**
+     * Slow executions.
+     */
+    private LongAdder slow = new LongAdder();
+
+    /**
+     * Caller of the queries of each thread.
+     */
+    private static ThreadLocal<String> currentCaller = new ThreadLocal<String>();
+}
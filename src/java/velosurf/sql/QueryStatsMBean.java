@@ -0,0 +1,75 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.sql;
+
+/**
+ * JMX management interface exposing the per-query execution statistics of a database.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public interface QueryStatsMBean
+{
+    /**
+     * Getter for the number of distinct tracked queries.
+     * @return number of tracked queries
+     */
+    public int getTrackedQueries();
+
+    /**
+     * Getter for the number of executions of queries evicted from the table because it was full.
+     * @return number of untracked executions
+     */
+    public long getUntrackedExecutions();
+
+    /**
+     * Getter for the number of failed executions.
+     * @return number of failed executions
+     */
+    public long getFailedExecutions();
+
+    /**
+     * Getter for the number of slow executions.
+     * @return number of slow executions
+     */
+    public long getSlowExecutions();
+
+    /**
+     * Getter for the slow query threshold.
+     * @return threshold in milliseconds, or 0 if the slow query log is disabled
+     */
+    public long getSlowQueryThreshold();
+
+    /**
+     * Setter for the slow query threshold.
+     * @param threshold threshold in milliseconds, or 0 to disable the slow query log
+     */
+    public void setSlowQueryThreshold(long threshold);
+
+    /**
+     * Get the queries having the highest total execution time.
+     * @return one line per query: count, total, mean and max latency (ms), rows, errors and query
+     */
+    public String[] getTopQueries();
+
+    /**
+     * Reset the statistics.
+     */
+    public void resetStats();
+}
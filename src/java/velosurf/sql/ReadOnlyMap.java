@@ -23,6 +23,7 @@ import java.sql.SQLException;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
+import velosurf.context.ContextProfiler;
 import velosurf.util.Logger;
 import velosurf.util.SlotMap;
 
@@ -40,6 +41,7 @@ public class ReadOnlyMap implements SlotMap
      */
     public ReadOnlyMap(RowHandler source)
     {
+        ContextProfiler.wrapperAllocated();
         this.source = source;
     }
 
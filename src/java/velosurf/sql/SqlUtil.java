@@ -64,7 +64,7 @@ public class SqlUtil
         }
         try
         {
-            Logger.trace("refining query: " + query);
+            Logger.trace("refining query: {}", query);
 
             /*
              *  issue all searches on a string where all constant strings
@@ -130,7 +130,7 @@ public class SqlUtil
             {
                 query = query.substring(0, after) + " where " + criteria + query.substring(after);
             }
-            Logger.trace("refined query: " + query);
+            Logger.trace("refined query: {}", query);
             return query;
         }
         catch(Exception ree)
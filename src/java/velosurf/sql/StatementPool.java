@@ -22,6 +22,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import velosurf.util.Logger;
 
 /**
@@ -52,7 +53,29 @@ public class StatementPool implements /* Runnable, */ Pool
      * @exception SQLException thrown by the database engine
      * @return a valid statement
      */
-    public synchronized PooledSimpleStatement getStatement() throws SQLException
+    public PooledSimpleStatement getStatement() throws SQLException
+    {
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        try
+        {
+            PooledSimpleStatement statement = checkoutStatement();
+            stats.checkout(System.nanoTime() - start);
+            return statement;
+        }
+        finally
+        {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * find a free statement, or create a new one.
+     *
+     * @exception SQLException thrown by the database engine
+     * @return a valid statement
+     */
+    private synchronized PooledSimpleStatement checkoutStatement() throws SQLException
     {
         PooledSimpleStatement statement = null;
         ConnectionWrapper connection = null;
@@ -89,6 +112,9 @@ public class StatementPool implements /* Runnable, */ Pool
         connection = connectionPool.getConnection();
         statement = new PooledSimpleStatement(connection,
             connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY));
+        statement.setPoolStats(stats);
+        statement.setQueryStats(queryStats);
+        stats.creation();
         statements.add(statement);
         statement.notifyInUse();
         return statement;
@@ -114,22 +140,80 @@ public class StatementPool implements /* Runnable, */ Pool
      */
 
     /**
-     * debug - two ints long array containing nb of statements in use and total nb of statements.
+     * debug - two ints long array containing nb of free statements and total nb of statements.
      *
      * @return 2 integers long array
      */
-    public int[] getUsageStats()
+    public synchronized int[] getUsageStats()
     {
-        int[] stats = new int[] { 0, 0 };
+        int[] usage = new int[] { 0, 0 };
 
         for(PooledSimpleStatement statement : statements)
         {
             if(!statement.isInUse())
             {
-                stats[0]++;
+                usage[0]++;
             }
         }
-        stats[1] = statements.size();
+        usage[1] = statements.size();
+        return usage;
+    }
+
+    /**
+     * get the number of statements in use.
+     *
+     * @return number of statements in use
+     */
+    public synchronized int getActiveCount()
+    {
+        int active = 0;
+        for(PooledSimpleStatement statement : statements)
+        {
+            if(statement.isInUse())
+            {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    /**
+     * get the total number of statements.
+     *
+     * @return number of statements
+     */
+    public synchronized int getTotalCount()
+    {
+        return statements.size();
+    }
+
+    /**
+     * get the number of threads waiting for (or performing) a checkout.
+     *
+     * @return number of waiting threads
+     */
+    public int getWaitingCount()
+    {
+        return waiting.get();
+    }
+
+    /**
+     * set the query statistics to update.
+     *
+     * @param queryStats query statistics
+     */
+    public void setQueryStats(QueryStats queryStats)
+    {
+        this.queryStats = queryStats;
+    }
+
+    /**
+     * get the usage statistics of this pool.
+     *
+     * @return pool statistics
+     */
+    public PoolStats getStats()
+    {
         return stats;
     }
 
@@ -196,6 +280,21 @@ public class StatementPool implements /* Runnable, */ Pool
      */
     private ConnectionPool connectionPool = null;
 
+    /**
+     * number of threads waiting for a statement.
+     */
+    private transient AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * usage statistics.
+     */
+    private transient PoolStats stats = new PoolStats(this);
+
+    /**
+     * query statistics.
+     */
+    private transient QueryStats queryStats = null;
+
     /**
      * number of statements.
      */
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Implementation of the cryptograph for the AES algorithm, with a 128 bits key derived from the random string
+ * by SHA-256. Like the DES cryptograph, it encrypts a given string always the same way (ECB mode), since obfuscated
+ * ids must be stable.
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ */
+public class AESCryptograph extends CipherCryptograph
+{
+    /**
+     * Constructor.
+     */
+    public AESCryptograph(){}
+
+    /**
+     * derive the AES key.
+     * @param random random string
+     * @return secret key
+     * @throws GeneralSecurityException
+     */
+    protected SecretKey generateKey(String random) throws GeneralSecurityException
+    {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(random.getBytes(StandardCharsets.UTF_8));
+        return new SecretKeySpec(Arrays.copyOf(digest, 16), "AES");
+    }
+
+    /**
+     * cipher transformation.
+     * @return "AES/ECB/PKCS5Padding"
+     */
+    protected String getTransformation()
+    {
+        return "AES/ECB/PKCS5Padding";
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.util;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Asynchronous log backend: a bounded lock-free ring buffer of log lines, drained by a single writer thread.</p>
+ *
+ * <p>Logging threads only pay for the enqueuing of the formatted line. The writer thread writes all available
+ * lines and flushes the output once per batch. When the buffer is full, lines are either dropped (and the number
+ * of dropped lines is logged afterwards) or the logging thread waits for some room, depending on the overflow policy.</p>
+ *
+ * <p>The buffer can also be used without writer thread, to keep lines until an output is available
+ * (see {@link #drainTo(PrintWriter)}).</p>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ */
+public class AsyncLogWriter implements Runnable
+{
+    /**
+     * What to do when the buffer is full.
+     */
+    public enum OverflowPolicy { DROP, BLOCK }
+
+    /**
+     * Default capacity.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * Maximum capacity.
+     */
+    public static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity capacity, between 1 and {@link #MAX_CAPACITY}, rounded up to a power of two
+     * @param policy overflow policy
+     * @throws IllegalArgumentException if the capacity is out of range
+     */
+    public AsyncLogWriter(int capacity, OverflowPolicy policy)
+    {
+        if (capacity <= 0 || capacity > MAX_CAPACITY)
+        {
+            throw new IllegalArgumentException("invalid log buffer capacity: " + capacity);
+        }
+        int size = 2;
+        while (size < capacity)
+        {
+            size <<= 1;
+        }
+        lines = new String[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+        {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+        this.policy = policy;
+    }
+
+    /**
+     * Start the writer thread.
+     *
+     * @param out output writer
+     */
+    public synchronized void start(PrintWriter out)
+    {
+        this.out = out;
+        if (thread == null)
+        {
+            running = true;
+            thread = new Thread(this, "velosurf logger");
+            thread.setDaemon(true);
+            thread.start();
+            shutdownHook = new Thread("velosurf logger shutdown")
+            {
+                public void run()
+                {
+                    AsyncLogWriter.this.stop();
+                }
+            };
+            try
+            {
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+            }
+            catch (IllegalStateException ise)
+            {
+                /* already shutting down */
+                shutdownHook = null;
+            }
+        }
+    }
+
+    /**
+     * Change the output writer. Pending lines are written to the previous writer before.
+     *
+     * @param out new output writer
+     */
+    public synchronized void setWriter(PrintWriter out)
+    {
+        flush();
+        this.out = out;
+    }
+
+    /**
+     * Stop the writer thread, after having written pending lines.
+     */
+    public synchronized void stop()
+    {
+        if (thread != null)
+        {
+            running = false;
+            LockSupport.unpark(thread);
+            if (Thread.currentThread() != thread)
+            {
+                try
+                {
+                    thread.join();
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            thread = null;
+            if (shutdownHook != null && Thread.currentThread() != shutdownHook)
+            {
+                try
+                {
+                    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                }
+                catch (IllegalStateException ise)
+                {
+                    /* already shutting down */
+                }
+            }
+            shutdownHook = null;
+        }
+    }
+
+    /**
+     * Enqueue a line.
+     *
+     * @param line line to log
+     * @return false if the line has been dropped
+     */
+    public boolean offer(String line)
+    {
+        while (!tryOffer(line))
+        {
+            Thread current = Thread.currentThread();
+            /* the writer thread itself, or a buffer without writer thread, never waits */
+            if (policy == OverflowPolicy.DROP || thread == null || current == thread)
+            {
+                dropped.incrementAndGet();
+                return false;
+            }
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(BLOCKING_PAUSE);
+        }
+        if (idle)
+        {
+            Thread writer = thread;
+            if (writer != null)
+            {
+                LockSupport.unpark(writer);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wait until all the lines enqueued so far have been written. Returns immediately if there is no writer thread.
+     */
+    public void flush()
+    {
+        long target = tail.get();
+        while (thread != null && Thread.currentThread() != thread && written < target)
+        {
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(BLOCKING_PAUSE);
+        }
+    }
+
+    /**
+     * Write pending lines in the calling thread (used when there is no writer thread).
+     *
+     * @param out output writer
+     */
+    public synchronized void drainTo(PrintWriter out)
+    {
+        if (drain(out) > 0)
+        {
+            out.flush();
+        }
+    }
+
+    /**
+     * Getter for the number of dropped lines.
+     *
+     * @return number of dropped lines
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * Getter for the overflow policy.
+     *
+     * @return overflow policy
+     */
+    public OverflowPolicy getPolicy()
+    {
+        return policy;
+    }
+
+    /**
+     * Writing loop.
+     */
+    public void run()
+    {
+        long reported = 0;
+        while (true)
+        {
+            PrintWriter writer = out;
+            int count = drain(writer);
+            long lost = dropped.get();
+            if (lost > reported)
+            {
+                writer.println(" Velosurf  [warn] " + (lost - reported) + " log lines dropped (log buffer full)");
+                reported = lost;
+                count++;
+            }
+            if (count > 0)
+            {
+                writer.flush();
+            }
+            else if (!running)
+            {
+                break;
+            }
+            else
+            {
+                idle = true;
+                /* check again, an offer may have missed the idle flag */
+                if (isEmpty())
+                {
+                    LockSupport.parkNanos(IDLE_PAUSE);
+                }
+                idle = false;
+            }
+        }
+    }
+
+    /**
+     * Try to enqueue a line.
+     *
+     * @param line line
+     * @return false if the buffer is full
+     */
+    private boolean tryOffer(String line)
+    {
+        while (true)
+        {
+            long pos = tail.get();
+            int index = (int)(pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0)
+            {
+                if (tail.compareAndSet(pos, pos + 1))
+                {
+                    lines[index] = line;
+                    /* publish the slot */
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+            }
+            else if (diff < 0)
+            {
+                return false;
+            }
+            /* else another thread took this slot, retry */
+        }
+    }
+
+    /**
+     * Whether there is no line ready to be written.
+     *
+     * @return true if the next slot is not published yet
+     */
+    private boolean isEmpty()
+    {
+        return sequences.get((int)(head & mask)) != head + 1;
+    }
+
+    /**
+     * Write all the published lines. Only called by one thread at a time.
+     *
+     * @param writer output writer
+     * @return number of written lines
+     */
+    private int drain(PrintWriter writer)
+    {
+        int count = 0;
+        while (!isEmpty())
+        {
+            int index = (int)(head & mask);
+            String line = lines[index];
+            lines[index] = null;
+            /* give the slot back to producers */
+            sequences.set(index, head + mask + 1);
+            head++;
+            writer.println(line);
+            count++;
+        }
+        written = head;
+        return count;
+    }
+
+    /**
+     * Pause of a blocked producer, in nanoseconds.
+     */
+    private static final long BLOCKING_PAUSE = 50000L;
+
+    /**
+     * Pause of the writer thread when idle, in nanoseconds.
+     */
+    private static final long IDLE_PAUSE = 100000000L;
+
+    /**
+     * Ring buffer slots.
+     */
+    private String[] lines;
+
+    /**
+     * Slot sequences: a slot can be written at position p when its sequence is p,
+     * and read at position p when its sequence is p + 1.
+     */
+    private AtomicLongArray sequences;
+
+    /**
+     * Index mask.
+     */
+    private int mask;
+
+    /**
+     * Next position to write to.
+     */
+    private AtomicLong tail = new AtomicLong();
+
+    /**
+     * Next position to read from (only accessed by the draining thread).
+     */
+    private long head = 0;
+
+    /**
+     * Number of lines written so far.
+     */
+    private volatile long written = 0;
+
+    /**
+     * Number of dropped lines.
+     */
+    private AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Overflow policy.
+     */
+    private OverflowPolicy policy;
+
+    /**
+     * Output writer.
+     */
+    private volatile PrintWriter out = null;
+
+    /**
+     * Writer thread.
+     */
+    private volatile Thread thread = null;
+
+    /**
+     * Shutdown hook writing pending lines at exit.
+     */
+    private Thread shutdownHook = null;
+
+    /**
+     * Whether the writer thread should keep running.
+     */
+    private volatile boolean running = false;
+
+    /**
+     * Whether the writer thread is about to sleep.
+     */
+    private volatile boolean idle = false;
+}
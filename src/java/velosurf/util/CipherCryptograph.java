@@ -0,0 +1,194 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * <p>Base class of cryptographs relying on a JCE cipher.</p>
+ *
+ * <p><code>Cipher</code> objects are not thread-safe: each encryption or decryption borrows a cipher from a pool,
+ * so that concurrent threads neither share nor wait for a cipher. Ciphers are created on demand, and the pools
+ * never hold more ciphers than the number of threads which concurrently used the cryptograph.</p>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ */
+public abstract class CipherCryptograph implements Cryptograph
+{
+    /**
+     * initialization.
+     * @param random random string
+     */
+    public void init(String random)
+    {
+        // remember random value for serialization
+        myRandom = random;
+        try
+        {
+            key = generateKey(random);
+            encryptors = new ConcurrentLinkedQueue<Cipher>();
+            decryptors = new ConcurrentLinkedQueue<Cipher>();
+            // check the transformation right now
+            encryptors.add(createCipher(Cipher.ENCRYPT_MODE));
+            decryptors.add(createCipher(Cipher.DECRYPT_MODE));
+        }
+        catch(GeneralSecurityException e)
+        {
+            Logger.error("could not initialize " + getClass().getName());
+            Logger.log(e);
+        }
+    }
+
+    /**
+     * generate the secret key. The same random string must always give the same key,
+     * so that encrypted values remain valid across restarts.
+     * @param random random string
+     * @return secret key
+     * @throws GeneralSecurityException
+     */
+    protected abstract SecretKey generateKey(String random) throws GeneralSecurityException;
+
+    /**
+     * cipher transformation.
+     * @return transformation name
+     */
+    protected abstract String getTransformation();
+
+    /**
+     * encrypt a string.
+     * @param str string to encrypt
+     * @return encrypted string
+     */
+    public String encrypt(String str)
+    {
+        Cipher cipher = null;
+        try
+        {
+            cipher = borrow(encryptors, Cipher.ENCRYPT_MODE);
+
+            // Encrypt the utf-8 bytes
+            byte[] enc = cipher.doFinal(str.getBytes(StandardCharsets.UTF_8));
+
+            // Encode bytes to base64 to get a string
+            return Base64.getEncoder().encodeToString(enc);
+        }
+        catch(GeneralSecurityException e)
+        {
+            Logger.log(e);
+            // don't give back a cipher in an unknown state
+            cipher = null;
+        }
+        finally
+        {
+            if(cipher != null)
+            {
+                encryptors.offer(cipher);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decrypt a string.
+     * @param str string to decrypt
+     * @return decrypted string
+     */
+    public String decrypt(String str)
+    {
+        Cipher cipher = null;
+        try
+        {
+            // Decode base64 to get bytes
+            byte[] dec = Base64.getDecoder().decode(str);
+
+            cipher = borrow(decryptors, Cipher.DECRYPT_MODE);
+
+            // Decrypt and decode using utf-8
+            return new String(cipher.doFinal(dec), StandardCharsets.UTF_8);
+        }
+        catch(IllegalArgumentException e)
+        {
+            Logger.error("invalid encrypted value: " + e.getMessage());
+        }
+        catch(GeneralSecurityException e)
+        {
+            Logger.log(e);
+            cipher = null;
+        }
+        finally
+        {
+            if(cipher != null)
+            {
+                decryptors.offer(cipher);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a cipher from a pool, or create a new one.
+     * @param pool cipher pool
+     * @param mode cipher mode
+     * @return cipher
+     * @throws GeneralSecurityException
+     */
+    private Cipher borrow(Queue<Cipher> pool, int mode) throws GeneralSecurityException
+    {
+        Cipher cipher = pool.poll();
+        return cipher == null ? createCipher(mode) : cipher;
+    }
+
+    /**
+     * Create a new cipher.
+     * @param mode cipher mode
+     * @return cipher
+     * @throws GeneralSecurityException
+     */
+    private Cipher createCipher(int mode) throws GeneralSecurityException
+    {
+        Cipher cipher = Cipher.getInstance(getTransformation());
+        cipher.init(mode, key);
+        return cipher;
+    }
+
+    private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        init(myRandom);
+    }
+
+    /** random intializer */
+    private String myRandom;
+
+    /** secret key */
+    private transient SecretKey key;
+
+    /** pool of encryption ciphers */
+    private transient Queue<Cipher> encryptors;
+
+    /** pool of decryption ciphers */
+    private transient Queue<Cipher> decryptors;
+}
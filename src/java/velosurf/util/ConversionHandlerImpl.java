@@ -19,14 +19,16 @@ package velosurf.util;
  * under the License.
  */
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A conversion handler adds admissible conversions between Java types whenever Velocity introspection has to map
@@ -41,9 +43,9 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ConversionHandlerImpl implements ConversionHandler
 {
     /**
-     * standard narrowing and string parsing conversions.
+     * standard narrowing and string parsing conversions, by formal class then actual class.
      */
-    static Map<Pair<? extends Class, ? extends Class>, Converter> standardConverterMap;
+    static Map<Class, Map<Class, Converter>> standardConverterMap;
 
     /**
      * basic toString converter
@@ -67,17 +69,38 @@ public class ConversionHandlerImpl implements ConversionHandler
      */
     static final double minLong = Long.MIN_VALUE, maxLong = Long.MAX_VALUE;
 
-    static DateFormat isoDateFormat = new SimpleDateFormat("yyyy-MM-dd");
-    static DateFormat isoTimestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    /**
+     * iso date and timestamp formats (immutable and thread-safe).
+     */
+    static final DateTimeFormatter isoDateFormat = DateTimeFormatter.ofPattern("y-M-d");
+    static final DateTimeFormatter isoTimestampFormat = DateTimeFormatter.ofPattern("y-M-d H:m:s");
 
     /**
-     * a converters cache map, initialized with the standard narrowing and string parsing conversions.
+     * converters cache, by formal class then actual class. Published maps are never modified:
+     * caching a new converter publishes a modified copy, so that lookups neither lock nor allocate.
      */
-    Map<Pair<? extends Class, ? extends Class>, Converter> converterCacheMap;
+    volatile Map<Class, Map<Class, Converter>> converterCacheMap;
+
+    /**
+     * add a standard converter.
+     * @param formal expected formal type
+     * @param actual provided argument type
+     * @param converter converter
+     */
+    static void addStandardConverter(Class formal, Class actual, Converter converter)
+    {
+        Map<Class, Converter> converters = standardConverterMap.get(formal);
+        if (converters == null)
+        {
+            converters = new IdentityHashMap<Class, Converter>();
+            standardConverterMap.put(formal, converters);
+        }
+        converters.put(actual, converter);
+    }
 
     static
     {
-        standardConverterMap = new HashMap<Pair<? extends Class, ? extends Class>, Converter>();
+        standardConverterMap = new IdentityHashMap<Class, Map<Class, Converter>>();
 
         cacheMiss = new Converter<Object>()
         {
@@ -97,30 +120,30 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return o == null ? null : ((Number) o).intValue() != 0;
             }
         };
-        standardConverterMap.put(new Pair<>(Boolean.class, Byte.class), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.class, Short.class), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.class, Integer.class), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.class, Long.class), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.class, Float.class), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.class, Double.class), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.class, Byte.TYPE), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.class, Short.TYPE), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.class, Integer.TYPE), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.class, Long.TYPE), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.class, Float.TYPE), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.class, Double.TYPE), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, Byte.class), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, Short.class), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, Integer.class), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, Long.class), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, Float.class), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, Double.class), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, Byte.TYPE), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, Short.TYPE), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, Integer.TYPE), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, Long.TYPE), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, Float.TYPE), numberToBool);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, Double.TYPE), numberToBool);
+        addStandardConverter(Boolean.class, Byte.class, numberToBool);
+        addStandardConverter(Boolean.class, Short.class, numberToBool);
+        addStandardConverter(Boolean.class, Integer.class, numberToBool);
+        addStandardConverter(Boolean.class, Long.class, numberToBool);
+        addStandardConverter(Boolean.class, Float.class, numberToBool);
+        addStandardConverter(Boolean.class, Double.class, numberToBool);
+        addStandardConverter(Boolean.class, Byte.TYPE, numberToBool);
+        addStandardConverter(Boolean.class, Short.TYPE, numberToBool);
+        addStandardConverter(Boolean.class, Integer.TYPE, numberToBool);
+        addStandardConverter(Boolean.class, Long.TYPE, numberToBool);
+        addStandardConverter(Boolean.class, Float.TYPE, numberToBool);
+        addStandardConverter(Boolean.class, Double.TYPE, numberToBool);
+        addStandardConverter(Boolean.TYPE, Byte.class, numberToBool);
+        addStandardConverter(Boolean.TYPE, Short.class, numberToBool);
+        addStandardConverter(Boolean.TYPE, Integer.class, numberToBool);
+        addStandardConverter(Boolean.TYPE, Long.class, numberToBool);
+        addStandardConverter(Boolean.TYPE, Float.class, numberToBool);
+        addStandardConverter(Boolean.TYPE, Double.class, numberToBool);
+        addStandardConverter(Boolean.TYPE, Byte.TYPE, numberToBool);
+        addStandardConverter(Boolean.TYPE, Short.TYPE, numberToBool);
+        addStandardConverter(Boolean.TYPE, Integer.TYPE, numberToBool);
+        addStandardConverter(Boolean.TYPE, Long.TYPE, numberToBool);
+        addStandardConverter(Boolean.TYPE, Float.TYPE, numberToBool);
+        addStandardConverter(Boolean.TYPE, Double.TYPE, numberToBool);
 
         /* character -> boolean */
         Converter<Boolean> charToBoolean = new Converter<Boolean>()
@@ -131,10 +154,10 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return o == null ? null : ((Character) o).charValue() != 0;
             }
         };
-        standardConverterMap.put(new Pair<>(Boolean.class, Character.class), charToBoolean);
-        standardConverterMap.put(new Pair<>(Boolean.class, Character.TYPE), charToBoolean);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, Character.class), charToBoolean);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, Character.TYPE), charToBoolean);
+        addStandardConverter(Boolean.class, Character.class, charToBoolean);
+        addStandardConverter(Boolean.class, Character.TYPE, charToBoolean);
+        addStandardConverter(Boolean.TYPE, Character.class, charToBoolean);
+        addStandardConverter(Boolean.TYPE, Character.TYPE, charToBoolean);
 
         /* string -> boolean */
         Converter<Boolean> stringToBoolean = new Converter<Boolean>()
@@ -145,8 +168,8 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return Boolean.valueOf(String.valueOf(o)); // what about 'on', '1', ... + toLowerCase() ?
             }
         };
-        standardConverterMap.put(new Pair<>(Boolean.class, String.class), stringToBoolean);
-        standardConverterMap.put(new Pair<>(Boolean.TYPE, String.class), stringToBoolean);
+        addStandardConverter(Boolean.class, String.class, stringToBoolean);
+        addStandardConverter(Boolean.TYPE, String.class, stringToBoolean);
 
         /* narrowing towards byte */
         Converter<Byte> narrowingToByte = new Converter<Byte>()
@@ -163,26 +186,26 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return ((Number) o).byteValue();
             }
         };
-        standardConverterMap.put(new Pair<>(Byte.class, Short.class), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.class, Integer.class), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.class, Long.class), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.class, Float.class), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.class, Double.class), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.class, Short.TYPE), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.class, Integer.TYPE), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.class, Long.TYPE), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.class, Float.TYPE), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.class, Double.TYPE), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.TYPE, Short.class), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.TYPE, Integer.class), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.TYPE, Long.class), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.TYPE, Float.class), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.TYPE, Double.class), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.TYPE, Short.TYPE), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.TYPE, Integer.TYPE), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.TYPE, Long.TYPE), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.TYPE, Float.TYPE), narrowingToByte);
-        standardConverterMap.put(new Pair<>(Byte.TYPE, Double.TYPE), narrowingToByte);
+        addStandardConverter(Byte.class, Short.class, narrowingToByte);
+        addStandardConverter(Byte.class, Integer.class, narrowingToByte);
+        addStandardConverter(Byte.class, Long.class, narrowingToByte);
+        addStandardConverter(Byte.class, Float.class, narrowingToByte);
+        addStandardConverter(Byte.class, Double.class, narrowingToByte);
+        addStandardConverter(Byte.class, Short.TYPE, narrowingToByte);
+        addStandardConverter(Byte.class, Integer.TYPE, narrowingToByte);
+        addStandardConverter(Byte.class, Long.TYPE, narrowingToByte);
+        addStandardConverter(Byte.class, Float.TYPE, narrowingToByte);
+        addStandardConverter(Byte.class, Double.TYPE, narrowingToByte);
+        addStandardConverter(Byte.TYPE, Short.class, narrowingToByte);
+        addStandardConverter(Byte.TYPE, Integer.class, narrowingToByte);
+        addStandardConverter(Byte.TYPE, Long.class, narrowingToByte);
+        addStandardConverter(Byte.TYPE, Float.class, narrowingToByte);
+        addStandardConverter(Byte.TYPE, Double.class, narrowingToByte);
+        addStandardConverter(Byte.TYPE, Short.TYPE, narrowingToByte);
+        addStandardConverter(Byte.TYPE, Integer.TYPE, narrowingToByte);
+        addStandardConverter(Byte.TYPE, Long.TYPE, narrowingToByte);
+        addStandardConverter(Byte.TYPE, Float.TYPE, narrowingToByte);
+        addStandardConverter(Byte.TYPE, Double.TYPE, narrowingToByte);
 
         /* string to byte */
         Converter<Byte> stringToByte = new Converter<Byte>()
@@ -193,8 +216,8 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return Byte.valueOf(String.valueOf(o));
             }
         };
-        standardConverterMap.put(new Pair<>(Byte.class, String.class), stringToByte);
-        standardConverterMap.put(new Pair<>(Byte.TYPE, String.class), stringToByte);
+        addStandardConverter(Byte.class, String.class, stringToByte);
+        addStandardConverter(Byte.TYPE, String.class, stringToByte);
 
         /* narrowing towards short */
         Converter<Short> narrowingToShort = new Converter<Short>()
@@ -211,22 +234,22 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return ((Number) o).shortValue();
             }
         };
-        standardConverterMap.put(new Pair<>(Short.class, Integer.class), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.class, Long.class), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.class, Float.class), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.class, Double.class), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.class, Integer.TYPE), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.class, Long.TYPE), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.class, Float.TYPE), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.class, Double.TYPE), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.TYPE, Integer.class), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.TYPE, Long.class), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.TYPE, Float.class), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.TYPE, Double.class), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.TYPE, Integer.TYPE), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.TYPE, Long.TYPE), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.TYPE, Float.TYPE), narrowingToShort);
-        standardConverterMap.put(new Pair<>(Short.TYPE, Double.TYPE), narrowingToShort);
+        addStandardConverter(Short.class, Integer.class, narrowingToShort);
+        addStandardConverter(Short.class, Long.class, narrowingToShort);
+        addStandardConverter(Short.class, Float.class, narrowingToShort);
+        addStandardConverter(Short.class, Double.class, narrowingToShort);
+        addStandardConverter(Short.class, Integer.TYPE, narrowingToShort);
+        addStandardConverter(Short.class, Long.TYPE, narrowingToShort);
+        addStandardConverter(Short.class, Float.TYPE, narrowingToShort);
+        addStandardConverter(Short.class, Double.TYPE, narrowingToShort);
+        addStandardConverter(Short.TYPE, Integer.class, narrowingToShort);
+        addStandardConverter(Short.TYPE, Long.class, narrowingToShort);
+        addStandardConverter(Short.TYPE, Float.class, narrowingToShort);
+        addStandardConverter(Short.TYPE, Double.class, narrowingToShort);
+        addStandardConverter(Short.TYPE, Integer.TYPE, narrowingToShort);
+        addStandardConverter(Short.TYPE, Long.TYPE, narrowingToShort);
+        addStandardConverter(Short.TYPE, Float.TYPE, narrowingToShort);
+        addStandardConverter(Short.TYPE, Double.TYPE, narrowingToShort);
 
         /* string to short */
         Converter<Short> stringToShort = new Converter<Short>()
@@ -237,8 +260,8 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return Short.valueOf(String.valueOf(o));
             }
         };
-        standardConverterMap.put(new Pair<>(Short.class, String.class), stringToShort);
-        standardConverterMap.put(new Pair<>(Short.TYPE, String.class), stringToShort);
+        addStandardConverter(Short.class, String.class, stringToShort);
+        addStandardConverter(Short.TYPE, String.class, stringToShort);
 
         /* narrowing towards int */
         Converter<Integer> narrowingToInteger = new Converter<Integer>()
@@ -255,18 +278,18 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return ((Number) o).intValue();
             }
         };
-        standardConverterMap.put(new Pair<>(Integer.class, Long.class), narrowingToInteger);
-        standardConverterMap.put(new Pair<>(Integer.class, Float.class), narrowingToInteger);
-        standardConverterMap.put(new Pair<>(Integer.class, Double.class), narrowingToInteger);
-        standardConverterMap.put(new Pair<>(Integer.class, Long.TYPE), narrowingToInteger);
-        standardConverterMap.put(new Pair<>(Integer.class, Float.TYPE), narrowingToInteger);
-        standardConverterMap.put(new Pair<>(Integer.class, Double.TYPE), narrowingToInteger);
-        standardConverterMap.put(new Pair<>(Integer.TYPE, Long.class), narrowingToInteger);
-        standardConverterMap.put(new Pair<>(Integer.TYPE, Float.class), narrowingToInteger);
-        standardConverterMap.put(new Pair<>(Integer.TYPE, Double.class), narrowingToInteger);
-        standardConverterMap.put(new Pair<>(Integer.TYPE, Long.TYPE), narrowingToInteger);
-        standardConverterMap.put(new Pair<>(Integer.TYPE, Float.TYPE), narrowingToInteger);
-        standardConverterMap.put(new Pair<>(Integer.TYPE, Double.TYPE), narrowingToInteger);
+        addStandardConverter(Integer.class, Long.class, narrowingToInteger);
+        addStandardConverter(Integer.class, Float.class, narrowingToInteger);
+        addStandardConverter(Integer.class, Double.class, narrowingToInteger);
+        addStandardConverter(Integer.class, Long.TYPE, narrowingToInteger);
+        addStandardConverter(Integer.class, Float.TYPE, narrowingToInteger);
+        addStandardConverter(Integer.class, Double.TYPE, narrowingToInteger);
+        addStandardConverter(Integer.TYPE, Long.class, narrowingToInteger);
+        addStandardConverter(Integer.TYPE, Float.class, narrowingToInteger);
+        addStandardConverter(Integer.TYPE, Double.class, narrowingToInteger);
+        addStandardConverter(Integer.TYPE, Long.TYPE, narrowingToInteger);
+        addStandardConverter(Integer.TYPE, Float.TYPE, narrowingToInteger);
+        addStandardConverter(Integer.TYPE, Double.TYPE, narrowingToInteger);
 
         /* widening towards Integer */
         Converter<Integer> wideningToInteger = new Converter<Integer>()
@@ -278,8 +301,8 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return ((Number) o).intValue();
             }
         };
-        standardConverterMap.put(new Pair<>(Integer.class, Short.class), wideningToInteger);
-        standardConverterMap.put(new Pair<>(Integer.class, Short.TYPE), wideningToInteger);
+        addStandardConverter(Integer.class, Short.class, wideningToInteger);
+        addStandardConverter(Integer.class, Short.TYPE, wideningToInteger);
 
         /* string to int */
         Converter<Integer> stringToInteger = new Converter<Integer>()
@@ -290,8 +313,8 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return Integer.valueOf(String.valueOf(o));
             }
         };
-        standardConverterMap.put(new Pair<>(Integer.class, String.class), stringToInteger);
-        standardConverterMap.put(new Pair<>(Integer.TYPE, String.class), stringToInteger);
+        addStandardConverter(Integer.class, String.class, stringToInteger);
+        addStandardConverter(Integer.TYPE, String.class, stringToInteger);
         
         /* narrowing towards long */
         Converter<Long> narrowingToLong = new Converter<Long>()
@@ -308,14 +331,14 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return ((Number) o).longValue();
             }
         };
-        standardConverterMap.put(new Pair<>(Long.class, Float.class), narrowingToLong);
-        standardConverterMap.put(new Pair<>(Long.class, Double.class), narrowingToLong);
-        standardConverterMap.put(new Pair<>(Long.class, Float.TYPE), narrowingToLong);
-        standardConverterMap.put(new Pair<>(Long.class, Double.TYPE), narrowingToLong);
-        standardConverterMap.put(new Pair<>(Long.TYPE, Float.class), narrowingToLong);
-        standardConverterMap.put(new Pair<>(Long.TYPE, Double.class), narrowingToLong);
-        standardConverterMap.put(new Pair<>(Long.TYPE, Float.TYPE), narrowingToLong);
-        standardConverterMap.put(new Pair<>(Long.TYPE, Double.TYPE), narrowingToLong);
+        addStandardConverter(Long.class, Float.class, narrowingToLong);
+        addStandardConverter(Long.class, Double.class, narrowingToLong);
+        addStandardConverter(Long.class, Float.TYPE, narrowingToLong);
+        addStandardConverter(Long.class, Double.TYPE, narrowingToLong);
+        addStandardConverter(Long.TYPE, Float.class, narrowingToLong);
+        addStandardConverter(Long.TYPE, Double.class, narrowingToLong);
+        addStandardConverter(Long.TYPE, Float.TYPE, narrowingToLong);
+        addStandardConverter(Long.TYPE, Double.TYPE, narrowingToLong);
 
         /* widening towards Long */
         Converter<Long> wideningToLong = new Converter<Long>()
@@ -327,10 +350,10 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return ((Number) o).longValue();
             }
         };
-        standardConverterMap.put(new Pair<>(Long.class, Short.class), wideningToLong);
-        standardConverterMap.put(new Pair<>(Long.class, Integer.class), wideningToLong);
-        standardConverterMap.put(new Pair<>(Long.class, Short.TYPE), wideningToLong);
-        standardConverterMap.put(new Pair<>(Long.class, Integer.TYPE), wideningToLong);
+        addStandardConverter(Long.class, Short.class, wideningToLong);
+        addStandardConverter(Long.class, Integer.class, wideningToLong);
+        addStandardConverter(Long.class, Short.TYPE, wideningToLong);
+        addStandardConverter(Long.class, Integer.TYPE, wideningToLong);
 
         /* string to long */
         Converter<Long> stringToLong = new Converter<Long>()
@@ -341,8 +364,8 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return Long.valueOf(String.valueOf(o));
             }
         };
-        standardConverterMap.put(new Pair<>(Long.class, String.class), stringToLong);
-        standardConverterMap.put(new Pair<>(Long.TYPE, String.class), stringToLong);
+        addStandardConverter(Long.class, String.class, stringToLong);
+        addStandardConverter(Long.TYPE, String.class, stringToLong);
         
         /* narrowing towards float */
         Converter<Float> narrowingToFloat = new Converter<Float>()
@@ -353,10 +376,10 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return o == null ? null : ((Number) o).floatValue();
             }
         };
-        standardConverterMap.put(new Pair<>(Float.class, Double.class), narrowingToFloat);
-        standardConverterMap.put(new Pair<>(Float.class, Double.TYPE), narrowingToFloat);
-        standardConverterMap.put(new Pair<>(Float.TYPE, Double.class), narrowingToFloat);
-        standardConverterMap.put(new Pair<>(Float.TYPE, Double.TYPE), narrowingToFloat);
+        addStandardConverter(Float.class, Double.class, narrowingToFloat);
+        addStandardConverter(Float.class, Double.TYPE, narrowingToFloat);
+        addStandardConverter(Float.TYPE, Double.class, narrowingToFloat);
+        addStandardConverter(Float.TYPE, Double.TYPE, narrowingToFloat);
 
         /* exact towards Float */
         Converter<Float> toFloat = new Converter<Float>()
@@ -368,12 +391,12 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return ((Number) o).floatValue();
             }
         };
-        standardConverterMap.put(new Pair<>(Float.class, Short.class), toFloat);
-        standardConverterMap.put(new Pair<>(Float.class, Integer.class), toFloat);
-        standardConverterMap.put(new Pair<>(Float.class, Long.class), toFloat);
-        standardConverterMap.put(new Pair<>(Float.class, Short.TYPE), toFloat);
-        standardConverterMap.put(new Pair<>(Float.class, Integer.TYPE), toFloat);
-        standardConverterMap.put(new Pair<>(Float.class, Long.TYPE), toFloat);
+        addStandardConverter(Float.class, Short.class, toFloat);
+        addStandardConverter(Float.class, Integer.class, toFloat);
+        addStandardConverter(Float.class, Long.class, toFloat);
+        addStandardConverter(Float.class, Short.TYPE, toFloat);
+        addStandardConverter(Float.class, Integer.TYPE, toFloat);
+        addStandardConverter(Float.class, Long.TYPE, toFloat);
 
         /* string to float */
         Converter<Float> stringToFloat = new Converter<Float>()
@@ -384,8 +407,8 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return Float.valueOf(String.valueOf(o));
             }
         };
-        standardConverterMap.put(new Pair<>(Float.class, String.class), stringToFloat);
-        standardConverterMap.put(new Pair<>(Float.TYPE, String.class), stringToFloat);
+        addStandardConverter(Float.class, String.class, stringToFloat);
+        addStandardConverter(Float.TYPE, String.class, stringToFloat);
 
         /* exact or widening towards Double */
         Converter<Double> toDouble = new Converter<Double>()
@@ -397,14 +420,14 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return ((Number) o).doubleValue();
             }
         };
-        standardConverterMap.put(new Pair<>(Double.class, Short.class), toDouble);
-        standardConverterMap.put(new Pair<>(Double.class, Integer.class), toDouble);
-        standardConverterMap.put(new Pair<>(Double.class, Long.class), toDouble);
-        standardConverterMap.put(new Pair<>(Double.class, Float.class), toDouble);
-        standardConverterMap.put(new Pair<>(Double.class, Short.TYPE), toDouble);
-        standardConverterMap.put(new Pair<>(Double.class, Integer.TYPE), toDouble);
-        standardConverterMap.put(new Pair<>(Double.class, Long.TYPE), toDouble);
-        standardConverterMap.put(new Pair<>(Double.class, Float.TYPE), toDouble);
+        addStandardConverter(Double.class, Short.class, toDouble);
+        addStandardConverter(Double.class, Integer.class, toDouble);
+        addStandardConverter(Double.class, Long.class, toDouble);
+        addStandardConverter(Double.class, Float.class, toDouble);
+        addStandardConverter(Double.class, Short.TYPE, toDouble);
+        addStandardConverter(Double.class, Integer.TYPE, toDouble);
+        addStandardConverter(Double.class, Long.TYPE, toDouble);
+        addStandardConverter(Double.class, Float.TYPE, toDouble);
 
         /* string to double */
         Converter<Double> stringToDouble = new Converter<Double>()
@@ -415,8 +438,8 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return Double.valueOf(String.valueOf(o));
             }
         };
-        standardConverterMap.put(new Pair<>(Double.class, String.class), stringToDouble);
-        standardConverterMap.put(new Pair<>(Double.TYPE, String.class), stringToDouble);
+        addStandardConverter(Double.class, String.class, stringToDouble);
+        addStandardConverter(Double.TYPE, String.class, stringToDouble);
 
         /* boolean to byte */
         Converter<Byte> booleanToByte = new Converter<Byte>()
@@ -427,10 +450,10 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return o == null ? null : ((Boolean)o).booleanValue() ? (byte)1 : (byte)0;
             }
         };
-        standardConverterMap.put(new Pair<>(Byte.class, Boolean.class), booleanToByte);
-        standardConverterMap.put(new Pair<>(Byte.class, Boolean.TYPE), booleanToByte);
-        standardConverterMap.put(new Pair<>(Byte.TYPE, Boolean.class), booleanToByte);
-        standardConverterMap.put(new Pair<>(Byte.TYPE, Boolean.TYPE), booleanToByte);
+        addStandardConverter(Byte.class, Boolean.class, booleanToByte);
+        addStandardConverter(Byte.class, Boolean.TYPE, booleanToByte);
+        addStandardConverter(Byte.TYPE, Boolean.class, booleanToByte);
+        addStandardConverter(Byte.TYPE, Boolean.TYPE, booleanToByte);
 
         /* boolean to short */
         Converter<Short> booleanToShort = new Converter<Short>()
@@ -441,10 +464,10 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return o == null ? null : ((Boolean)o).booleanValue() ? (short)1 : (short)0;
             }
         };
-        standardConverterMap.put(new Pair<>(Short.class, Boolean.class), booleanToShort);
-        standardConverterMap.put(new Pair<>(Short.class, Boolean.TYPE), booleanToShort);
-        standardConverterMap.put(new Pair<>(Short.TYPE, Boolean.class), booleanToShort);
-        standardConverterMap.put(new Pair<>(Short.TYPE, Boolean.TYPE), booleanToShort);
+        addStandardConverter(Short.class, Boolean.class, booleanToShort);
+        addStandardConverter(Short.class, Boolean.TYPE, booleanToShort);
+        addStandardConverter(Short.TYPE, Boolean.class, booleanToShort);
+        addStandardConverter(Short.TYPE, Boolean.TYPE, booleanToShort);
 
         /* boolean to integer */
         Converter<Integer> booleanToInteger = new Converter<Integer>()
@@ -455,10 +478,10 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return o == null ? null : ((Boolean)o).booleanValue() ? (Integer)1 : (Integer)0;
             }
         };
-        standardConverterMap.put(new Pair<>(Integer.class, Boolean.class), booleanToInteger);
-        standardConverterMap.put(new Pair<>(Integer.class, Boolean.TYPE), booleanToInteger);
-        standardConverterMap.put(new Pair<>(Integer.TYPE, Boolean.class), booleanToInteger);
-        standardConverterMap.put(new Pair<>(Integer.TYPE, Boolean.TYPE), booleanToInteger);
+        addStandardConverter(Integer.class, Boolean.class, booleanToInteger);
+        addStandardConverter(Integer.class, Boolean.TYPE, booleanToInteger);
+        addStandardConverter(Integer.TYPE, Boolean.class, booleanToInteger);
+        addStandardConverter(Integer.TYPE, Boolean.TYPE, booleanToInteger);
 
         /* boolean to long */
         Converter<Long> booleanToLong = new Converter<Long>()
@@ -469,10 +492,10 @@ public class ConversionHandlerImpl implements ConversionHandler
                 return o == null ? null : ((Boolean)o).booleanValue() ? 1L : 0L;
             }
         };
-        standardConverterMap.put(new Pair<>(Long.class, Boolean.class), booleanToLong);
-        standardConverterMap.put(new Pair<>(Long.class, Boolean.TYPE), booleanToLong);
-        standardConverterMap.put(new Pair<>(Long.TYPE, Boolean.class), booleanToLong);
-        standardConverterMap.put(new Pair<>(Long.TYPE, Boolean.TYPE), booleanToLong);
+        addStandardConverter(Long.class, Boolean.class, booleanToLong);
+        addStandardConverter(Long.class, Boolean.TYPE, booleanToLong);
+        addStandardConverter(Long.TYPE, Boolean.class, booleanToLong);
+        addStandardConverter(Long.TYPE, Boolean.TYPE, booleanToLong);
         
         /* to string */
         toString = new Converter<String>()
@@ -494,9 +517,9 @@ public class ConversionHandlerImpl implements ConversionHandler
                         return new java.sql.Date((Long)o);
                     }
                 };
-        standardConverterMap.put(new Pair<>(java.sql.Date.class, Long.class), longToSqlDate);
-        standardConverterMap.put(new Pair<>(java.sql.Date.class, Long.TYPE), longToSqlDate);
-        standardConverterMap.put(new Pair<>(java.sql.Date.class, java.util.Date.class),
+        addStandardConverter(java.sql.Date.class, Long.class, longToSqlDate);
+        addStandardConverter(java.sql.Date.class, Long.TYPE, longToSqlDate);
+        addStandardConverter(java.sql.Date.class, java.util.Date.class,
                 new Converter<java.sql.Date>()
                 {
                     public java.sql.Date convert(Object o)
@@ -504,7 +527,7 @@ public class ConversionHandlerImpl implements ConversionHandler
                         return new java.sql.Date(((java.util.Date)o).getTime());
                     }
                 });
-        standardConverterMap.put(new Pair<>(java.sql.Date.class, Calendar.class),
+        addStandardConverter(java.sql.Date.class, Calendar.class,
                 new Converter<java.sql.Date>()
                 {
                     public java.sql.Date convert(Object o)
@@ -522,8 +545,8 @@ public class ConversionHandlerImpl implements ConversionHandler
                     }
                 };
 
-        standardConverterMap.put(new Pair<>(java.sql.Time.class, Long.class), longToSqlTime);
-        standardConverterMap.put(new Pair<>(java.sql.Time.class, Long.TYPE), longToSqlTime);
+        addStandardConverter(java.sql.Time.class, Long.class, longToSqlTime);
+        addStandardConverter(java.sql.Time.class, Long.TYPE, longToSqlTime);
 
         Converter<java.sql.Timestamp> longToSqlTimestamp =
                 new Converter<java.sql.Timestamp>()
@@ -533,9 +556,9 @@ public class ConversionHandlerImpl implements ConversionHandler
                         return new java.sql.Timestamp((Long)o);
                     }
                 };
-        standardConverterMap.put(new Pair<>(java.sql.Timestamp.class, Long.class), longToSqlTimestamp);
-        standardConverterMap.put(new Pair<>(java.sql.Timestamp.class, Long.TYPE), longToSqlTimestamp);
-        standardConverterMap.put(new Pair<>(java.sql.Timestamp.class, java.util.Date.class),
+        addStandardConverter(java.sql.Timestamp.class, Long.class, longToSqlTimestamp);
+        addStandardConverter(java.sql.Timestamp.class, Long.TYPE, longToSqlTimestamp);
+        addStandardConverter(java.sql.Timestamp.class, java.util.Date.class,
                 new Converter<java.sql.Timestamp>()
                 {
                     public java.sql.Timestamp convert(Object o)
@@ -543,7 +566,7 @@ public class ConversionHandlerImpl implements ConversionHandler
                         return new java.sql.Timestamp(((java.util.Date)o).getTime());
                     }
                 });
-        standardConverterMap.put(new Pair<>(java.sql.Timestamp.class, Calendar.class),
+        addStandardConverter(java.sql.Timestamp.class, Calendar.class,
                 new Converter<java.sql.Timestamp>()
                 {
                     public java.sql.Timestamp convert(Object o)
@@ -554,7 +577,7 @@ public class ConversionHandlerImpl implements ConversionHandler
 
         /* Conversion between date and calendar types */
 
-        standardConverterMap.put(new Pair<>(java.util.Date.class, Calendar.class),
+        addStandardConverter(java.util.Date.class, Calendar.class,
                 new Converter<java.util.Date>()
                 {
                     public java.util.Date convert(Object o)
@@ -575,8 +598,8 @@ public class ConversionHandlerImpl implements ConversionHandler
                         return ((java.sql.Date)o).getTime();
                     }
                 };
-        standardConverterMap.put(new Pair<>(Long.class, java.sql.Date.class), longToSqlDate);
-        standardConverterMap.put(new Pair<>(Long.TYPE, java.sql.Date.class), longToSqlDate);
+        addStandardConverter(Long.class, java.sql.Date.class, longToSqlDate);
+        addStandardConverter(Long.TYPE, java.sql.Date.class, longToSqlDate);
         Converter<Long> sqlTimeToLong =
                 new Converter<Long>()
                 {
@@ -586,8 +609,8 @@ public class ConversionHandlerImpl implements ConversionHandler
                     }
                 };
 
-        standardConverterMap.put(new Pair<>(Long.class, java.sql.Time.class), longToSqlTime);
-        standardConverterMap.put(new Pair<>(Long.TYPE, java.sql.Time.class), longToSqlTime);
+        addStandardConverter(Long.class, java.sql.Time.class, longToSqlTime);
+        addStandardConverter(Long.TYPE, java.sql.Time.class, longToSqlTime);
 
         Converter<Long> sqlTimestampToLong =
                 new Converter<Long>()
@@ -597,9 +620,9 @@ public class ConversionHandlerImpl implements ConversionHandler
                         return ((java.sql.Timestamp)o).getTime();
                     }
                 };
-        standardConverterMap.put(new Pair<>(java.sql.Timestamp.class, Long.class), longToSqlTimestamp);
-        standardConverterMap.put(new Pair<>(java.sql.Timestamp.class, Long.TYPE), longToSqlTimestamp);
-        standardConverterMap.put(new Pair<>(java.sql.Timestamp.class, java.util.Date.class),
+        addStandardConverter(java.sql.Timestamp.class, Long.class, longToSqlTimestamp);
+        addStandardConverter(java.sql.Timestamp.class, Long.TYPE, longToSqlTimestamp);
+        addStandardConverter(java.sql.Timestamp.class, java.util.Date.class,
                 new Converter<java.sql.Timestamp>()
                 {
                     public java.sql.Timestamp convert(Object o)
@@ -607,7 +630,7 @@ public class ConversionHandlerImpl implements ConversionHandler
                         return new java.sql.Timestamp(((java.util.Date)o).getTime());
                     }
                 });
-        standardConverterMap.put(new Pair<>(java.sql.Timestamp.class, Calendar.class),
+        addStandardConverter(java.sql.Timestamp.class, Calendar.class,
                 new Converter<java.sql.Timestamp>()
                 {
                     public java.sql.Timestamp convert(Object o)
@@ -624,16 +647,16 @@ public class ConversionHandlerImpl implements ConversionHandler
           {
               try
               {
-                  return new java.sql.Date(isoDateFormat.parse(String.valueOf(o)).getTime());
+                  return java.sql.Date.valueOf(LocalDate.from(isoDateFormat.parse(String.valueOf(o), new ParsePosition(0))));
               }
-              catch (ParseException pe)
+              catch (DateTimeException pe)
               {
                   Logger.warn("could not parse '" + o + "' into an iso date");
                   return null;
               }
           }
         };
-        standardConverterMap.put(new Pair<>(java.sql.Date.class, String.class), stringToDate);
+        addStandardConverter(java.sql.Date.class, String.class, stringToDate);
 
         Converter<java.sql.Timestamp> stringToTimestamp = new Converter<java.sql.Timestamp>()
         {
@@ -641,16 +664,16 @@ public class ConversionHandlerImpl implements ConversionHandler
             {
                 try
                 {
-                    return new java.sql.Timestamp(isoTimestampFormat.parse(String.valueOf(o)).getTime());
+                    return java.sql.Timestamp.valueOf(LocalDateTime.from(isoTimestampFormat.parse(String.valueOf(o), new ParsePosition(0))));
                 }
-                catch (ParseException pe)
+                catch (DateTimeException pe)
                 {
                     Logger.warn("could not parse '" + o + "' into an iso timestamp");
                     return null;
                 }
             }
         };
-        standardConverterMap.put(new Pair<>(java.sql.Timestamp.class, String.class), stringToTimestamp);
+        addStandardConverter(java.sql.Timestamp.class, String.class, stringToTimestamp);
     }
 
     /**
@@ -658,7 +681,7 @@ public class ConversionHandlerImpl implements ConversionHandler
      */
     public ConversionHandlerImpl()
     {
-        converterCacheMap = new ConcurrentHashMap<Pair<? extends Class, ? extends Class>, Converter>();
+        converterCacheMap = new IdentityHashMap<Class, Map<Class, Converter>>();
     }
 
     /**
@@ -701,14 +724,14 @@ public class ConversionHandlerImpl implements ConversionHandler
     @Override
     public Converter getNeededConverter(final Class formal, final Class actual)
     {
-        Pair<Class, Class> key = new Pair<>(formal, actual);
-
         /* first check for a standard conversion */
-        Converter converter = standardConverterMap.get(key);
+        Map<Class, Converter> converters = standardConverterMap.get(formal);
+        Converter converter = converters == null ? null : converters.get(actual);
         if (converter == null)
         {
             /* then the converters cache map */
-            converter = converterCacheMap.get(key);
+            converters = converterCacheMap.get(formal);
+            converter = converters == null ? null : converters.get(actual);
             if (converter == null)
             {
                 /* check for conversion towards string */
@@ -729,7 +752,7 @@ public class ConversionHandlerImpl implements ConversionHandler
                     };
                 }
 
-                converterCacheMap.put(key, converter == null ? cacheMiss : converter);
+                cacheConverter(formal, actual, converter == null ? cacheMiss : converter);
             }
         }
         return converter == cacheMiss ? null : converter;
@@ -746,24 +769,38 @@ public class ConversionHandlerImpl implements ConversionHandler
     @Override
     public void addConverter(Class formal, Class actual, Converter converter)
     {
-        Pair<Class, Class> key = new Pair<>(formal, actual);
-        converterCacheMap.put(key, converter);
+        cacheConverter(formal, actual, converter);
         if (formal.isPrimitive())
         {
-            key = new Pair<>(getBoxedClass(formal), actual);
-            converterCacheMap.put(key, converter);
+            cacheConverter(getBoxedClass(formal), actual, converter);
         }
         else
         {
             Class unboxedFormal = getUnboxedClass(formal);
             if (unboxedFormal != formal)
             {
-                key = new Pair<>(unboxedFormal, actual);
-                converterCacheMap.put(key, converter);
+                cacheConverter(unboxedFormal, actual, converter);
             }
         }
     }
 
+    /**
+     * Publish a copy of the converters cache with the given converter.
+     *
+     * @param formal expected formal type
+     * @param actual provided argument type
+     * @param converter converter
+     */
+    private synchronized void cacheConverter(Class formal, Class actual, Converter converter)
+    {
+        Map<Class, Map<Class, Converter>> cache = new IdentityHashMap<Class, Map<Class, Converter>>(converterCacheMap);
+        Map<Class, Converter> converters = cache.get(formal);
+        converters = converters == null ? new IdentityHashMap<Class, Converter>() : new IdentityHashMap<Class, Converter>(converters);
+        converters.put(actual, converter);
+        cache.put(formal, converters);
+        converterCacheMap = cache;
+    }
+
     /**
      * boxing helper maps for standard types
      */
@@ -18,35 +18,61 @@
 
 package velosurf.util;
 
-import java.io.InputStream;
-import java.io.StringReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.velocity.util.ExtProperties;
 import org.apache.velocity.exception.ResourceNotFoundException;
 import org.apache.velocity.runtime.resource.Resource;
 import org.apache.velocity.runtime.resource.loader.ResourceLoader;
 import velosurf.context.DBReference;
+import velosurf.context.EntityAccessor;
 import velosurf.context.EntityReference;
+import velosurf.context.Instance;
+import velosurf.context.RowIterator;
+import velosurf.model.Entity;
+import velosurf.sql.ConnectionWrapper;
+import velosurf.sql.Database;
 import velosurf.web.VelosurfTool;
-import java.io.Reader;
+
 /**
- * A database resource loader for use with Velosurf. Experimental.
+ * <p>A database resource loader for use with Velosurf. Experimental.</p>
+ *
+ * <p>Configuration properties: <code>entity</code> (default: <code>template</code>), <code>data</code> (default: <code>data</code>),
+ * <code>lastmodified</code> (default: <code>lastmodified</code>) and <code>poll-interval</code>, the minimum interval
+ * between two checks of the modification dates, in seconds (default: 2).</p>
+ *
+ * <p>The modification dates of all templates are read at once by a single query, and kept in memory until the next check.
+ * Templates are read as a stream from the data column (which can be a CLOB).</p>
  *
  *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
  */
 public class DBResourceLoader extends ResourceLoader
 {
+    public static final long DEFAULT_POLL_INTERVAL = 2000;
+
     protected DBReference db = null;
     protected EntityReference table = null;
     protected String entity = null;
     protected String dataField = null;
     protected String timestampField = null;
+    protected long pollInterval = DEFAULT_POLL_INTERVAL;
 
     public void init(ExtProperties configuration)
     {
         entity = configuration.getString("entity", "template");
         dataField = configuration.getString("data", "data");
         timestampField = configuration.getString("lastmodified", "lastmodified");
+        pollInterval = configuration.getLong("poll-interval", DEFAULT_POLL_INTERVAL / 1000) * 1000;
         initdb();
     }
 
@@ -58,29 +84,208 @@ public class DBResourceLoader extends ResourceLoader
             if(db != null)
             {
                 table = (EntityReference)db.get(entity);
+
+                Database database = EntityAccessor.getDatabase(db);
+                Entity templates = database.getEntity(entity);
+                if(templates == null)
+                {
+                    Logger.error("DBResourceLoader: entity " + entity + " not found");
+                    return;
+                }
+                List<String> keys = templates.getPKCols();
+                if(keys.size() != 1)
+                {
+                    Logger.error("DBResourceLoader: entity " + entity + " must have a single column primary key");
+                    return;
+                }
+                keyColumn = keys.get(0);
+                timestampColumn = templates.resolveName(timestampField);
+                pollQuery = "select " + keyColumn + ", " + timestampColumn + " from " + templates.getTableName();
+                dataQuery = "select " + templates.resolveName(dataField) + " from " + templates.getTableName() + " where " + keyColumn + "=?";
             }
         }
     }
 
     public boolean isSourceModified(Resource resource)
     {
-        return((Date)table.fetch(resource.getName()).get(timestampField)).getTime() > resource.getLastModified();
+        Long timestamp = getTimestamps(false).get(resource.getName());
+        /* a removed template is considered as modified */
+        return timestamp == null || timestamp > resource.getLastModified();
     }
 
     public long getLastModified(Resource resource)
     {
-        return((Date)table.fetch(resource.getName()).get(timestampField)).getTime();
+        Long timestamp = getTimestamps(false).get(resource.getName());
+        if(timestamp == null)
+        {
+            /* the template may have been added since last check */
+            timestamp = getTimestamps(true).get(resource.getName());
+        }
+        return timestamp == null ? 0 : timestamp;
+    }
+
+    public boolean resourceExists(String name)
+    {
+        return getTimestamps(false).containsKey(name) || super.resourceExists(name);
+    }
+
+    public Reader getResourceReader(String id, String encoding) throws ResourceNotFoundException
+    {
+        if(db == null)
+        {
+            initdb();
+        }
+        if(dataQuery == null)
+        {
+            throw new ResourceNotFoundException("DBResourceLoader: cannot read templates from entity " + entity);
+        }
+
+        ConnectionWrapper connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try
+        {
+            connection = EntityAccessor.getDatabase(db).getConnection();
+            /* the connection stays busy until the template has been read */
+            connection.enterBusyState();
+            statement = connection.prepareStatement(dataQuery);
+            statement.setString(1, id);
+            resultSet = statement.executeQuery();
+            Reader reader = resultSet.next() ? resultSet.getCharacterStream(1) : null;
+            if(reader == null)
+            {
+                throw new ResourceNotFoundException("DBResourceLoader: template " + id + " not found");
+            }
+            Reader ret = new TemplateReader(reader, connection, statement, resultSet);
+            connection = null;
+            return ret;
+        }
+        catch(SQLException sqle)
+        {
+            Logger.log(sqle);
+            throw new ResourceNotFoundException("DBResourceLoader: could not read template " + id + ": " + sqle.getMessage());
+        }
+        finally
+        {
+            if(connection != null)
+            {
+                release(connection, statement, resultSet);
+            }
+        }
     }
 
-    public Reader getResourceReader(String id, String encoding)
+    /**
+     * Get the modification dates of all templates, querying them again if the polling interval is elapsed.
+     * Only one thread queries them, others use the previous dates meanwhile.
+     * @param force whether to query them again anyway
+     * @return map name -&gt; modification date
+     */
+    protected Map<String, Long> getTimestamps(boolean force)
     {
         if(db == null)
         {
             initdb();
         }
+        Map<String, Long> current = timestamps;
+        if((force || current == null || System.currentTimeMillis() - lastPoll >= pollInterval) && pollQuery != null
+            && polling.compareAndSet(false, true))
+        {
+            try
+            {
+                Map<String, Long> map = new HashMap<String, Long>();
+                RowIterator rows = EntityAccessor.getDatabase(db).query(pollQuery);
+                while(rows.hasNext())
+                {
+                    Instance row = rows.next();
+                    Object key = row.get(keyColumn);
+                    Object value = row.get(timestampColumn);
+                    if(key != null)
+                    {
+                        map.put(key.toString(), value instanceof Date ? ((Date)value).getTime()
+                                                : value instanceof Number ? ((Number)value).longValue() : 0L);
+                    }
+                }
+                current = timestamps = Collections.unmodifiableMap(map);
+                lastPoll = System.currentTimeMillis();
+            }
+            catch(SQLException sqle)
+            {
+                Logger.log(sqle);
+            }
+            finally
+            {
+                polling.set(false);
+            }
+        }
+        return current == null ? Collections.<String, Long>emptyMap() : current;
+    }
+
+    /**
+     * Release the resources used to read a template.
+     */
+    private static void release(ConnectionWrapper connection, PreparedStatement statement, ResultSet resultSet)
+    {
+        try
+        {
+            if(resultSet != null)
+            {
+                resultSet.close();
+            }
+            if(statement != null)
+            {
+                statement.close();
+            }
+        }
+        catch(SQLException sqle)
+        {
+            Logger.log(sqle);
+        }
+        finally
+        {
+            connection.leaveBusyState();
+        }
+    }
+
+    /**
+     * Reader on the data column, releasing JDBC resources when closed.
+     */
+    private static class TemplateReader extends FilterReader
+    {
+        TemplateReader(Reader reader, ConnectionWrapper connection, PreparedStatement statement, ResultSet resultSet)
+        {
+            super(reader);
+            this.connection = connection;
+            this.statement = statement;
+            this.resultSet = resultSet;
+        }
+
+        public void close() throws IOException
+        {
+            if(!closed)
+            {
+                closed = true;
+                try
+                {
+                    super.close();
+                }
+                finally
+                {
+                    release(connection, statement, resultSet);
+                }
+            }
+        }
 
-	      // CB TODO - get the reader directly fro mthe DB
-        String template = (String)table.fetch(id).get(dataField);
-	      return template == null ? null : new StringReader(template);
+        private ConnectionWrapper connection;
+        private PreparedStatement statement;
+        private ResultSet resultSet;
+        private boolean closed = false;
     }
+
+    private volatile String pollQuery = null;
+    private volatile String dataQuery = null;
+    private String keyColumn = null;
+    private String timestampColumn = null;
+    private volatile Map<String, Long> timestamps = null;
+    private volatile long lastPoll = 0;
+    private AtomicBoolean polling = new AtomicBoolean(false);
 }
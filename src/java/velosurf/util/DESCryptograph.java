@@ -19,14 +19,10 @@
 package velosurf.util;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
-import java.security.Security;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
-import java.util.Base64;
 
 /**
  * Implemenation of the cryptograph for the DES algorithm.
@@ -34,138 +30,39 @@ import java.util.Base64;
  *
  *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
  */
-public class DESCryptograph implements Cryptograph
+public class DESCryptograph extends CipherCryptograph
 {
-    /** encryption cypher */
-    transient Cipher ecipher;
-
-    /** decryption cypher */
-    transient Cipher dcipher;
-
-    /** random intializer */
-    String myRandom;
-
     /**
      * Constructor.
      */
     public DESCryptograph(){}
 
     /**
-     * initialization.
+     * generate the DES key.
      * @param random random string
+     * @return secret key
+     * @throws GeneralSecurityException
      */
-    public void init(String random)
+    protected SecretKey generateKey(String random) throws GeneralSecurityException
     {
-        try
-        {
-            // remember random value for serialization
-            myRandom = random;
-
-            // this is the only method that gives us reproducibility
-            SecureRandom seed = SecureRandom.getInstance("SHA1PRNG");
-
-            seed.setSeed(random.getBytes());
+        // this is the only method that gives us reproducibility
+        SecureRandom seed = SecureRandom.getInstance("SHA1PRNG");
 
-            KeyGenerator keygen = KeyGenerator.getInstance("DES");
+        seed.setSeed(random.getBytes());
 
-            keygen.init(seed);
+        KeyGenerator keygen = KeyGenerator.getInstance("DES");
 
-            SecretKey key = keygen.generateKey();
-
-            ecipher = Cipher.getInstance("DES");
-            dcipher = Cipher.getInstance("DES");
-            ecipher.init(Cipher.ENCRYPT_MODE, key);
-            dcipher.init(Cipher.DECRYPT_MODE, key);
-        }
-        catch(javax.crypto.NoSuchPaddingException e)
-        {
-            e.printStackTrace();
-        }
-        catch(java.security.NoSuchAlgorithmException e)
-        {
-            e.printStackTrace();
-        }
-        catch(java.security.InvalidKeyException e)
-        {
-            e.printStackTrace();
-        }
-    }
-
-    private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException
-    {
-        in.defaultReadObject();
-        init(myRandom);
+        keygen.init(seed);
+        return keygen.generateKey();
     }
 
     /**
-     * encrypt a string.
-     * @param str string to encrypt
-     * @return encrypted string
+     * cipher transformation.
+     * @return "DES"
      */
-    public String encrypt(String str)
-    {
-        try
-        {
-            // Encode the string into bytes using utf-8
-            byte[] utf8 = str.getBytes("UTF8");
-
-            // Encrypt
-            byte[] enc = ecipher.doFinal(utf8);
-
-            // Encode bytes to base64 to get a string
-            return new String(Base64.getEncoder().encode(enc));
-        }
-        catch(javax.crypto.BadPaddingException e)
-        {
-            Logger.log(e);
-        }
-        catch(IllegalBlockSizeException e)
-        {
-            Logger.log(e);
-        }
-        catch(UnsupportedEncodingException e)
-        {
-            Logger.log(e);
-        }
-        return null;
-    }
-
-    /**
-     * Decrypt a string.
-     * @param str string to decrypt
-     * @return decrypted string
-     */
-    public String decrypt(String str)
-    {
-        try
-        {
-            // Decode base64 to get bytes
-            byte[] dec = Base64.getDecoder().decode(str);
-
-            // Decrypt
-            byte[] utf8 = dcipher.doFinal(dec);
-
-            // Decode using utf-8
-            return new String(utf8, "UTF8");
-        }
-        catch(javax.crypto.BadPaddingException e)
-        {
-            Logger.log(e);
-        }
-        catch(IllegalBlockSizeException e)
-        {
-            Logger.log(e);
-        }
-        catch(UnsupportedEncodingException e)
-        {
-            Logger.log(e);
-        }
-        return null;
-    }
-
-    static
+    protected String getTransformation()
     {
-        Security.addProvider(new com.sun.crypto.provider.SunJCE());
+        return "DES";
     }
 
     /**
@@ -19,8 +19,24 @@
 package velosurf.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.naming.NameNotFoundException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
@@ -29,10 +45,131 @@ import javax.naming.directory.DirContext;
 import javax.naming.directory.InitialDirContext;
 
 /**
- * Utility class to resolve names against DN servers
+ * <p>Utility class to resolve names against DN servers.</p>
+ *
+ * <p>Resolutions are cached: found records are kept during the positive time to live, failed resolutions
+ * during the negative time to live. Concurrent resolutions of the same name share a single query.
+ * Queries are run by a bounded pool of threads, and {@link #resolveAsync(String, boolean)} doesn't block
+ * the calling thread.</p>
+ *
+ * <p>The static methods use a shared resolver, which can be replaced with {@link #setInstance(DNSResolver)},
+ * for instance to use another {@link Backend} in tests.</p>
  */
 public class DNSResolver
 {
+    /**
+     * DNS queries backend.
+     */
+    public interface Backend
+    {
+        /**
+         * Query DNS records.
+         * @param hostname hostname
+         * @param mx do MX query or not
+         * @return found hosts (for an MX query) or addresses, or null if none
+         * @throws NamingException if the query failed
+         */
+        List<String> query(String hostname, boolean mx) throws NamingException;
+    }
+
+    /**
+     * Default time to live of found records, in milliseconds.
+     */
+    public static final long DEFAULT_POSITIVE_TTL = 600000L;
+
+    /**
+     * Default time to live of failed resolutions, in milliseconds.
+     */
+    public static final long DEFAULT_NEGATIVE_TTL = 60000L;
+
+    /**
+     * Default number of resolving threads.
+     */
+    public static final int DEFAULT_THREADS = 4;
+
+    /**
+     * Maximum number of cached names.
+     */
+    public static final int MAX_ENTRIES = 10000;
+
+    /**
+     * Constructor, with the JNDI backend and default values.
+     */
+    public DNSResolver()
+    {
+        this(new JNDIBackend(), DEFAULT_THREADS, DEFAULT_POSITIVE_TTL, DEFAULT_NEGATIVE_TTL);
+    }
+
+    /**
+     * Constructor.
+     * @param backend DNS queries backend
+     * @param threads maximum number of resolving threads
+     * @param positiveTtl time to live of found records, in milliseconds
+     * @param negativeTtl time to live of failed resolutions, in milliseconds
+     */
+    public DNSResolver(Backend backend, int threads, long positiveTtl, long negativeTtl)
+    {
+        this.backend = backend;
+        this.positiveTtl = positiveTtl;
+        this.negativeTtl = negativeTtl;
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(MAX_QUEUED), new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "velosurf dns resolver " + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            },
+            new RejectedExecutionHandler()
+            {
+                /* when too many queries are pending, or once shut down, the calling thread runs its query itself,
+                   so that the pending entry always gets completed */
+                public void rejectedExecution(Runnable r, ThreadPoolExecutor pool)
+                {
+                    r.run();
+                }
+            });
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+    }
+
+    /**
+     * Get the shared resolver.
+     * @return shared resolver
+     */
+    public static DNSResolver getInstance()
+    {
+        DNSResolver resolver = instance;
+        if (resolver == null)
+        {
+            synchronized(DNSResolver.class)
+            {
+                resolver = instance;
+                if (resolver == null)
+                {
+                    instance = resolver = new DNSResolver();
+                }
+            }
+        }
+        return resolver;
+    }
+
+    /**
+     * Replace the shared resolver. The previous one, if any, is shut down.
+     * @param resolver new shared resolver
+     */
+    public static synchronized void setInstance(DNSResolver resolver)
+    {
+        DNSResolver previous = instance;
+        instance = resolver;
+        if (previous != null && previous != resolver)
+        {
+            previous.shutdown();
+        }
+    }
+
     /**
      * check DNS.
      * @param hostname hostname
@@ -57,25 +194,221 @@ public class DNSResolver
     }
 
     /**
-     * Resolve MX DNS.
+     * check DNS without blocking, using the shared resolver.
+     * @param hostname hostname
+     * @param mx do MX query or not
+     * @return future validity
+     */
+    public static CompletableFuture<Boolean> checkDNSAsync(String hostname, boolean mx)
+    {
+        return getInstance().resolveAsync(hostname, mx).thenApply(new Function<List<String>, Boolean>()
+        {
+            public Boolean apply(List<String> records)
+            {
+                return records != null && records.size() > 0;
+            }
+        });
+    }
+
+    /**
+     * Resolve DNS, using the shared resolver.
      * @param hostname hostname
-     * @return list of MXs
+     * @param mx do MX query or not
+     * @return list of MXs or addresses, or null if the resolution failed
      */
     public static List<String> resolveDNS(String hostname, boolean mx)
     {
-        List<String> result = new ArrayList<String>();
+        return getInstance().resolve(hostname, mx);
+    }
+
+    /**
+     * Resolve DNS, waiting for the result.
+     * @param hostname hostname
+     * @param mx do MX query or not
+     * @return list of MXs or addresses, or null if the resolution failed
+     */
+    public List<String> resolve(String hostname, boolean mx)
+    {
+        return resolveAsync(hostname, mx).join();
+    }
 
+    /**
+     * Resolve DNS without blocking.
+     * @param hostname hostname
+     * @param mx do MX query or not
+     * @return future list of MXs or addresses, completed with null if the resolution failed
+     */
+    public CompletableFuture<List<String>> resolveAsync(final String hostname, final boolean mx)
+    {
+        final String key = (mx ? "MX:" : "A:") + hostname.toLowerCase();
+        long now = System.currentTimeMillis();
+        Entry entry = cache.get(key);
+        if (entry != null && (entry.expiration == 0 || entry.expiration > now))
+        {
+            return entry.result;
+        }
+        Entry created = new Entry();
+        entry = entry == null ? cache.putIfAbsent(key, created) : (cache.replace(key, entry, created) ? null : cache.get(key));
+        if (entry != null)
+        {
+            /* another thread is resolving this name */
+            return entry.result;
+        }
+        if (cache.size() > MAX_ENTRIES)
+        {
+            purge(now);
+        }
+        final Entry pending = created;
+        CompletableFuture.supplyAsync(new Supplier<List<String>>()
+        {
+            public List<String> get()
+            {
+                return query(hostname, mx);
+            }
+        }, executor).whenComplete(new BiConsumer<List<String>, Throwable>()
+        {
+            public void accept(List<String> records, Throwable t)
+            {
+                if (t != null)
+                {
+                    Logger.debug("DNS validation: resolution of '{}' failed: {}", hostname, t.getMessage());
+                    records = null;
+                }
+                boolean found = records != null && records.size() > 0;
+                pending.expiration = System.currentTimeMillis() + (found ? positiveTtl : negativeTtl);
+                pending.result.complete(records);
+            }
+        });
+        return pending.result;
+    }
+
+    /**
+     * Forget all cached resolutions.
+     */
+    public void clear()
+    {
+        cache.clear();
+    }
+
+    /**
+     * Stop the resolving threads. Later resolutions are run by the calling thread.
+     */
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    /**
+     * Run a query.
+     * @param hostname hostname
+     * @param mx do MX query or not
+     * @return found records, or null
+     */
+    private List<String> query(String hostname, boolean mx)
+    {
+        Logger.trace("DNS validation: resolving DNS for {} {}", hostname, mx ? "(MX)" : "(A/CNAME)");
         try
         {
-            Logger.trace("DNS validation: resolving DNS for " + hostname + " " + (mx ? "(MX)" : "(A/CNAME)"));
+            List<String> records = backend.query(hostname, mx);
+            if (records == null || records.size() == 0)
+            {
+                Logger.trace("DNS validation: DNS query of '{}' failed", hostname);
+                return null;
+            }
+            return Collections.unmodifiableList(records);
+        }
+        catch(NamingException ne)
+        {
+            Logger.trace("DNS validation: DNS query of '{}' failed: {}", hostname, ne.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Remove expired entries, or all entries if there are still too many.
+     * @param now current time
+     */
+    private void purge(long now)
+    {
+        for (Iterator<Entry> it = cache.values().iterator(); it.hasNext();)
+        {
+            Entry entry = it.next();
+            if (entry.expiration != 0 && entry.expiration <= now)
+            {
+                it.remove();
+            }
+        }
+        if (cache.size() > MAX_ENTRIES)
+        {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Cached resolution.
+     */
+    private static class Entry
+    {
+        /** expiration date, or 0 while resolving */
+        volatile long expiration = 0;
+
+        /** future result */
+        CompletableFuture<List<String>> result = new CompletableFuture<List<String>>();
+    }
+
+    /**
+     * JNDI backend. Each resolving thread keeps its own directory context.
+     */
+    public static class JNDIBackend implements Backend
+    {
+        /**
+         * Query DNS records.
+         * @param hostname hostname
+         * @param mx do MX query or not
+         * @return found hosts (for an MX query) or addresses, or null if none
+         * @throws NamingException if the query failed
+         */
+        public List<String> query(String hostname, boolean mx) throws NamingException
+        {
+            DirContext ictx = context.get();
+            if (ictx == null)
+            {
+                Hashtable env = new Hashtable();
 
-            Hashtable env = new Hashtable();
+                env.put("java.naming.factory.initial", "com.sun.jndi.dns.DnsContextFactory");
+                env.put("com.sun.jndi.dns.timeout.initial", "5000");    /* quite short... too short? */
+                env.put("com.sun.jndi.dns.timeout.retries", "1");
 
-            env.put("java.naming.factory.initial", "com.sun.jndi.dns.DnsContextFactory");
-            env.put("com.sun.jndi.dns.timeout.initial", "5000");    /* quite short... too short? */
-            env.put("com.sun.jndi.dns.timeout.retries", "1");
+                ictx = new InitialDirContext(env);
+                context.set(ictx);
+            }
+            try
+            {
+                return query(ictx, hostname, mx);
+            }
+            catch(NameNotFoundException nnfe)
+            {
+                return null;
+            }
+            catch(NamingException ne)
+            {
+                /* don't reuse a context which may be in a bad state */
+                context.remove();
+                try
+                {
+                    ictx.close();
+                }
+                catch(NamingException e) {}
+                throw ne;
+            }
+        }
 
-            DirContext ictx = new InitialDirContext(env);
+        /**
+         * Query DNS records using the given context.
+         */
+        private List<String> query(DirContext ictx, String hostname, boolean mx) throws NamingException
+        {
+            List<String> result = new ArrayList<String>();
             String[] ids = (mx ? new String[] { "MX" } : new String[] { "A", "CNAME" });
             Attributes attrs = ictx.getAttributes(hostname, ids);
 
@@ -102,11 +435,7 @@ public class DNSResolver
                     }
                     return result;
                 }
-                else
-                {
-                    Logger.trace("DNS validation: DNS query of '" + hostname + "' failed");
-                    return null;
-                }
+                return null;
             }
             else
             {
@@ -122,38 +451,57 @@ public class DNSResolver
                     }
                     return result;
                 }
-                else
+                attr = attrs.get("CNAME");
+                if(attr != null && attr.size() > 0)
                 {
-                    attr = attrs.get("CNAME");
-                    if(attr != null && attr.size() > 0)
+                    NamingEnumeration e = attr.getAll();
+
+                    while(e.hasMore())
                     {
-                        NamingEnumeration e = attr.getAll();
+                        String h = (String)e.next();
 
-                        while(e.hasMore())
+                        if(h.endsWith("."))
                         {
-                            String h = (String)e.next();
-
-                            if(h.endsWith("."))
-                            {
-                                h = h.substring(0, h.lastIndexOf('.'));
-                            }
-                            Logger.trace("DNS validation: recursing on CNAME record towards host " + h);
-                            result.addAll(resolveDNS(h, false));
+                            h = h.substring(0, h.lastIndexOf('.'));
+                        }
+                        Logger.trace("DNS validation: recursing on CNAME record towards host {}", h);
+                        List<String> addresses = query(ictx, h, false);
+                        if (addresses != null)
+                        {
+                            result.addAll(addresses);
                         }
-                        return result;
-                    }
-                    else
-                    {
-                        Logger.trace("DNS validation: DNS query of '" + hostname + "' failed");
-                        return null;
                     }
+                    return result;
                 }
+                return null;
             }
         }
-        catch(NamingException ne)
-        {
-            Logger.trace("DNS validation: DNS MX query failed: " + ne.getMessage());
-            return null;
-        }
+
+        /** per-thread directory context */
+        private ThreadLocal<DirContext> context = new ThreadLocal<DirContext>();
     }
+
+    /** maximum number of queries waiting for a resolving thread */
+    private static final int MAX_QUEUED = 1000;
+
+    /** shared resolver */
+    private static volatile DNSResolver instance = null;
+
+    /** resolving threads counter */
+    private static AtomicInteger threadCount = new AtomicInteger();
+
+    /** DNS queries backend */
+    private Backend backend;
+
+    /** time to live of found records */
+    private long positiveTtl;
+
+    /** time to live of failed resolutions */
+    private long negativeTtl;
+
+    /** resolving threads */
+    private ExecutorService executor;
+
+    /** cached resolutions, by query type and hostname */
+    private Map<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
 }
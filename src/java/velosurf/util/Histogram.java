@@ -0,0 +1,174 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Lock-free latency histogram.</p>
+ *
+ * <p>Durations are recorded in power of two buckets of microseconds, so percentiles are approximated by the upper
+ * bound of their bucket. Count, mean and max are exact.</p>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ *
+ */
+public class Histogram
+{
+    /**
+     * Constructor.
+     */
+    public Histogram()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos duration in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        long micros = nanos / 1000;
+        int bucket = micros <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[bucket].increment();
+        count.increment();
+        total.add(nanos);
+        long previous;
+        while (nanos > (previous = max.get()) && !max.compareAndSet(previous, nanos));
+    }
+
+    /**
+     * Getter for the number of recorded durations.
+     *
+     * @return count
+     */
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    /**
+     * Getter for the total of recorded durations.
+     *
+     * @return total, in milliseconds
+     */
+    public double getTotal()
+    {
+        return total.sum() / 1000000.0;
+    }
+
+    /**
+     * Getter for the mean duration.
+     *
+     * @return mean, in milliseconds
+     */
+    public double getMean()
+    {
+        long n = count.sum();
+        return n == 0 ? 0.0 : total.sum() / 1000000.0 / n;
+    }
+
+    /**
+     * Getter for the max duration.
+     *
+     * @return max, in milliseconds
+     */
+    public double getMax()
+    {
+        return max.get() / 1000000.0;
+    }
+
+    /**
+     * Get an approximated percentile.
+     *
+     * @param percentile percentile, between 0 and 100
+     * @return upper bound of the percentile bucket, in milliseconds
+     */
+    public double getPercentile(double percentile)
+    {
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i] = buckets[i].sum();
+            n += counts[i];
+        }
+        if (n == 0)
+        {
+            return 0.0;
+        }
+        long threshold = (long)Math.ceil(n * percentile / 100.0);
+        long cumulated = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            cumulated += counts[i];
+            if (cumulated >= threshold)
+            {
+                /* bucket i holds durations in [2^(i-1), 2^i) microseconds - don't report more than the max */
+                return Math.min((1L << i) / 1000.0, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Reset the histogram.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            buckets[i].reset();
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    /**
+     * Number of buckets (the last one gathers durations above 2^38 microseconds).
+     */
+    private static final int BUCKETS = 40;
+
+    /**
+     * Buckets.
+     */
+    private LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    /**
+     * Count.
+     */
+    private LongAdder count = new LongAdder();
+
+    /**
+     * Total, in nanoseconds.
+     */
+    private LongAdder total = new LongAdder();
+
+    /**
+     * Max, in nanoseconds.
+     */
+    private AtomicLong max = new AtomicLong();
+}
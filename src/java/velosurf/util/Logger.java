@@ -26,8 +26,11 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.function.Supplier;
 
 /**
  * This class is the logger used by velosurf.
@@ -92,9 +95,19 @@ public class Logger
     private static boolean displayIPAddress = false;
 
     /**
-     * max number of lines to log in asynchronous mode.
+     * max number of lines kept until an output writer is given.
      */
-    private static int asyncLimit = 50;
+    private static int startupLimit = 256;
+
+    /**
+     * asynchronous logging capacity (0 for synchronous logging).
+     */
+    private static int asyncCapacity = 0;
+
+    /**
+     * asynchronous logging overflow policy.
+     */
+    private static AsyncLogWriter.OverflowPolicy asyncPolicy = AsyncLogWriter.OverflowPolicy.DROP;
 
     /**
      * Did someone give me an otput writer?
@@ -138,38 +151,91 @@ public class Logger
     }
 
     /**
-     * date format for timestamps.
+     * Log asynchronously, using a ring buffer drained by a writer thread.
+     * A non-positive capacity is an error and leaves logging synchronous;
+     * a capacity above {@link AsyncLogWriter#MAX_CAPACITY} is lowered to it.
+     *
+     * @param capacity number of lines the buffer can hold
+     * @param policy whether to drop lines or to wait when the buffer is full
      */
-    static SimpleDateFormat format = null;
+    public static synchronized void setAsynchronous(int capacity, AsyncLogWriter.OverflowPolicy policy)
+    {
+        setSynchronous();
+        if(capacity <= 0)
+        {
+            error("invalid asynchronous log buffer capacity: {}, logging stays synchronous", capacity);
+            return;
+        }
+        if(capacity > AsyncLogWriter.MAX_CAPACITY)
+        {
+            warn("asynchronous log buffer capacity {} lowered to {}", capacity, AsyncLogWriter.MAX_CAPACITY);
+            capacity = AsyncLogWriter.MAX_CAPACITY;
+        }
+        asyncCapacity = capacity;
+        asyncPolicy = policy;
+        if(initialized)
+        {
+            AsyncLogWriter async = new AsyncLogWriter(capacity, policy);
+            async.start(log);
+            buffer = async;
+        }
+    }
 
     /**
-     * asynchronous log used at start.
+     * Log synchronously, in the calling thread (the default).
      */
-    static StringWriter asyncLog = null;
+    public static synchronized void setSynchronous()
+    {
+        asyncCapacity = 0;
+        if(initialized && buffer != null)
+        {
+            AsyncLogWriter async = buffer;
+            buffer = null;
+            async.stop();
+        }
+    }
 
     /**
-     * log output printwriter.
+     * whether logging is asynchronous.
+     *
+     * @return true if logging is asynchronous
      */
-    static PrintWriter log = null;
+    public static boolean isAsynchronous()
+    {
+        return asyncCapacity > 0;
+    }
 
-    static
+    /**
+     * number of lines dropped because the asynchronous log buffer was full.
+     *
+     * @return number of dropped lines
+     */
+    public static long getDroppedLines()
     {
-        try
-        {
-            format = new SimpleDateFormat("[yyyy/MM/dd HH:mm:ss]");
+        AsyncLogWriter async = buffer;
+        return async == null ? 0 : async.getDropped();
+    }
 
-            // initialize with an asynchronous buffer
-            asyncLog = new StringWriter();
-            log = new PrintWriter(asyncLog);
+    /**
+     * date format for timestamps.
+     */
+    private static final DateTimeFormatter format = DateTimeFormatter.ofPattern("'['yyyy/MM/dd HH:mm:ss']'");
 
-            // info("log initialized"); we do not always this line!
-        }
-        catch(Throwable e)
-        {
-            System.err.println("no log!");
-            e.printStackTrace(System.err);
-        }
-    }
+    /**
+     * last formatted timestamp, shared between threads (it is immutable).
+     */
+    private static volatile Timestamp timestamp = new Timestamp(-1, null);
+
+    /**
+     * line buffer: lines are kept here until an output writer is given, then, in asynchronous mode,
+     * until the writer thread writes them. Null in synchronous mode once initialized.
+     */
+    private static volatile AsyncLogWriter buffer = new AsyncLogWriter(startupLimit, AsyncLogWriter.OverflowPolicy.DROP);
+
+    /**
+     * log output printwriter.
+     */
+    static PrintWriter log = null;
 
     /**
      * stdout old value.
@@ -188,8 +254,67 @@ public class Logger
      */
     static private void log(String s)
     {
-        log.println(header() + s);
-        log.flush();
+        write(header() + s);
+    }
+
+    /**
+     * writes a line, or enqueues it if there is a line buffer.
+     *
+     * @param line line
+     */
+    static private void write(String line)
+    {
+        AsyncLogWriter async = buffer;
+        if(async == null)
+        {
+            log.println(line);
+            log.flush();
+        }
+        else if(!async.offer(line) && !initialized)
+        {
+            // no more than startupLimit lines before initialization
+            log2Stderr();
+            warn("More than " + startupLimit + " lines logged before log initialization...");
+            warn("Automatically switching to stderr");
+            write(line);
+        }
+    }
+
+    /**
+     * writes a stack trace.
+     *
+     * @param e exception
+     */
+    static private void writeStackTrace(Throwable e)
+    {
+        if(buffer == null)
+        {
+            e.printStackTrace(log);
+            log.flush();
+        }
+        else
+        {
+            write(stackTrace(e));
+        }
+    }
+
+    /**
+     * formats a stack trace.
+     *
+     * @param e exception
+     * @return stack trace, without trailing newline
+     */
+    static private String stackTrace(Throwable e)
+    {
+        StringWriter trace = new StringWriter();
+        e.printStackTrace(new PrintWriter(trace));
+        int len = trace.getBuffer().length();
+        // remove the trailing newline, added back by the writer
+        if(len > 0 && trace.getBuffer().charAt(len - 1) == '\n')
+        {
+            trace.getBuffer().setLength(len > 1 && trace.getBuffer().charAt(len - 2) == '\r' ? len - 2 : len - 1);
+        }
+        return trace.toString();
     }
 
     /**
@@ -200,9 +325,16 @@ public class Logger
      */
     static public void log(String s, Throwable e)
     {
-        error(s);
-        e.printStackTrace(log);
-        log.flush();
+        if(buffer == null)
+        {
+            error(s);
+            writeStackTrace(e);
+        }
+        else
+        {
+            // a single entry, so that the message and its stack trace can neither be interleaved with other lines nor dropped separately
+            error(s + System.lineSeparator() + stackTrace(e));
+        }
     }
 
     /**
@@ -217,8 +349,6 @@ public class Logger
         log((msg != null ? msg : ""), e);
     }
 
-    static int lines = 0;
-
     /**
      * log a string using a verbose level.
      *
@@ -272,16 +402,6 @@ public class Logger
 
             notifier.sendNotification(subject, msg);
         }
-        lines++;
-
-        // no more than 100 lines in asynchronous mode
-        if(asyncLog != null && lines > asyncLimit)
-        {
-            log2Stderr();
-            flushAsyncLog();
-            warn("More than " + asyncLimit + " lines in asynchronous logging mode...");
-            warn("Automatically switching to stderr");
-        }
     }
 
     /**
@@ -344,6 +464,286 @@ public class Logger
         log(ERROR_ID, s);
     }
 
+    /**
+     * whether messages of the given level are logged.
+     *
+     * @param level log level
+     * @return true if messages of this level are logged
+     */
+    static public boolean isEnabled(int level)
+    {
+        return level >= logLevel;
+    }
+
+    /**
+     * whether tracing messages are logged.
+     *
+     * @return true if the log level is trace
+     */
+    static public boolean isTraceEnabled()
+    {
+        return TRACE_ID >= logLevel;
+    }
+
+    /**
+     * whether debug messages are logged.
+     *
+     * @return true if the log level is trace or debug
+     */
+    static public boolean isDebugEnabled()
+    {
+        return DEBUG_ID >= logLevel;
+    }
+
+    /**
+     * logs a message built by a supplier, which is only called if the level is enabled.
+     *
+     * @param level log level
+     * @param supplier message supplier
+     */
+    static public void log(int level, Supplier<String> supplier)
+    {
+        if(level >= logLevel)
+        {
+            log(level, supplier.get());
+        }
+    }
+
+    /**
+     * logs a parameterized message. Each "{}" of the format is replaced by the next argument,
+     * and the message is only built if the level is enabled.
+     *
+     * @param level log level
+     * @param format message format
+     * @param args arguments
+     */
+    static public void log(int level, String format, Object... args)
+    {
+        if(level >= logLevel)
+        {
+            log(level, format(format, args));
+        }
+    }
+
+    /**
+     * logs a tracing message built by a supplier.
+     *
+     * @param supplier message supplier
+     */
+    static public void trace(Supplier<String> supplier)
+    {
+        if(TRACE_ID >= logLevel)
+        {
+            log(TRACE_ID, supplier.get());
+        }
+    }
+
+    /**
+     * logs a parameterized tracing message.
+     *
+     * @param format message format
+     * @param arg argument
+     */
+    static public void trace(String format, Object arg)
+    {
+        if(TRACE_ID >= logLevel)
+        {
+            log(TRACE_ID, format(format, arg));
+        }
+    }
+
+    /**
+     * logs a parameterized tracing message.
+     *
+     * @param format message format
+     * @param arg1 first argument
+     * @param arg2 second argument
+     */
+    static public void trace(String format, Object arg1, Object arg2)
+    {
+        if(TRACE_ID >= logLevel)
+        {
+            log(TRACE_ID, format(format, arg1, arg2));
+        }
+    }
+
+    /**
+     * logs a parameterized tracing message.
+     *
+     * @param format message format
+     * @param arg1 first argument
+     * @param arg2 second argument
+     * @param arg3 third argument
+     */
+    static public void trace(String format, Object arg1, Object arg2, Object arg3)
+    {
+        if(TRACE_ID >= logLevel)
+        {
+            log(TRACE_ID, format(format, arg1, arg2, arg3));
+        }
+    }
+
+    /**
+     * logs a parameterized tracing message.
+     *
+     * @param format message format
+     * @param args arguments
+     */
+    static public void trace(String format, Object... args)
+    {
+        if(TRACE_ID >= logLevel)
+        {
+            log(TRACE_ID, format(format, args));
+        }
+    }
+
+    /**
+     * logs a debug message built by a supplier.
+     *
+     * @param supplier message supplier
+     */
+    static public void debug(Supplier<String> supplier)
+    {
+        if(DEBUG_ID >= logLevel)
+        {
+            log(DEBUG_ID, supplier.get());
+        }
+    }
+
+    /**
+     * logs a parameterized debug message.
+     *
+     * @param format message format
+     * @param arg argument
+     */
+    static public void debug(String format, Object arg)
+    {
+        if(DEBUG_ID >= logLevel)
+        {
+            log(DEBUG_ID, format(format, arg));
+        }
+    }
+
+    /**
+     * logs a parameterized debug message.
+     *
+     * @param format message format
+     * @param arg1 first argument
+     * @param arg2 second argument
+     */
+    static public void debug(String format, Object arg1, Object arg2)
+    {
+        if(DEBUG_ID >= logLevel)
+        {
+            log(DEBUG_ID, format(format, arg1, arg2));
+        }
+    }
+
+    /**
+     * logs a parameterized debug message.
+     *
+     * @param format message format
+     * @param arg1 first argument
+     * @param arg2 second argument
+     * @param arg3 third argument
+     */
+    static public void debug(String format, Object arg1, Object arg2, Object arg3)
+    {
+        if(DEBUG_ID >= logLevel)
+        {
+            log(DEBUG_ID, format(format, arg1, arg2, arg3));
+        }
+    }
+
+    /**
+     * logs a parameterized debug message.
+     *
+     * @param format message format
+     * @param args arguments
+     */
+    static public void debug(String format, Object... args)
+    {
+        if(DEBUG_ID >= logLevel)
+        {
+            log(DEBUG_ID, format(format, args));
+        }
+    }
+
+    /**
+     * logs a parameterized info message.
+     *
+     * @param format message format
+     * @param args arguments
+     */
+    static public void info(String format, Object... args)
+    {
+        if(INFO_ID >= logLevel)
+        {
+            log(INFO_ID, format(format, args));
+        }
+    }
+
+    /**
+     * logs a parameterized warning message.
+     *
+     * @param format message format
+     * @param args arguments
+     */
+    static public void warn(String format, Object... args)
+    {
+        if(WARN_ID >= logLevel)
+        {
+            log(WARN_ID, format(format, args));
+        }
+    }
+
+    /**
+     * logs a parameterized error message.
+     *
+     * @param format message format
+     * @param args arguments
+     */
+    static public void error(String format, Object... args)
+    {
+        if(ERROR_ID >= logLevel)
+        {
+            log(ERROR_ID, format(format, args));
+        }
+    }
+
+    /**
+     * replaces each "{}" of a format by the next argument. Arrays are displayed with their content.
+     *
+     * @param format message format
+     * @param args arguments
+     * @return formatted message
+     */
+    static String format(String format, Object... args)
+    {
+        StringBuilder builder = new StringBuilder(format.length() + 16 * args.length);
+        int start = 0;
+        for(Object arg : args)
+        {
+            int pos = format.indexOf("{}", start);
+            if(pos == -1)
+            {
+                break;
+            }
+            builder.append(format, start, pos);
+            if(arg instanceof Object[])
+            {
+                builder.append(Arrays.deepToString((Object[])arg));
+            }
+            else
+            {
+                builder.append(arg);
+            }
+            start = pos + 2;
+        }
+        builder.append(format, start, format.length());
+        return builder.toString();
+    }
+
     /**
      * get the output writer.
      *
@@ -359,13 +759,9 @@ public class Logger
      *
      * @param out PrintWriter or Writer or OutputStream
      */
-    static public void setWriter(Object out)
+    static public synchronized void setWriter(Object out)
     {
-        if(log != null)
-        {
-            log.flush();
-            log.close();
-        }
+        PrintWriter previous = log;
         if(out instanceof PrintWriter)
         {
             log = (PrintWriter)out;
@@ -383,9 +779,30 @@ public class Logger
             throw new RuntimeException("Logger.setWriter: PANIC! class " + out.getClass().getName()
                                        + " cannot be used to build a PrintWriter!");
         }
-        if(asyncLog != null)
+        if(!initialized)
+        {
+            // write lines logged at start
+            buffer.drainTo(log);
+            if(asyncCapacity > 0)
+            {
+                AsyncLogWriter async = new AsyncLogWriter(asyncCapacity, asyncPolicy);
+                async.start(log);
+                buffer = async;
+            }
+            else
+            {
+                buffer = null;
+            }
+        }
+        else if(buffer != null)
+        {
+            // pending lines go to the previous writer
+            buffer.setWriter(log);
+        }
+        if(previous != null)
         {
-            flushAsyncLog();
+            previous.flush();
+            previous.close();
         }
         initialized = true;
     }
@@ -442,7 +859,6 @@ public class Logger
         stopCaptureStdout();
         stopCaptureStderr();
         setWriter(new PrintWriter(System.out));
-        flushAsyncLog();
     }
 
     /**
@@ -453,7 +869,6 @@ public class Logger
         stopCaptureStdout();
         stopCaptureStderr();
         setWriter(new PrintWriter(System.err));
-        flushAsyncLog();
     }
 
     /**
@@ -461,10 +876,10 @@ public class Logger
      */
     static public void log2File(String file) throws FileNotFoundException, IOException
     {
-        setWriter(new PrintWriter(new FileWriter(file, true)));
-        log.println();
-        log.println("=================================================");
-        flushAsyncLog();
+        PrintWriter writer = new PrintWriter(new FileWriter(file, true));
+        writer.println();
+        writer.println("=================================================");
+        setWriter(writer);
     }
 
     /**
@@ -474,32 +889,53 @@ public class Logger
      */
     static private String header()
     {
-        return displayTimestamps ? format.format(new Date()) + " Velosurf " : " Velosurf ";
+        return displayTimestamps ? timestamp() + " Velosurf " : " Velosurf ";
     }
 
     /**
-     * flush the asynchronous log in the output writer.
+     * returns the current timestamp, formatted at most once per second.
+     *
+     * @return formatted timestamp
      */
-    static private void flushAsyncLog()
+    static private String timestamp()
     {
-        if(asyncLog != null)
+        long now = System.currentTimeMillis();
+        long second = now / 1000;
+        Timestamp last = timestamp;
+        if(last.second != second)
         {
-            try
-            {
-                String pastLog = asyncLog.toString();
-
-                if(pastLog.length() > 0)
-                {
-                    log(asyncLog.toString());
-                }
-                asyncLog.close();
-                asyncLog = null;
-            }
-            catch(IOException ioe)
-            {
-                log(ioe);
-            }
+            last = new Timestamp(second, format.format(Instant.ofEpochMilli(now).atZone(ZoneId.systemDefault())));
+            timestamp = last;
         }
+        return last.text;
+    }
+
+    /**
+     * formatted timestamp of a given second.
+     */
+    private static class Timestamp
+    {
+        /**
+         * Constructor.
+         *
+         * @param second second since epoch
+         * @param text formatted timestamp
+         */
+        Timestamp(long second, String text)
+        {
+            this.second = second;
+            this.text = text;
+        }
+
+        /**
+         * second since epoch.
+         */
+        final long second;
+
+        /**
+         * formatted timestamp.
+         */
+        final String text;
     }
 
     /**
@@ -522,7 +958,7 @@ public class Logger
         }
         catch(Exception e)
         {
-            e.printStackTrace(log);
+            writeStackTrace(e);
         }
     }
 
@@ -539,6 +975,16 @@ public class Logger
         notifier = new MailNotifier(host, sender, recipient);
     }
 
+    static public void setNotificationLimits(long window, int maxPerMinute)
+    {
+        if(notifier == null)
+        {
+            Logger.error("Please set notification params before notification limits!");
+            return;
+        }
+        notifier.setLimits(window, maxPerMinute);
+    }
+
     static public void setNotificationLevel(int level)
     {
         notifLevel = level;
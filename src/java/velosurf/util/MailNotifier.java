@@ -1,56 +1,165 @@
 package velosurf.util;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.apache.commons.net.smtp.SMTPClient;
 import org.apache.commons.net.smtp.SMTPReply;
 import org.apache.commons.net.smtp.SimpleSMTPHeader;
 
+/**
+ * Sends log notifications by email, from a background thread.
+ *
+ * Notifications are aggregated by subject during an aggregation window: at the end of the window,
+ * a single notification is sent as is, while several ones are sent as a digest. The number of mails
+ * sent per minute is capped; when the cap is reached, pending notifications wait for the next window.
+ * The number of distinct pending notifications is bounded, further ones are only counted.
+ */
 public class MailNotifier implements Runnable
 {
+    public static final long DEFAULT_WINDOW = 10000;
+    public static final int DEFAULT_MAX_PER_MINUTE = 6;
+    public static final int MAX_PENDING = 100;
+    public static final int DEFAULT_TIMEOUT = 10000;
+
     private String host;
+    private int port = -1;
     private String sender;
     private String recipient;
-    private LinkedList<Notification> queue = new LinkedList<Notification>();
-    private boolean running = false;
+    private long window = DEFAULT_WINDOW;
+    private int maxPerMinute = DEFAULT_MAX_PER_MINUTE;
+    private int timeout = DEFAULT_TIMEOUT;
+    private Map<String, Notification> pending = new LinkedHashMap<String, Notification>();
+    private int overflow = 0;
+    private Deque<Long> sent = new ArrayDeque<Long>();
+    private volatile boolean running = false;
     private Thread thread = null;
 
     class Notification
     {
         String subject;
         String body;
+        int count = 1;
+        long first;
+        long last;
 
         Notification(String subject, String body)
         {
             this.subject = subject;
             this.body = body;
+            first = last = System.currentTimeMillis();
         }
     }
 
+    /**
+     * @param host SMTP host, optionally followed by ':' and the port ; an IPv6 address must be enclosed
+     * in brackets to be followed by a port, as in <code>[::1]:25</code>
+     * @param sender sender address
+     * @param recipient recipient address
+     */
     public MailNotifier(String host, String sender, String recipient)
     {
+        String portString = null;
+        if (host.startsWith("["))
+        {
+            int bracket = host.indexOf(']');
+            if (bracket != -1)
+            {
+                if (host.startsWith(":", bracket + 1))
+                {
+                    portString = host.substring(bracket + 2);
+                }
+                host = host.substring(1, bracket);
+            }
+        }
+        else
+        {
+            int colon = host.indexOf(':');
+            /* several colons: IPv6 address without port */
+            if (colon != -1 && colon == host.lastIndexOf(':'))
+            {
+                portString = host.substring(colon + 1);
+                host = host.substring(0, colon);
+            }
+        }
+        if (portString != null)
+        {
+            port = parsePort(portString);
+        }
         this.host = host;
         this.sender = sender;
         this.recipient = recipient;
     }
 
-    public void start()
+    /**
+     * Parse an SMTP port. Invalid ports are logged and replaced by the default port.
+     * @param value port
+     * @return port number, or -1 for the default port
+     */
+    private static int parsePort(String value)
+    {
+        if (value.matches("\\d{1,5}"))
+        {
+            int port = Integer.parseInt(value);
+            if (port > 0 && port <= 65535)
+            {
+                return port;
+            }
+        }
+        Logger.error("invalid SMTP port '" + value + "', using the default port");
+        return -1;
+    }
+
+    /**
+     * @param window aggregation window, in milliseconds
+     * @param maxPerMinute maximum number of mails sent per minute
+     */
+    public synchronized void setLimits(long window, int maxPerMinute)
+    {
+        this.window = window;
+        this.maxPerMinute = maxPerMinute;
+        notify();
+    }
+
+    /**
+     * @param timeout SMTP connection and read timeout, in milliseconds
+     */
+    public void setTimeout(int timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    public synchronized void start()
     {
+        running = true;
         thread = new Thread(this, "email notifications");
+        thread.setDaemon(true);
         thread.start();
     }
 
+    /**
+     * Stop the notifier, after having tried to send pending notifications.
+     */
     public void stop()
     {
-        if (running)
+        Thread notifier;
+        synchronized(this)
         {
-            running = false;
-            synchronized(this)
+            if (!running)
             {
-                notify();
+                return;
             }
+            running = false;
+            notifier = thread;
+            notify();
+        }
+        if (notifier != null && notifier != Thread.currentThread())
+        {
             try
             {
-                thread.join();
+                notifier.join();
             }
             catch(InterruptedException ie) {}
         }
@@ -58,98 +167,179 @@ public class MailNotifier implements Runnable
 
     public void sendNotification(String subject, String body)
     {
+        /* errors of the notifier itself are only logged */
+        if (Thread.currentThread() == thread)
+        {
+            return;
+        }
         synchronized(this)
         {
-            queue.add(new Notification(subject, body));
-            notify();
+            Notification notif = pending.get(subject);
+            if (notif != null)
+            {
+                notif.count++;
+                notif.last = System.currentTimeMillis();
+            }
+            else if (pending.size() < MAX_PENDING)
+            {
+                pending.put(subject, new Notification(subject, body));
+            }
+            else
+            {
+                overflow++;
+            }
         }
     }
 
     public void run()
     {
-        Notification notif = null;
-        SMTPClient client = null;
-
-        try
+        while(true)
         {
-            running = true;
-            while(running)
+            Map<String, Notification> notifs;
+            int lost;
+            boolean last;
+            synchronized(this)
             {
-                synchronized(this)
+                if (running)
                 {
-                    if(queue.size() == 0)
+                    try
                     {
-                        try
-                        {
-                            wait();
-                        }
-                        catch(InterruptedException ie)
-                        {
-                            running = false;
-                            break;
-                        }
+                        wait(window);
                     }
-                    if (queue.size() > 0)
+                    catch(InterruptedException ie)
                     {
-                        notif = queue.removeFirst();
+                        running = false;
                     }
                 }
-
-                if(notif == null)
+                last = !running;
+                if (pending.isEmpty() || !last && !acquire())
                 {
+                    if (last)
+                    {
+                        break;
+                    }
                     continue;
                 }
-
-                String header = new SimpleSMTPHeader(sender, recipient, notif.subject).toString();
-
-                client = new SMTPClient();
-                client.connect(host);
-                if(!SMTPReply.isPositiveCompletion(client.getReplyCode()))
-                {
-                    throw new Exception("SMTP server " + host + " refused connection.");
-                }
-                if(!client.login())
-                {
-                    throw new Exception("SMTP: Problem logging in: error #" + client.getReplyCode() + " "
-                                        + client.getReplyString());
-                }
-                if(!client.setSender(sender))
-                {
-                    throw new Exception("SMTP: Problem setting sender to " + sender + ": error #"
-                                        + client.getReplyCode() + " " + client.getReplyString());
-                }
-                if(!client.addRecipient(recipient))
-                {
-                    throw new Exception("SMTP: Problem adding recipient " + recipient + ": error #"
-                                        + client.getReplyCode() + " " + client.getReplyString());
-                }
-                if(!client.sendShortMessageData(header + notif.body))
+                notifs = pending;
+                lost = overflow;
+                pending = new LinkedHashMap<String, Notification>();
+                overflow = 0;
+            }
+            try
+            {
+                if (notifs.size() == 1 && lost == 0 && notifs.values().iterator().next().count == 1)
                 {
-                    throw new Exception("Problem sending notification : error #" + client.getReplyCode() + " "
-                                        + client.getReplyString());
+                    Notification notif = notifs.values().iterator().next();
+                    send(notif.subject, notif.body);
                 }
-                try
+                else
                 {
-                    client.logout();
-                    client.disconnect();
+                    sendDigest(notifs, lost);
                 }
-                catch(Exception e) {}
-                notif = null;
             }
+            catch(Exception e)
+            {
+                Logger.error("could not send email notification: " + e.getMessage());
+            }
+            if (last)
+            {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Check the rate limit, and count a new mail if it's not reached.
+     */
+    private boolean acquire()
+    {
+        long now = System.currentTimeMillis();
+        while (!sent.isEmpty() && sent.peekFirst() <= now - 60000)
+        {
+            sent.removeFirst();
+        }
+        if (sent.size() >= maxPerMinute)
+        {
+            return false;
+        }
+        sent.addLast(now);
+        return true;
+    }
+
+    private void sendDigest(Map<String, Notification> notifs, int lost) throws Exception
+    {
+        int total = lost;
+        StringBuilder body = new StringBuilder();
+        for (Notification notif : notifs.values())
+        {
+            total += notif.count;
+            body.append("---- ").append(notif.count).append(" x ").append(notif.subject);
+            if (notif.count > 1)
+            {
+                body.append(" (from ").append(new Date(notif.first)).append(" to ").append(new Date(notif.last)).append(')');
+            }
+            body.append("\n").append(notif.body).append("\n\n");
+        }
+        if (lost > 0)
+        {
+            body.append("---- ").append(lost).append(" other notifications were dropped\n");
+        }
+        send("[digest] " + total + " notifications: " + notifs.values().iterator().next().subject.trim(), body.toString());
+    }
+
+    private void send(String subject, String body) throws Exception
+    {
+        String header = new SimpleSMTPHeader(sender, recipient, subject).toString();
+        SMTPClient client = new SMTPClient();
+        /* an unresponsive server must not block the notifier thread, nor stop() which joins it */
+        client.setConnectTimeout(timeout);
+        client.setDefaultTimeout(timeout);
+        try
+        {
+            if (port == -1)
+            {
+                client.connect(host);
+            }
+            else
+            {
+                client.connect(host, port);
+            }
+            if(!SMTPReply.isPositiveCompletion(client.getReplyCode()))
+            {
+                throw new Exception("SMTP server " + host + " refused connection.");
+            }
+            if(!client.login())
+            {
+                throw new Exception("SMTP: Problem logging in: error #" + client.getReplyCode() + " "
+                                    + client.getReplyString());
+            }
+            if(!client.setSender(sender))
+            {
+                throw new Exception("SMTP: Problem setting sender to " + sender + ": error #"
+                                    + client.getReplyCode() + " " + client.getReplyString());
+            }
+            if(!client.addRecipient(recipient))
+            {
+                throw new Exception("SMTP: Problem adding recipient " + recipient + ": error #"
+                                    + client.getReplyCode() + " " + client.getReplyString());
+            }
+            if(!client.sendShortMessageData(header + body))
+            {
+                throw new Exception("Problem sending notification : error #" + client.getReplyCode() + " "
+                                    + client.getReplyString());
+            }
+            client.logout();
         }
-        catch(Exception e)
+        finally
         {
             try
             {
-                if(client != null)
+                if (client.isConnected())
                 {
-                    client.logout();
                     client.disconnect();
                 }
             }
-            catch(Exception f) {}
-            Logger.enableNotifications(false);
-            Logger.log(e);
+            catch(Exception e) {}
         }
     }
 }
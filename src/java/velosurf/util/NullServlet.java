@@ -81,7 +81,7 @@ public class NullServlet extends HttpServlet
     private void doRequest(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException
     {
-        Logger.trace("null servlet got hit: " + request.getRequestURI());
+        Logger.trace("null servlet got hit: {}", request.getRequestURI());
         if(forbiddenUri == null)
         {
             response.sendError(HttpServletResponse.SC_FORBIDDEN);
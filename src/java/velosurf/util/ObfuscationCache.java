@@ -0,0 +1,157 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Bounded bidirectional cache of recently obfuscated values.</p>
+ *
+ * <p>The cache keeps two generations of entries: when the current generation is full, it becomes the old one
+ * and the former old one is discarded. Entries found in the old generation are promoted to the current one,
+ * so that frequently used values stay cached. Lookups and insertions don't lock.</p>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ */
+public class ObfuscationCache
+{
+    /**
+     * Default maximum number of values.
+     */
+    public static final int DEFAULT_SIZE = 10000;
+
+    /**
+     * Constructor.
+     *
+     * @param size maximum number of values
+     */
+    public ObfuscationCache(int size)
+    {
+        generationSize = Math.max(1, size / 2);
+    }
+
+    /**
+     * Get the obfuscated form of a clear value.
+     *
+     * @param clear clear value
+     * @return obfuscated value, or null if not cached
+     */
+    public String getObfuscated(String clear)
+    {
+        return get(clear, true);
+    }
+
+    /**
+     * Get the clear form of an obfuscated value.
+     *
+     * @param obfuscated obfuscated value
+     * @return clear value, or null if not cached
+     */
+    public String getClear(String obfuscated)
+    {
+        return get(obfuscated, false);
+    }
+
+    /**
+     * Cache a value in both forms.
+     *
+     * @param clear clear value
+     * @param obfuscated obfuscated value
+     */
+    public void put(String clear, String obfuscated)
+    {
+        Generation current = this.current;
+        if (current.obfuscated.size() >= generationSize)
+        {
+            synchronized(this)
+            {
+                if (this.current == current)
+                {
+                    old = current;
+                    this.current = new Generation();
+                }
+                current = this.current;
+            }
+        }
+        current.obfuscated.put(clear, obfuscated);
+        current.clear.put(obfuscated, clear);
+    }
+
+    /**
+     * Lookup.
+     *
+     * @param value searched value
+     * @param obfuscate whether value is clear or obfuscated
+     * @return other form of the value, or null if not cached
+     */
+    private String get(String value, boolean obfuscate)
+    {
+        Generation current = this.current;
+        String ret = (obfuscate ? current.obfuscated : current.clear).get(value);
+        if (ret == null)
+        {
+            Generation old = this.old;
+            ret = (obfuscate ? old.obfuscated : old.clear).get(value);
+            if (ret != null)
+            {
+                if (obfuscate)
+                {
+                    put(value, ret);
+                }
+                else
+                {
+                    put(ret, value);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * A generation of entries.
+     */
+    private static class Generation
+    {
+        /**
+         * Obfuscated values by clear value.
+         */
+        Map<String, String> obfuscated = new ConcurrentHashMap<String, String>();
+
+        /**
+         * Clear values by obfuscated value.
+         */
+        Map<String, String> clear = new ConcurrentHashMap<String, String>();
+    }
+
+    /**
+     * Maximum number of values of a generation.
+     */
+    private int generationSize;
+
+    /**
+     * Current generation.
+     */
+    private volatile Generation current = new Generation();
+
+    /**
+     * Old generation.
+     */
+    private volatile Generation old = new Generation();
+}
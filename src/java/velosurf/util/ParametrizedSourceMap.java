@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Set;
+import velosurf.context.ContextProfiler;
 import velosurf.util.Logger;
 
 public class ParametrizedSourceMap implements SlotMap
@@ -14,6 +15,7 @@ public class ParametrizedSourceMap implements SlotMap
     
     public ParametrizedSourceMap(SlotMap source, SlotMap parameters)
     {
+        ContextProfiler.wrapperAllocated();
         this.source = source;
         this.parameters = parameters;
     }
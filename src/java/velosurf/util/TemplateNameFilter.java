@@ -18,13 +18,32 @@
 
 package velosurf.util;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -47,8 +66,9 @@ import javax.servlet.http.HttpServletResponse;
  *  You can store all resources in the same directory tree, templates having
  * an additional ".vtl" like in "foo.html.vtl" or "bar.js.vtl".</p>
  *
- * <p>In development mode, you can choose either to reset the cache periodically,
- * or manually with the "reset-cache" URI, or both.</p>
+ * <p>When the webapp is exploded on disk, the cache is updated incrementally as template files are created or deleted.
+ * Otherwise, in development mode, you can choose either to reset the cache periodically,
+ * or manually with the "reset-cache" URI, or both. Resets happen in a background thread, requests never wait for them.</p>
  *
  * <p>Initialization parameters:
  * <ul>
@@ -56,6 +76,7 @@ import javax.servlet.http.HttpServletResponse;
  * <li>reset-method: "periodic" or "manual" or "both" or "none" (default: "none").<li>
  * <li>reset-uri: the rest uri, for manual resets (default: "/reset-cache").
  * <li>reset-period: the period, in seconds, between two resets, for periodic resets (default: 120s).</li>
+ * <li>watch: whether to watch the webapp directory for template changes, when exploded on disk (default: true).</li>
  * </ul>
  * </p>
  *
@@ -89,11 +110,29 @@ class TemplateNameFilter implements Filter
     /** reset period. */
     private long resetPeriod = 120000;    /* millisec */
 
-    /* the set of template names. */
-    private Set<String> templates = null;
+    /** whether to watch the webapp directory. */
+    private boolean watch = true;
+
+    /* the immutable set of template names, replaced as a whole on each change. */
+    private volatile Set<String> templates = Collections.emptySet();
 
     /* the time of the last reset. */
-    private long lastReset;
+    private volatile long lastReset;
+
+    /* single thread updating the set of template names. */
+    private ExecutorService updater = null;
+
+    /* whether a reset is pending. */
+    private AtomicBoolean resetPending = new AtomicBoolean(false);
+
+    /* webapp root directory, when exploded. */
+    private Path root = null;
+
+    /* watch service on the webapp directories. */
+    private WatchService watcher = null;
+
+    /* webapp paths of watched directories. */
+    private Map<WatchKey, String> watchedPaths = new ConcurrentHashMap<WatchKey, String>();
 
     /**
      * init the filter.
@@ -148,6 +187,10 @@ class TemplateNameFilter implements Filter
             {
                 resetUri = value;
             }
+            else if("watch".equals(param))
+            {
+                watch = Boolean.valueOf(value);
+            }
             else if("reset-period".equals(param))
             {
                 try
@@ -165,26 +208,63 @@ class TemplateNameFilter implements Filter
             }
         }
 
-        /* builds the cache */
-        buildsTemplateNamesList(null);
+        updater = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "template names updater");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        /* starts watching before building the cache, so that no change is missed */
+        if(watch)
+        {
+            startWatcher();
+        }
+
+        /* builds the cache, in the updater thread so that it is ordered with watched changes */
+        try
+        {
+            updater.submit(new Runnable()
+            {
+                public void run()
+                {
+                    buildsTemplateNamesList();
+                }
+            }).get();
+        }
+        catch(Exception e)
+        {
+            throw new ServletException("TemplateNameFilter: could not build the cache of template names", e);
+        }
     }
 
     /**
-     * Build the cache, which consists of a hash set containing all template names.
-     *
+     * Ask for a reset of the cache, in the background.
      */
-    private synchronized void buildsTemplateNamesList(HttpServletResponse response)
+    private void reset()
     {
-        /*
-         *  check again if the reset is necessary, the current thread may have been
-         * waiting to enter this method during the last reset
-         */
-        if((resetMethod & RESET_PERIODIC) != 0 && System.currentTimeMillis() - lastReset < resetPeriod
-            && templates != null)
+        if(resetPending.compareAndSet(false, true))
         {
-            return;
+            updater.execute(new Runnable()
+            {
+                public void run()
+                {
+                    resetPending.set(false);
+                    buildsTemplateNamesList();
+                }
+            });
         }
+    }
 
+    /**
+     * Build the cache, which consists of a set containing all template names.
+     * Only called from the updater thread.
+     */
+    private void buildsTemplateNamesList()
+    {
         Set<String> result = new HashSet<String>();
         String path, entry;
         Set entries;
@@ -214,18 +294,204 @@ class TemplateNameFilter implements Filter
                 }
             }
         }
-        templates = result;
+        templates = Collections.unmodifiableSet(result);
         lastReset = System.currentTimeMillis();
-        if(response != null)
+    }
+
+    /**
+     * Start watching the webapp directory, if exploded on disk.
+     */
+    private void startWatcher()
+    {
+        String realPath = servletContext.getRealPath("/");
+        if(realPath == null || !new File(realPath).isDirectory())
         {
-            try
+            return;
+        }
+        try
+        {
+            root = new File(realPath).toPath();
+            watcher = FileSystems.getDefault().newWatchService();
+            register(root, "/");
+        }
+        catch(IOException ioe)
+        {
+            Logger.warn("TemplateNameFilter: cannot watch webapp directory: {}", ioe.getMessage());
+            stopWatcher();
+            return;
+        }
+        Thread thread = new Thread(new Runnable()
+        {
+            public void run()
             {
-                PrintWriter writer = response.getWriter();
+                watch();
+            }
+        }, "template names watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-                writer.println("<html><body>Cache reseted.</body></html>");
+    /**
+     * Stop watching the webapp directory.
+     */
+    private void stopWatcher()
+    {
+        if(watcher != null)
+        {
+            try
+            {
+                watcher.close();
             }
             catch(IOException ioe) {}
+            watcher = null;
         }
+        watchedPaths.clear();
+    }
+
+    /**
+     * Watch a directory and its subdirectories.
+     * @param dir directory
+     * @param path webapp path of the directory, ending with a slash
+     * @return template names found in these directories
+     * @throws IOException
+     */
+    private List<String> register(Path dir, String path) throws IOException
+    {
+        List<String> found = new ArrayList<String>();
+        WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+        watchedPaths.put(key, path);
+        DirectoryStream<Path> entries = Files.newDirectoryStream(dir);
+        try
+        {
+            for(Path entry : entries)
+            {
+                String name = entry.getFileName().toString();
+                if(Files.isDirectory(entry))
+                {
+                    if(!isIgnored(path + name + "/"))
+                    {
+                        found.addAll(register(entry, path + name + "/"));
+                    }
+                }
+                else if(name.endsWith(templateExtension))
+                {
+                    found.add(path + name.substring(0, name.length() - templateExtension.length()));
+                }
+            }
+        }
+        finally
+        {
+            entries.close();
+        }
+        return found;
+    }
+
+    /**
+     * Check whether a directory is ignored.
+     * @param path webapp path of the directory, ending with a slash
+     * @return true if ignored
+     */
+    private static boolean isIgnored(String path)
+    {
+        return path.endsWith("/WEB-INF/") || path.endsWith("/.svn/");
+    }
+
+    /**
+     * Watching loop: hands file creations and deletions over to the updater thread.
+     */
+    private void watch()
+    {
+        try
+        {
+            while(true)
+            {
+                final WatchKey key = watcher.take();
+                final List<WatchEvent<?>> events = key.pollEvents();
+                updater.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        update(key, events);
+                    }
+                });
+                if(!key.reset())
+                {
+                    watchedPaths.remove(key);
+                }
+            }
+        }
+        catch(ClosedWatchServiceException cwse) {}
+        catch(InterruptedException ie) {}
+        catch(Exception e)
+        {
+            Logger.error("TemplateNameFilter: watcher stopped");
+            Logger.log(e);
+        }
+    }
+
+    /**
+     * Apply file creations and deletions to the cache. Only called from the updater thread.
+     * @param key watch key of the directory
+     * @param events file events
+     */
+    private void update(WatchKey key, List<WatchEvent<?>> events)
+    {
+        String path = watchedPaths.get(key);
+        if(path == null)
+        {
+            return;
+        }
+        Set<String> result = new HashSet<String>(templates);
+        for(WatchEvent<?> event : events)
+        {
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW)
+            {
+                reset();
+                return;
+            }
+            Path entry = (Path)event.context();
+            String name = entry.getFileName().toString();
+            if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE)
+            {
+                Path file = ((Path)key.watchable()).resolve(entry);
+                if(Files.isDirectory(file))
+                {
+                    if(!isIgnored(path + name + "/"))
+                    {
+                        try
+                        {
+                            result.addAll(register(file, path + name + "/"));
+                        }
+                        catch(IOException ioe)
+                        {
+                            Logger.warn("TemplateNameFilter: cannot watch directory {}: {}", file, ioe.getMessage());
+                        }
+                    }
+                }
+                else if(name.endsWith(templateExtension))
+                {
+                    result.add(path + name.substring(0, name.length() - templateExtension.length()));
+                }
+            }
+            else if(event.kind() == StandardWatchEventKinds.ENTRY_DELETE)
+            {
+                if(name.endsWith(templateExtension))
+                {
+                    result.remove(path + name.substring(0, name.length() - templateExtension.length()));
+                }
+
+                /* the entry may have been a directory */
+                String prefix = path + name + "/";
+                for(Iterator<String> i = result.iterator(); i.hasNext(); )
+                {
+                    if(i.next().startsWith(prefix))
+                    {
+                        i.remove();
+                    }
+                }
+            }
+        }
+        templates = Collections.unmodifiableSet(result);
     }
 
     /**
@@ -253,7 +519,7 @@ class TemplateNameFilter implements Filter
             query = "?" + query;
         }
         Logger.trace("--------------------------------");
-        Logger.trace("URI = " + path + query + " (Referer: " + request.getHeader("Referer") + ")");
+        Logger.trace("URI = {}{} (Referer: {})", path, query, request.getHeader("Referer"));
 
         /* I've been said some buggy containers where leaving the query string in the uri */
         int i;
@@ -275,19 +541,24 @@ class TemplateNameFilter implements Filter
 
         if((resetMethod & RESET_MANUAL) != 0 && path.equals(resetUri))
         {
-            lastReset = now - 2 * resetPeriod;
-            buildsTemplateNamesList(response);
-        }
-        else if((resetMethod & RESET_PERIODIC) != 0 && now - lastReset > resetPeriod)
-        {
-            buildsTemplateNamesList(response);
+            reset();
+
+            PrintWriter writer = response.getWriter();
+
+            writer.println("<html><body>Cache reseted.</body></html>");
         }
         else
         {
+            if((resetMethod & RESET_PERIODIC) != 0 && now - lastReset > resetPeriod)
+            {
+                /* requests keep on using the current cache meanwhile */
+                lastReset = now;
+                reset();
+            }
             if(templates.contains(path))
             {
                 /* forward the request with extension added */
-                Logger.trace("vtl: forwarding request towards " + path + templateExtension + query);
+                Logger.trace("vtl: forwarding request towards {}{}{}", path, templateExtension, query);
 
                 RequestDispatcher dispatcher = servletContext.getRequestDispatcher(path + templateExtension + query);
 
@@ -305,5 +576,12 @@ class TemplateNameFilter implements Filter
      * Destroy the filter.
      *
      */
-    public void destroy(){}
+    public void destroy()
+    {
+        stopWatcher();
+        if(updater != null)
+        {
+            updater.shutdownNow();
+        }
+    }
 }
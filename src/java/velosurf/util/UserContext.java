@@ -21,11 +21,11 @@ package velosurf.util;
 import java.io.Serializable;
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.function.Supplier;
 import velosurf.model.Entity;
 import velosurf.web.l10n.Localizer;
 
@@ -95,8 +95,7 @@ public class UserContext
      */
     public String localize(String str, Object... params)
     {
-        Logger.debug("@@@@ localize: str=<" + str + ">, params=" + Arrays.asList(params) + ", result="
-                     + MessageFormat.format(str, params));
+        Logger.debug("localize: str=<{}>, params={}", str, params);
         if(localizer == null)
         {
             return MessageFormat.format(str, params);
@@ -125,7 +124,16 @@ public class UserContext
      */
     public synchronized void addValidationError(String err)
     {
-        validationErrors.add(err);
+        validationErrors.add(new ValidationError(err));
+    }
+
+    /**
+     * Add a validation error, whose message will only be built if validation errors are read.
+     * @param err validation error message supplier
+     */
+    public synchronized void addValidationError(Supplier<String> err)
+    {
+        validationErrors.add(new ValidationError(err));
     }
 
     /**
@@ -141,7 +149,11 @@ public class UserContext
             return null;
         }
 
-        List<String> ret = new ArrayList<String>(validationErrors);
+        List<String> ret = new ArrayList<String>(validationErrors.size());
+        for(ValidationError err : validationErrors)
+        {
+            ret.add(err.getMessage());
+        }
 
         validationErrors.clear();
         return ret;
@@ -221,8 +233,35 @@ public class UserContext
     /** last error message */
     private String error = "";
 
-    /** list of validation error messages */
-    private List<String> validationErrors = new ArrayList<String>();
+    /**
+     * Validation error: a message, or the supplier of a message.
+     */
+    private static class ValidationError
+    {
+        ValidationError(String message)
+        {
+            this.message = message;
+        }
+
+        ValidationError(Supplier<String> supplier)
+        {
+            this.supplier = supplier;
+        }
+
+        String getMessage()
+        {
+            return supplier == null ? message : supplier.get();
+        }
+
+        /** message */
+        private String message = null;
+
+        /** message supplier */
+        private Supplier<String> supplier = null;
+    }
+
+    /** list of validation errors */
+    private List<ValidationError> validationErrors = new ArrayList<ValidationError>();
 
     /** localizer */
     private Localizer localizer = null;
@@ -18,13 +18,22 @@
 
 package velosurf.validation;
 
-import java.text.DateFormat;
-import java.text.ParseException;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.chrono.IsoChronology;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.FormatStyle;
+import java.time.format.ResolverStyle;
+import java.time.format.SignStyle;
+import java.time.temporal.ChronoField;
 import java.util.Date;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import velosurf.util.Logger;
 
 /**
@@ -36,24 +45,29 @@ import velosurf.util.Logger;
  * <p>The <code>type="date"</code> parameter is implied when <code>after</code> or <code>before</code> is found.<br><br>Or:</p>
  *   <pre>
  *     &lt;<i>column</i>&gt;
- *       &lt;date [after="<i>afer-date</i>"] [before="<i>before-date</i>"] [format="<i>{@link SimpleDateFormat} format</i>"] [message="<i>error-message</i>"] /&gt;
+ *       &lt;date [after="<i>afer-date</i>"] [before="<i>before-date</i>"] [format="<i>{@link java.text.SimpleDateFormat} format</i>"] [message="<i>error-message</i>"] /&gt;
  *     &lt;/<i>column</i>&gt;
  *   </pre>
  * <br><p>The format used to specify after and before dates is always <code>yyyyMMdd</code>. The format used to parse the input
  * is by default the short local date format (which depends upon the user locale) but can be configured using the <i>format</i> attribute.</p>
+ * <p>Dates are checked strictly: an inexistent date like <code>31/02/2024</code> is rejected, where a lenient
+ * {@link java.text.SimpleDateFormat} would have taken it as <code>02/03/2024</code>. The format follows the
+ * {@link java.text.SimpleDateFormat} conventions for the letters meaningful in a date (<code>y</code>, <code>M</code>,
+ * <code>d</code>, <code>E</code>, <code>u</code>...), even where {@link java.time.format.DateTimeFormatter} differs,
+ * like for <code>u</code> (day number of week, and not year).</p>
  *
  *  @author <a href="mailto:claude.brisson@gmail.com">Claude Brisson</a>
  */
 public class DateRange extends FieldConstraint
 {
     /** before date */
-    private Date before = null;
+    private LocalDate before = null;
 
     /** afer date */
-    private Date after = null;
+    private LocalDate after = null;
 
-    /** date format */
-    private SimpleDateFormat dateFormat = null;
+    /** configured date parser */
+    private Parser parser = null;
 
     /**
      * Constructor.
@@ -69,7 +83,7 @@ public class DateRange extends FieldConstraint
      */
     public void setBeforeDate(Date before)
     {
-        this.before = before;
+        this.before = toLocalDate(before);
     }
 
     /**
@@ -78,7 +92,7 @@ public class DateRange extends FieldConstraint
      */
     public void setAfterDate(Date after)
     {
-        this.after = after;
+        this.after = toLocalDate(after);
     }
 
     /**
@@ -89,123 +103,251 @@ public class DateRange extends FieldConstraint
      */
     public boolean validate(Object data, Locale locale)
     {
-        SimpleDateFormat format = dateFormat;
-
-        try
+        if(data == null || data.toString().length() == 0)
+        {
+            return true;
+        }
+        Parser parser = this.parser;
+        if(parser == null)
         {
-            if(data == null || data.toString().length() == 0)
-            {
-                return true;
-            }
             if(locale == null)
             {
                 Logger.error("date range validation: locale is null!");
                 return true;
             }
-            if(format == null)
-            {
-                format = (SimpleDateFormat)SimpleDateFormat.getDateInstance(DateFormat.SHORT, locale);
-            }
-
-            String reformatted = reformat(format.toPattern(), data.toString());
-            Date date = format.parse(reformatted);
+            parser = getLocaleParser(locale);
+        }
 
-            if(after != null && date.before(after))
-            {
-                return false;
-            }
-            if(before != null && date.after(before))
-            {
-                return false;
-            }
-            return true;
+        LocalDate date = parser.parse(data.toString());
+        if(date == null)
+        {
+            Logger.warn("date validation: could not parse date '{}' with format: {}", data, parser.pattern);
+            return false;
         }
-        catch(ParseException pe)
+        if(after != null && date.isBefore(after))
+        {
+            return false;
+        }
+        if(before != null && date.isAfter(before))
         {
-            Logger.warn("date validation: could not parse date '" + data.toString() + "' with format: "
-                        + format.toPattern());
-
-//          Logger.log(pe);
             return false;
         }
+        return true;
     }
 
-    /** 'YYYY' date format. */
-    private static final Pattern y4 = Pattern.compile("\\d{4}");
+    /**
+     * Get the parser of the short date format of a locale.
+     * @param locale locale
+     * @return parser
+     */
+    private static Parser getLocaleParser(Locale locale)
+    {
+        Parser parser = localeParsers.get(locale);
+        if(parser == null)
+        {
+            String pattern = DateTimeFormatterBuilder.getLocalizedDateTimePattern(FormatStyle.SHORT, null, IsoChronology.INSTANCE, locale);
+            parser = new Parser(pattern, locale);
+            Parser previous = localeParsers.putIfAbsent(locale, parser);
+            if(previous != null)
+            {
+                parser = previous;
+            }
+        }
+        return parser;
+    }
 
     /**
-     * tries to reformat the date to match pattern conventions
-     * @param pattern date pattern
+     * Convert a date to a local date.
      * @param date date
-     * @return reformatted date
+     * @return local date
      */
-    private static String reformat(String pattern, String date)
+    private static LocalDate toLocalDate(Date date)
     {
-        int patternLength = pattern.length();
-        int dateLength = date.length();
-        char patternSep, dateSep;
-        boolean warn = false;
-
-        patternSep = pattern.indexOf('/') != -1 ? '/' : pattern.indexOf('-') != -1 ? '-' : '?';
-        dateSep = date.indexOf('/') != -1 ? '/' : date.indexOf('-') != -1 ? '-' : '?';
-        if(patternSep == '?')
+        return date == null ? null : date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    /**
+     * Immutable date parser, built from a {@link java.text.SimpleDateFormat} pattern.
+     */
+    private static class Parser
+    {
+        Parser(String pattern, Locale locale)
+        {
+            this.pattern = pattern;
+            patternSep = pattern.indexOf('/') != -1 ? '/' : pattern.indexOf('-') != -1 ? '-' : '?';
+            DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder().parseCaseInsensitive();
+            int i = 0;
+            while(i < pattern.length())
+            {
+                char c = pattern.charAt(i);
+                int j = i + 1;
+                if(c == '\'')
+                {
+                    /* quoted literal */
+                    j = pattern.indexOf('\'', j);
+                    j = j == -1 ? pattern.length() : j + 1;
+                }
+                else
+                {
+                    while(j < pattern.length() && pattern.charAt(j) == c)
+                    {
+                        j++;
+                    }
+                }
+                String token = pattern.substring(i, j);
+                if(c == 'y' && token.length() <= 2)
+                {
+                    /* like SimpleDateFormat, two digits years are taken within 80 years before and 20 years after now */
+                    builder.appendValueReduced(ChronoField.YEAR, 2, token.length() == 2 && j < pattern.length() && Character.isLetter(pattern.charAt(j)) ? 2 : 4, LocalDate.now().minusYears(80));
+                }
+                else if(c == 'y')
+                {
+                    builder.appendValue(ChronoField.YEAR, 1, 9, SignStyle.NORMAL);
+                }
+                else if(c == 'u')
+                {
+                    /* SimpleDateFormat day number of week (1 = Monday), while DateTimeFormatter 'u' is the year */
+                    builder.appendValue(ChronoField.DAY_OF_WEEK, token.length(), 10, SignStyle.NOT_NEGATIVE);
+                }
+                else if((c == 'd' || c == 'M' && token.length() <= 2) && (i == 0 || !Character.isLetter(pattern.charAt(i - 1))) && (j == pattern.length() || !Character.isLetter(pattern.charAt(j))))
+                {
+                    /* like SimpleDateFormat, accept one or two digits when not adjacent to another field */
+                    builder.appendValue(c == 'd' ? ChronoField.DAY_OF_MONTH : ChronoField.MONTH_OF_YEAR, 1, 2, SignStyle.NOT_NEGATIVE);
+                }
+                else
+                {
+                    builder.appendPattern(token);
+                }
+                i = j;
+            }
+            formatter = builder.toFormatter(locale).withResolverStyle(ResolverStyle.STRICT);
+        }
+
+        /**
+         * Parse a date, after having tried to reformat it to match the pattern conventions.
+         * @param text date
+         * @return parsed date or null
+         */
+        LocalDate parse(String text)
         {
-            if(dateSep == '?')
+            String reformatted = reformat(text);
+            try
             {
-                warn = (patternLength != dateLength);
+                return LocalDate.from(formatter.parse(reformatted, new ParsePosition(0)));
             }
-            else
+            catch(DateTimeException dte)
             {
-                date = date.replace("" + dateSep, "");
-                warn = (patternLength != date.length());
+                return null;
             }
         }
-        else
+
+        /**
+         * tries to reformat the date to match pattern conventions
+         * @param date date
+         * @return reformatted date
+         */
+        private String reformat(String date)
         {
-            if(dateSep == '?')
+            int patternLength = pattern.length();
+            int dateLength = date.length();
+            char dateSep;
+            boolean warn = false;
+
+            dateSep = date.indexOf('/') != -1 ? '/' : date.indexOf('-') != -1 ? '-' : '?';
+            if(patternSep == '?')
             {
-                if(dateLength == 6)
+                if(dateSep == '?')
                 {
-                    /* not ABSOLUTELY sure that six chars without - or / are one of ddMMyy, MMddyy, yyMMdd and the like... but quite. */
-                    date = date.substring(0, 2) + patternSep + date.substring(2, 4) + patternSep + date.substring(4, 6);
-                    warn = (patternLength != 8);
+                    warn = (patternLength != dateLength);
                 }
                 else
                 {
-                    /* too complex */
-                    warn = true;
+                    date = date.replace("" + dateSep, "");
+                    warn = (patternLength != date.length());
                 }
             }
             else
             {
-                if(patternSep != dateSep)
-                {
-                    date = date.replace(dateSep, patternSep);
-                }
-                if(patternLength <= dateLength - 2)
+                if(dateSep == '?')
                 {
-                    Matcher m = y4.matcher(date);
-
-                    if(m.find())
+                    if(dateLength == 6)
                     {
-                        date = date.substring(0, m.start()) + date.substring(m.start() + 2);
+                        /* not ABSOLUTELY sure that six chars without - or / are one of ddMMyy, MMddyy, yyMMdd and the like... but quite. */
+                        date = date.substring(0, 2) + patternSep + date.substring(2, 4) + patternSep + date.substring(4, 6);
+                        warn = (patternLength != 8);
                     }
                     else
                     {
+                        /* too complex */
                         warn = true;
                     }
                 }
+                else
+                {
+                    if(patternSep != dateSep)
+                    {
+                        date = date.replace(dateSep, patternSep);
+                    }
+                    if(patternLength <= dateLength - 2)
+                    {
+                        /* four digits year: keep the last two digits */
+                        int year = findYear(date);
+
+                        if(year != -1)
+                        {
+                            date = date.substring(0, year) + date.substring(year + 2);
+                        }
+                        else
+                        {
+                            warn = true;
+                        }
+                    }
+                }
+            }
+            if(warn)
+            {
+                Logger.warn("date range validation: could not match date '{}' with format '{}'", date, pattern);
             }
+            return date;
         }
-        if(warn)
+
+        /**
+         * Find the first sequence of four digits.
+         * @param date date
+         * @return index of the sequence, or -1
+         */
+        private static int findYear(String date)
         {
-            Logger.warn("date range validation: could not match date '" + date + "' with format '" + pattern + "'");
+            int digits = 0;
+            for(int i = 0; i < date.length(); i++)
+            {
+                if(Character.isDigit(date.charAt(i)))
+                {
+                    if(++digits == 4)
+                    {
+                        return i - 3;
+                    }
+                }
+                else
+                {
+                    digits = 0;
+                }
+            }
+            return -1;
         }
-        return date;
+
+        /** SimpleDateFormat pattern */
+        private final String pattern;
+
+        /** pattern separator */
+        private final char patternSep;
+
+        /** formatter */
+        private final DateTimeFormatter formatter;
     }
 
-    /** yyyyMMdd date format. */
-    private static DateFormat ymd = new SimpleDateFormat("yyyyMMdd");
+    /** parsers of the short date format, by locale */
+    private static ConcurrentMap<Locale, Parser> localeParsers = new ConcurrentHashMap<Locale, Parser>();
 
     /**
      * return a string representation for this constraint.
@@ -217,11 +359,11 @@ public class DateRange extends FieldConstraint
 
         if(after != null)
         {
-            ret += ", after " + ymd.format(after);
+            ret += ", after " + DateTimeFormatter.BASIC_ISO_DATE.format(after);
         }
         if(before != null)
         {
-            ret += ", before " + ymd.format(before);
+            ret += ", before " + DateTimeFormatter.BASIC_ISO_DATE.format(before);
         }
         return ret;
     }
@@ -233,6 +375,16 @@ public class DateRange extends FieldConstraint
      */
     public void setDateFormat(SimpleDateFormat dateFormat)
     {
-        this.dateFormat = dateFormat;
+        setDateFormat(dateFormat.toPattern());
+    }
+
+    /**
+     * date format setter.
+     *
+     * @param pattern {@link java.text.SimpleDateFormat} pattern
+     */
+    public void setDateFormat(String pattern)
+    {
+        this.parser = new Parser(pattern, Locale.getDefault());
     }
 }
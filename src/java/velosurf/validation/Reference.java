@@ -18,10 +18,15 @@
 
 package velosurf.validation;
 
+import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import velosurf.sql.Database;
 import velosurf.sql.PooledPreparedStatement;
 import velosurf.util.Logger;
@@ -34,10 +39,16 @@ import velosurf.util.Logger;
  * <p>Or:</p>
  * <pre>
  *   &lt;<i>column</i>&gt;
- *     &lt;references foreign-key="<i>table.foreign-key</i>" [message="<i>error-message</i>"]/&gt;
+ *     &lt;references foreign-key="<i>table.foreign-key</i>" [cache="yes|no"] [cache-ttl="<i>seconds</i>"] [message="<i>error-message</i>"]/&gt;
  *   &lt;/<i>column</i>&gt;
  * </pre>
  *
+ * <p>With <code>cache="yes"</code>, values of the referenced column are kept in memory (see {@link ReferenceCache}),
+ * and only values which are not found there are checked in the database. Cached values are reloaded
+ * every <code>cache-ttl</code> seconds (default is 300). Values found in the cache are not checked again:
+ * unless it is done through Velosurf with the database events queue running, the deletion of a referenced row
+ * is only seen at the next reload, and the deleted value keeps being valid until then.</p>
+ *
  * <p>Note: his constraint is not meant to replace an internal SQL "references" clause in the database,
  * since it cannot be made sure that complex updates will respect this constraint.</p>
  *
@@ -54,6 +65,12 @@ public class Reference extends FieldConstraint
     /** column */
     private String column = null;
 
+    /** maximum number of values checked by a single query */
+    private static final int MAX_CHUNK = 512;
+
+    /** cache of referenced values, if any */
+    private transient ReferenceCache cache = null;
+
     /**
      * Constructor.
      * @param table the table name
@@ -67,6 +84,15 @@ public class Reference extends FieldConstraint
         setMessage("field {0}: value [{1}] not found in " + table + "." + column);
     }
 
+    /**
+     * Keep the values of the referenced column in memory.
+     * @param ttl time to live of cached values, in milliseconds (0 for no reloading)
+     */
+    public void setCache(long ttl)
+    {
+        cache = new ReferenceCache(db, table, column, ttl, ReferenceCache.DEFAULT_MAX_SIZE);
+    }
+
     /**
      * Validate data against this constraint.
      * @param data the data to be validated
@@ -81,6 +107,12 @@ public class Reference extends FieldConstraint
                 return true;
             }
 
+            ReferenceCache cache = this.cache;
+            if(cache != null && cache.contains(data))
+            {
+                return true;
+            }
+
             List<Object> param = new ArrayList<Object>();
 
             param.add(data);
@@ -100,7 +132,12 @@ public class Reference extends FieldConstraint
             PooledPreparedStatement stmt = db.prepare(query, false);
             Object ret = stmt.evaluate(param);
 
-            return ret != null && ret.equals(Boolean.valueOf(true));
+            boolean found = ret != null && ret.equals(Boolean.valueOf(true));
+            if(found && cache != null)
+            {
+                cache.confirm(data);
+            }
+            return found;
         }
         catch(SQLException sqle)
         {
@@ -109,6 +146,133 @@ public class Reference extends FieldConstraint
         }
     }
 
+    /**
+     * Check a set of values at once, using one query per chunk of values.
+     * @param values values to check
+     * @return the values which are not found in the referenced column
+     */
+    public Set<Object> findMissing(Collection<?> values)
+    {
+        Set<Object> missing = new HashSet<Object>();
+        List<Object> pending = new ArrayList<Object>();
+        ReferenceCache cache = this.cache;
+        for(Object value : new LinkedHashSet<Object>(values))
+        {
+            if(value == null || value.toString().length() == 0 || cache != null && cache.contains(value))
+            {
+                continue;
+            }
+            pending.add(value);
+        }
+        for(int start = 0; start < pending.size(); start += MAX_CHUNK)
+        {
+            check(pending.subList(start, Math.min(pending.size(), start + MAX_CHUNK)), missing);
+        }
+        return missing;
+    }
+
+    /**
+     * Check a chunk of values with a single query.
+     * @param chunk values to check
+     * @param missing set receiving the values which are not found
+     */
+    private void check(List<Object> chunk, Set<Object> missing)
+    {
+        ReferenceCache cache = this.cache;
+        try
+        {
+            /* chunk sizes are rounded up to a power of two, so that few distinct statements get prepared */
+            int size = 1;
+            while(size < chunk.size())
+            {
+                size <<= 1;
+            }
+            List<Object> params = new ArrayList<Object>(chunk);
+            while(params.size() < size)
+            {
+                params.add(chunk.get(0));
+            }
+            StringBuilder query = new StringBuilder("select distinct ").append(column).append(" from ").append(table).append(" where ").append(column).append(" in (?");
+            for(int i = 1; i < size; i++)
+            {
+                query.append(",?");
+            }
+            query.append(')');
+            PooledPreparedStatement stmt = db.prepare(query.toString(), false);
+            List found = stmt.query(params).getScalars();
+            if(found == null)
+            {
+                throw new SQLException("could not read values");
+            }
+            Set<String> foundStrings = new HashSet<String>();
+            Set<BigDecimal> foundNumbers = new HashSet<BigDecimal>();
+            for(Object value : found)
+            {
+                if(value instanceof Number)
+                {
+                    foundNumbers.add(toNumber(value));
+                }
+                else if(value != null)
+                {
+                    foundStrings.add(value.toString());
+                }
+            }
+            for(Object value : chunk)
+            {
+                BigDecimal number = foundNumbers.isEmpty() ? null : toNumber(value);
+                if(foundStrings.contains(value.toString()) || number != null && foundNumbers.contains(number))
+                {
+                    if(cache != null)
+                    {
+                        cache.confirm(value);
+                    }
+                }
+                /* the database may match values that Java doesn't (case insensitive collations, padded CHAR(n)
+                 * columns, ...): a value is only missing if the database says so */
+                else if(!validate(value))
+                {
+                    missing.add(value);
+                }
+            }
+        }
+        catch(SQLException sqle)
+        {
+            /* typically, a value which cannot be converted to the column type: split the chunk to isolate it */
+            Logger.debug("reference constraint: set-based validation of {} values failed: {}", chunk.size(), sqle.getMessage());
+            if(chunk.size() == 1)
+            {
+                if(!validate(chunk.get(0)))
+                {
+                    missing.add(chunk.get(0));
+                }
+            }
+            else
+            {
+                int half = chunk.size() / 2;
+                check(chunk.subList(0, half), missing);
+                check(chunk.subList(half, chunk.size()), missing);
+            }
+        }
+    }
+
+    /**
+     * Normalized numeric form of a value.
+     * @param value value
+     * @return number, or null if the value is not numeric
+     */
+    private static BigDecimal toNumber(Object value)
+    {
+        try
+        {
+            BigDecimal number = value instanceof BigDecimal ? (BigDecimal)value : new BigDecimal(value.toString().trim());
+            return number.signum() == 0 ? BigDecimal.ZERO : number.stripTrailingZeros();
+        }
+        catch(NumberFormatException nfe)
+        {
+            return null;
+        }
+    }
+
     /**
      * return a string representation for this constraint.
      * @return string
@@ -0,0 +1,464 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.validation;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import velosurf.context.EntityListener;
+import velosurf.context.Instance;
+import velosurf.sql.Database;
+import velosurf.util.Logger;
+
+/**
+ * <p>In-memory set of the values of a referenced column, used by the {@link Reference} constraint
+ * to avoid a database round trip for each validated value.</p>
+ *
+ * <p>When the column has less than <code>maxSize</code> distinct values, they are all loaded: integral
+ * values are kept in a sorted <code>long</code> array, other values as strings. Otherwise, the cache only
+ * keeps the values which have been recently found in the database.</p>
+ *
+ * <p>The cache only answers positively: a value absent from the cache may have been inserted by another
+ * application, or by this one with the insertion event not yet dispatched, so it still has to be checked
+ * in the database (and is then added to the cache). Positive answers, on the contrary, are never re-checked.
+ * Insertions, deletions and updates done through Velosurf on the referenced entity are reflected in the cache,
+ * provided the database events queue is running (see {@link velosurf.context.DBReference#getEventsQueue()});
+ * other changes, like the deletion of a referenced row by another application, are only seen when the values
+ * are reloaded, every <code>ttl</code> milliseconds.</p>
+ *
+ *  @author <a href="mailto:claude.brisson@gmail.com">Claude Brisson</a>
+ */
+public class ReferenceCache implements EntityListener
+{
+    /**
+     * Default time to live of loaded values, in milliseconds.
+     */
+    public static final long DEFAULT_TTL = 300000L;
+
+    /**
+     * Default maximum number of cached values.
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000000;
+
+    /**
+     * Constructor.
+     *
+     * @param db database
+     * @param table referenced table
+     * @param column referenced column
+     * @param ttl time to live of loaded values, in milliseconds (0 for no reloading)
+     * @param maxSize maximum number of cached values
+     */
+    public ReferenceCache(Database db, String table, String column, long ttl, int maxSize)
+    {
+        this.db = db;
+        this.table = table;
+        this.column = column;
+        contextColumn = Database.adaptContextCase(column);
+        this.ttl = ttl;
+        this.maxSize = Math.max(1, maxSize);
+        db.addEntityListener(table, this);
+    }
+
+    /**
+     * Check whether a value is known to be present in the referenced column.
+     *
+     * @param value value
+     * @return true if the value is present, false if it is unknown
+     */
+    public boolean contains(Object value)
+    {
+        Keys keys = this.keys;
+        if (keys == null)
+        {
+            keys = load();
+        }
+        else if (ttl > 0 && System.currentTimeMillis() - keys.loaded > ttl && reloading.compareAndSet(false, true))
+        {
+            /* only one thread reloads, other ones keep using the previous values meanwhile */
+            try
+            {
+                keys = load();
+            }
+            finally
+            {
+                reloading.set(false);
+            }
+        }
+        return keys.contains(value);
+    }
+
+    /**
+     * Add a value found in the database.
+     *
+     * @param value value
+     */
+    public void confirm(Object value)
+    {
+        Keys keys = this.keys;
+        if (keys != null)
+        {
+            keys.add(value);
+        }
+    }
+
+    /**
+     * Forget all values, they will be reloaded on next lookup.
+     */
+    public void invalidate()
+    {
+        keys = null;
+    }
+
+    /**
+     * Insertion event on the referenced entity.
+     *
+     * @param instance inserted instance
+     */
+    public void inserted(Instance instance)
+    {
+        Object value = instance.get(contextColumn);
+        if (value != null)
+        {
+            confirm(value);
+        }
+    }
+
+    /**
+     * Deletion event on the referenced entity.
+     *
+     * @param instance deleted instance
+     */
+    public void deleted(Instance instance)
+    {
+        Keys keys = this.keys;
+        Object value = instance.get(contextColumn);
+        if (keys != null && value != null)
+        {
+            keys.remove(value);
+        }
+    }
+
+    /**
+     * Update event on the referenced entity: the previous value is unknown, so values are reloaded
+     * if the referenced column has been updated.
+     *
+     * @param instance updated instance
+     * @param columns updated columns
+     */
+    public void updated(Instance instance, Set<String> columns)
+    {
+        if (columns == null || columns.contains(contextColumn))
+        {
+            invalidate();
+        }
+    }
+
+    /**
+     * Load the values of the referenced column.
+     *
+     * @return loaded values
+     */
+    private synchronized Keys load()
+    {
+        Keys current = keys;
+        if (current != null && (ttl <= 0 || System.currentTimeMillis() - current.loaded <= ttl))
+        {
+            /* loaded by another thread meanwhile */
+            return current;
+        }
+        Keys loaded = null;
+        try
+        {
+            Object count = db.evaluate("select count(distinct " + column + ") from " + table);
+            if (count instanceof Number && ((Number)count).longValue() <= maxSize)
+            {
+                List values = db.query("select distinct " + column + " from " + table).getScalars();
+                if (values != null)
+                {
+                    loaded = LongKeys.isIntegral(values) ? new LongKeys(values) : new StringKeys(values);
+                }
+            }
+        }
+        catch (SQLException sqle)
+        {
+            Logger.warn("could not load values of {}.{}: {}", table, column, sqle.getMessage());
+        }
+        if (loaded == null)
+        {
+            loaded = new RecentKeys(maxSize);
+        }
+        Logger.debug("reference cache: loaded {} values of {}.{}", loaded.size(), table, column);
+        keys = loaded;
+        return loaded;
+    }
+
+    /**
+     * Set of cached values.
+     */
+    private static abstract class Keys
+    {
+        /** loading date */
+        long loaded = System.currentTimeMillis();
+
+        abstract boolean contains(Object value);
+
+        abstract void add(Object value);
+
+        abstract void remove(Object value);
+
+        abstract int size();
+    }
+
+    /**
+     * All the values of an integral column, as a sorted array, plus the changes since loading.
+     */
+    private static class LongKeys extends Keys
+    {
+        LongKeys(List values)
+        {
+            long[] array = new long[values.size()];
+            int n = 0;
+            for (Object value : values)
+            {
+                if (value != null)
+                {
+                    array[n++] = ((Number)value).longValue();
+                }
+            }
+            keys = n == array.length ? array : Arrays.copyOf(array, n);
+            Arrays.sort(keys);
+        }
+
+        boolean contains(Object value)
+        {
+            Long key = toLong(value);
+            if (key == null || removed.contains(key))
+            {
+                return false;
+            }
+            return Arrays.binarySearch(keys, key) >= 0 || added.contains(key);
+        }
+
+        void add(Object value)
+        {
+            Long key = toLong(value);
+            if (key != null)
+            {
+                removed.remove(key);
+                if (Arrays.binarySearch(keys, key) < 0)
+                {
+                    added.add(key);
+                }
+            }
+        }
+
+        void remove(Object value)
+        {
+            Long key = toLong(value);
+            if (key != null)
+            {
+                added.remove(key);
+                removed.add(key);
+            }
+        }
+
+        int size()
+        {
+            return keys.length + added.size() - removed.size();
+        }
+
+        /**
+         * Whether all the values are integral numbers.
+         */
+        static boolean isIntegral(List values)
+        {
+            for (Object value : values)
+            {
+                if (value != null && (!(value instanceof Number) || toLong(value) == null))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Convert a value to a long, if it represents an integral number.
+         */
+        static Long toLong(Object value)
+        {
+            try
+            {
+                if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+                {
+                    return ((Number)value).longValue();
+                }
+                else if (value instanceof BigInteger)
+                {
+                    return ((BigInteger)value).longValueExact();
+                }
+                else if (value instanceof BigDecimal)
+                {
+                    return ((BigDecimal)value).longValueExact();
+                }
+                else if (value instanceof String)
+                {
+                    return Long.valueOf(((String)value).trim());
+                }
+            }
+            catch (ArithmeticException | NumberFormatException e) {}
+            return null;
+        }
+
+        private long[] keys;
+        private Set<Long> added = ConcurrentHashMap.newKeySet();
+        private Set<Long> removed = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * All the values of a column, as strings.
+     */
+    private static class StringKeys extends Keys
+    {
+        StringKeys(List values)
+        {
+            keys = ConcurrentHashMap.newKeySet(values.size());
+            for (Object value : values)
+            {
+                if (value != null)
+                {
+                    keys.add(value.toString());
+                }
+            }
+        }
+
+        boolean contains(Object value)
+        {
+            return keys.contains(value.toString());
+        }
+
+        void add(Object value)
+        {
+            keys.add(value.toString());
+        }
+
+        void remove(Object value)
+        {
+            keys.remove(value.toString());
+        }
+
+        int size()
+        {
+            return keys.size();
+        }
+
+        private Set<String> keys;
+    }
+
+    /**
+     * Values recently found in the database, kept in two generations: when the current one is full,
+     * it becomes the old one and the former old one is discarded.
+     */
+    private static class RecentKeys extends Keys
+    {
+        RecentKeys(int maxSize)
+        {
+            generationSize = Math.max(1, maxSize / 2);
+        }
+
+        boolean contains(Object value)
+        {
+            String key = value.toString();
+            if (current.containsKey(key))
+            {
+                return true;
+            }
+            if (old.containsKey(key))
+            {
+                add(key);
+                return true;
+            }
+            return false;
+        }
+
+        void add(Object value)
+        {
+            Map<String, Boolean> generation = current;
+            if (generation.size() >= generationSize)
+            {
+                synchronized (this)
+                {
+                    if (current == generation)
+                    {
+                        old = generation;
+                        current = new ConcurrentHashMap<String, Boolean>();
+                    }
+                }
+            }
+            current.put(value.toString(), Boolean.TRUE);
+        }
+
+        void remove(Object value)
+        {
+            String key = value.toString();
+            current.remove(key);
+            old.remove(key);
+        }
+
+        int size()
+        {
+            return current.size() + old.size();
+        }
+
+        private int generationSize;
+        private volatile Map<String, Boolean> current = new ConcurrentHashMap<String, Boolean>();
+        private volatile Map<String, Boolean> old = new ConcurrentHashMap<String, Boolean>();
+    }
+
+    /** database */
+    private Database db;
+
+    /** referenced table */
+    private String table;
+
+    /** referenced column */
+    private String column;
+
+    /** referenced column, in the context case */
+    private String contextColumn;
+
+    /** time to live of loaded values */
+    private long ttl;
+
+    /** maximum number of cached values */
+    private int maxSize;
+
+    /** cached values */
+    private volatile Keys keys = null;
+
+    /** whether values are being reloaded */
+    private AtomicBoolean reloading = new AtomicBoolean(false);
+}
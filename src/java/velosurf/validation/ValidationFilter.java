@@ -188,7 +188,7 @@ public class ValidationFilter implements Filter
                 {
                     session.setAttribute(entity, map);
                 }
-                Logger.trace("validation: redirecting request towards " + referer);
+                Logger.trace("validation: redirecting request towards {}", referer);
                 response.sendRedirect(referer);
             }
         }
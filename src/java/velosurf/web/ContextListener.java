@@ -3,12 +3,15 @@ package velosurf.web;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
+import javax.servlet.ServletRequestEvent;
+import javax.servlet.ServletRequestListener;
 import javax.servlet.annotation.WebListener;
 
+import velosurf.cache.IdentityMap;
 import velosurf.util.Logger;
 
 @WebListener
-public class ContextListener implements ServletContextListener
+public class ContextListener implements ServletContextListener, ServletRequestListener
 {
     public void contextInitialized(ServletContextEvent sce)
     {
@@ -18,12 +21,33 @@ public class ContextListener implements ServletContextListener
     public void contextDestroyed(ServletContextEvent sce)
     {
         currentContext = null;
+        /* write cache snapshots and release connections */
+        VelosurfTool.closeConnections();
 				if (Logger.getNotifierEnabled())
 				{
 				    Logger.enableNotifications(false);
 				}
     }
 
+    /**
+     * Open the identity map of the request thread, if identity maps are used.
+     */
+    public void requestInitialized(ServletRequestEvent sre)
+    {
+        if (IdentityMap.isEnabled())
+        {
+            IdentityMap.open();
+        }
+    }
+
+    /**
+     * Clear the identity map of the request thread.
+     */
+    public void requestDestroyed(ServletRequestEvent sre)
+    {
+        IdentityMap.close();
+    }
+
     public static ServletContext getCurrentContext()
     {
         return currentContext;
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+
+
+package velosurf.web;
+
+import java.io.IOException;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import velosurf.context.ContextProfiler;
+import velosurf.util.Logger;
+
+/**
+ * <p>This class is an optional filter that profiles the accesses to the context objects during each request
+ * (see {@link ContextProfiler}). Mapping this filter enables profiling, so it should only be used while investigating
+ * performance problems.</p>
+ *
+ * <p>The profile of the current request is available to templates as the <code>velosurf.profile</code> request
+ * attribute, for instance to display it at the bottom of a page. Unless the <code>log</code> init parameter is
+ * <code>false</code>, it is also logged at the end of each request, with the info log level.</p>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ */
+public class ContextProfilingFilter implements Filter
+{
+    /** request attribute of the profile */
+    public static final String PROFILE_KEY = "velosurf.profile";
+
+    /** whether to log profiles */
+    private boolean log = true;
+
+    /**
+     * initialization.
+     * @param filterConfig filter config
+     * @throws ServletException
+     */
+    public void init(FilterConfig filterConfig) throws ServletException
+    {
+        String param = filterConfig.getInitParameter("log");
+        log = (param == null || Boolean.parseBoolean(param));
+        ContextProfiler.setEnabled(true);
+        Logger.info("profiling: context profiling enabled");
+    }
+
+    /**
+     * Filtering.
+     * @param servletRequest request
+     * @param servletResponse response
+     * @param filterChain filter chain
+     * @throws IOException
+     * @throws ServletException
+     */
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain)
+            throws IOException, ServletException
+    {
+        if (ContextProfiler.current() != null)
+        {
+            /* nested dispatch, already profiled */
+            filterChain.doFilter(servletRequest, servletResponse);
+            return;
+        }
+        ContextProfiler profile = ContextProfiler.begin();
+        servletRequest.setAttribute(PROFILE_KEY, profile);
+        try
+        {
+            filterChain.doFilter(servletRequest, servletResponse);
+        }
+        finally
+        {
+            ContextProfiler.end();
+            if (log && profile != null && profile.getCalls() > 0)
+            {
+                Logger.info("profiling: " + ((HttpServletRequest)servletRequest).getRequestURI() + ": " + profile);
+            }
+        }
+    }
+
+    /**
+     * Destroy the filter.
+     */
+    public void destroy()
+    {
+        ContextProfiler.setEnabled(false);
+    }
+}
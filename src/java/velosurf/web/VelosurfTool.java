@@ -21,7 +21,9 @@ package velosurf.web;
 import java.io.InputStream;
 import java.net.URL;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -303,6 +305,32 @@ public class VelosurfTool extends DBReference
      */
     private static Map<String, Database> dbMap = new HashMap<String, Database>();
 
+    /**
+     * close all the databases opened by this webapp (cache snapshots are then written).
+     * Called by the {@link ContextListener} when the webapp is stopped.
+     */
+    public static void closeConnections()
+    {
+        List<Database> databases;
+        synchronized(dbMap)
+        {
+            databases = new ArrayList<Database>(dbMap.values());
+            dbMap.clear();
+        }
+        for(Database db : databases)
+        {
+            try
+            {
+                db.close();
+            }
+            catch(Exception e)
+            {
+                Logger.error("could not close database");
+                Logger.log(e);
+            }
+        }
+    }
+
     /**
      * return the existing Database for the specified config file, or null
      * if it isn't already open.
@@ -382,7 +410,10 @@ public class VelosurfTool extends DBReference
                     base = configFile.substring(0, i);
                 }
                 db = Database.getInstance(is, new XIncludeResolver(base, servletContext));
-                dbMap.put(configFile, db);
+                synchronized(dbMap)
+                {
+                    dbMap.put(configFile, db);
+                }
             }
             catch(Throwable e)
             {
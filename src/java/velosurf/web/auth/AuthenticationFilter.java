@@ -94,6 +94,10 @@ import velosurf.web.l10n.Localizer;
  * The only allowed uri is the login page, and it can be used from VTL:<br/> <code>#macro (redirect $url) $response.sendRedirect($url) #end #redirect("/login.do?login=guest&password=whatever")</code><br/>
  * you can also include a "redirect=" parameter</li>
  * <li><code>use-login-referer</code>: (sorry for reproducing the bugguy syntax from the HTTP RFC, it should be 'referrer' :-) ) use the HTTP request referrer after login if there is no saved request (default: no).</li>
+ * <li><code>max-user-staleness</code>: maximum delay, in seconds, after which the logged user object is reloaded from the database
+ * (default: 0, the user object is reloaded at each request). With a positive value, changes done through Velosurf on the user entity
+ * trigger an earlier reload, provided the database events queue is running; other changes, like a disabled account or a revoked role,
+ * only take effect after this delay.</li>
  * </ul>
  * </p>
  *
@@ -190,6 +194,21 @@ public class AuthenticationFilter implements Filter
      */
     private boolean allowGuest = false;
 
+    /**
+     * Maximum staleness of the logged user object, in milliseconds.
+     */
+    private long maxUserStaleness = 0;
+
+    /**
+     * Session key used to store the loading stamp of the logged user object.
+     */
+    private String USER_STAMP = USER + ".stamp";
+
+    /**
+     * Versions of user objects, only used with a positive maximum staleness.
+     */
+    private UserVersions userVersions = null;
+
     /**
      * Initialization.
      * @param config filter config
@@ -245,6 +264,25 @@ public class AuthenticationFilter implements Filter
         if (param != null)
         {
             USER = param;
+            USER_STAMP = USER + ".stamp";
+        }
+
+        /* max-user-staleness */
+        param = this.config.getInitParameter("max-user-staleness");
+        if (param != null)
+        {
+            try
+            {
+                maxUserStaleness = Long.parseLong(param) * 1000;
+            }
+            catch (NumberFormatException nfe)
+            {
+                Logger.error("AuthenticationFilter: bad format for the max-user-staleness parameter: "+param);
+            }
+        }
+        if (maxUserStaleness > 0)
+        {
+            userVersions = new UserVersions();
         }
 
         /* login page */
@@ -314,6 +352,7 @@ public class AuthenticationFilter implements Filter
         {
           logged = null;
           session.removeAttribute(USER);
+          session.removeAttribute(USER_STAMP);
           session.removeAttribute(LOGIN);
         }
 
@@ -324,7 +363,10 @@ public class AuthenticationFilter implements Filter
             /* already logged*/
 
             /* need to refresh cached user instance in case it changed */
-            refreshUserInstance(session);
+            if (userVersions == null || userVersions.isStale(logged, (UserVersions.Stamp)session.getAttribute(USER_STAMP), maxUserStaleness))
+            {
+                refreshUserInstance(session);
+            }
             
             /* if asked to logout, well, logout! */
             if (uri.endsWith("/logout.do"))
@@ -353,6 +395,7 @@ public class AuthenticationFilter implements Filter
                 session.removeAttribute("loginMessage");
             }
             session.removeAttribute(USER);
+            session.removeAttribute(USER_STAMP);
             session.removeAttribute(LOGIN);
             if ( uri.endsWith("/login.do")
                     && (login = request.getParameter(loginField)) != null
@@ -412,7 +455,14 @@ public class AuthenticationFilter implements Filter
 
     protected void refreshUserInstance(HttpSession session)
     {
+        /* stamp taken before loading, so that a change happening meanwhile triggers another refresh */
+        Object previous = session.getAttribute(USER);
+        UserVersions.Stamp stamp = userVersions == null ? null : userVersions.stamp(previous instanceof Instance ? (Instance)previous : null);
         session.setAttribute(USER, ToolFinder.findSessionTool(session,BaseAuthenticator.class).getUser((String)session.getAttribute(LOGIN)));
+        if (stamp != null)
+        {
+            session.setAttribute(USER_STAMP, stamp);
+        }
     }
 
     protected boolean checkLogin(HttpSession session, String login, String password) throws ServletException
@@ -428,7 +478,7 @@ public class AuthenticationFilter implements Filter
     {
         /* save the original request */
         String uri = request.getRequestURI();
-        Logger.trace("[auth] saving request towards "+uri);
+        Logger.trace("[auth] saving request towards {}", uri);
         HttpSession session = request.getSession();
         session.setAttribute(REQUEST,SavedRequest.saveRequest(request));
 
@@ -451,7 +501,7 @@ public class AuthenticationFilter implements Filter
         }
         // redirect to login page
         String loginPage = resolveLocalizedUri(request,this.loginPage);
-        Logger.trace("[auth] redirecting unauthenticated user to "+loginPage);
+        Logger.trace("[auth] redirecting unauthenticated user to {}", loginPage);
         response.sendRedirect(loginPage);
     }
 
@@ -459,13 +509,18 @@ public class AuthenticationFilter implements Filter
             throws IOException, ServletException
     {
         String login = request.getParameter(loginField);
-        Logger.info("[auth] user '"+login+"' successfully logged in.");
+        Logger.info("[auth] user '{}' successfully logged in.", login);
         HttpSession session = request.getSession();
-        session.setAttribute(USER, ToolFinder.findSessionTool(session,BaseAuthenticator.class).getUser(login));
+        Object user = ToolFinder.findSessionTool(session,BaseAuthenticator.class).getUser(login);
+        session.setAttribute(USER, user);
+        if (userVersions != null)
+        {
+            session.setAttribute(USER_STAMP, userVersions.stamp(user instanceof Instance ? (Instance)user : null));
+        }
         session.setAttribute(LOGIN,login);
         if (maxInactive > 0)
         {
-            Logger.trace("[auth] setting session max inactive interval to "+maxInactive);
+            Logger.trace("[auth] setting session max inactive interval to {}", maxInactive);
              session.setMaxInactiveInterval(maxInactive);
         }
         session.removeAttribute("challenge");
@@ -481,10 +536,10 @@ public class AuthenticationFilter implements Filter
 
         // trying to use the "redirect=" parameter
         String redirect = request.getParameter("redirect");
-        Logger.trace("[auth] redirect = "+redirect);
+        Logger.trace("[auth] redirect = {}", redirect);
         if(redirect != null)
         {
-          Logger.trace("[auth] redirecting newly logged user to 'redirect' param: "+redirect);
+          Logger.trace("[auth] redirecting newly logged user to 'redirect' param: {}", redirect);
           response.sendRedirect(redirect);
           return;
         }
@@ -504,7 +559,7 @@ public class AuthenticationFilter implements Filter
                     String query = url.getQuery();
                     String anchor = url.getRef();
                     String dest = path+(query != null && query.length()>0?"?"+query:"")+(anchor != null && anchor.length()>0?"#"+anchor:"");
-                    Logger.trace("[auth] redirecting newly logged user to login.do referer: "+dest);
+                    Logger.trace("[auth] redirecting newly logged user to login.do referer: {}", dest);
                     response.sendRedirect(dest);
                     return;
                 }
@@ -512,7 +567,7 @@ public class AuthenticationFilter implements Filter
 
             // redirect to /auth/index.html
             String authIndex = resolveLocalizedUri(request,getAuthenticatedIndexPage(session));
-            Logger.trace("[auth] redirecting newly logged user to "+authIndex);
+            Logger.trace("[auth] redirecting newly logged user to {}", authIndex);
             response.sendRedirect(authIndex);
         }
         else
@@ -522,7 +577,7 @@ public class AuthenticationFilter implements Filter
             String query =  savedRequest.getQueryString();
             query = (query == null ? "" : "?"+query);
             formerUrl += query;
-            Logger.trace("[auth] redirecting newly logged user to "+formerUrl);
+            Logger.trace("[auth] redirecting newly logged user to {}", formerUrl);
             response.sendRedirect(formerUrl);
         }
     }
@@ -530,7 +585,7 @@ public class AuthenticationFilter implements Filter
     protected void badLogin(HttpServletRequest request,HttpServletResponse response,FilterChain chain)
             throws IOException, ServletException
     {
-        Logger.warn("[auth] user " + request.getParameter(loginField) + " made an unsuccessfull login attempt.");
+        Logger.warn("[auth] user {} made an unsuccessfull login attempt.", request.getParameter(loginField));
         HttpSession session = request.getSession();
         String message = badLoginMessage != null ?
             badLoginMessage :
@@ -538,7 +593,7 @@ public class AuthenticationFilter implements Filter
         session.setAttribute("loginMessage",message);
         // redirect to login page
         String loginPage = resolveLocalizedUri(request,this.loginPage);
-        Logger.trace("[auth] redirecting unauthenticated user to "+loginPage);
+        Logger.trace("[auth] redirecting unauthenticated user to {}", loginPage);
         response.sendRedirect(loginPage);
     }
 
@@ -574,6 +629,7 @@ public class AuthenticationFilter implements Filter
         HttpSession session = request.getSession();
         Logger.trace("[auth] user logged out");
         session.removeAttribute(USER);
+        session.removeAttribute(USER_STAMP);
         session.removeAttribute(LOGIN);
         String loginPage = resolveLocalizedUri(request,this.loginPage);
         response.sendRedirect(loginPage);
@@ -110,7 +110,7 @@ public abstract class BaseAuthenticator implements Serializable
             BigInteger bigint = new BigInteger(CHALLENGE_LENGTH, random);
             challenge = Base64Utils.base64Encode(bigint.toByteArray());
             challenge = challenge.replace("\n", "");
-            Logger.trace("auth: generated new challenge: " + challenge);
+            Logger.trace("auth: generated new challenge: {}", challenge);
 				}
         return challenge;
     }
@@ -129,7 +129,7 @@ public abstract class BaseAuthenticator implements Serializable
         if(password == null)
         {
             /* password not found */
-            Logger.trace("auth: login " + login + " does not exist");
+            Logger.trace("auth: login {} does not exist", login);
             return false;
         }
         if(password.length() == 0 && answer.length() == 0)
@@ -139,8 +139,8 @@ public abstract class BaseAuthenticator implements Serializable
 
         String correctAnswer = generateAnswer(password);
 
-        Logger.trace("auth: received=" + answer);
-        Logger.trace("auth: correct =" + correctAnswer);
+        Logger.trace("auth: received={}", answer);
+        Logger.trace("auth: correct ={}", correctAnswer);
         /* reset challenge */
         challenge = null;
         return(correctAnswer != null && correctAnswer.equals(answer));
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.web.auth;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import velosurf.context.EntityAccessor;
+import velosurf.context.EntityListener;
+import velosurf.context.Instance;
+import velosurf.model.Entity;
+import velosurf.util.Logger;
+
+/**
+ * <p>Versions of user instances, used by the {@link AuthenticationFilter} to only reload the logged user
+ * when it changed.</p>
+ *
+ * <p>Each change of a user done through Velosurf (as notified by the events of its entity, which requires the
+ * database events queue to be running) increments the version of this user. A logged user is reloaded when its
+ * version is more recent than the one it was loaded at, or when it is older than the maximum staleness.</p>
+ *
+ * @author <a href="mailto:claude.brisson@gmail.com">Claude Brisson</a>
+ */
+class UserVersions implements EntityListener
+{
+    /**
+     * Maximum number of tracked users. When reached, all users are considered as changed.
+     */
+    private static final int MAX_USERS = 10000;
+
+    /**
+     * Loading stamp of a user instance, kept in the session.
+     */
+    static class Stamp implements Serializable
+    {
+        Stamp(long epoch, long version)
+        {
+            this.epoch = epoch;
+            this.version = version;
+            time = System.currentTimeMillis();
+        }
+
+        /** versions epoch */
+        long epoch;
+
+        /** user version when loaded */
+        long version;
+
+        /** loading date */
+        long time;
+    }
+
+    /**
+     * Get a stamp for a user which is about to be (re)loaded.
+     * @param user current user instance, or null
+     * @return stamp
+     */
+    Stamp stamp(Instance user)
+    {
+        return new Stamp(epoch, getVersion(user));
+    }
+
+    /**
+     * Check whether a user instance needs to be reloaded.
+     * @param user user instance
+     * @param stamp loading stamp of this instance
+     * @param maxStaleness maximum age of the instance, in milliseconds
+     * @return true if the instance may have changed
+     */
+    boolean isStale(Instance user, Stamp stamp, long maxStaleness)
+    {
+        if(stamp == null || stamp.epoch != epoch || System.currentTimeMillis() - stamp.time > maxStaleness)
+        {
+            return true;
+        }
+        return getVersion(user) > stamp.version;
+    }
+
+    /**
+     * Get the current version of a user, listening to the events of its entity if not already done.
+     * @param user user instance
+     * @return version
+     */
+    private long getVersion(Instance user)
+    {
+        Entity entity = user == null ? null : EntityAccessor.getInstanceEntity(user);
+        if(entity == null)
+        {
+            return floor;
+        }
+        if(!entities.contains(entity))
+        {
+            synchronized(this)
+            {
+                if(!entities.contains(entity))
+                {
+                    entity.addListener(this);
+                    entities.add(entity);
+                    if(!entity.getDB().getEventsQueue().isRunning())
+                    {
+                        Logger.warn("[auth] the database events queue is not running: changes of users are only seen after max-user-staleness");
+                    }
+                }
+            }
+        }
+        Long version = versions.get(getIdentity(user, entity));
+        return version == null ? floor : Math.max(floor, version);
+    }
+
+    /**
+     * Identity of a user: entity name and primary key values.
+     * @param user user instance
+     * @param entity user entity
+     * @return identity
+     */
+    private static String getIdentity(Instance user, Entity entity)
+    {
+        StringBuilder identity = new StringBuilder(entity.getName());
+        List<String> keys = entity.getPKCols();
+        for(String key : keys)
+        {
+            identity.append('\t').append(user.getInternal(key));
+        }
+        return identity.toString();
+    }
+
+    /**
+     * Increment the version of a user.
+     * @param user user instance
+     */
+    private void changed(Instance user)
+    {
+        Entity entity = EntityAccessor.getInstanceEntity(user);
+        long version = clock.incrementAndGet();
+        if(entity == null || entity.getPKCols().size() == 0)
+        {
+            /* cannot identify the user, consider all of them as changed */
+            floor = version;
+            return;
+        }
+        if(versions.size() >= MAX_USERS)
+        {
+            floor = version;
+            versions.clear();
+        }
+        versions.put(getIdentity(user, entity), version);
+    }
+
+    /**
+     * Insertion event.
+     * @param instance inserted instance
+     */
+    public void inserted(Instance instance)
+    {
+        changed(instance);
+    }
+
+    /**
+     * Deletion event.
+     * @param instance deleted instance
+     */
+    public void deleted(Instance instance)
+    {
+        changed(instance);
+    }
+
+    /**
+     * Update event.
+     * @param instance updated instance
+     * @param columns updated columns
+     */
+    public void updated(Instance instance, Set<String> columns)
+    {
+        changed(instance);
+    }
+
+    /** versions epoch, so that stamps of sessions restored from another run are considered stale */
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+
+    /** versions clock */
+    private AtomicLong clock = new AtomicLong();
+
+    /** minimum version of all users */
+    private volatile long floor = 0;
+
+    /** versions of changed users */
+    private Map<String, Long> versions = new ConcurrentHashMap<String, Long>();
+
+    /** listened entities */
+    private Set<Entity> entities = ConcurrentHashMap.newKeySet();
+}
@@ -21,6 +21,7 @@ package velosurf.web.l10n;
 import java.lang.ref.WeakReference;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 import org.apache.velocity.tools.view.ViewContext;
@@ -46,22 +47,28 @@ public abstract class HTTPLocalizerTool implements Localizer
     {
         if(initData instanceof ViewContext)
         {
-            HttpSession session = ((ViewContext)initData).getRequest().getSession(true);
+            HttpServletRequest request = ((ViewContext)initData).getRequest();
+            /* don't create a session, the localization filter may be configured not to */
+            HttpSession session = request.getSession(false);
+            Locale locale = null;
 
             if(session != null)
             {
                 this.session = new WeakReference<HttpSession>(session);
-
-                Locale locale = (Locale)session.getAttribute("velosurf.l10n.active-locale");
-
-                if(locale == null)
-                {
-                    /* means the localization filter did not intercept this query */
-                    locale = getBestLocale(listFromEnum(((ViewContext)initData).getRequest().getLocales()));
-                    Logger.trace("l10n: unlocalized page - using locale " + locale);
-                }
-                setLocale(locale);
+                locale = (Locale)session.getAttribute("velosurf.l10n.active-locale");
             }
+            if(locale == null)
+            {
+                /* the localization filter may not have stored it in the session */
+                locale = (Locale)request.getAttribute("velosurf.l10n.active-locale");
+            }
+            if(locale == null)
+            {
+                /* means the localization filter did not intercept this query */
+                locale = getBestLocale(listFromEnum(request.getLocales()));
+                Logger.trace("l10n: unlocalized page - using locale {}", locale);
+            }
+            setLocale(locale);
         }
         else
         {
@@ -180,11 +187,52 @@ public abstract class HTTPLocalizerTool implements Localizer
      */
     public String get(Object id, Object... params)
     {
-        String message = get(id).replaceAll("'", "''");
+        String message = get(id);
+        MessageFormat format = getFormat(id, message);
+
+        return format == null ? message : StringTable.format(format, params);
+    }
+
+    /**
+     * Get the compiled form of a parameterized message. The default implementation
+     * keeps compiled messages in a bounded cache shared by all instances, by locale.
+     * @param id message key
+     * @param message localized message
+     * @return compiled message, or null if the message has no parameter
+     */
+    protected MessageFormat getFormat(Object id, String message)
+    {
+        if(message.indexOf('{') == -1)
+        {
+            return null;
+        }
 
-        return MessageFormat.format(message, params);
+        Locale locale = getLocale();
+        String key = (locale == null ? "" : locale.toString()) + '\t' + message;
+        MessageFormat format = formats.get(key);
+
+        if(format == null)
+        {
+            format = StringTable.compile(message, locale == null ? Locale.getDefault() : locale);
+            if(format == null)
+            {
+                return null;
+            }
+            if(formats.size() >= MAX_FORMATS)
+            {
+                formats.clear();
+            }
+            formats.put(key, format);
+        }
+        return format;
     }
 
+    /** maximum number of cached compiled messages */
+    private static final int MAX_FORMATS = 1000;
+
+    /** compiled messages cache */
+    private static final Map<String, MessageFormat> formats = new ConcurrentHashMap<String, MessageFormat>();
+
     /** keep a reference on the session */
     private WeakReference<HttpSession> session = null;
 
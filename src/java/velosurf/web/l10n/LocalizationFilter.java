@@ -25,7 +25,9 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.*;
@@ -57,6 +59,9 @@ import velosurf.util.ToolFinder;
  * for <code>match-uri</code> and <code>/@/$1</code> for rewrite-uri.(2)</li>
  * <li><code>match-query-string</code> & <code>rewrite-query-string</code>: not yet implemented.(2)</li>
  * <li><code>match-url</code> & <code>rewrite-url</code>: not yet implemented.(2)</li>
+ * <li><code>create-session</code>: whether to create a session for requests which don't have one, to store the active locale in it.
+ * When <code>false</code>, the active locale of such requests is only kept in the cookie (and in the <code>velosurf.l10n.active-locale</code>
+ * request attribute). Default is <code>true</code>.</li>
  * </ul>
  * </p>
  *
@@ -119,6 +124,24 @@ public class LocalizationFilter implements Filter
     /** localization method. */
     private int l10nMethod = REDIRECT;
 
+    /** whether to create sessions. */
+    private boolean createSession = true;
+
+    /** whether the default inspect uri is used. */
+    private boolean defaultInspect = true;
+
+    /** string forms of supported locales. */
+    private String[] supportedTags = null;
+
+    /** maximum number of memoized Accept-Language headers. */
+    private static final int MAX_PREFERRED_LOCALES = 1000;
+
+    /** marker of Accept-Language headers without any matching locale. */
+    private static final Locale NO_LOCALE = new Locale("");
+
+    /** memoized preferred locales, by Accept-Language header. */
+    private Map<String, Locale> preferredLocales = new ConcurrentHashMap<String, Locale>();
+
     /**
      * initialization.
      *
@@ -140,7 +163,12 @@ public class LocalizationFilter implements Filter
         /* uri */
         matchUri = Pattern.compile(getInitParameter("match-uri", defaultMatchUri), Pattern.CASE_INSENSITIVE);
         rewriteUri = getInitParameter("rewrite-uri", defaultRewriteUri);
-        inspectUri = Pattern.compile(getInitParameter("inspect-uri", defaultInspectUri), Pattern.CASE_INSENSITIVE);
+        param = getInitParameter("inspect-uri", defaultInspectUri);
+        inspectUri = Pattern.compile(param, Pattern.CASE_INSENSITIVE);
+        defaultInspect = param.equals(defaultInspectUri);
+
+        /* sessions */
+        createSession = Boolean.valueOf(getInitParameter("create-session", "true"));
 
         /* method */
         param = getInitParameter("localization-method", "redirect");
@@ -160,6 +188,15 @@ public class LocalizationFilter implements Filter
 
         /* supported locales */
         findSupportedLocales(this.config);
+        if(supportedLocales != null)
+        {
+            supportedTags = new String[supportedLocales.size()];
+            for(int i = 0; i < supportedTags.length; ++i)
+            {
+                supportedTags[i] = supportedLocales.get(i).toString();
+            }
+        }
+        preferredLocales.clear();
 
         /* default locale */
         defaultLocale = getMatchedLocale(getInitParameter("default-locale"));
@@ -177,7 +214,7 @@ public class LocalizationFilter implements Filter
             throws IOException, ServletException
     {
         HttpServletRequest request = (HttpServletRequest)servletRequest;
-        HttpSession session = request.getSession(true);    /* we'll store the active locale in it */
+        HttpSession session = request.getSession(createSession);    /* we'll store the active locale in it */
         HttpServletResponse response = (HttpServletResponse)servletResponse;
         Locale locale = null;
 
@@ -197,12 +234,10 @@ public class LocalizationFilter implements Filter
         /* Guess #1 - if using redirect method, deduce from URI (and, while looking at URI, fills the shouldAct vairable) */
         if(l10nMethod == REDIRECT)
         {
-            Matcher matcher = inspectUri.matcher(request.getRequestURI());
+            String candidate = getUriCandidate(request.getRequestURI());
 
-            if(matcher.find())
+            if(candidate != null)
             {
-                String candidate = matcher.group(1);
-
                 locale = getMatchedLocale(candidate);
                 if(locale != null)
                 {
@@ -225,7 +260,7 @@ public class LocalizationFilter implements Filter
         if(locale == null)
         {
             /* Guess #2 - is there an attribute in the session? */
-            locale = (Locale)session.getAttribute("velosurf.l10n.active-locale");
+            locale = session == null ? null : (Locale)session.getAttribute("velosurf.l10n.active-locale");
 
 //          Logger.trace("l10n: session locale = "+locale);
             if(locale == null)
@@ -248,10 +283,7 @@ public class LocalizationFilter implements Filter
                 if(locale == null)
                 {
                     /* Guess #4 - use the Accepted-Language HTTP header */
-                    List<Locale> requestedLocales = getRequestedLocales(request);
-
-                    locale = getPreferredLocale(requestedLocales);
-                    Logger.trace("l10n: Accepted-Language header best matching locale = " + locale);
+                    locale = getPreferredLocale(request);
                 }
             }
         }
@@ -274,7 +306,11 @@ public class LocalizationFilter implements Filter
         /* sets the session atribute and the cookies */
 
         // Logger.trace("l10n: setting session current locale to "+locale);
-        session.setAttribute("velosurf.l10n.active-locale", locale);
+        if(session != null)
+        {
+            session.setAttribute("velosurf.l10n.active-locale", locale);
+        }
+        request.setAttribute("velosurf.l10n.active-locale", locale);
 
         Cookie localeCookie = new Cookie("velosurf.l10n.active-locale", locale.toString());
 
@@ -304,7 +340,7 @@ public class LocalizationFilter implements Filter
             switch(l10nMethod)
             {
                 case REDIRECT :
-                    Logger.trace("l10n: redirecting request to " + newUri + query);
+                    Logger.trace("l10n: redirecting request to {}{}", newUri, query);
                     response.sendRedirect(newUri + query);
                     break;
                 case FORWARD :
@@ -316,7 +352,7 @@ public class LocalizationFilter implements Filter
                     }
                     else
                     {
-                        Logger.trace("l10n: forwarding request to " + newUri + query);
+                        Logger.trace("l10n: forwarding request to {}{}", newUri, query);
                         request.setAttribute("velosurf.l10n.l10n-forwarded", Boolean.valueOf(shouldAct));
                         dispatcher.forward(request, response);
                     }
@@ -468,6 +504,53 @@ public class LocalizationFilter implements Filter
         return locales;
     }
 
+    /**
+     * Get the localized part of an URI, as matched by the <code>inspect-uri</code> pattern.
+     * @param uri request URI
+     * @return candidate locale string, or null
+     */
+    private String getUriCandidate(String uri)
+    {
+        if(defaultInspect)
+        {
+            /* the default pattern matches the whole URI after the leading slash */
+            return uri.length() > 1 && uri.charAt(0) == '/' ? uri.substring(1) : null;
+        }
+
+        Matcher matcher = inspectUri.matcher(uri);
+
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Get the preferred locale of a request, from its Accept-Language header.
+     * Results are memoized by header value.
+     * @param request request
+     * @return preferred locale, or null
+     */
+    private Locale getPreferredLocale(HttpServletRequest request)
+    {
+        String header = request.getHeader("Accept-Language");
+        String key = header == null ? "" : header;
+        Locale locale = preferredLocales.get(key);
+
+        if(locale == null)
+        {
+            locale = getPreferredLocale(getRequestedLocales(request));
+            Logger.trace("l10n: Accepted-Language header best matching locale = {}", locale);
+            if(locale == null)
+            {
+                locale = NO_LOCALE;
+            }
+            if(preferredLocales.size() >= MAX_PREFERRED_LOCALES)
+            {
+                preferredLocales.clear();
+            }
+            preferredLocales.put(key, locale);
+        }
+        return locale == NO_LOCALE ? null : locale;
+    }
+
     /**
      * get the list of requested locales.
      *
@@ -501,18 +584,20 @@ public class LocalizationFilter implements Filter
             Logger.error("l10n: the list of supported locales is empty!");
             return null;
         }
-        for(Locale locale : supportedLocales)
+        String[] tags = supportedTags;
+
+        for(int i = 0; i < tags.length; ++i)
         {
-            if(candidate.startsWith(locale.toString()))
+            if(candidate.startsWith(tags[i]))
             {
-                return locale;
+                return supportedLocales.get(i);
             }
         }
-        for(Locale locale : supportedLocales)
+        for(int i = 0; i < tags.length; ++i)
         {
-            if(locale.toString().startsWith(candidate))
+            if(tags[i].startsWith(candidate))
             {
-                return locale;
+                return supportedLocales.get(i);
             }
         }
         return null;
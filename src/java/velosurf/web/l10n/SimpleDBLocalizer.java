@@ -18,14 +18,19 @@
 
 package velosurf.web.l10n;
 
+import java.text.MessageFormat;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpSession;
 import org.apache.velocity.tools.view.ViewContext;
 import velosurf.context.DBReference;
+import velosurf.context.EntityListener;
 import velosurf.context.EntityReference;
 import velosurf.context.Instance;
 import velosurf.util.Logger;
@@ -85,14 +90,42 @@ public class SimpleDBLocalizer extends HTTPLocalizerTool
     /** localized string field name. */
     private static String stringField = STRING_FIELD_DEFAULT;
 
-    /** initialization status. */
-    private static boolean initialized = false;
+    /** map locale -&gt; localized strings, replaced as a whole on reload. */
+    private static volatile Map<Locale, StringTable> localeStrings = null;
 
-    /** map locale -&gt; (id -&gt; localized). */
-    private static Map<Locale, Map<Object, String>> localeStrings = null;
+    /** whether the localized table has been modified since last load. */
+    private static volatile boolean stale = false;
 
-    /** map (id -&gt; localized) for the current locale. */
-    private Map<Object, String> currentStrings = null;
+    /** reload in progress. */
+    private static final AtomicBoolean loading = new AtomicBoolean(false);
+
+    /** database used to load strings. */
+    private static DBReference database = null;
+
+    /** listener of the localized strings entity. */
+    private static final EntityListener listener = new EntityListener()
+    {
+        public void inserted(Instance instance)
+        {
+            stale = true;
+        }
+
+        public void deleted(Instance instance)
+        {
+            stale = true;
+        }
+
+        public void updated(Instance instance, Set<String> columns)
+        {
+            stale = true;
+        }
+    };
+
+    /** strings map for which the strings of the current locale have been looked up. */
+    private Map<Locale, StringTable> knownStrings = null;
+
+    /** localized strings of the current locale. */
+    private StringTable currentStrings = null;
 
     /** tool configuration. */
     private Map config;
@@ -117,7 +150,7 @@ public class SimpleDBLocalizer extends HTTPLocalizerTool
      */
     public void init(Object initData)
     {
-        if(!initialized)
+        if(localeStrings == null)
         {
             super.init(initData);
             if(config != null)
@@ -152,9 +185,12 @@ public class SimpleDBLocalizer extends HTTPLocalizerTool
             readLocales(ctx);
             if(initData instanceof ViewContext)
             {
-                HttpSession session = ((ViewContext)initData).getRequest().getSession(true);
+                HttpSession session = ((ViewContext)initData).getRequest().getSession(false);
 
-                session.setAttribute(Localizer.class.getName(), this);
+                if(session != null)
+                {
+                    session.setAttribute(Localizer.class.getName(), this);
+                }
             }
         }
         super.init(initData);
@@ -166,56 +202,116 @@ public class SimpleDBLocalizer extends HTTPLocalizerTool
      */
     private static synchronized void readLocales(ServletContext ctx)
     {
-        if(initialized)
+        if(localeStrings != null)
         {
             return;
         }
-        try
+        database = VelosurfTool.getDefaultInstance(ctx);
+        if(database == null)
         {
-            DBReference db = VelosurfTool.getDefaultInstance(ctx);
+            Logger.error("Cannot find database!");
+            return;
+        }
+        EntityReference entity = (EntityReference)database.get(localizedTable);
+        if(entity != null)
+        {
+            entity.addListener(listener);
+        }
+        load();
+    }
+
+    /**
+     * Reload localized messages from the database. Strings are reloaded automatically when
+     * the localized table is modified through Velosurf (provided the events queue of the database is running);
+     * this method is meant for modifications made by other means.
+     */
+    public static void reload()
+    {
+        stale = true;
+        checkStale();
+    }
 
-            if(db == null)
+    /**
+     * Reload localized messages if the localized table has been modified. Only one thread reloads them,
+     * others keep on using previous strings meanwhile.
+     */
+    private static void checkStale()
+    {
+        if(stale && loading.compareAndSet(false, true))
+        {
+            try
+            {
+                synchronized(SimpleDBLocalizer.class)
+                {
+                    if(database != null)
+                    {
+                        load();
+                    }
+                }
+            }
+            finally
             {
-                throw new Exception("Cannot find database!");
+                loading.set(false);
             }
+        }
+    }
 
-            EntityReference entity = (EntityReference)db.get(localizedTable);
+    /**
+     * Load localized messages and replace current ones.
+     */
+    private static void load()
+    {
+        /* modifications happening during the loading will trigger another one */
+        stale = false;
+        try
+        {
+            EntityReference entity = (EntityReference)database.get(localizedTable);
 
             if(entity == null)
             {
                 throw new Exception("Cannot find 'localized' database entity!");
             }
-            localeStrings = new HashMap<Locale, Map<Object, String>>();
-            entity.setOrder(localeField);
 
-            Iterator locales = entity.iterator();    // sorted by locale
-            Map<Object, String> map = null;
-            String current = null;
-            Locale loc = null;
-
-            while(locales.hasNext())
+            Map<String, Map<String, String>> strings = new HashMap<String, Map<String, String>>();
+            Iterator rows = entity.iterator();
+            while(rows.hasNext())
             {
-                Instance row = (Instance)locales.next();
-                String key = (String)row.get(idField);
+                Instance row = (Instance)rows.next();
+
+                Object key = row.get(idField);
                 String locale = (String)row.get(localeField);
                 String string = (String)row.get(stringField);
 
-                if(!locale.equals(current))
+                if(key == null || locale == null || string == null)
                 {
-                    current = locale;
-                    Logger.trace("Found new locale in db: " + locale);
-                    map = new HashMap<Object, String>();
+                    continue;
+                }
 
-                    /* for now, take language and country into account... TODO: take variant into account */
-                    int sep = locale.indexOf('_');
+                Map<String, String> map = strings.get(locale);
 
-                    loc = (sep == -1
-                           ? new Locale(locale) : new Locale(locale.substring(0, sep), locale.substring(sep + 1)));
-                    localeStrings.put(loc, map);
+                if(map == null)
+                {
+                    Logger.trace("Found new locale in db: {}", locale);
+                    map = new HashMap<String, String>();
+                    strings.put(locale, map);
                 }
-                map.put(key, string);
+                map.put(key.toString(), string);
             }
-            initialized = true;
+
+            Map<Locale, StringTable> tables = new HashMap<Locale, StringTable>();
+
+            for(Map.Entry<String, Map<String, String>> entry : strings.entrySet())
+            {
+                String locale = entry.getKey();
+
+                /* for now, take language and country into account... TODO: take variant into account */
+                int sep = locale.indexOf('_');
+                Locale loc = (sep == -1
+                              ? new Locale(locale) : new Locale(locale.substring(0, sep), locale.substring(sep + 1)));
+
+                tables.put(loc, new StringTable(loc, entry.getValue()));
+            }
+            localeStrings = Collections.unmodifiableMap(tables);
         }
         catch(Exception e)
         {
@@ -231,7 +327,9 @@ public class SimpleDBLocalizer extends HTTPLocalizerTool
      */
     public boolean hasLocale(Locale locale)
     {
-        return localeStrings.containsKey(locale);
+        Map<Locale, StringTable> tables = localeStrings;
+
+        return tables != null && tables.containsKey(locale);
     }
 
     /**
@@ -246,14 +344,29 @@ public class SimpleDBLocalizer extends HTTPLocalizerTool
             return;
         }
         super.setLocale(locale);
-        if(localeStrings != null)
+        knownStrings = null;
+        if(getStrings() == null)
         {
-            currentStrings = localeStrings.get(getLocale());
+            Logger.warn("l10n: no strings found for locale " + locale);
         }
-        if(currentStrings == null)
+    }
+
+    /**
+     * Get the strings of the current locale, following reloads.
+     * @return current strings, or null
+     */
+    private StringTable getStrings()
+    {
+        checkStale();
+
+        Map<Locale, StringTable> tables = localeStrings;
+
+        if(tables != knownStrings)
         {
-            Logger.warn("l10n: no strings found for locale " + locale);
+            currentStrings = tables == null ? null : tables.get(getLocale());
+            knownStrings = tables;
         }
+        return currentStrings;
     }
 
     /**
@@ -263,15 +376,32 @@ public class SimpleDBLocalizer extends HTTPLocalizerTool
      */
     public String get(Object id)
     {
-        if(currentStrings == null)
+        StringTable strings = getStrings();
+
+        if(strings == null)
         {
             Logger.warn("l10n: no current locale! (was getting string id '" + id + "')");
             return id.toString();
         }
 
-        String message = currentStrings.get(id);
+        String message = strings.get(id);
 
         // Logger.trace("l10n: "+id+" -> "+message);
         return message == null ? id.toString() : message;
     }
+
+    /**
+     * Get the precompiled form of a parameterized message.
+     * @param id message key
+     * @param message localized message
+     * @return compiled message, or null if the message has no parameter
+     */
+    protected MessageFormat getFormat(Object id, String message)
+    {
+        StringTable strings = getStrings();
+        MessageFormat format = strings == null ? null : strings.getFormat(id);
+
+        /* messages not found in the table (where the id itself is used as message) are compiled on demand */
+        return format == null ? super.getFormat(id, message) : format;
+    }
 }
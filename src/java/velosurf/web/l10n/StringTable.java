@@ -0,0 +1,176 @@
+/*
+ * Copyright 2003 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package velosurf.web.l10n;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.Map;
+import velosurf.util.Logger;
+
+/**
+ * <p>Immutable table of the localized strings of a locale.</p>
+ *
+ * <p>Strings are stored in two parallel arrays indexed by open addressing on the string id, and each message
+ * containing parameters is compiled once, for the locale of the table, into a <code>MessageFormat</code> at construction time.
+ * Apostrophes are taken literally in messages (they are escaped before compilation).</p>
+ *
+ *  @author <a href=mailto:claude.brisson@gmail.com>Claude Brisson</a>
+ */
+final class StringTable
+{
+    /**
+     * Build a table.
+     * @param locale locale of the strings
+     * @param strings map id -&gt; localized string
+     */
+    StringTable(Locale locale, Map<String, String> strings)
+    {
+        this.locale = locale;
+        int capacity = 2;
+        while(capacity < 2 * strings.size())
+        {
+            capacity <<= 1;
+        }
+        keys = new String[capacity];
+        values = new String[capacity];
+        formats = new MessageFormat[capacity];
+        mask = capacity - 1;
+        for(Map.Entry<String, String> entry : strings.entrySet())
+        {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            int index = indexOf(key);
+            keys[index] = key;
+            values[index] = value;
+            formats[index] = compile(value, locale);
+        }
+        size = strings.size();
+    }
+
+    /**
+     * Compile a message, if it contains parameters.
+     * @param message message
+     * @param locale locale used to format parameters
+     * @return compiled message, or null if the message doesn't need any formatting
+     */
+    static MessageFormat compile(String message, Locale locale)
+    {
+        if(message.indexOf('{') == -1)
+        {
+            /* formatting would only unescape the escaped apostrophes */
+            return null;
+        }
+        try
+        {
+            return new MessageFormat(message.replace("'", "''"), locale);
+        }
+        catch(IllegalArgumentException iae)
+        {
+            Logger.warn("l10n: invalid parameterized message '{}': {}", message, iae.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Format a compiled message.
+     * @param format compiled message
+     * @param params message parameters
+     * @return formatted message
+     */
+    static String format(MessageFormat format, Object[] params)
+    {
+        /* MessageFormat instances are not thread-safe, and shared ones are left untouched */
+        return ((MessageFormat)format.clone()).format(params);
+    }
+
+    /**
+     * Locale getter.
+     * @return locale
+     */
+    Locale getLocale()
+    {
+        return locale;
+    }
+
+    /**
+     * Number of strings.
+     * @return number of strings
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Localized string getter.
+     * @param id string id
+     * @return localized string, or null if not found
+     */
+    String get(Object id)
+    {
+        int index = indexOf(id.toString());
+        return values[index];
+    }
+
+    /**
+     * Compiled message getter.
+     * @param id string id
+     * @return compiled message, or null if not found or if the message has no parameter
+     */
+    MessageFormat getFormat(Object id)
+    {
+        int index = indexOf(id.toString());
+        return formats[index];
+    }
+
+    /**
+     * Get the slot of a key: either the slot containing it, or the empty slot where it belongs.
+     * @param key string id
+     * @return slot index
+     */
+    private int indexOf(String key)
+    {
+        int hash = key.hashCode();
+        int index = (hash ^ (hash >>> 16)) & mask;
+        String k;
+        while((k = keys[index]) != null && !k.equals(key))
+        {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /** locale */
+    private final Locale locale;
+
+    /** string ids */
+    private final String[] keys;
+
+    /** localized strings */
+    private final String[] values;
+
+    /** compiled messages */
+    private final MessageFormat[] formats;
+
+    /** index mask */
+    private final int mask;
+
+    /** number of strings */
+    private final int size;
+}
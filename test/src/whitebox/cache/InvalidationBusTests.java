@@ -0,0 +1,128 @@
+package whitebox.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import velosurf.cache.InvalidationBus;
+import velosurf.cache.InvalidationTransport;
+
+public class InvalidationBusTests
+{
+    protected static class Recorder implements InvalidationBus.Listener
+    {
+        List<String> received = new CopyOnWriteArrayList<String>();
+
+        public void invalidate(String owner, String key)
+        {
+            received.add(owner + "/" + key);
+        }
+    }
+
+    protected static InvalidationBus createBus(String channel, Recorder recorder) throws Exception
+    {
+        InvalidationTransport transport = InvalidationBus.createTransport("loopback://" + channel);
+        InvalidationBus bus = new InvalidationBus(transport, recorder, 20);
+        bus.start();
+        return bus;
+    }
+
+    public @Test void testPropagation() throws Exception {
+        Recorder first = new Recorder(), second = new Recorder(), other = new Recorder();
+        InvalidationBus bus1 = createBus("propagation", first);
+        InvalidationBus bus2 = createBus("propagation", second);
+        InvalidationBus bus3 = createBus("another channel", other);
+        try {
+            bus1.post("book", "1");
+            bus1.post("publisher", "2#3");
+            long end = System.currentTimeMillis() + 2000;
+            while (second.received.size() < 2 && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, second.received.size());
+            assertTrue(second.received.contains("book/1"));
+            assertTrue(second.received.contains("publisher/2#3"));
+            /* a node ignores its own invalidations, other channels don't get them */
+            assertTrue(first.received.isEmpty());
+            assertTrue(other.received.isEmpty());
+        } finally {
+            bus1.stop();
+            bus2.stop();
+            bus3.stop();
+        }
+    }
+
+    public @Test void testFlushOnStop() throws Exception {
+        Recorder first = new Recorder(), second = new Recorder();
+        InvalidationBus bus1 = new InvalidationBus(InvalidationBus.createTransport("loopback://stop"), first, 60000);
+        bus1.start();
+        InvalidationBus bus2 = createBus("stop", second);
+        try {
+            bus1.post("book", "4");
+            /* pending invalidations are sent when the bus stops */
+            bus1.stop();
+            assertEquals(1, second.received.size());
+            assertEquals("book/4", second.received.get(0));
+            /* and nothing is sent afterwards */
+            bus1.post("book", "5");
+            Thread.sleep(100);
+            assertEquals(1, second.received.size());
+        } finally {
+            bus2.stop();
+        }
+    }
+
+    public @Test void testLargeBatch() throws Exception {
+        Recorder first = new Recorder(), second = new Recorder();
+        InvalidationBus bus1 = createBus("large", first);
+        InvalidationBus bus2 = createBus("large", second);
+        try {
+            for (int i = 0; i < 1000; ++i) {
+                bus1.post("book", String.valueOf(i));
+            }
+            long end = System.currentTimeMillis() + 2000;
+            while (second.received.size() < 1000 && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertEquals(1000, second.received.size());
+        } finally {
+            bus1.stop();
+            bus2.stop();
+        }
+    }
+
+    protected static boolean hasBusThreads() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().startsWith("velosurf cache invalidation")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public @Test void testStopEndsThreads() throws Exception {
+        Recorder recorder = new Recorder();
+        InvalidationBus bus = createBus("threads", recorder);
+        assertTrue(hasBusThreads());
+        /* once stopped, no thread keeps running (and pinning the webapp classloader) */
+        bus.stop();
+        assertFalse(hasBusThreads());
+    }
+
+    public @Test void testMulticastStopEndsThreads() throws Exception {
+        InvalidationBus bus;
+        try {
+            bus = new InvalidationBus(InvalidationBus.createTransport("multicast://239.255.42.99:45599"), new Recorder(), 20);
+            bus.start();
+        } catch (java.io.IOException ioe) {
+            /* no multicast support on this host */
+            Assume.assumeNoException(ioe);
+            return;
+        }
+        assertTrue(hasBusThreads());
+        bus.stop();
+        assertFalse(hasBusThreads());
+    }
+}
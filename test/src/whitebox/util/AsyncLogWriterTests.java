@@ -0,0 +1,189 @@
+package whitebox.util;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import velosurf.util.AsyncLogWriter;
+
+public class AsyncLogWriterTests
+{
+    /**
+     * Writer keeping everything it receives, and optionally waiting for a gate before writing.
+     */
+    protected static class GatedWriter extends Writer
+    {
+        StringBuffer content = new StringBuffer();
+        CountDownLatch gate = null;
+
+        public void write(char[] buf, int off, int len)
+        {
+            if (gate != null)
+            {
+                try
+                {
+                    gate.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException ie) {}
+            }
+            content.append(buf, off, len);
+        }
+
+        public void flush() {}
+
+        public void close() {}
+
+        List<String> lines()
+        {
+            List<String> lines = new ArrayList<String>();
+            for (String line : content.toString().split("\r?\n"))
+            {
+                if (line.length() > 0)
+                {
+                    lines.add(line);
+                }
+            }
+            return lines;
+        }
+    }
+
+    /**
+     * Start producers, each offering the given number of lines, and wait for them.
+     * @return number of dropped lines, as seen by producers
+     */
+    protected static int produce(final AsyncLogWriter writer, int producers, final int count) throws Exception
+    {
+        final AtomicInteger rejected = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread threads[] = new Thread[producers];
+        for (int p = 0; p < producers; p++)
+        {
+            final int producer = p;
+            threads[p] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (InterruptedException ie) {}
+                    for (int i = 0; i < count; i++)
+                    {
+                        if (!writer.offer(producer + "-" + i))
+                        {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[p].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+        {
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        }
+        return rejected.get();
+    }
+
+    public @Test void testBlock() throws Exception {
+        GatedWriter out = new GatedWriter();
+        AsyncLogWriter writer = new AsyncLogWriter(16, AsyncLogWriter.OverflowPolicy.BLOCK);
+        writer.start(new PrintWriter(out));
+        try {
+            assertEquals(0, produce(writer, 4, 2000));
+            writer.flush();
+            /* flush() waits for all the lines enqueued so far */
+            List<String> lines = out.lines();
+            assertEquals(8000, lines.size());
+            assertEquals(0, writer.getDropped());
+            /* lines of a producer are kept in order */
+            int next[] = new int[4];
+            for (String line : lines) {
+                int dash = line.indexOf('-');
+                int producer = Integer.parseInt(line.substring(0, dash));
+                assertEquals(next[producer]++, Integer.parseInt(line.substring(dash + 1)));
+            }
+        } finally {
+            writer.stop();
+        }
+    }
+
+    public @Test void testDrop() throws Exception {
+        GatedWriter out = new GatedWriter();
+        out.gate = new CountDownLatch(1);
+        AsyncLogWriter writer = new AsyncLogWriter(16, AsyncLogWriter.OverflowPolicy.DROP);
+        writer.start(new PrintWriter(out));
+        try {
+            /* the writer thread is stuck on this line, so the buffer fills up */
+            assertTrue(writer.offer("first"));
+            int rejected = produce(writer, 4, 100);
+            assertTrue(rejected > 0);
+            assertEquals(rejected, writer.getDropped());
+            out.gate.countDown();
+            writer.flush();
+        } finally {
+            writer.stop();
+        }
+        List<String> lines = out.lines();
+        /* every line is either written or dropped, and the number of dropped lines is reported */
+        assertEquals(" Velosurf  [warn] " + writer.getDropped() + " log lines dropped (log buffer full)", lines.get(lines.size() - 1));
+        assertEquals(401, lines.size() - 1 + writer.getDropped());
+    }
+
+    public @Test void testSetWriter() throws Exception {
+        StringWriter first = new StringWriter();
+        StringWriter second = new StringWriter();
+        AsyncLogWriter writer = new AsyncLogWriter(16, AsyncLogWriter.OverflowPolicy.BLOCK);
+        writer.start(new PrintWriter(first));
+        try {
+            produce(writer, 2, 100);
+            /* pending lines go to the previous writer */
+            writer.setWriter(new PrintWriter(second));
+            assertEquals(200, first.toString().split("\r?\n").length);
+            writer.offer("after");
+            writer.flush();
+            assertEquals("after", second.toString().trim());
+            assertEquals(200, first.toString().split("\r?\n").length);
+        } finally {
+            writer.stop();
+        }
+    }
+
+    public @Test void testStop() throws Exception {
+        StringWriter out = new StringWriter();
+        AsyncLogWriter writer = new AsyncLogWriter(1024, AsyncLogWriter.OverflowPolicy.BLOCK);
+        writer.start(new PrintWriter(out));
+        produce(writer, 3, 300);
+        /* pending lines are written before the writer thread ends */
+        writer.stop();
+        assertEquals(900, out.toString().split("\r?\n").length);
+    }
+
+    public @Test void testCapacity() throws Exception {
+        for (int capacity : new int[] { 0, -1, AsyncLogWriter.MAX_CAPACITY + 1, Integer.MAX_VALUE }) {
+            try {
+                new AsyncLogWriter(capacity, AsyncLogWriter.OverflowPolicy.DROP);
+                fail("capacity " + capacity + " should be rejected");
+            } catch (IllegalArgumentException iae) {
+            }
+        }
+        /* capacities are rounded up to a power of two */
+        AsyncLogWriter writer = new AsyncLogWriter(3, AsyncLogWriter.OverflowPolicy.DROP);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(writer.offer("line " + i));
+        }
+        assertFalse(writer.offer("line 4"));
+        assertEquals(1, writer.getDropped());
+    }
+}
@@ -0,0 +1,190 @@
+package whitebox.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import velosurf.util.AESCryptograph;
+import velosurf.util.Cryptograph;
+import velosurf.util.DESCryptograph;
+import velosurf.util.ObfuscationCache;
+
+public class CryptographTests
+{
+    protected static final String SEED = "velosurf test seed";
+
+    protected static final String CLEAR[] = { "1", "42", "123456789", "\u00c9lodie" };
+
+    /* as given by the DES cryptograph before ciphers were pooled: obfuscated values must stay valid */
+    protected static final String DES[] = { "oIThKjOwMy8=", "HoVuFZs2kdA=", "qk/6xNeTSZKR/PN2ctnNPw==", "EuMgQniC+WA=" };
+
+    protected static final String AES[] = { "YovGmgIYUEmpuL7KZBGnEQ==", "01cCkF9uJEuLOvL6uaNfSw==", "085ZM2cAF/gk75g3zyQpbA==", "Li80zo3L8vSyd5N9Vhe0xg==" };
+
+    protected static void checkBaseline(Cryptograph cryptograph, String[] expected)
+    {
+        for (int i = 0; i < CLEAR.length; i++)
+        {
+            assertEquals(expected[i], cryptograph.encrypt(CLEAR[i]));
+            assertEquals(CLEAR[i], cryptograph.decrypt(expected[i]));
+        }
+    }
+
+    /**
+     * Round-trip distinct values from several threads at once, and count the failures.
+     */
+    protected static int concurrentRoundTrips(final Cryptograph cryptograph, final Cryptograph reference) throws Exception
+    {
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread threads[] = new Thread[8];
+        for (int t = 0; t < threads.length; t++)
+        {
+            final int thread = t;
+            threads[t] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (InterruptedException ie) {}
+                    for (int i = 0; i < 2000; i++)
+                    {
+                        String clear = thread + ":" + i;
+                        String encrypted = cryptograph.encrypt(clear);
+                        if (encrypted == null || !clear.equals(cryptograph.decrypt(encrypted)))
+                        {
+                            failures.incrementAndGet();
+                        }
+                        /* compare with a cryptograph used by a single thread */
+                        else if (i % 100 == 0)
+                        {
+                            synchronized (reference)
+                            {
+                                if (!encrypted.equals(reference.encrypt(clear)))
+                                {
+                                    failures.incrementAndGet();
+                                }
+                            }
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+        {
+            thread.join(30000);
+            assertFalse(thread.isAlive());
+        }
+        return failures.get();
+    }
+
+    public @Test void testBaseline() throws Exception {
+        Cryptograph des = new DESCryptograph();
+        des.init(SEED);
+        checkBaseline(des, DES);
+        Cryptograph aes = new AESCryptograph();
+        aes.init(SEED);
+        checkBaseline(aes, AES);
+    }
+
+    public @Test void testSerialization() throws Exception {
+        Cryptograph des = new DESCryptograph();
+        des.init(SEED);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(des);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        /* the key is generated again from the seed */
+        checkBaseline((Cryptograph)in.readObject(), DES);
+    }
+
+    public @Test void testInvalidValue() throws Exception {
+        Cryptograph des = new DESCryptograph();
+        des.init(SEED);
+        assertNull(des.decrypt("not base64!"));
+        assertNull(des.decrypt("AAAA"));
+        /* failures don't leave a broken cipher in the pools */
+        checkBaseline(des, DES);
+    }
+
+    public @Test void testConcurrency() throws Exception {
+        Cryptograph des = new DESCryptograph();
+        des.init(SEED);
+        Cryptograph desReference = new DESCryptograph();
+        desReference.init(SEED);
+        assertEquals(0, concurrentRoundTrips(des, desReference));
+        checkBaseline(des, DES);
+        Cryptograph aes = new AESCryptograph();
+        aes.init(SEED);
+        Cryptograph aesReference = new AESCryptograph();
+        aesReference.init(SEED);
+        assertEquals(0, concurrentRoundTrips(aes, aesReference));
+        checkBaseline(aes, AES);
+    }
+
+    public @Test void testCacheGenerations() throws Exception {
+        ObfuscationCache cache = new ObfuscationCache(4);
+        cache.put("1", "one");
+        cache.put("2", "two");
+        /* the first generation is full: it becomes the old one */
+        cache.put("3", "three");
+        assertEquals("one", cache.getObfuscated("1"));
+        assertEquals("3", cache.getClear("three"));
+        /* "1" has been promoted to the current generation, "2" has not */
+        cache.put("4", "four");
+        cache.put("5", "five");
+        assertNull(cache.getObfuscated("2"));
+        assertNull(cache.getClear("two"));
+        assertEquals("one", cache.getObfuscated("1"));
+        assertEquals("five", cache.getObfuscated("5"));
+    }
+
+    public @Test void testCacheConcurrency() throws Exception {
+        final ObfuscationCache cache = new ObfuscationCache(100);
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread threads[] = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ie) {}
+                    for (int i = 0; i < 20000; i++) {
+                        String clear = String.valueOf((i * 7 + thread) % 300);
+                        String obfuscated = "x" + clear;
+                        cache.put(clear, obfuscated);
+                        /* a cached value may be missing, but never wrong */
+                        String found = cache.getObfuscated(clear);
+                        if (found != null && !found.equals(obfuscated)) {
+                            failures.incrementAndGet();
+                        }
+                        found = cache.getClear(obfuscated);
+                        if (found != null && !found.equals(clear)) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(30000);
+            assertFalse(thread.isAlive());
+        }
+        assertEquals(0, failures.get());
+    }
+}
@@ -0,0 +1,110 @@
+package whitebox.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.naming.NamingException;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import velosurf.util.DNSResolver;
+
+public class DNSResolverTests
+{
+    /**
+     * Backend knowing a single domain, counting queries, and optionally waiting before answering.
+     */
+    protected static class TestBackend implements DNSResolver.Backend
+    {
+        AtomicInteger queries = new AtomicInteger();
+        CountDownLatch gate = null;
+
+        public List<String> query(String hostname, boolean mx) throws NamingException
+        {
+            queries.incrementAndGet();
+            if (gate != null)
+            {
+                try
+                {
+                    gate.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException ie) {}
+            }
+            if (hostname.equals("failing.test"))
+            {
+                throw new NamingException("server failure");
+            }
+            return hostname.equals("example.test") ? Arrays.asList(mx ? "mx.example.test" : "192.0.2.1") : null;
+        }
+    }
+
+    public @Test void testCaching() throws Exception {
+        TestBackend backend = new TestBackend();
+        DNSResolver resolver = new DNSResolver(backend, 2, 60000, 60000);
+        try {
+            assertEquals(Arrays.asList("192.0.2.1"), resolver.resolve("example.test", false));
+            assertEquals(Arrays.asList("192.0.2.1"), resolver.resolve("EXAMPLE.test", false));
+            assertEquals(1, backend.queries.get());
+            /* MX and address queries are cached separately */
+            assertEquals(Arrays.asList("mx.example.test"), resolver.resolve("example.test", true));
+            assertEquals(2, backend.queries.get());
+            /* failed resolutions are cached too */
+            assertNull(resolver.resolve("unknown.test", false));
+            assertNull(resolver.resolve("unknown.test", false));
+            assertNull(resolver.resolve("failing.test", false));
+            assertNull(resolver.resolve("failing.test", false));
+            assertEquals(4, backend.queries.get());
+            resolver.clear();
+            resolver.resolve("example.test", false);
+            assertEquals(5, backend.queries.get());
+        } finally {
+            resolver.shutdown();
+        }
+    }
+
+    public @Test void testExpiration() throws Exception {
+        TestBackend backend = new TestBackend();
+        DNSResolver resolver = new DNSResolver(backend, 2, 50, 50);
+        try {
+            resolver.resolve("example.test", false);
+            Thread.sleep(100);
+            resolver.resolve("example.test", false);
+            assertEquals(2, backend.queries.get());
+        } finally {
+            resolver.shutdown();
+        }
+    }
+
+    public @Test void testCoalescing() throws Exception {
+        TestBackend backend = new TestBackend();
+        backend.gate = new CountDownLatch(1);
+        DNSResolver resolver = new DNSResolver(backend, 2, 60000, 60000);
+        try {
+            CompletableFuture<List<String>> first = resolver.resolveAsync("example.test", false);
+            CompletableFuture<List<String>> second = resolver.resolveAsync("example.test", false);
+            /* the calling thread is not blocked by the pending query */
+            assertFalse(first.isDone());
+            backend.gate.countDown();
+            assertEquals(Arrays.asList("192.0.2.1"), first.get(5, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("192.0.2.1"), second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, backend.queries.get());
+        } finally {
+            resolver.shutdown();
+        }
+    }
+
+    public @Test void testShutdown() throws Exception {
+        TestBackend backend = new TestBackend();
+        DNSResolver resolver = new DNSResolver(backend, 2, 60000, 60000);
+        resolver.shutdown();
+        /* resolutions requested after shutdown are still completed */
+        CompletableFuture<List<String>> result = resolver.resolveAsync("example.test", false);
+        assertEquals(Arrays.asList("192.0.2.1"), result.get(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("192.0.2.1"), resolver.resolve("example.test", false));
+        assertEquals(1, backend.queries.get());
+    }
+}
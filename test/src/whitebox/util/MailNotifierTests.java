@@ -0,0 +1,224 @@
+package whitebox.util;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import velosurf.util.MailNotifier;
+
+public class MailNotifierTests
+{
+    /**
+     * Minimal SMTP server, handling connections one at a time.
+     */
+    protected static class SMTPStub extends Thread
+    {
+        ServerSocket server;
+        boolean mute;
+        List<String> commands = new CopyOnWriteArrayList<String>();
+        List<String> messages = new CopyOnWriteArrayList<String>();
+
+        SMTPStub(boolean mute) throws Exception
+        {
+            this.mute = mute;
+            server = new ServerSocket(0);
+            setDaemon(true);
+            start();
+        }
+
+        int getPort()
+        {
+            return server.getLocalPort();
+        }
+
+        public void run()
+        {
+            while (!server.isClosed())
+            {
+                serve();
+            }
+        }
+
+        void serve()
+        {
+            try (Socket socket = server.accept())
+            {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+                PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                if (mute)
+                {
+                    /* accept the connection but never answer */
+                    in.read();
+                    return;
+                }
+                out.print("220 stub ready\r\n");
+                out.flush();
+                String line;
+                boolean inData = false;
+                StringBuilder data = new StringBuilder();
+                while ((line = in.readLine()) != null)
+                {
+                    if (inData)
+                    {
+                        if (line.equals("."))
+                        {
+                            inData = false;
+                            messages.add(data.toString());
+                            data.setLength(0);
+                            out.print("250 queued\r\n");
+                        }
+                        else
+                        {
+                            data.append(line).append('\n');
+                        }
+                    }
+                    else
+                    {
+                        commands.add(line);
+                        if (line.startsWith("DATA"))
+                        {
+                            inData = true;
+                            out.print("354 go ahead\r\n");
+                        }
+                        else if (line.startsWith("QUIT"))
+                        {
+                            out.print("221 bye\r\n");
+                            out.flush();
+                            break;
+                        }
+                        else
+                        {
+                            out.print("250 ok\r\n");
+                        }
+                    }
+                    out.flush();
+                }
+            }
+            catch (Exception e) {}
+        }
+
+        void close() throws Exception
+        {
+            server.close();
+        }
+    }
+
+    protected static Object getField(MailNotifier notifier, String name) throws Exception
+    {
+        Field field = MailNotifier.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(notifier);
+    }
+
+    public @Test void testSend() throws Exception {
+        SMTPStub stub = new SMTPStub(false);
+        try {
+            MailNotifier notifier = new MailNotifier("localhost:" + stub.getPort(), "sender@example.com", "recipient@example.com");
+            notifier.setTimeout(2000);
+            notifier.start();
+            notifier.sendNotification("something happened", "details");
+            /* pending notifications are sent when the notifier stops */
+            notifier.stop();
+            assertEquals(1, stub.messages.size());
+            assertTrue(stub.commands.contains("MAIL FROM:<sender@example.com>"));
+            assertTrue(stub.commands.contains("RCPT TO:<recipient@example.com>"));
+            String message = stub.messages.get(0);
+            assertTrue(message.contains("Subject: something happened"));
+            assertTrue(message.contains("details"));
+        } finally {
+            stub.close();
+        }
+    }
+
+    public @Test void testTimeout() throws Exception {
+        SMTPStub stub = new SMTPStub(true);
+        try {
+            MailNotifier notifier = new MailNotifier("localhost:" + stub.getPort(), "sender@example.com", "recipient@example.com");
+            notifier.setTimeout(500);
+            notifier.start();
+            notifier.sendNotification("something happened", "details");
+            /* an unresponsive server must not block stop() */
+            long start = System.currentTimeMillis();
+            notifier.stop();
+            assertTrue(System.currentTimeMillis() - start < 5000);
+        } finally {
+            stub.close();
+        }
+    }
+
+    public @Test void testDigest() throws Exception {
+        SMTPStub stub = new SMTPStub(false);
+        try {
+            MailNotifier notifier = new MailNotifier("localhost:" + stub.getPort(), "sender@example.com", "recipient@example.com");
+            notifier.setTimeout(2000);
+            notifier.start();
+            for (int i = 0; i < 3; i++) {
+                notifier.sendNotification("connection lost", "details " + i);
+            }
+            notifier.sendNotification("query failed", "bad query");
+            notifier.stop();
+            /* notifications are aggregated by subject in a single digest */
+            assertEquals(1, stub.messages.size());
+            String message = stub.messages.get(0);
+            assertTrue(message.contains("Subject: [digest] 4 notifications: connection lost"));
+            assertTrue(message.contains("---- 3 x connection lost (from "));
+            assertTrue(message.contains("---- 1 x query failed\n"));
+            /* the body of the first notification of a subject is kept */
+            assertTrue(message.contains("details 0"));
+            assertFalse(message.contains("details 1"));
+            assertTrue(message.contains("bad query"));
+        } finally {
+            stub.close();
+        }
+    }
+
+    public @Test void testRateLimit() throws Exception {
+        SMTPStub stub = new SMTPStub(false);
+        try {
+            MailNotifier notifier = new MailNotifier("localhost:" + stub.getPort(), "sender@example.com", "recipient@example.com");
+            notifier.setTimeout(2000);
+            notifier.setLimits(50, 2);
+            notifier.start();
+            for (int i = 0; i < 8; i++) {
+                notifier.sendNotification("notification " + i, "details");
+                Thread.sleep(150);
+            }
+            /* no more than two mails per minute... */
+            assertEquals(2, stub.messages.size());
+            /* ...except for the last one, holding what was pending when stopping */
+            notifier.stop();
+            assertEquals(3, stub.messages.size());
+            assertTrue(stub.messages.get(2).contains("Subject: [digest] "));
+        } finally {
+            stub.close();
+        }
+    }
+
+    public @Test void testHostParsing() throws Exception {
+        String[][] cases = {
+            { "smtp.example.com", "smtp.example.com", "-1" },
+            { "smtp.example.com:2525", "smtp.example.com", "2525" },
+            { "192.0.2.1:25", "192.0.2.1", "25" },
+            { "[2001:db8::1]:587", "2001:db8::1", "587" },
+            { "[2001:db8::1]", "2001:db8::1", "-1" },
+            { "2001:db8::25", "2001:db8::25", "-1" },
+            /* invalid ports are logged and ignored */
+            { "smtp.example.com:smtp", "smtp.example.com", "-1" },
+            { "smtp.example.com:99999", "smtp.example.com", "-1" },
+            { "smtp.example.com:", "smtp.example.com", "-1" }
+        };
+        for (String[] c : cases) {
+            MailNotifier notifier = new MailNotifier(c[0], "sender@example.com", "recipient@example.com");
+            assertEquals(c[0], c[1], getField(notifier, "host"));
+            assertEquals(c[0], Integer.valueOf(c[2]), getField(notifier, "port"));
+        }
+    }
+}
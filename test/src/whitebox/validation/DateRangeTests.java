@@ -0,0 +1,105 @@
+package whitebox.validation;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Locale;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import velosurf.validation.DateRange;
+
+public class DateRangeTests
+{
+    /**
+     * Check that a text is parsed as the given date, using a range of this single day.
+     */
+    protected static boolean parsesAs(String text, Locale locale, String format, int year, int month, int day)
+    {
+        DateRange range = new DateRange();
+        if (format != null)
+        {
+            range.setDateFormat(format);
+        }
+        Date date = Date.from(LocalDate.of(year, month, day).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        range.setAfterDate(date);
+        range.setBeforeDate(date);
+        return range.validate(text, locale);
+    }
+
+    protected static boolean isValid(String text, Locale locale, String format)
+    {
+        DateRange range = new DateRange();
+        if (format != null)
+        {
+            range.setDateFormat(format);
+        }
+        return range.validate(text, locale);
+    }
+
+    public @Test void testUS() throws Exception {
+        /* M/d/yy */
+        assertTrue(parsesAs("3/7/24", Locale.US, null, 2024, 3, 7));
+        assertTrue(parsesAs("03/07/24", Locale.US, null, 2024, 3, 7));
+        assertTrue(parsesAs("03/07/2024", Locale.US, null, 2024, 3, 7));
+        assertTrue(parsesAs("3-7-2024", Locale.US, null, 2024, 3, 7));
+        assertTrue(parsesAs("030724", Locale.US, null, 2024, 3, 7));
+        /* two digits years are taken within 80 years before and 20 years after now */
+        assertTrue(parsesAs("1/1/99", Locale.US, null, 1999, 1, 1));
+        assertTrue(parsesAs("12/31/30", Locale.US, null, 2030, 12, 31));
+        assertFalse(isValid("13/1/24", Locale.US, null));
+        assertFalse(isValid("2/30/2024", Locale.US, null));
+        assertFalse(isValid("7.3.24", Locale.US, null));
+    }
+
+    public @Test void testFrench() throws Exception {
+        /* dd/MM/y */
+        assertTrue(parsesAs("07/03/2024", Locale.FRANCE, null, 2024, 3, 7));
+        assertTrue(parsesAs("7/3/24", Locale.FRANCE, null, 2024, 3, 7));
+        assertTrue(parsesAs("07-03-24", Locale.FRANCE, null, 2024, 3, 7));
+        assertTrue(parsesAs("01/01/99", Locale.FRANCE, null, 1999, 1, 1));
+        assertTrue(parsesAs("29/02/2024", Locale.FRANCE, null, 2024, 2, 29));
+        /* inexistent dates are rejected, and not shifted to the next month */
+        assertFalse(isValid("31/02/2024", Locale.FRANCE, null));
+        assertFalse(isValid("29/02/2023", Locale.FRANCE, null));
+        assertFalse(isValid("07/13/2024", Locale.FRANCE, null));
+    }
+
+    public @Test void testGerman() throws Exception {
+        /* dd.MM.yy */
+        assertTrue(parsesAs("07.03.24", Locale.GERMANY, null, 2024, 3, 7));
+        assertTrue(parsesAs("7.3.24", Locale.GERMANY, null, 2024, 3, 7));
+        assertTrue(parsesAs("07.03.2024", Locale.GERMANY, null, 2024, 3, 7));
+        assertTrue(parsesAs("31.12.99", Locale.GERMANY, null, 1999, 12, 31));
+        assertFalse(isValid("31.04.2024", Locale.GERMANY, null));
+        assertFalse(isValid("07/03/2024", Locale.GERMANY, null));
+    }
+
+    public @Test void testFormat() throws Exception {
+        assertTrue(parsesAs("2024-03-07", Locale.US, "yyyy-MM-dd", 2024, 3, 7));
+        assertTrue(parsesAs("2024-3-7", Locale.US, "yyyy-MM-dd", 2024, 3, 7));
+        assertTrue(parsesAs("2024/03/07", Locale.US, "yyyy-MM-dd", 2024, 3, 7));
+        assertFalse(isValid("2024-02-30", Locale.US, "yyyy-MM-dd"));
+        assertTrue(parsesAs("07.03.2024", Locale.US, "dd.MM.yyyy", 2024, 3, 7));
+        /* 'u' is the day number of week, as for SimpleDateFormat: 2024-03-07 is a Thursday */
+        assertTrue(parsesAs("2024-03-07 4", Locale.US, "yyyy-MM-dd u", 2024, 3, 7));
+        assertFalse(isValid("2024-03-07 5", Locale.US, "yyyy-MM-dd u"));
+        /* the format takes precedence over the locale */
+        assertTrue(parsesAs("07.03.2024", Locale.FRANCE, "dd.MM.yyyy", 2024, 3, 7));
+    }
+
+    public @Test void testRange() throws Exception {
+        DateRange range = new DateRange();
+        range.setDateFormat("yyyyMMdd");
+        range.setAfterDate(Date.from(LocalDate.of(2024, 1, 1).atStartOfDay(ZoneId.systemDefault()).toInstant()));
+        range.setBeforeDate(Date.from(LocalDate.of(2024, 12, 31).atStartOfDay(ZoneId.systemDefault()).toInstant()));
+        assertTrue(range.validate("20240101", Locale.US));
+        assertTrue(range.validate("20241231", Locale.US));
+        assertFalse(range.validate("20231231", Locale.US));
+        assertFalse(range.validate("20250101", Locale.US));
+        /* empty values are valid */
+        assertTrue(range.validate("", Locale.US));
+        assertTrue(range.validate(null, Locale.US));
+    }
+}
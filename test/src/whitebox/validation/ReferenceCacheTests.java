@@ -0,0 +1,150 @@
+package whitebox.validation;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Collections;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import velosurf.context.Instance;
+import velosurf.sql.Database;
+import velosurf.validation.ReferenceCache;
+
+public class ReferenceCacheTests
+{
+    protected static final String URL = "jdbc:hsqldb:mem:referencecache";
+
+    protected static Connection connection = null;
+
+    protected static Database database = null;
+
+    public static @BeforeClass void openDatabase() throws Exception {
+        Class.forName("org.hsqldb.jdbcDriver");
+        connection = DriverManager.getConnection(URL, "sa", "");
+        execute("create table ref_long (id integer primary key, label varchar(20))");
+        execute("create table ref_string (code varchar(10) primary key)");
+        for (int i = 1; i <= 5; i++) {
+            execute("insert into ref_long values (" + i + ", 'label " + i + "')");
+        }
+        execute("insert into ref_string values ('a')");
+        execute("insert into ref_string values ('b')");
+        database = Database.getInstance("sa", "", URL, "org.hsqldb.jdbcDriver");
+    }
+
+    public static @AfterClass void closeDatabase() throws Exception {
+        database.close();
+        connection.close();
+    }
+
+    protected static void execute(String query) throws Exception
+    {
+        Statement statement = connection.createStatement();
+        try
+        {
+            statement.execute(query);
+        }
+        finally
+        {
+            statement.close();
+        }
+    }
+
+    protected static Instance instance(String entity, Serializable id)
+    {
+        Instance instance = new Instance(database.getEntity(entity));
+        instance.put(Database.adaptContextCase("ID"), id);
+        return instance;
+    }
+
+    public @Test void testLongKeys() throws Exception {
+        ReferenceCache cache = new ReferenceCache(database, "REF_LONG", "ID", 0, 100);
+        /* integral values match whatever their type */
+        assertTrue(cache.contains(3));
+        assertTrue(cache.contains(3L));
+        assertTrue(cache.contains("3"));
+        assertTrue(cache.contains(new BigDecimal("3")));
+        assertFalse(cache.contains(new BigDecimal("3.5")));
+        assertFalse(cache.contains(6));
+        assertFalse(cache.contains("x"));
+        /* values found in the database are added */
+        cache.confirm(1000);
+        assertTrue(cache.contains(1000));
+    }
+
+    public @Test void testStringKeys() throws Exception {
+        ReferenceCache cache = new ReferenceCache(database, "REF_STRING", "CODE", 0, 100);
+        assertTrue(cache.contains("a"));
+        assertTrue(cache.contains("b"));
+        assertFalse(cache.contains("c"));
+        cache.confirm("c");
+        assertTrue(cache.contains("c"));
+    }
+
+    public @Test void testRecentKeys() throws Exception {
+        /* more distinct values than the maximum size: only recently found values are kept, in two generations of one value */
+        ReferenceCache cache = new ReferenceCache(database, "REF_LONG", "ID", 0, 2);
+        assertFalse(cache.contains(1));
+        cache.confirm(1);
+        assertTrue(cache.contains(1));
+        cache.confirm(2);
+        /* 1 is in the old generation, and gets promoted */
+        assertTrue(cache.contains(1));
+        cache.confirm(3);
+        assertTrue(cache.contains(3));
+        assertTrue(cache.contains(1));
+        assertFalse(cache.contains(2));
+    }
+
+    public @Test void testReload() throws Exception {
+        ReferenceCache cache = new ReferenceCache(database, "REF_STRING", "CODE", 200, 100);
+        assertFalse(cache.contains("d"));
+        execute("insert into ref_string values ('d')");
+        try {
+            /* external changes are only seen once values are reloaded */
+            assertFalse(cache.contains("d"));
+            Thread.sleep(300);
+            assertTrue(cache.contains("d"));
+            execute("delete from ref_string where code = 'd'");
+            assertTrue(cache.contains("d"));
+            Thread.sleep(300);
+            assertFalse(cache.contains("d"));
+        } finally {
+            execute("delete from ref_string where code = 'd'");
+        }
+    }
+
+    public @Test void testEvents() throws Exception {
+        ReferenceCache cache = new ReferenceCache(database, "REF_LONG", "ID", 0, 100);
+        assertFalse(cache.contains(7));
+        cache.inserted(instance("REF_LONG", 7));
+        assertTrue(cache.contains(7));
+        cache.deleted(instance("REF_LONG", 7));
+        assertFalse(cache.contains(7));
+        cache.deleted(instance("REF_LONG", 2));
+        assertFalse(cache.contains(2));
+        /* a value inserted again after its deletion */
+        cache.inserted(instance("REF_LONG", 2));
+        assertTrue(cache.contains(2));
+        /* updates of other columns keep the values... */
+        cache.inserted(instance("REF_LONG", 8));
+        cache.updated(instance("REF_LONG", 8), Collections.singleton(Database.adaptContextCase("LABEL")));
+        assertTrue(cache.contains(8));
+        /* ...while updates of the referenced column reload them */
+        cache.updated(instance("REF_LONG", 8), Collections.singleton(Database.adaptContextCase("ID")));
+        assertFalse(cache.contains(8));
+        assertTrue(cache.contains(2));
+    }
+
+    public @Test void testRecentKeysEvents() throws Exception {
+        ReferenceCache cache = new ReferenceCache(database, "REF_LONG", "ID", 0, 2);
+        assertFalse(cache.contains(7));
+        cache.inserted(instance("REF_LONG", 7));
+        assertTrue(cache.contains(7));
+        cache.deleted(instance("REF_LONG", 7));
+        assertFalse(cache.contains(7));
+    }
+}
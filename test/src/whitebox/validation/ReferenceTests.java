@@ -0,0 +1,86 @@
+package whitebox.validation;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import velosurf.sql.Database;
+import velosurf.validation.Reference;
+
+public class ReferenceTests
+{
+    protected static final String URL = "jdbc:hsqldb:mem:reference";
+
+    protected static Connection connection = null;
+
+    protected static Database database = null;
+
+    public static @BeforeClass void openDatabase() throws Exception {
+        Class.forName("org.hsqldb.jdbcDriver");
+        connection = DriverManager.getConnection(URL, "sa", "");
+        execute("create table ref_long (id integer primary key)");
+        execute("create table ref_char (code char(5) primary key)");
+        execute("create table ref_nocase (code varchar_ignorecase(10) primary key)");
+        for (int i = 1; i <= 5; i++) {
+            execute("insert into ref_long values (" + i + ")");
+        }
+        execute("insert into ref_char values ('ab')");
+        execute("insert into ref_char values ('cd')");
+        execute("insert into ref_nocase values ('Paris')");
+        execute("insert into ref_nocase values ('london')");
+        database = Database.getInstance("sa", "", URL, "org.hsqldb.jdbcDriver");
+    }
+
+    public static @AfterClass void closeDatabase() throws Exception {
+        database.close();
+        connection.close();
+    }
+
+    protected static void execute(String query) throws Exception
+    {
+        Statement statement = connection.createStatement();
+        try
+        {
+            statement.execute(query);
+        }
+        finally
+        {
+            statement.close();
+        }
+    }
+
+    public @Test void testNumbers() throws Exception {
+        Reference reference = new Reference(database, "REF_LONG", "ID");
+        assertEquals(new HashSet<Object>(Arrays.asList(6, "7")),
+                     reference.findMissing(Arrays.asList(1, 2L, "3", new BigDecimal("4.0"), 6, "7", null, "")));
+    }
+
+    public @Test void testPaddedChar() throws Exception {
+        Reference reference = new Reference(database, "REF_CHAR", "CODE");
+        /* the database returns 'ab   ', which matches 'ab' */
+        assertTrue(reference.validate("ab"));
+        assertEquals(Collections.singleton("ef"), reference.findMissing(Arrays.asList("ab", "cd   ", "ef")));
+    }
+
+    public @Test void testIgnoreCase() throws Exception {
+        Reference reference = new Reference(database, "REF_NOCASE", "CODE");
+        assertTrue(reference.validate("PARIS"));
+        assertEquals(Collections.singleton("Rome"), reference.findMissing(Arrays.asList("paris", "Paris", "LONDON", "Rome")));
+    }
+
+    public @Test void testCache() throws Exception {
+        Reference reference = new Reference(database, "REF_NOCASE", "CODE");
+        reference.setCache(0);
+        assertEquals(Collections.singleton("Rome"), reference.findMissing(Arrays.asList("PARIS", "Rome")));
+        /* values found by the database are cached as given */
+        assertEquals(Collections.singleton("Rome"), reference.findMissing(Arrays.asList("PARIS", "Rome")));
+        assertTrue(reference.validate("PARIS"));
+    }
+}